@@ -0,0 +1,55 @@
+package Bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import DAO.AccountDAO;
+import Model.Account;
+
+/**
+ * AccountDAO methods against the seeded database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountDAOBenchmark {
+    AccountDAO accountDAO;
+
+    @Setup
+    public void setUp(BenchDatabase database) {
+        accountDAO = new AccountDAO();
+    }
+
+    @Benchmark
+    public Account getAccountByUsername(BenchDatabase database) {
+        int accountId = database.randomAccountId();
+        return accountDAO.getAccountByUsername(accountId == 1 ? "testuser1" : "user" + accountId);
+    }
+
+    @Benchmark
+    public boolean findAccount(BenchDatabase database) {
+        return accountDAO.findAccount("user" + database.randomAccountId());
+    }
+
+    /**
+     * The scan behind the AccountIndex warm-up.
+     */
+    @Benchmark
+    public boolean forEachAccountId(Blackhole blackhole) {
+        return accountDAO.forEachAccountId(blackhole::consume);
+    }
+}
@@ -0,0 +1,79 @@
+package Bench;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import Util.ConnectionUtil;
+
+/**
+ * A seeded H2 database shared by the benchmarks of one fork. Each size gets its own database file under
+ * target/bench, which is seeded on first use and reused by later runs, so a 10 million message table is only built
+ * once. Account 1 is 'testuser1' from SocialMedia.sql and accounts 2..accounts are 'user2', 'user3' and so on, all
+ * with the password 'password'; messages are spread evenly over the accounts.
+ *
+ * ConnectionUtil reads db.url once, when it is first used, so no benchmark may touch it before this state is set up.
+ * JMH runs every parameter combination in a fresh fork, which makes that safe.
+ */
+@State(Scope.Benchmark)
+public class BenchDatabase {
+    @Param({"10000"})
+    public int messages;
+
+    @Param({"1000"})
+    public int accounts;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        System.setProperty("db.url", "jdbc:h2:./target/bench/messages-" + messages + "-accounts-" + accounts + ";");
+        if (countRows("message") >= messages && countRows("account") >= accounts) {
+            return;
+        }
+        ConnectionUtil.resetTestDatabase();
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("insert into account (username, password) "
+                    + "select 'user' || x, 'password' from system_range(2, " + accounts + ")");
+            statement.executeUpdate("insert into message (posted_by, message_text, time_posted_epoch) "
+                    + "select mod(x, " + accounts + ") + 1, 'benchmark message ' || x, 1669947792 + x "
+                    + "from system_range(2, " + messages + ")");
+            statement.execute("ANALYZE");
+        }
+    }
+
+    /**
+     * @return the id of a message from the seeded rows.
+     */
+    public int randomMessageId() {
+        return ThreadLocalRandom.current().nextInt(1, messages + 1);
+    }
+
+    /**
+     * @return the id of a seeded account.
+     */
+    public int randomAccountId() {
+        return ThreadLocalRandom.current().nextInt(1, accounts + 1);
+    }
+
+    /**
+     * @return the row count of the table, or -1 if it does not exist yet.
+     */
+    private static long countRows(String table) {
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+}
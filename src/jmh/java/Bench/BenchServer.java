@@ -0,0 +1,30 @@
+package Bench;
+
+import java.sql.SQLException;
+
+import Controller.RequestThreads;
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+
+/**
+ * Runs the app over the seeded BenchDatabase in its own JVM, for load tests that need more connections than one
+ * process can hold open on both ends (each connection costs a file descriptor on the client and on the server).
+ * Point the LoadGenerator at it with load.url and the same load.messages and load.accounts:
+ *
+ * java -Dserver.virtualThreads=true -Dload.port=8080 -cp target/benchmarks.jar Bench.BenchServer
+ *
+ * The app's own system properties (server.*, db.pool.* and so on) apply as usual.
+ */
+public class BenchServer {
+    public static void main(String[] args) throws SQLException {
+        BenchDatabase database = new BenchDatabase();
+        database.messages = Integer.getInteger("load.messages", 10_000);
+        database.accounts = Integer.getInteger("load.accounts", 1000);
+        database.seed();
+
+        Javalin app = new SocialMediaController().startAPI().start(Integer.getInteger("load.port", 8080));
+        System.out.println("serving on port " + app.port() + " with "
+                + (RequestThreads.isVirtual(app.jettyServer().server()) ? "virtual" : "platform")
+                + " request threads");
+    }
+}
@@ -0,0 +1,104 @@
+package Bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Clients polling a message listing over HTTP, against the app started in-process on the seeded BenchDatabase, with
+ * no writes between polls. With 'conditional' each poll sends the ETag of the last full response in If-None-Match,
+ * as a polling client or browser does, so every poll after the first is answered with 304; without it each poll
+ * lists and serializes the page again. GET /messages pages come from H2, an account's pages from the TimelineCache.
+ *
+ * The teardown prints, per poll, the connections taken from the pool (one per query) and the CPU time of the whole
+ * process, client included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConditionalGetBenchmark {
+    @Param({"/messages?limit=50", "/accounts/2/messages?limit=50"})
+    String path;
+
+    @Param({"false", "true"})
+    boolean conditional;
+
+    Javalin app;
+    HttpClient webClient;
+    URI uri;
+    String etag;
+    long polls;
+    long acquiresAtStart;
+    long cpuAtStart;
+
+    @Setup
+    public void setUp(BenchDatabase database) {
+        app = new SocialMediaController().startAPI().start(0);
+        webClient = HttpClient.newHttpClient();
+        uri = URI.create("http://localhost:" + app.port() + path);
+    }
+
+    @Setup(Level.Iteration)
+    public void startCounting() {
+        polls = 0;
+        acquiresAtStart = ConnectionUtil.getPoolStats().getAcquireCount();
+        cpuAtStart = processCpuNanos();
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        long acquires = ConnectionUtil.getPoolStats().getAcquireCount() - acquiresAtStart;
+        long cpu = processCpuNanos() - cpuAtStart;
+        System.out.printf("%n%d polls, %.2f pool connections and %.1f us process CPU per poll%n",
+                polls, (double) acquires / polls, cpu / 1e3 / polls);
+    }
+
+    @TearDown
+    public void tearDown() {
+        app.stop();
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    @Benchmark
+    public int poll() throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri);
+        if (conditional && etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        HttpResponse<byte[]> response = webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() == 200) {
+            etag = response.headers().firstValue("ETag").orElse(null);
+        }
+        polls++;
+        return response.statusCode();
+    }
+}
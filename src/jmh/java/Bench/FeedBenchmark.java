@@ -0,0 +1,147 @@
+package Bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import DAO.MessagePage;
+import Model.Message;
+import Service.AccountIndex;
+import Service.FeedService;
+import Service.FollowGraph;
+import Service.HomeTimelineCache;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.MigrationRunner;
+
+/**
+ * Posting and reading home timelines over a follow graph where every account follows 'following' others, chosen
+ * either uniformly (every account has about as many followers) or by a Zipf distribution (a few accounts are followed
+ * by most others, as on a real network). Every feed is read once in setup so its buffer is cached, as it would be
+ * for active readers; addMessage then measures posting with its fan-out, and the teardown reports the write
+ * amplification: feed buffers written per message fanned out. With 'maxFanout' below the most followed accounts'
+ * follower counts, those accounts are merged into feeds on read instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeedBenchmark {
+    @Param({"uniform", "zipf"})
+    String distribution;
+
+    @Param({"50"})
+    int following;
+
+    @Param({"1000", "100"})
+    int maxFanout;
+
+    FollowGraph followGraph;
+    FeedService feedService;
+    MessageService messageService;
+
+    @Setup
+    public void setUp(BenchDatabase database) throws SQLException, InterruptedException {
+        MigrationRunner.migrate(ConnectionUtil.getDataSource());
+        seedFollows(database.accounts);
+
+        AccountIndex accountIndex = new AccountIndex();
+        accountIndex.warmUp(new AccountDAO());
+        FollowDAO followDAO = new FollowDAO();
+        followGraph = new FollowGraph();
+        followGraph.warmUp(followDAO);
+        while (!accountIndex.isReady() || !followGraph.isReady()) {
+            Thread.sleep(10);
+        }
+        MessageDAO messageDAO = new MessageDAO();
+        messageService = new MessageService(messageDAO, accountIndex);
+        feedService = new FeedService(followDAO, messageDAO, messageService, followGraph, new HomeTimelineCache(),
+                maxFanout);
+        messageService.addChangeListener(feedService);
+
+        int maxFollowers = 0;
+        int mergedOnRead = 0;
+        for (int account = 1; account <= database.accounts; account++) {
+            feedService.getFeed(account, null, null);
+            int followers = followGraph.getFollowerCount(account);
+            maxFollowers = Math.max(maxFollowers, followers);
+            if (followers > maxFanout) {
+                mergedOnRead++;
+            }
+        }
+        System.out.printf("%n%d follows, most followed account has %d followers, %d accounts merged on read%n",
+                followGraph.getEdgeCount(), maxFollowers, mergedOnRead);
+    }
+
+    private void seedFollows(int accounts) throws SQLException {
+        double[] cumulative = new double[accounts];
+        double sum = 0;
+        for (int rank = 0; rank < accounts; rank++) {
+            sum += "zipf".equals(distribution) ? 1.0 / (rank + 1) : 1.0;
+            cumulative[rank] = sum;
+        }
+        Random random = new Random(42);
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement();
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO follow (follower_id, followee_id) VALUES (?, ?)")) {
+            statement.executeUpdate("DELETE FROM follow");
+            for (int follower = 1; follower <= accounts; follower++) {
+                Set<Integer> followees = new HashSet<>();
+                while (followees.size() < Math.min(following, accounts - 1)) {
+                    int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                    int followee = Math.min(rank < 0 ? -rank - 1 : rank, accounts - 1) + 1;
+                    if (followee != follower && followees.add(followee)) {
+                        insert.setInt(1, follower);
+                        insert.setInt(2, followee);
+                        insert.addBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        long fannedOut = feedService.getMessagesFannedOut();
+        System.out.printf("%nmessages fanned out %d, merged on read %d, feed buffer writes %d (%.1f per message)%n",
+                fannedOut, feedService.getMessagesNotFannedOut(), feedService.getFanoutWrites(),
+                fannedOut == 0 ? 0.0 : (double) feedService.getFanoutWrites() / fannedOut);
+    }
+
+    @Benchmark
+    public Message addMessage(BenchDatabase database) {
+        return messageService.addMessage(new Message(database.randomAccountId(), "benchmark message", 1669947792));
+    }
+
+    @Benchmark
+    public MessagePage getFeed(BenchDatabase database) {
+        return feedService.getFeed(database.randomAccountId(), null, null);
+    }
+}
@@ -0,0 +1,74 @@
+package Bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import DAO.MessageGroupCommitter;
+import Model.Message;
+import Service.AccountIndex;
+import Service.MessageService;
+
+/**
+ * MessageService.addMessage from 16 threads at once, as POST /messages runs it on the DB executor under a burst, with
+ * each message inserted in its own transaction ('direct') or through a MessageGroupCommitter that waits at most
+ * 'maxDelayMicros' for a batch of up to 64 to fill. Sample time mode gives the per-request percentiles next to the
+ * throughput; the teardown prints the mean number of messages per group commit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class GroupCommitBenchmark {
+    @Param({"direct", "0", "1000"})
+    String maxDelayMicros;
+
+    MessageService messageService;
+    MessageGroupCommitter groupCommitter;
+
+    @Setup
+    public void setUp(BenchDatabase database) throws InterruptedException {
+        AccountIndex accountIndex = new AccountIndex();
+        accountIndex.warmUp(new AccountDAO());
+        while (!accountIndex.isReady()) {
+            Thread.sleep(10);
+        }
+        MessageDAO messageDAO = new MessageDAO();
+        messageService = new MessageService(messageDAO, accountIndex);
+        if (!maxDelayMicros.equals("direct")) {
+            groupCommitter = new MessageGroupCommitter(messageDAO, 64, Long.parseLong(maxDelayMicros));
+            messageService.useGroupCommit(groupCommitter);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (groupCommitter != null) {
+            System.out.printf("%n%.1f messages per commit%n",
+                    (double) groupCommitter.getMessageCount() / groupCommitter.getBatchCount());
+            groupCommitter.shutdown();
+        }
+    }
+
+    @Benchmark
+    public Message addMessage(BenchDatabase database) {
+        return messageService.addMessage(new Message(database.randomAccountId(), "benchmark message", 1669947792));
+    }
+}
@@ -0,0 +1,83 @@
+package Bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.AppJsonMapper;
+import Model.Account;
+import Model.Message;
+
+/**
+ * JSON encoding of message lists and decoding of request bodies, comparing the old per-request ObjectMapper with
+ * AppJsonMapper. Run with -prof gc to see the allocation per operation next to the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+    static final String ACCOUNT_JSON = "{\"username\":\"testuser1\",\"password\":\"password\"}";
+
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    List<Message> messages;
+    ObjectMapper sharedMapper;
+    AppJsonMapper appJsonMapper;
+
+    @Setup
+    public void setUp() {
+        messages = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            messages.add(new Message(i, 1 + i % 100, "benchmark message number " + i, 1669947792L + i));
+        }
+        sharedMapper = new ObjectMapper();
+        appJsonMapper = new AppJsonMapper();
+    }
+
+    /**
+     * What the handlers did before AppJsonMapper: a new ObjectMapper for every response.
+     */
+    @Benchmark
+    public String messageListPerRequestMapper() throws JsonProcessingException {
+        return new ObjectMapper().writeValueAsString(messages);
+    }
+
+    @Benchmark
+    public String messageListSharedMapper() throws JsonProcessingException {
+        return sharedMapper.writeValueAsString(messages);
+    }
+
+    @Benchmark
+    public String messageListAppJsonMapper() {
+        return appJsonMapper.toJsonString(messages, List.class);
+    }
+
+    @Benchmark
+    public Account readAccountPerRequestMapper() throws JsonProcessingException {
+        return new ObjectMapper().readValue(ACCOUNT_JSON, Account.class);
+    }
+
+    @Benchmark
+    public Account readAccountAppJsonMapper() {
+        return appJsonMapper.fromJsonString(ACCOUNT_JSON, Account.class);
+    }
+}
@@ -0,0 +1,328 @@
+package Bench;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+
+/**
+ * Open-loop HTTP load test of the app from SocialMediaController.startAPI, started in-process on an ephemeral port
+ * over the seeded BenchDatabase. Requests are issued at a fixed arrival rate whether or not earlier ones have
+ * answered, and each latency is measured from the time the request was scheduled to be sent rather than the time it
+ * actually went out, so a stalled server shows up as high latency instead of as fewer, faster samples (coordinated
+ * omission).
+ *
+ * Settings are system properties:
+ * load.rate (requests per second, 200), load.durationSeconds (30), load.warmupSeconds (5, not recorded),
+ * load.mix (route weights, "register:5,login:10,post:20,list:25,get:30,patch:5,delete:5"; "timeline" reads one
+ * account's messages),
+ * load.messages and load.accounts (seeded dataset, 10000 and 1000), load.log (target/load/latency.hlog).
+ *
+ * Setting load.connections switches to a closed loop for comparing the server's thread models under many concurrent
+ * clients: that many connections are opened, evenly over the warm-up, and each sends its next request as soon as the
+ * previous one is answered, so load.rate is ignored and latency is measured from the actual send. load.url sends to a
+ * server that is already running, usually a BenchServer over the same dataset, instead of starting the app in this
+ * JVM; beyond a few thousand connections that is needed to stay under the per-process file descriptor limit.
+ * For example, 10k connections against virtual request threads:
+ *
+ * java -Dserver.virtualThreads=true -cp target/benchmarks.jar Bench.BenchServer
+ * java -Dload.url=http://localhost:8080 -Dload.connections=10000 -Dload.warmupSeconds=20 \
+ *      -cp target/benchmarks.jar Bench.LoadGenerator
+ *
+ * Every route gets a tagged interval histogram per second in the HdrHistogram log, in microseconds, and a summary of
+ * throughput and p50/p99/p99.9 latency is printed at the end. Posted messages are the only ones deleted, so the
+ * seeded rows stay intact for later runs.
+ */
+public class LoadGenerator {
+    static final String DEFAULT_MIX = "register:5,login:10,post:20,list:25,get:30,patch:5,delete:5";
+
+    private final Map<String, Route> routes = new LinkedHashMap<>();
+    private final int[] weights;
+    private final int totalWeight;
+    private final BenchDatabase database = new BenchDatabase();
+    private final ConcurrentLinkedQueue<Integer> postedIds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger registrations = new AtomicInteger();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final long runId = System.currentTimeMillis();
+    private HttpClient webClient;
+    private String baseUrl;
+
+    LoadGenerator(String mix) {
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            routes.put(parts[0], new Route(parts[0], Integer.parseInt(parts[1])));
+        }
+        weights = new int[routes.size()];
+        int sum = 0;
+        int i = 0;
+        for (Route route : routes.values()) {
+            sum += route.weight;
+            weights[i++] = sum;
+        }
+        totalWeight = sum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator(System.getProperty("load.mix", DEFAULT_MIX));
+        generator.run(Integer.getInteger("load.rate", 200),
+                Integer.getInteger("load.connections", 0),
+                Integer.getInteger("load.durationSeconds", 30),
+                Integer.getInteger("load.warmupSeconds", 5),
+                new File(System.getProperty("load.log", "target/load/latency.hlog")));
+        System.exit(0);
+    }
+
+    void run(int rate, int connections, int durationSeconds, int warmupSeconds, File logFile)
+            throws SQLException, FileNotFoundException, InterruptedException {
+        database.messages = Integer.getInteger("load.messages", 10_000);
+        database.accounts = Integer.getInteger("load.accounts", 1000);
+        Javalin app = null;
+        baseUrl = System.getProperty("load.url");
+        if (baseUrl == null) {
+            database.seed();
+            app = new SocialMediaController().startAPI().start(0);
+            baseUrl = "http://localhost:" + app.port();
+        }
+        ExecutorService responseExecutor = Executors.newFixedThreadPool(4);
+        webClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(responseExecutor)
+                .build();
+        logFile.getParentFile().mkdirs();
+        HistogramLogWriter logWriter = new HistogramLogWriter(logFile);
+        logWriter.outputLogFormatVersion();
+        logWriter.outputComment((connections > 0 ? "connections=" + connections : "rate=" + rate + "/s")
+                + " mix=" + routes.keySet() + " values in microseconds");
+        logWriter.outputLegend();
+
+        if (connections > 0) {
+            runClosedLoop(connections, durationSeconds, warmupSeconds, logWriter);
+        } else {
+            runOpenLoop(rate, durationSeconds, warmupSeconds, logWriter);
+        }
+
+        // let the requests still in flight finish before the last interval is written
+        Thread.sleep(2000);
+        writeIntervals(logWriter);
+        logWriter.close();
+        if (app != null) {
+            app.stop();
+        }
+        responseExecutor.shutdownNow();
+        printSummary(durationSeconds, logFile);
+    }
+
+    private void runOpenLoop(int rate, int durationSeconds, int warmupSeconds, HistogramLogWriter logWriter) {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long recordFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = recordFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long nextLog = recordFrom + TimeUnit.SECONDS.toNanos(1);
+        boolean logStarted = false;
+        for (long i = 0; ; i++) {
+            long intended = start + i * intervalNanos;
+            if (intended >= end) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            if (!logStarted && now >= recordFrom) {
+                logWriter.outputStartTime(System.currentTimeMillis());
+                for (Route route : routes.values()) {
+                    route.recorder.reset();
+                }
+                logStarted = true;
+            }
+            if (now >= nextLog) {
+                writeIntervals(logWriter);
+                nextLog += TimeUnit.SECONDS.toNanos(1);
+            }
+            send(pickRoute(), intended, intended >= recordFrom);
+        }
+    }
+
+    private void runClosedLoop(int connections, int durationSeconds, int warmupSeconds, HistogramLogWriter logWriter)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long recordFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = recordFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long rampNanos = TimeUnit.SECONDS.toNanos(warmupSeconds) / connections;
+        for (int i = 0; i < connections; i++) {
+            long opensAt = start + i * rampNanos;
+            long now;
+            while ((now = System.nanoTime()) < opensAt) {
+                LockSupport.parkNanos(opensAt - now);
+            }
+            sendNext(recordFrom, end);
+        }
+        long now;
+        while ((now = System.nanoTime()) < recordFrom) {
+            LockSupport.parkNanos(recordFrom - now);
+        }
+        logWriter.outputStartTime(System.currentTimeMillis());
+        for (Route route : routes.values()) {
+            route.recorder.reset();
+        }
+        for (long nextLog = recordFrom + TimeUnit.SECONDS.toNanos(1); nextLog < end;
+                nextLog += TimeUnit.SECONDS.toNanos(1)) {
+            while ((now = System.nanoTime()) < nextLog) {
+                LockSupport.parkNanos(nextLog - now);
+            }
+            writeIntervals(logWriter);
+        }
+    }
+
+    /**
+     * Sends one request of a closed-loop client, which sends the next one when this is answered, until the run ends.
+     */
+    private void sendNext(long recordFrom, long end) {
+        long sent = System.nanoTime();
+        if (sent >= end) {
+            return;
+        }
+        send(pickRoute(), sent, sent >= recordFrom).whenComplete((response, error) -> sendNext(recordFrom, end));
+    }
+
+    private Route pickRoute() {
+        int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+        int i = 0;
+        for (Route route : routes.values()) {
+            if (roll < weights[i++]) {
+                return route;
+            }
+        }
+        throw new IllegalStateException("no route for " + roll);
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(Route route, long intended, boolean record) {
+        HttpRequest request = request(route.name);
+        return webClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            long latencyMicros = (System.nanoTime() - intended) / 1000;
+            if (record) {
+                route.recorder.recordValue(latencyMicros);
+                route.total.increment();
+                if (error != null || response.statusCode() >= 500) {
+                    route.errors.increment();
+                }
+            }
+            if (error == null && route.name.equals("post") && response.statusCode() == 200) {
+                rememberPostedId(response.body());
+            }
+        });
+    }
+
+    private HttpRequest request(String route) {
+        int accountId = database.randomAccountId();
+        switch (route) {
+            case "register":
+                return post("/register", "{\"username\":\"load-" + runId + "-" + registrations.incrementAndGet()
+                        + "\",\"password\":\"password\"}");
+            case "login":
+                return post("/login", "{\"username\":\"" + (accountId == 1 ? "testuser1" : "user" + accountId)
+                        + "\",\"password\":\"password\"}");
+            case "post":
+                return post("/messages", "{\"posted_by\":" + accountId
+                        + ",\"message_text\":\"load test message\",\"time_posted_epoch\":1669947792}");
+            case "list":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages?limit=100")).build();
+            case "timeline":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/accounts/" + accountId + "/messages")).build();
+            case "get":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + database.randomMessageId())).build();
+            case "patch":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + database.randomMessageId()))
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"patched by load\"}"))
+                        .header("Content-Type", "application/json")
+                        .build();
+            case "delete":
+                Integer id = postedIds.poll();
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + (id == null ? Integer.MAX_VALUE : id)))
+                        .DELETE()
+                        .build();
+            default:
+                throw new IllegalArgumentException("unknown route in load.mix: " + route);
+        }
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    private void rememberPostedId(String body) {
+        try {
+            JsonNode message = objectMapper.readTree(body);
+            postedIds.add(message.get("message_id").asInt());
+        } catch (Exception e) {
+            // not a message; nothing to delete later
+        }
+    }
+
+    private void writeIntervals(HistogramLogWriter logWriter) {
+        for (Route route : routes.values()) {
+            route.interval = route.recorder.getIntervalHistogram(route.interval);
+            route.interval.setTag(route.name);
+            route.accumulated.add(route.interval);
+            logWriter.outputIntervalHistogram(route.interval);
+        }
+    }
+
+    private void printSummary(int durationSeconds, File logFile) {
+        System.out.printf("%-10s %10s %10s %8s %10s %10s %10s %10s%n",
+                "route", "requests", "req/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Route route : routes.values()) {
+            Histogram h = route.accumulated;
+            System.out.printf("%-10s %10d %10.1f %8d %10.2f %10.2f %10.2f %10.2f%n",
+                    route.name, route.total.sum(), route.total.sum() / (double) durationSeconds, route.errors.sum(),
+                    h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(99) / 1000.0,
+                    h.getValueAtPercentile(99.9) / 1000.0, h.getMaxValue() / 1000.0);
+        }
+        System.out.println("interval histograms written to " + logFile);
+    }
+
+    /**
+     * One endpoint in the mix with its share of the traffic and its latency recorder.
+     */
+    private static final class Route {
+        final String name;
+        final int weight;
+        final Recorder recorder = new Recorder(3);
+        final Histogram accumulated = new Histogram(3);
+        final LongAdder total = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        Histogram interval;
+
+        Route(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+    }
+}
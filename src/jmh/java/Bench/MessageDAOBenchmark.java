@@ -0,0 +1,91 @@
+package Bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageCursor;
+import DAO.MessageDAO;
+import DAO.MessagePage;
+import Model.Message;
+
+/**
+ * MessageDAO methods against the seeded database, without any cache in front. The write benchmarks keep adding
+ * rows to the seeded table, which is harmless for the reads since they only pick ids from the seeded range.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageDAOBenchmark {
+    static final int BATCH = 100;
+
+    MessageDAO messageDAO;
+    List<Message> batch;
+
+    @Setup
+    public void setUp(BenchDatabase database) {
+        messageDAO = new MessageDAO();
+        batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(new Message(1, "batched benchmark message " + i, 1669947792));
+        }
+    }
+
+    @Benchmark
+    public Message createMessage(BenchDatabase database) {
+        return messageDAO.createMessage(new Message(database.randomAccountId(), "benchmark message", 1669947792));
+    }
+
+    /**
+     * Per message cost of the JDBC batch insert behind POST /messages/batch, to compare with createMessage.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<Message> createMessages() {
+        return messageDAO.createMessages(batch);
+    }
+
+    @Benchmark
+    public Message getMessageByID(BenchDatabase database) {
+        return messageDAO.getMessageByID(database.randomMessageId());
+    }
+
+    @Benchmark
+    public List<Message> getAllMessagesByUser(BenchDatabase database) {
+        return messageDAO.getAllMessagesByUser(database.randomAccountId());
+    }
+
+    @Benchmark
+    public MessagePage getMessagesPageByTime() {
+        return messageDAO.getMessagesPage(null, MessageCursor.Order.TIME, null, null, 100);
+    }
+
+    @Benchmark
+    public boolean confirmMessageAccount(BenchDatabase database) {
+        return messageDAO.confirmMessageAccount(database.randomAccountId());
+    }
+
+    /**
+     * Loads the whole table into a list; with -p messages=10000000 this needs a large heap.
+     */
+    @Benchmark
+    @Measurement(iterations = 3, time = 5)
+    public List<Message> getAllMessages() {
+        return messageDAO.getAllMessages();
+    }
+}
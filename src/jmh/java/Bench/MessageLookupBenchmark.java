@@ -0,0 +1,79 @@
+package Bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountIndex;
+import Service.MessageCache;
+import Service.MessageService;
+import Service.TimelineCache;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Latency of GET /messages/{message_id} lookups whose ids follow a Zipf distribution with exponent 'skew' (0 is
+ * uniform), through MessageService and its MessageCache ('cached') and straight from the MessageDAO ('uncached'). The
+ * cache holds 'cacheSize' messages, a tenth of the seeded table by default, so how many lookups it answers depends on
+ * the skew; the hit rate and the share of lookups that go to the 'cacheSize' hottest ids are printed after each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class MessageLookupBenchmark {
+    @Param({"0", "0.8", "0.99", "1.2"})
+    double skew;
+
+    @Param({"1000"})
+    int cacheSize;
+
+    ZipfIds ids;
+    MessageDAO messageDAO;
+    MessageService messageService;
+
+    @Setup
+    public void setUp(BenchDatabase database) {
+        ids = new ZipfIds(database.messages, skew);
+        messageDAO = new MessageDAO();
+        messageService = new MessageService(messageDAO, new AccountIndex(), new MessageCache(cacheSize, 0, 30),
+                new TimelineCache());
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        CacheStats stats = messageService.getMessageCacheStats();
+        if (stats.requestCount() > 0) {
+            System.out.printf("%nskew %s: %.1f%% of lookups on the %d hottest ids, cache hit rate %.1f%%%n", skew,
+                    100 * ids.shareOfTop(cacheSize), cacheSize, 100 * stats.hitRate());
+        }
+    }
+
+    @Benchmark
+    public Message cached() {
+        return messageService.getMessageByID(ids.next());
+    }
+
+    @Benchmark
+    public Message uncached() {
+        return messageDAO.getMessageByID(ids.next());
+    }
+}
@@ -0,0 +1,84 @@
+package Bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageCursor;
+import DAO.MessageDAO;
+import DAO.MessagePage;
+import Service.MessageReadModel;
+import Service.MessageService;
+
+/**
+ * Pages of GET /messages (100 messages in message_id order after a random message) read by 1 to 64 threads at once,
+ * from the database ('jdbc') or from a loaded MessageReadModel ('readModel'). With the database every read takes a
+ * pooled connection and runs a query; with the read model it is a volatile read and an array copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageReadModelBenchmark {
+    static final int PAGE_SIZE = 100;
+
+    @Param({"jdbc", "readModel"})
+    String source;
+
+    MessageService messageService;
+
+    @Setup
+    public void setUp(BenchDatabase database) {
+        MessageDAO messageDAO = new MessageDAO();
+        messageService = new MessageService(messageDAO);
+        if (source.equals("readModel")) {
+            MessageReadModel readModel = new MessageReadModel();
+            messageService.useReadModel(readModel);
+            if (!readModel.build(messageDAO)) {
+                throw new IllegalStateException("the read model could not be loaded");
+            }
+        }
+    }
+
+    private MessagePage page(BenchDatabase database) {
+        MessageCursor after = new MessageCursor(MessageCursor.Order.ID, 0, database.randomMessageId());
+        return messageService.getMessagesPage(null, MessageCursor.Order.ID, after, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public MessagePage readers1(BenchDatabase database) {
+        return page(database);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public MessagePage readers4(BenchDatabase database) {
+        return page(database);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public MessagePage readers16(BenchDatabase database) {
+        return page(database);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public MessagePage readers64(BenchDatabase database) {
+        return page(database);
+    }
+}
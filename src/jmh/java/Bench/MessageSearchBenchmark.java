@@ -0,0 +1,153 @@
+package Bench;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Service.MessageSearchIndex;
+
+/**
+ * MessageSearchIndex over a generated corpus too large for the bench database: 'messages' messages of 4 to 20 words
+ * drawn from a Zipf distribution over a vocabulary of 50,000 words, so a few words are in most messages and most
+ * words are rare, as in real text. The setup reports the heap the index takes per message; buildIndex times indexing
+ * the whole corpus, and the search benchmarks time finding the newest page of 20 ids for common, rare, prefix and
+ * two-word queries. The database lookups of MessageService.searchMessages are not included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class MessageSearchBenchmark {
+    static final int VOCABULARY = 50_000;
+    static final int PAGE = 20;
+
+    @Param({"2000000"})
+    int messages;
+
+    String[] texts;
+    MessageSearchIndex index;
+    MessageSearchIndex.Query common;
+    MessageSearchIndex.Query rare;
+    MessageSearchIndex.Query prefix;
+    MessageSearchIndex.Query shortPrefix;
+    MessageSearchIndex.Query twoWords;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Set<String> vocabulary = new LinkedHashSet<>();
+        while (vocabulary.size() < VOCABULARY) {
+            char[] word = new char[3 + random.nextInt(8)];
+            for (int i = 0; i < word.length; i++) {
+                word[i] = (char) ('a' + random.nextInt(26));
+            }
+            vocabulary.add(new String(word));
+        }
+        String[] words = vocabulary.toArray(new String[0]);
+        double[] cumulative = new double[VOCABULARY];
+        double sum = 0;
+        for (int rank = 0; rank < VOCABULARY; rank++) {
+            sum += 1.0 / (rank + 1);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < VOCABULARY; rank++) {
+            cumulative[rank] /= sum;
+        }
+        texts = new String[messages];
+        StringBuilder text = new StringBuilder(200);
+        for (int i = 0; i < messages; i++) {
+            text.setLength(0);
+            int length = 4 + random.nextInt(17);
+            for (int j = 0; j < length; j++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+                text.append(words[Math.min(rank < 0 ? -rank - 1 : rank, VOCABULARY - 1)]).append(' ');
+            }
+            texts[i] = text.toString();
+        }
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        index = build();
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%nindexed %d messages: %d terms, %d postings, %.1f bytes/message estimated, "
+                        + "%.1f bytes/message heap growth%n", messages, index.getTermCount(), index.getPostingCount(),
+                (double) index.memoryBytes() / messages, (double) (heapAfter - heapBefore) / messages);
+
+        common = MessageSearchIndex.parse(words[5]);
+        rare = MessageSearchIndex.parse(words[20_000]);
+        prefix = MessageSearchIndex.parse(words[1000].substring(0, 3) + "*");
+        shortPrefix = MessageSearchIndex.parse(words[1000].substring(0, 2) + "*");
+        twoWords = MessageSearchIndex.parse(words[100] + " " + words[300]);
+    }
+
+    MessageSearchIndex build() {
+        MessageSearchIndex built = new MessageSearchIndex();
+        for (int i = 0; i < texts.length; i++) {
+            built.add(i + 1, texts[i]);
+        }
+        return built;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public MessageSearchIndex buildIndex() {
+        return build();
+    }
+
+    @Benchmark
+    public int[] searchCommonWord() {
+        return index.search(common, Integer.MAX_VALUE, PAGE + 1);
+    }
+
+    @Benchmark
+    public int[] searchRareWord() {
+        return index.search(rare, Integer.MAX_VALUE, PAGE + 1);
+    }
+
+    @Benchmark
+    public int[] searchPrefix() {
+        return index.search(prefix, Integer.MAX_VALUE, PAGE + 1);
+    }
+
+    /**
+     * A two letter prefix matches about 75 words, so their ids are gathered in a bitset rather than merged.
+     */
+    @Benchmark
+    public int[] searchShortPrefix() {
+        return index.search(shortPrefix, Integer.MAX_VALUE, PAGE + 1);
+    }
+
+    @Benchmark
+    public int[] searchTwoWords() {
+        return index.search(twoWords, Integer.MAX_VALUE, PAGE + 1);
+    }
+
+    /**
+     * A page deep into the results of a common word, as reached by following next cursors.
+     */
+    @Benchmark
+    public int[] searchCommonWordDeepPage() {
+        return index.search(common, messages / 2, PAGE + 1);
+    }
+}
@@ -0,0 +1,86 @@
+package Bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountIndex;
+import Service.BatchResult;
+import Service.MessageService;
+
+/**
+ * MessageService methods wired the way SocialMediaController wires them: with the warmed-up AccountIndex and the
+ * message and timeline caches in front of the MessageDAO. Lookups by id are in MessageLookupBenchmark, which draws
+ * the ids from a skewed distribution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageServiceBenchmark {
+    static final int BATCH = 100;
+
+    AccountIndex accountIndex;
+    MessageService messageService;
+    List<Message> batch;
+
+    @Setup
+    public void setUp(BenchDatabase database) throws InterruptedException {
+        accountIndex = new AccountIndex();
+        accountIndex.warmUp(new AccountDAO());
+        while (!accountIndex.isReady()) {
+            Thread.sleep(10);
+        }
+        messageService = new MessageService(new MessageDAO(), accountIndex);
+        batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(new Message(1 + i % database.accounts, "batched benchmark message " + i, 1669947792));
+        }
+    }
+
+    @Benchmark
+    public Message addMessage(BenchDatabase database) {
+        return messageService.addMessage(new Message(database.randomAccountId(), "benchmark message", 1669947792));
+    }
+
+    /**
+     * Per message cost of POST /messages/batch, to compare with addMessage.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public BatchResult addMessages() {
+        return messageService.addMessages(batch);
+    }
+
+    @Benchmark
+    public List<Message> getAllMessagesByUser(BenchDatabase database) {
+        return messageService.getAllMessagesByUser(database.randomAccountId());
+    }
+
+    /**
+     * The author check of addMessage, to compare with MessageDAOBenchmark.confirmMessageAccount.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean accountIndexContains(BenchDatabase database) {
+        return accountIndex.contains(database.randomAccountId());
+    }
+}
@@ -0,0 +1,46 @@
+package Bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Cost of the statement instrumentation on a point lookup, switched off and on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryInstrumentationBenchmark {
+    @Param({"false", "true"})
+    public boolean instrumented;
+
+    MessageDAO messageDAO;
+
+    @Setup
+    public void setUp(BenchDatabase database) {
+        ConnectionUtil.getQueryInstrumentation().setEnabled(instrumented);
+        messageDAO = new MessageDAO();
+    }
+
+    @Benchmark
+    public Message getMessageByID(BenchDatabase database) {
+        return messageDAO.getMessageByID(database.randomMessageId());
+    }
+}
@@ -0,0 +1,56 @@
+package Bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.RequestMetrics;
+import Util.LatencyHistogram;
+
+/**
+ * Cost the request instrumentation adds to every request: the series lookup, status count and histogram update
+ * done by the after handler, including the two System.nanoTime calls around the request. Runs with several threads
+ * to show the LongAdders do not contend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class RequestMetricsBenchmark {
+    static final String[] ROUTES = {"/messages", "/messages/{message_id}", "/accounts/{account_id}/messages"};
+
+    RequestMetrics requestMetrics;
+    LatencyHistogram histogram;
+
+    @Setup
+    public void setUp() {
+        requestMetrics = new RequestMetrics();
+        histogram = new LatencyHistogram();
+    }
+
+    @Benchmark
+    public void recordRequest() {
+        long start = System.nanoTime();
+        String route = ROUTES[ThreadLocalRandom.current().nextInt(ROUTES.length)];
+        requestMetrics.record("GET", route, 200, System.nanoTime() - start);
+    }
+
+    @Benchmark
+    public void recordHistogramOnly() {
+        histogram.record(ThreadLocalRandom.current().nextLong(50_000_000L));
+    }
+}
@@ -0,0 +1,64 @@
+package Bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Service.SessionTokens;
+
+/**
+ * Cost the session token check adds to every authenticated request, against the account query of the login it
+ * replaces (AccountDAOBenchmark.getAccountByUsername). verifyForged is a token with a bad signature, which costs the
+ * same HMAC and is rejected; 'revoked' fills the revocation set, which every check looks the token up in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class SessionTokenBenchmark {
+    @Param({"0", "10000"})
+    int revoked;
+
+    SessionTokens sessionTokens;
+    String token;
+    String forged;
+
+    @Setup
+    public void setUp() {
+        sessionTokens = new SessionTokens(3600, 1, "benchmark signing key, 32 bytes".getBytes());
+        for (int i = 0; i < revoked; i++) {
+            sessionTokens.revoke(sessionTokens.issue(i));
+        }
+        token = sessionTokens.issue(42);
+        forged = token.substring(0, 40) + (token.charAt(40) == 'A' ? 'B' : 'A') + token.substring(41);
+    }
+
+    @Benchmark
+    public String issue() {
+        return sessionTokens.issue(42);
+    }
+
+    @Benchmark
+    public Integer verify() {
+        return sessionTokens.verify(token);
+    }
+
+    @Benchmark
+    public Integer verifyForged() {
+        return sessionTokens.verify(forged);
+    }
+}
@@ -0,0 +1,67 @@
+package Bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageCursor;
+import DAO.MessagePage;
+import DAO.ShardedMessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.MigrationRunner;
+
+/**
+ * Single message inserts from 8 threads, and first pages of GET /messages, with the 'message' table spread over
+ * 'shards' H2 databases by a ShardedMessageDAO. Shard 0 is the seeded BenchDatabase and the others are files under
+ * target/bench, so the runs with more shards write the same rows to more database files; with one shard the DAO only
+ * adds its id allocation to a plain MessageDAO. How far the inserts scale depends on the cores available to the H2
+ * writers, and the pages show the cost of running one query per shard and merging them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ShardedMessageBenchmark {
+    @Param({"1", "2", "4"})
+    int shards;
+
+    ShardedMessageDAO messageDAO;
+
+    @Setup
+    public void setUp(BenchDatabase database) {
+        // a database seeded by an earlier build may not have the message_id_block sequence yet
+        MigrationRunner.migrate(ConnectionUtil.getDataSource());
+        messageDAO = new ShardedMessageDAO(shards, "jdbc:h2:./target/bench/shard-%d;", 4 * shards);
+    }
+
+    @TearDown
+    public void tearDown() {
+        messageDAO.shutdown();
+    }
+
+    @Benchmark
+    public Message createMessage(BenchDatabase database) {
+        return messageDAO.createMessage(new Message(database.randomAccountId(), "benchmark message", 1669947792));
+    }
+
+    @Benchmark
+    public MessagePage firstPage() {
+        return messageDAO.getMessagesPage(null, MessageCursor.Order.ID, null, null, 50);
+    }
+}
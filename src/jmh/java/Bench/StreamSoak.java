@@ -0,0 +1,181 @@
+package Bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+
+/**
+ * Soak test of GET /messages/stream: opens many idle subscriptions to the app, started in-process on an ephemeral
+ * port over the seeded BenchDatabase, and reports the heap each one costs, then posts messages and times how long each
+ * takes to reach every subscriber.
+ *
+ * The subscribers are plain sockets on one selector thread, so that the client side adds as little as possible to the
+ * heap being measured; what is printed still includes their channels and selection keys, and is an upper bound on the
+ * server's cost. Each subscriber takes a file descriptor on both ends, so soak.subscribers is limited to about half of
+ * 'ulimit -n'.
+ *
+ * Settings are system properties: soak.subscribers (5000), soak.messages (100), soak.idleSeconds (how long the
+ * subscribers sit idle before the heap is measured, 20, so that the heartbeat has gone round at least once with
+ * stream.heartbeatSeconds lowered), load.messages and load.accounts (seeded dataset). For example:
+ *
+ * java -Dsoak.subscribers=8000 -Dstream.heartbeatSeconds=5 -cp target/benchmarks.jar Bench.StreamSoak
+ */
+public class StreamSoak {
+    private static final byte[] CREATED = "\nevent: created".getBytes(StandardCharsets.US_ASCII);
+
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private volatile boolean stopped;
+
+    public static void main(String[] args) throws Exception {
+        new StreamSoak().run(Integer.getInteger("soak.subscribers", 5000), Integer.getInteger("soak.messages", 100),
+                Integer.getInteger("soak.idleSeconds", 20));
+        System.exit(0);
+    }
+
+    void run(int subscriberCount, int messages, int idleSeconds) throws Exception {
+        BenchDatabase database = new BenchDatabase();
+        database.messages = Integer.getInteger("load.messages", 10_000);
+        database.accounts = Integer.getInteger("load.accounts", 1000);
+        database.seed();
+        Javalin app = new SocialMediaController().startAPI().start(0);
+        HttpClient webClient = HttpClient.newHttpClient();
+        String baseUrl = "http://localhost:" + app.port();
+        // warm the routes up so that their first-use allocations are not counted against the subscribers
+        post(webClient, baseUrl, "warm-up");
+
+        long before = usedHeapAfterGc();
+        Selector selector = Selector.open();
+        byte[] request = ("GET /messages/stream HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < subscriberCount; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", app.port()));
+            channel.write(ByteBuffer.wrap(request));
+            channel.configureBlocking(false);
+            Subscriber subscriber = new Subscriber();
+            subscribers.add(subscriber);
+            channel.register(selector, SelectionKey.OP_READ, subscriber);
+        }
+        Thread reader = new Thread(() -> read(selector), "stream-soak-reader");
+        reader.setDaemon(true);
+        reader.start();
+        System.out.println("opened " + subscriberCount + " subscriptions, idling for " + idleSeconds + " s");
+        Thread.sleep(TimeUnit.SECONDS.toMillis(idleSeconds));
+        long after = usedHeapAfterGc();
+        System.out.printf("heap %d MB before, %d MB with %d subscribers: %.0f bytes per subscriber%n",
+                before >> 20, after >> 20, subscriberCount, (after - before) / (double) subscriberCount);
+
+        long[] fanOutMicros = new long[messages];
+        int delivered = 0;
+        for (int i = 0; i < messages; i++) {
+            long start = System.nanoTime();
+            post(webClient, baseUrl, "soak " + i);
+            long deadline = start + TimeUnit.SECONDS.toNanos(10);
+            while (minCreated() <= i && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            fanOutMicros[i] = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            if (minCreated() > i) {
+                delivered++;
+            }
+        }
+        Arrays.sort(fanOutMicros);
+        System.out.printf("%d of %d messages reached all %d subscribers; post to last delivery p50 %.1f ms, "
+                        + "p99 %.1f ms, max %.1f ms%n", delivered, messages, subscriberCount,
+                fanOutMicros[messages / 2] / 1000.0, fanOutMicros[messages * 99 / 100] / 1000.0,
+                fanOutMicros[messages - 1] / 1000.0);
+
+        stopped = true;
+        selector.wakeup();
+        app.stop();
+    }
+
+    private static void post(HttpClient webClient, String baseUrl, String text)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\": 1, \"message_text\": \"" + text + "\", \"time_posted_epoch\": 1669947792}"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("POST /messages answered " + response.statusCode());
+        }
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private int minCreated() {
+        int min = Integer.MAX_VALUE;
+        for (Subscriber subscriber : subscribers) {
+            min = Math.min(min, subscriber.created);
+        }
+        return min;
+    }
+
+    private void read(Selector selector) {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try {
+            while (!stopped) {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    buffer.clear();
+                    if (((SocketChannel) key.channel()).read(buffer) < 0) {
+                        key.cancel();
+                        continue;
+                    }
+                    Subscriber subscriber = (Subscriber) key.attachment();
+                    for (int i = 0; i < buffer.position(); i++) {
+                        subscriber.scan(buffer.get(i));
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Counts the 'created' events received on one subscription, matching across reads.
+     */
+    private static class Subscriber {
+        volatile int created;
+        private int matched;
+
+        void scan(byte b) {
+            if (b == CREATED[matched]) {
+                matched++;
+                if (matched == CREATED.length) {
+                    created++;
+                    matched = 0;
+                }
+            } else {
+                matched = b == CREATED[0] ? 1 : 0;
+            }
+        }
+    }
+}
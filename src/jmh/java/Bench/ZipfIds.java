@@ -0,0 +1,56 @@
+package Bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Draws ids 1..count with a Zipf distribution: the id of popularity rank r is drawn with a probability proportional to
+ * 1 / r^skew, so a skew of 0 is uniform and around 1 a few hundred ids get most of the draws, as with the hot messages
+ * of a real feed. Ranks are assigned to ids by a seeded shuffle, so the hot ids are spread over the table instead of
+ * being its first rows. Safe to share between threads.
+ */
+class ZipfIds {
+    private final double[] cumulative;
+    private final int[] idOfRank;
+
+    /**
+     * @param count the number of ids.
+     * @param skew the Zipf exponent, 0 or more.
+     */
+    ZipfIds(int count, double skew) {
+        cumulative = new double[count];
+        double sum = 0;
+        for (int rank = 0; rank < count; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, skew);
+            cumulative[rank] = sum;
+        }
+        idOfRank = new int[count];
+        for (int i = 0; i < count; i++) {
+            idOfRank[i] = i + 1;
+        }
+        Random random = new Random(42);
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = idOfRank[i];
+            idOfRank[i] = idOfRank[j];
+            idOfRank[j] = swap;
+        }
+    }
+
+    /**
+     * @return the next id.
+     */
+    int next() {
+        double draw = ThreadLocalRandom.current().nextDouble() * cumulative[cumulative.length - 1];
+        int rank = Arrays.binarySearch(cumulative, draw);
+        return idOfRank[Math.min(rank < 0 ? -rank - 1 : rank, idOfRank.length - 1)];
+    }
+
+    /**
+     * @return the share of draws that fall on the 'top' most popular ids.
+     */
+    double shareOfTop(int top) {
+        return cumulative[Math.min(top, cumulative.length) - 1] / cumulative[cumulative.length - 1];
+    }
+}
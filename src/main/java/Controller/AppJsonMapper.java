@@ -0,0 +1,156 @@
+package Controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import Model.Account;
+import Model.Message;
+import io.javalin.json.JsonMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The one JSON serializer of the API, registered as Javalin's JsonMapper so that ctx.json and ctx.bodyAsClass go
+ * through it. Jackson builds its serializers once per ObjectMapper, so creating a mapper per request threw that work
+ * away every time; here one mapper is configured at startup and the readers and writers for Account and Message are
+ * resolved from it up front.
+ *
+ * Messages, which make up the body of every listing endpoint, are written by hand with pre-encoded field names
+ * instead of going through Jackson's reflective bean serializer; the hand-written serializer is registered with the
+ * mapper, so Jackson still owns the output buffers and recycles them. streamMessages in the controller uses the same
+ * field writer, so both list forms produce the same JSON.
+ */
+public class AppJsonMapper implements JsonMapper {
+    private static final SerializedString MESSAGE_ID = new SerializedString("message_id");
+    private static final SerializedString POSTED_BY = new SerializedString("posted_by");
+    private static final SerializedString MESSAGE_TEXT = new SerializedString("message_text");
+    private static final SerializedString TIME_POSTED_EPOCH = new SerializedString("time_posted_epoch");
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new SimpleModule().addSerializer(Message.class, new MessageSerializer()));
+    private final JsonFactory factory = mapper.getFactory();
+    private final ObjectReader accountReader = mapper.readerFor(Account.class);
+    private final ObjectReader messageReader = mapper.readerFor(Message.class);
+    private final ObjectWriter accountWriter = mapper.writerFor(Account.class);
+    private final ObjectWriter messageWriter = mapper.writerFor(Message.class);
+    private final ObjectWriter messageListWriter =
+            mapper.writerFor(mapper.getTypeFactory().constructCollectionType(List.class, Message.class));
+
+    @Override
+    public String toJsonString(Object obj, Type type) {
+        try {
+            if (obj instanceof String) {
+                return (String) obj;
+            }
+            if (obj instanceof Message) {
+                return messageWriter.writeValueAsString(obj);
+            }
+            if (obj instanceof Account) {
+                return accountWriter.writeValueAsString(obj);
+            }
+            if (obj instanceof List && isMessageList((List<?>) obj)) {
+                return messageListWriter.writeValueAsString(obj);
+            }
+            return mapper.writeValueAsString(obj);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public InputStream toJsonStream(Object obj, Type type) {
+        return new ByteArrayInputStream(toJsonString(obj, type).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public <T> T fromJsonString(String json, Type targetType) {
+        try {
+            return reader(targetType).readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonStream(InputStream json, Type targetType) {
+        try {
+            return reader(targetType).readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return a generator that writes UTF-8 JSON to the stream, for responses written row by row.
+     * @throws IOException will be thrown if the generator cannot be created.
+     */
+    public JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return factory.createGenerator(out);
+    }
+
+    /**
+     * Writes one message as a JSON object with the same fields as Model.Message.
+     * @throws IOException will be thrown if the generator cannot write.
+     */
+    public static void writeMessage(JsonGenerator generator, int messageId, int postedBy, String messageText,
+                                    long timePostedEpoch) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(MESSAGE_ID);
+        generator.writeNumber(messageId);
+        generator.writeFieldName(POSTED_BY);
+        generator.writeNumber(postedBy);
+        generator.writeFieldName(MESSAGE_TEXT);
+        generator.writeString(messageText);
+        generator.writeFieldName(TIME_POSTED_EPOCH);
+        generator.writeNumber(timePostedEpoch);
+        generator.writeEndObject();
+    }
+
+    private static boolean isMessageList(List<?> list) {
+        for (Object element : list) {
+            if (!(element instanceof Message)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes Model.Message with writeMessage.
+     */
+    private static final class MessageSerializer extends StdSerializer<Message> {
+        MessageSerializer() {
+            super(Message.class);
+        }
+
+        @Override
+        public void serialize(Message message, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            writeMessage(generator, message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                    message.getTime_posted_epoch());
+        }
+    }
+
+    private ObjectReader reader(Type targetType) {
+        if (targetType == Account.class) {
+            return accountReader;
+        }
+        if (targetType == Message.class) {
+            return messageReader;
+        }
+        return mapper.readerFor(mapper.constructType(targetType));
+    }
+}
@@ -0,0 +1,257 @@
+package Controller;
+
+import Model.Message;
+import Service.MessageEvent;
+import Service.MessageEventLog;
+import io.javalin.http.sse.SseClient;
+import io.javalin.util.LoomUtil;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * The subscribers of GET /messages/stream, and the delivery of the MessageEventLog to them as Server-Sent Events.
+ *
+ * An idle subscriber is only its open connection and a small record here with its cursor into the log: no thread
+ * waits for it, so a node can hold tens of thousands. One dispatcher thread is woken by every publish. It walks the
+ * subscribers, reads the events after each one's cursor and, for a subscriber with events that pass its posted_by
+ * filter, hands the writing to a writer thread. Each subscriber has at most one write in progress; the events
+ * published while it runs are picked up by the next pass, so a slow client is sent larger batches instead of
+ * holding up the others. Writers are a fixed pool of stream.writerThreads (8) platform threads, or with
+ * server.virtualThreads a virtual thread per write, so that a client whose socket is full only ever blocks its own.
+ *
+ * A subscriber that falls behind by more than the log holds (stream.buffer.size events) is not waited for: it is sent
+ * a 'reset' event and continues from the newest event, and has to reload GET /messages for what it missed. The same
+ * happens to a client that reconnects with a Last-Event-ID that can no longer be resumed from. Subscribers that were
+ * sent nothing for stream.heartbeatSeconds (15, below Jetty's 30 second idle timeout) get a comment line, which keeps
+ * proxies from closing the connection and lets a subscriber that has gone away be noticed and dropped.
+ */
+public class MessageStream {
+    static final String RESET_EVENT = "reset";
+
+    private final MessageEventLog eventLog;
+    private final Function<Message, String> serializer;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService writers;
+    private final Thread dispatcher;
+    private final AtomicBoolean signalled = new AtomicBoolean();
+    private final long heartbeatNanos;
+    private volatile boolean stopped;
+
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+
+    /**
+     * Creates a stream sized by the stream.* system properties and starts its dispatcher.
+     * @param eventLog the log to deliver; the stream registers for its publishes.
+     * @param jsonMapper serializes the messages of the events.
+     */
+    public MessageStream(MessageEventLog eventLog, AppJsonMapper jsonMapper) {
+        this(eventLog, jsonMapper, Integer.getInteger("stream.writerThreads", 8),
+                Long.getLong("stream.heartbeatSeconds", 15L));
+    }
+
+    /**
+     * Creates a stream and starts its dispatcher.
+     * @param eventLog the log to deliver; the stream registers for its publishes.
+     * @param jsonMapper serializes the messages of the events.
+     * @param writerThreads size of the writer pool, unless writes run on virtual threads.
+     * @param heartbeatSeconds longest time a subscriber goes without being sent anything.
+     */
+    public MessageStream(MessageEventLog eventLog, AppJsonMapper jsonMapper, int writerThreads,
+                         long heartbeatSeconds) {
+        this.eventLog = eventLog;
+        Type messageType = Message.class;
+        this.serializer = message -> jsonMapper.toJsonString(message, messageType);
+        this.heartbeatNanos = TimeUnit.SECONDS.toNanos(heartbeatSeconds);
+        if (Boolean.getBoolean("server.virtualThreads") && LoomUtil.INSTANCE.getLoomAvailable()) {
+            this.writers = LoomUtil.INSTANCE.getExecutorService("message-stream-writer");
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.writers = Executors.newFixedThreadPool(writerThreads, runnable -> {
+                Thread thread = new Thread(runnable, "message-stream-writer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.dispatcher = new Thread(this::dispatch, "message-stream-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        eventLog.onPublish(this::signal);
+    }
+
+    /**
+     * Adds a subscriber and keeps its connection open until it closes. Without a Last-Event-ID it is sent the events
+     * published from now on; with one it is first sent the events after that id, or a 'reset' event if they are no
+     * longer kept.
+     * @param client the connection, whose headers have been sent.
+     * @param postedBy only send events of this account's messages, or null for all.
+     * @param lastEventId the id of the last event the client received, or null.
+     */
+    public void subscribe(SseClient client, Integer postedBy, String lastEventId) {
+        long last = eventLog.getLastSequence();
+        Subscriber subscriber = new Subscriber(client, postedBy);
+        if (lastEventId == null) {
+            subscriber.cursor = last;
+        } else {
+            long resumeFrom = eventLog.parseEventId(lastEventId);
+            subscriber.cursor = resumeFrom < 0 ? last : resumeFrom;
+            subscriber.resetPending = resumeFrom < 0;
+        }
+        client.onClose(() -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        client.keepAlive();
+        signal();
+    }
+
+    private void signal() {
+        if (!signalled.getAndSet(true)) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    private void dispatch() {
+        while (!stopped) {
+            if (!signalled.getAndSet(false)) {
+                LockSupport.parkNanos(this, heartbeatNanos / 4);
+                signalled.set(false);
+            }
+            long now = System.nanoTime();
+            long last = eventLog.getLastSequence();
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.writing.get()) {
+                    deliver(subscriber, last, now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a write of whatever the subscriber has not been sent yet, if anything.
+     */
+    private void deliver(Subscriber subscriber, long last, long now) {
+        boolean heartbeatDue = now - subscriber.lastWriteNanos >= heartbeatNanos;
+        if (subscriber.cursor == last && !subscriber.resetPending && !heartbeatDue) {
+            return;
+        }
+        List<MessageEvent> events = subscriber.cursor == last ? List.of() : eventLog.readAfter(subscriber.cursor);
+        boolean reset = subscriber.resetPending || events == null;
+        List<MessageEvent> toSend = new ArrayList<>();
+        if (reset) {
+            subscriber.cursor = last;
+        } else {
+            for (MessageEvent event : events) {
+                if (subscriber.postedBy == null || subscriber.postedBy == event.getMessage().getPosted_by()) {
+                    toSend.add(event);
+                }
+                subscriber.cursor = event.getSequence();
+            }
+        }
+        subscriber.resetPending = false;
+        if (!reset && toSend.isEmpty() && !heartbeatDue) {
+            return;
+        }
+        long resetAt = subscriber.cursor;
+        subscriber.writing.set(true);
+        try {
+            writers.execute(() -> write(subscriber, reset, resetAt, toSend));
+        } catch (RejectedExecutionException e) {
+            subscriber.writing.set(false);
+        }
+    }
+
+    private void write(Subscriber subscriber, boolean reset, long resetAt, List<MessageEvent> events) {
+        SseClient client = subscriber.client;
+        try {
+            if (reset) {
+                resets.increment();
+                client.sendEvent(RESET_EVENT, "events were missed, reload GET /messages", eventLog.eventId(resetAt));
+            }
+            for (MessageEvent event : events) {
+                client.sendEvent(event.getType().eventName(), event.getData(serializer),
+                        eventLog.eventId(event.getSequence()));
+            }
+            eventsSent.add(events.size());
+            if (!reset && events.isEmpty()) {
+                client.sendComment("heartbeat");
+            }
+        } catch (RuntimeException e) {
+            client.close();
+        } finally {
+            subscriber.lastWriteNanos = System.nanoTime();
+            subscriber.writing.set(false);
+            // events published while this write ran were skipped by the dispatcher
+            signal();
+        }
+    }
+
+    /**
+     * @return the number of open subscriptions.
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Appends the subscriber gauge and the delivery counters in Prometheus text format.
+     * @param out the exposition being written.
+     */
+    public void writeTo(StringBuilder out) {
+        sample(out, "message_stream_subscribers", "gauge", "Open GET /messages/stream connections.",
+                getSubscriberCount());
+        sample(out, "message_stream_events_published_total", "counter", "Message events published to the stream.",
+                eventLog.getLastSequence());
+        sample(out, "message_stream_events_sent_total", "counter", "Events written to subscribers.",
+                eventsSent.sum());
+        sample(out, "message_stream_resets_total", "counter",
+                "Subscribers sent a reset because they fell too far behind or resumed from an unknown event.",
+                resets.sum());
+    }
+
+    private static void sample(StringBuilder out, String name, String type, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Stops the dispatcher and closes every subscription.
+     */
+    public void shutdown() {
+        stopped = true;
+        LockSupport.unpark(dispatcher);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.client.close();
+        }
+        writers.shutdown();
+    }
+
+    private static class Subscriber {
+        final SseClient client;
+        final Integer postedBy;
+        final AtomicBoolean writing = new AtomicBoolean();
+        /**
+         * Sequence of the last event looked at; only touched by the dispatcher.
+         */
+        long cursor;
+        boolean resetPending;
+        volatile long lastWriteNanos = System.nanoTime();
+
+        Subscriber(SseClient client, Integer postedBy) {
+            this.client = client;
+            this.postedBy = postedBy;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package Controller;
+
+import Util.LatencyHistogram;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-route request metrics, recorded by a Javalin before/after handler pair: a request count per status code and a
+ * latency histogram for every method and route pattern (e.g. GET /messages/{message_id}), and a gauge of requests in
+ * flight. Routes are labelled by their pattern rather than the request path so that the number of series stays fixed.
+ * Requests to an excluded path, such as a long-lived stream whose connection time is no latency, are not recorded.
+ *
+ * Everything on the request path is lock-free: the series for a route is created once and then found with a
+ * ConcurrentHashMap read, and all counters are LongAdders.
+ */
+public class RequestMetrics {
+    private static final String START_ATTRIBUTE = "metrics.startNanos";
+    /**
+     * Route label of requests that matched no endpoint, so unknown paths cannot create new series.
+     */
+    static final String UNMATCHED = "unmatched";
+
+    private final Map<String, Map<String, RouteMetrics>> routesByMethod = new ConcurrentHashMap<>();
+    private final LongAdder inFlight = new LongAdder();
+    private final Set<String> excludedPaths = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Adds the before/after handlers that time every request of the app.
+     * @param app the Javalin app.
+     */
+    public void register(Javalin app) {
+        app.before(this::start);
+        app.after(this::finish);
+    }
+
+    /**
+     * Leaves the requests to a path out of every metric.
+     * @param path the request path, e.g. /messages/stream.
+     */
+    public void exclude(String path) {
+        excludedPaths.add(path);
+    }
+
+    private void start(Context ctx) {
+        if (excludedPaths.contains(ctx.path())) {
+            return;
+        }
+        inFlight.increment();
+        ctx.attribute(START_ATTRIBUTE, System.nanoTime());
+    }
+
+    private void finish(Context ctx) {
+        Long start = ctx.attribute(START_ATTRIBUTE);
+        if (start == null) {
+            return;
+        }
+        inFlight.decrement();
+        String route = ctx.endpointHandlerPath();
+        record(ctx.method().name(), route == null || route.isEmpty() ? UNMATCHED : route, ctx.statusCode(),
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Records one finished request.
+     * @param method the HTTP method.
+     * @param route the matched route pattern.
+     * @param status the response status code.
+     * @param nanos how long the request took.
+     */
+    public void record(String method, String route, int status, long nanos) {
+        Map<String, RouteMetrics> routes = routesByMethod.get(method);
+        if (routes == null) {
+            routes = routesByMethod.computeIfAbsent(method, key -> new ConcurrentHashMap<>());
+        }
+        RouteMetrics metrics = routes.get(route);
+        if (metrics == null) {
+            metrics = routes.computeIfAbsent(route, key -> new RouteMetrics());
+        }
+        metrics.latency.record(nanos);
+        metrics.count(status);
+    }
+
+    /**
+     * @return the number of requests currently being handled.
+     */
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * Appends all request metrics in Prometheus text format.
+     * @param out the exposition being written.
+     */
+    public void writeTo(StringBuilder out) {
+        out.append("# HELP http_server_requests_in_flight Requests currently being handled.\n");
+        out.append("# TYPE http_server_requests_in_flight gauge\n");
+        out.append("http_server_requests_in_flight ").append(getInFlight()).append('\n');
+
+        out.append("# HELP http_server_requests_total Finished requests by route and status code.\n");
+        out.append("# TYPE http_server_requests_total counter\n");
+        routesByMethod.forEach((method, routes) -> routes.forEach((route, metrics) -> {
+            for (int status = 0; status < metrics.statusCounts.length(); status++) {
+                LongAdder count = metrics.statusCounts.get(status);
+                if (count != null) {
+                    out.append("http_server_requests_total{").append(labels(method, route))
+                            .append(",status=\"").append(status).append("\"} ").append(count.sum()).append('\n');
+                }
+            }
+        }));
+
+        out.append("# HELP http_server_request_duration_seconds Request latency by route.\n");
+        out.append("# TYPE http_server_request_duration_seconds histogram\n");
+        routesByMethod.forEach((method, routes) -> routes.forEach((route, metrics) ->
+                metrics.latency.writeTo(out, "http_server_request_duration_seconds", labels(method, route))));
+    }
+
+    private static String labels(String method, String route) {
+        return "method=\"" + method + "\",route=\"" + route.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * The series of one method and route.
+     */
+    private static final class RouteMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        /**
+         * Request counts indexed by status code, created on the first request with that status.
+         */
+        final AtomicReferenceArray<LongAdder> statusCounts = new AtomicReferenceArray<>(600);
+
+        void count(int status) {
+            int index = status >= 0 && status < statusCounts.length() ? status : 0;
+            LongAdder count = statusCounts.get(index);
+            if (count == null) {
+                statusCounts.compareAndSet(index, null, new LongAdder());
+                count = statusCounts.get(index);
+            }
+            count.increment();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package Controller;
+
+import org.eclipse.jetty.server.LowResourceMonitor;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.javalin.util.LoomThreadPool;
+import io.javalin.util.LoomUtil;
+
+/**
+ * Builds the Jetty server that startAPI runs on, choosing the threads request handlers execute on. Every handler
+ * blocks on JDBC, so with the default bounded platform pool (server.maxThreads, 250) no more requests than that can be
+ * in the DAOs at once and the rest queue inside Jetty even while the CPU is idle. Starting with
+ * -Dserver.virtualThreads=true runs each request on its own virtual thread instead, so requests only wait where the
+ * work is actually limited, on the connection pool (db.pool.maxSize). Virtual threads need a Java 21 runtime; on an
+ * older one the option logs a warning and the platform pool is used.
+ *
+ * The choice is made here rather than left to Javalin, which silently switches to virtual threads whenever the
+ * runtime supports them; that would make the thread model depend on the JDK the server happens to run on.
+ */
+public class RequestThreads {
+    private static final Logger log = LoggerFactory.getLogger(RequestThreads.class);
+    static final String THREAD_POOL_NAME = "JettyServerThreadPool";
+
+    /**
+     * Creates a server configured like Javalin's default one, on the thread pool selected by the server.*
+     * system properties.
+     * @return a new, unstarted server.
+     */
+    public static Server newServer() {
+        Server server = new Server(newThreadPool(Boolean.getBoolean("server.virtualThreads")));
+        server.addBean(new LowResourceMonitor(server));
+        server.insertHandler(new StatisticsHandler());
+        return server;
+    }
+
+    /**
+     * @param virtual true to run each request on a new virtual thread.
+     * @return a virtual-thread pool if requested and the runtime supports it, otherwise a bounded platform pool.
+     */
+    static ThreadPool newThreadPool(boolean virtual) {
+        if (virtual) {
+            if (LoomUtil.INSTANCE.getLoomAvailable()) {
+                log.info("Running request handlers on virtual threads");
+                return new LoomThreadPool(THREAD_POOL_NAME);
+            }
+            log.warn("server.virtualThreads needs Java 21 or later, running on {}; using the platform thread pool",
+                    System.getProperty("java.version"));
+        }
+        QueuedThreadPool pool = new QueuedThreadPool(
+                Integer.getInteger("server.maxThreads", 250),
+                Integer.getInteger("server.minThreads", 8),
+                60_000);
+        pool.setName(THREAD_POOL_NAME);
+        return pool;
+    }
+
+    /**
+     * @param server a server created by {@link #newServer()}.
+     * @return true if its requests run on virtual threads.
+     */
+    public static boolean isVirtual(Server server) {
+        return server.getThreadPool() instanceof LoomThreadPool;
+    }
+}
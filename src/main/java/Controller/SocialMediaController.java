@@ -3,16 +3,52 @@ package Controller;
 //import org.eclipse.jetty.http.HttpTester.Message;
 //import org.h2.engine.User;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 
+import DAO.AccountDAO;
+import DAO.FollowDAO;
+import DAO.MessageCursor;
+import DAO.MessageDAO;
+import DAO.MessageGroupCommitter;
+import DAO.MessagePage;
+import DAO.MessageRowCursor;
+import DAO.ShardedMessageDAO;
 import Model.Account;
+import Model.Follow;
 import Model.Message;
+import Service.AccountIndex;
 import Service.AccountService;
+import Service.FeedService;
+import Service.FollowGraph;
+import Service.HomeTimelineCache;
+import Service.MessageEventLog;
+import Service.MessageReadModel;
+import Service.MessageSearchIndex;
 import Service.MessageService;
+import Service.PasswordHasher;
+import Service.SessionTokens;
+import Util.ConnectionUtil;
+import Util.DbExecutor;
+import Util.ForbiddenException;
+import Util.OverloadedException;
+import Util.PoolStats;
+import Util.MigrationRunner;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.UnauthorizedResponse;
+import io.javalin.http.sse.SseHandler;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -20,29 +56,127 @@ import java.util.List;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+    static final String SESSION_ACCOUNT = "session.account_id";
+
     AccountService accountService;
     MessageService messageService;
+    FeedService feedService;
+    AppJsonMapper jsonMapper = new AppJsonMapper();
+    RequestMetrics requestMetrics = new RequestMetrics();
+    DbExecutor dbExecutor;
+    DbExecutor authExecutor = PasswordHasher.newExecutor();
+    PasswordHasher passwordHasher = new PasswordHasher();
+    SessionTokens sessionTokens = new SessionTokens();
+    boolean authRequired = Boolean.getBoolean("auth.required");
+    MessageGroupCommitter groupCommitter;
+    ShardedMessageDAO shardedMessageDAO;
+    MessageReadModel readModel;
+    MessageEventLog eventLog = new MessageEventLog();
+    MessageStream messageStream;
 
     public SocialMediaController() {
-        this.accountService = new AccountService();
-        this.messageService = new MessageService();
+        this(new DbExecutor());
+    }
+
+    /**
+     * Applies any pending schema migrations before the in-memory indexes start warming up from the tables they add.
+     * @param dbExecutor runs the database work of the handlers; it is shut down when the server stops.
+     */
+    public SocialMediaController(DbExecutor dbExecutor) {
+        this.dbExecutor = dbExecutor;
+        MigrationRunner.migrate(ConnectionUtil.getDataSource());
+        AccountDAO accountDAO = new AccountDAO();
+        AccountIndex accountIndex = new AccountIndex();
+        accountIndex.warmUp(accountDAO);
+        this.accountService = new AccountService(accountDAO, accountIndex, passwordHasher);
+        int shards = Integer.getInteger("db.shards", 1);
+        MessageDAO messageDAO;
+        if (shards > 1) {
+            this.shardedMessageDAO = new ShardedMessageDAO(shards);
+            messageDAO = shardedMessageDAO;
+        } else {
+            messageDAO = new MessageDAO();
+        }
+        MessageSearchIndex searchIndex = new MessageSearchIndex();
+        searchIndex.warmUp(messageDAO);
+        this.messageService = new MessageService(messageDAO, accountIndex, searchIndex);
+        FollowDAO followDAO = new FollowDAO();
+        FollowGraph followGraph = new FollowGraph();
+        followGraph.warmUp(followDAO);
+        this.feedService = new FeedService(followDAO, messageDAO, messageService, followGraph,
+                new HomeTimelineCache());
+        messageService.addChangeListener(feedService);
+        if (Boolean.getBoolean("messages.groupCommit")) {
+            this.groupCommitter = new MessageGroupCommitter(messageDAO);
+            messageService.useGroupCommit(groupCommitter);
+        }
+        messageService.addChangeListener(eventLog);
+        if (Boolean.getBoolean("messages.readModel")) {
+            this.readModel = new MessageReadModel();
+            messageService.useReadModel(readModel);
+            readModel.warmUp(messageDAO);
+        }
     }
 
     /**
      * In order for the test cases to work, you will need to write the endpoints in the startAPI() method, as the test
-     * suite must receive a Javalin object from this method.
+     * suite must receive a Javalin object from this method. Schema migrations were applied by the constructor, and
+     * requests run on the threads chosen by {@link RequestThreads}. Handlers that use the database hand that work to
+     * the {@link DbExecutor} and respond when it completes; work it sheds is answered with 503 (Service Unavailable).
+     * Registrations and logins, which hash passwords, run on a separate executor (see {@link PasswordHasher}).
+     * Session tokens are checked before every handler, see {@link #authenticate(Context)}. With messages.groupCommit
+     * set, concurrently created messages share their transactions, see {@link MessageGroupCommitter}, and with
+     * messages.readModel set, GET /messages is answered from memory, see {@link MessageReadModel}. Changes to messages
+     * are pushed to the subscribers of GET /messages/stream, see {@link MessageStream}. With db.shards above 1,
+     * messages are spread over that many databases, see {@link ShardedMessageDAO}.
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(jsonMapper);
+            config.jetty.server(RequestThreads::newServer);
+        });
+        // stream connections stay open; they are counted by message_stream_subscribers instead
+        requestMetrics.exclude("/messages/stream");
+        requestMetrics.register(app);
+        app.exception(OverloadedException.class, (e, ctx) -> {
+            ctx.header("Retry-After", Integer.toString(e.getRetryAfterSeconds()));
+            ctx.status(503);
+            ctx.result(e.getMessage());
+        });
+        app.exception(ForbiddenException.class, (e, ctx) -> {
+            ctx.status(403);
+            ctx.result(e.getMessage());
+        });
+        app.before(this::authenticate);
+        messageStream = new MessageStream(eventLog, jsonMapper);
+        app.events(events -> events.serverStopped(() -> {
+            dbExecutor.shutdown();
+            authExecutor.shutdown();
+            if (groupCommitter != null) {
+                groupCommitter.shutdown();
+            }
+            if (shardedMessageDAO != null) {
+                shardedMessageDAO.shutdown();
+            }
+            messageStream.shutdown();
+        }));
         app.post("/register", this::postUserRegHandler);
         app.post("/login", this::postUserLoginHandler);
+        app.post("/logout", this::postLogoutHandler);
         app.post("/messages", this::postMsgCreatHandler);
+        app.post("/messages/batch", this::postMsgBatchHandler);
         app.get("/messages", this::getMsgsHandler);
+        app.get("/messages/search", this::searchMsgsHandler);
+        app.get("/messages/stream", this::streamMsgsHandler);
         app.get("/messages/{message_id}", this::getMsgByIdHandler);
         app.delete("/messages/{message_id}", this::deleteMsgByIdHandler);
         app.patch("/messages/{message_id}", this::patchMsgByIdHandler);
         app.get("/accounts/{account_id}/messages", this::getUserMsgsHandler);
+        app.post("/accounts/{account_id}/following/{followee_id}", this::postFollowHandler);
+        app.delete("/accounts/{account_id}/following/{followee_id}", this::deleteFollowHandler);
+        app.get("/accounts/{account_id}/feed", this::getFeedHandler);
+        app.get("/metrics", this::getMetricsHandler);
 
         return app;
     }
@@ -52,129 +186,633 @@ public class SocialMediaController {
      * Registration will be successful if username is not blank, password length is greater than
      * four, and the username is unique. Response status will be 200 if successful, otherwise 400 (Client error).
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
      */
-    private void postUserRegHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
-        Account registeredAccount = accountService.addAccount(account);
-        if(registeredAccount != null) {
-            ctx.json(mapper.writeValueAsString(registeredAccount));
-            ctx.status(200);
-        }else{
-            ctx.status(400);
-        }
+    private void postUserRegHandler(Context ctx) {
+        Account account = ctx.bodyAsClass(Account.class);
+        async(ctx, authExecutor, () -> accountService.addAccount(account), registeredAccount -> {
+            if(registeredAccount != null) {
+                ctx.json(registeredAccount);
+                ctx.status(200);
+            }else{
+                ctx.status(400);
+            }
+        });
     }
 
     /**
      * Handler to process User login.
      * Login will be successful if username and password match. Response status will be 200 if
-     * successful, otherwise 401 (Unauthorized).
+     * successful, with a session token for the account in the X-Session-Token header, otherwise 401 (Unauthorized).
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     */
+    private void postUserLoginHandler(Context ctx) {
+        Account account = ctx.bodyAsClass(Account.class);
+        async(ctx, authExecutor, () -> accountService.loginAccount(account), verifiedAccount -> {
+            if(verifiedAccount != null) {
+                ctx.header("X-Session-Token", sessionTokens.issue(verifiedAccount.getAccount_id()));
+                ctx.json(verifiedAccount);
+                ctx.status(200);
+            }else{
+                ctx.status(401);
+            }
+        });
+    }
+
+    /**
+     * Handler to log out. Revokes the session token the request carries, so it is refused from then on although it
+     * has not expired. Response status will be 200 if successful, otherwise 401 (Unauthorized) if the request has no
+     * valid session token.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     */
+    private void postLogoutHandler(Context ctx) {
+        if (ctx.attribute(SESSION_ACCOUNT) == null) {
+            throw new UnauthorizedResponse("a session token is required");
+        }
+        sessionTokens.revoke(bearerToken(ctx));
+        ctx.status(200);
+    }
+
+    /**
+     * Before-handler that checks the session token of a request carrying one in an 'Authorization: Bearer' header
+     * and records the token's account for the handlers. The check is done in memory by SessionTokens, without a
+     * database lookup. A request with a forged, expired or revoked token is answered with 401 (Unauthorized).
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     */
+    private void authenticate(Context ctx) {
+        String token = bearerToken(ctx);
+        if (token == null) {
+            return;
+        }
+        Integer accountId = sessionTokens.verify(token);
+        if (accountId == null) {
+            throw new UnauthorizedResponse("invalid or expired session token");
+        }
+        ctx.attribute(SESSION_ACCOUNT, accountId);
+    }
+
+    private static String bearerToken(Context ctx) {
+        String header = ctx.header("Authorization");
+        return header != null && header.startsWith("Bearer ") ? header.substring(7) : null;
+    }
+
+    /**
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     * @return the account of the request's session token, or null if it has none and auth.required is not set.
+     * @throws UnauthorizedResponse if the request has no session token and auth.required is set.
+     */
+    private Integer sessionAccount(Context ctx) {
+        Integer accountId = ctx.attribute(SESSION_ACCOUNT);
+        if (accountId == null && authRequired) {
+            throw new UnauthorizedResponse("a session token is required");
+        }
+        return accountId;
+    }
+
+    /**
+     * Checks that the request may act for the account in its path: with a session token, only as the token's account.
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @param accountId the account in the request path.
+     * @throws UnauthorizedResponse if the request has no session token and auth.required is set.
+     * @throws ForbiddenException if the session token belongs to another account.
      */
-    private void postUserLoginHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
-        Account verifiedAccount = accountService.loginAccount(account);
-        if(verifiedAccount != null) {
-            ctx.json(mapper.writeValueAsString(verifiedAccount));
-            ctx.status(200);
-        }else{
-            ctx.status(401);
+    private void checkSessionAccount(Context ctx, int accountId) {
+        Integer sessionAccountId = sessionAccount(ctx);
+        if (sessionAccountId != null && sessionAccountId != accountId) {
+            throw new ForbiddenException("account " + accountId + " is not the account of the session");
         }
     }
 
     /**
      * Handler to process new message creation.
      * Creation of a message will be successful if message is not blank and less than 255 characters, and
-     * the user posting exists. Response status will be 200 if successful, otherwise 400 (Client error).
-     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
-     */
-    private void postMsgCreatHandler(Context ctx) throws JsonProcessingException{
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(), Message.class);
-        Message createdMessage = messageService.addMessage(message);
-        if(createdMessage != null) {
-            ctx.json(mapper.writeValueAsString(createdMessage));
-            ctx.status(200);
-        }else{
+     * the user posting exists. With a session token the message is posted by the token's account, whatever
+     * posted_by says. Response status will be 200 if successful, otherwise 400 (Client error).
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     */
+    private void postMsgCreatHandler(Context ctx) {
+        Message message = ctx.bodyAsClass(Message.class);
+        Integer accountId = sessionAccount(ctx);
+        if (accountId != null) {
+            message.setPosted_by(accountId);
+        }
+        async(ctx, () -> messageService.addMessage(message), createdMessage -> {
+            if(createdMessage != null) {
+                ctx.json(createdMessage);
+                ctx.status(200);
+            }else{
+                ctx.status(400);
+            }
+        });
+    }
+
+    /**
+     * Handler to create many messages in one request. The body is a list of messages, each validated like in
+     * postMsgCreatHandler; the response lists the generated ids in request order (null where a message was not
+     * created) and an error for each of those. With a session token every message is posted by the token's
+     * account. Response status will be 400 (Client error) if the body is null, or the list is empty or longer than
+     * the maximum batch size.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     */
+    private void postMsgBatchHandler(Context ctx) {
+        Message[] messages = ctx.bodyAsClass(Message[].class);
+        if (messages == null) {
+            ctx.status(400);
+            ctx.result("a batch must be a list of messages");
+            return;
+        }
+        Integer accountId = sessionAccount(ctx);
+        if (accountId != null) {
+            for (Message message : messages) {
+                // null items are reported as errors by addMessages
+                if (message != null) {
+                    message.setPosted_by(accountId);
+                }
+            }
+        }
+        async(ctx, () -> messageService.addMessages(Arrays.asList(messages)), ctx::json);
+    }
+
+    /**
+     * Handler to retrieve all messages, one page at a time.
+     * Accepts 'limit', 'order' (id or time) and an 'after' or 'before' cursor; the response body is a list of
+     * messages and the cursors for neighbouring pages are returned in the X-Next-Cursor, X-Prev-Cursor and Link
+     * headers. Clients that need the whole table in one response can opt in with 'all=true', which streams it.
+     * Responses carry an ETag; a poll that sends it back in If-None-Match gets 304 (Not Modified) until a message is
+     * written.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     * @throws SQLException will be thrown if the streaming query cannot be started.
+     * @throws IOException will be thrown if the streamed response cannot be written.
+     */
+    private void getMsgsHandler(Context ctx) throws SQLException, IOException {
+        String etag = messageService.getMessagesEtag(null);
+        if (notModified(ctx, etag)) {
+            return;
+        }
+        if (Boolean.parseBoolean(ctx.queryParam("all"))) {
+            ctx.header("ETag", etag);
+            streamMessages(ctx, null);
+        } else {
+            respondWithPage(ctx, null, etag);
+        }
+    }
+
+    /**
+     * Handler to follow the changes to messages as Server-Sent Events: a 'created', 'updated' or 'deleted' event with
+     * the message as data is sent for every change from the time of the request on, optionally only for the messages
+     * of the account in 'posted_by'. A client that reconnects with the Last-Event-ID header, as EventSource does, is
+     * first sent the events it missed, or a 'reset' event if they are no longer kept; after a reset it should reload
+     * GET /messages. Response status will be 400 (Client error) if 'posted_by' is not a number and 406 (Not
+     * Acceptable) if the request has an Accept header none of whose media ranges matches text/event-stream.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     */
+    private void streamMsgsHandler(Context ctx) {
+        Integer postedBy;
+        try {
+            String postedByParam = ctx.queryParam("posted_by");
+            postedBy = postedByParam == null ? null : Integer.valueOf(postedByParam);
+        } catch (NumberFormatException e) {
             ctx.status(400);
+            ctx.result(e.getMessage());
+            return;
+        }
+        if (!acceptsEventStream(ctx.header("Accept"))) {
+            ctx.status(406);
+            ctx.result("GET /messages/stream needs Accept: text/event-stream");
+            return;
+        }
+        String lastEventId = ctx.header("Last-Event-ID");
+        new SseHandler(client -> messageStream.subscribe(client, postedBy, lastEventId)).handle(ctx);
+    }
+
+    /**
+     * @param accept the request's Accept header, or null.
+     * @return true if there is no Accept header, or the most specific of its media ranges that matches
+     * text/event-stream (text/event-stream itself, then text/*, then the range of all types) has a non-zero quality.
+     */
+    private static boolean acceptsEventStream(String accept) {
+        if (accept == null) {
+            return true;
+        }
+        int bestSpecificity = 0;
+        boolean bestRefused = true;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String type = parts[0].trim().toLowerCase(Locale.ROOT);
+            int specificity = type.equals("text/event-stream") ? 3
+                    : type.equals("text/*") ? 2
+                    : type.equals("*/*") ? 1 : 0;
+            if (specificity <= bestSpecificity) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim().toLowerCase(Locale.ROOT);
+                if (param.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            bestSpecificity = specificity;
+            bestRefused = refused;
         }
+        return !bestRefused;
     }
 
     /**
-     * Handler to retrieve all messages.
+     * Handler to search messages by the words in their text.
+     * Accepts 'q', the words that must all appear (a word ending in '*' matches any word starting with it), 'limit'
+     * and an 'after' cursor. Matching messages are listed newest first, with the cursor of the next page in the
+     * X-Next-Cursor and Link headers. Response status will be 400 (Client error) if 'q' has no words or a parameter
+     * is malformed, and 503 (Service Unavailable) while the search index is still loading.
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
      */
-    private void getMsgsHandler(Context ctx) {
-        List<Message> messages = messageService.getAllMessages();
-        ctx.json(messages);
+    private void searchMsgsHandler(Context ctx) {
+        String q = ctx.queryParam("q");
+        String limit = ctx.queryParam("limit");
+        MessageCursor after;
+        Integer pageSize;
+        try {
+            after = ctx.queryParam("after") == null ? null : MessageCursor.decode(ctx.queryParam("after"));
+            pageSize = limit == null ? null : Integer.valueOf(limit);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            ctx.result(e.getMessage());
+            return;
+        }
+        String params = q == null ? "" : "q=" + URLEncoder.encode(q, StandardCharsets.UTF_8) + "&";
+        async(ctx, () -> messageService.searchMessages(q, after, pageSize),
+                page -> writePage(ctx, page, params + (limit == null ? "" : "limit=" + limit + "&")));
     }
 
     /**
      * Handler to retrieve message by id.
+     * Responses carry an ETag, answered with 304 (Not Modified) in the same way as for GET /messages.
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
      */
     private void getMsgByIdHandler(Context ctx) {
         int id = Integer.parseInt(ctx.pathParam("message_id"));
-        Message message = messageService.getMessageByID(id);
-        if(message != null) {
-            ctx.json(message);
-        }
-        else{
-            ctx.status(200);
-            ctx.result("");
+        String etag = messageService.getMessageEtag(id);
+        if (notModified(ctx, etag)) {
+            return;
         }
+        async(ctx, () -> messageService.getMessageByID(id), message -> {
+            ctx.header("ETag", etag);
+            if(message != null) {
+                ctx.json(message);
+            }
+            else{
+                ctx.status(200);
+                ctx.result("");
+            }
+        });
     }
 
     /**
      * Handler to delete message by id.
+     * With a session token, response status will be 403 (Forbidden) if the message was posted by another account.
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
      */
     private void deleteMsgByIdHandler(Context ctx) {
         int id = Integer.parseInt(ctx.pathParam("message_id"));
-        Message message = messageService.deleteMessageByID(id);
-        if(message != null) {
-            ctx.json(message);
-        }
-        else{
-            ctx.status(200);
-            ctx.result("");
-        }
+        Integer accountId = sessionAccount(ctx);
+        async(ctx, () -> accountId == null ? messageService.deleteMessageByID(id)
+                : messageService.deleteMessageByID(id, accountId), message -> {
+            if(message != null) {
+                ctx.json(message);
+            }
+            else{
+                ctx.status(200);
+                ctx.result("");
+            }
+        });
     }
 
     /**
      * Handler to update a message by id.
+     * With a session token, response status will be 403 (Forbidden) if the message was posted by another account.
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
      */
-    private void patchMsgByIdHandler(Context ctx) throws JsonProcessingException{
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(), Message.class);
+    private void patchMsgByIdHandler(Context ctx) {
+        Message message = ctx.bodyAsClass(Message.class);
         int id = Integer.parseInt(ctx.pathParam("message_id"));
         message.setMessage_id(id);
-        Message updatedMessage = messageService.updateMessageByID(message);
-        if(updatedMessage != null) {
-            ctx.json(updatedMessage);
-            ctx.status(200);
-        }else{
-            ctx.status(400);
+        Integer accountId = sessionAccount(ctx);
+        async(ctx, () -> accountId == null ? messageService.updateMessageByID(message)
+                : messageService.updateMessageByID(message, accountId), updatedMessage -> {
+            if(updatedMessage != null) {
+                ctx.json(updatedMessage);
+                ctx.status(200);
+            }else{
+                ctx.status(400);
+            }
+        });
+    }
+
+    /**
+     * Handler to get all messages by a given user id, paged the same way as GET /messages. The ETag only changes
+     * when a message of this user is written.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     * @throws SQLException will be thrown if the streaming query cannot be started.
+     * @throws IOException will be thrown if the streamed response cannot be written.
+     */
+    private void getUserMsgsHandler(Context ctx) throws SQLException, IOException {
+        int accountID = Integer.parseInt(ctx.pathParam("account_id"));
+        String etag = messageService.getMessagesEtag(accountID);
+        if (notModified(ctx, etag)) {
+            return;
+        }
+        if (Boolean.parseBoolean(ctx.queryParam("all"))) {
+            ctx.header("ETag", etag);
+            streamMessages(ctx, accountID);
+        } else {
+            respondWithPage(ctx, accountID, etag);
         }
     }
 
     /**
-     * Handler to get all messages by a given user id.
+     * Handler to make one account follow another. Following an account that is already followed succeeds again.
+     * Response status will be 200 with the follow if successful, otherwise 400 (Client error) if either account does
+     * not exist or an account tries to follow itself. With a session token, response status will be 403 (Forbidden)
+     * if the follower is another account.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     */
+    private void postFollowHandler(Context ctx) {
+        int follower = Integer.parseInt(ctx.pathParam("account_id"));
+        int followee = Integer.parseInt(ctx.pathParam("followee_id"));
+        checkSessionAccount(ctx, follower);
+        async(ctx, () -> feedService.follow(follower, followee), follow -> {
+            if(follow != null) {
+                ctx.json(follow);
+                ctx.status(200);
+            }else{
+                ctx.status(400);
+            }
+        });
+    }
+
+    /**
+     * Handler to make one account stop following another. Responds with the removed follow, or an empty body if
+     * there was none. With a session token, response status will be 403 (Forbidden) if the follower is another
+     * account.
      * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
      */
-    private void getUserMsgsHandler(Context ctx) {
+    private void deleteFollowHandler(Context ctx) {
+        int follower = Integer.parseInt(ctx.pathParam("account_id"));
+        int followee = Integer.parseInt(ctx.pathParam("followee_id"));
+        checkSessionAccount(ctx, follower);
+        async(ctx, () -> feedService.unfollow(follower, followee), follow -> {
+            if(follow != null) {
+                ctx.json(follow);
+            }
+            else{
+                ctx.status(200);
+                ctx.result("");
+            }
+        });
+    }
+
+    /**
+     * Handler to get the home timeline of an account: the messages of every account it follows, newest first.
+     * Accepts 'limit' and an 'after' cursor, with the cursor of the next page in the X-Next-Cursor and Link headers.
+     * Response status will be 400 (Client error) if a parameter is malformed, and with a session token 403 (Forbidden)
+     * if the feed is another account's.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     */
+    private void getFeedHandler(Context ctx) {
         int accountID = Integer.parseInt(ctx.pathParam("account_id"));
-        List<Message> messages = messageService.getAllMessagesByUser(accountID);
-        if (!messages.isEmpty()) {
-            ctx.json(messages);
-        } else { 
-            ctx.json(messages);
-            ctx.status(200);
+        checkSessionAccount(ctx, accountID);
+        String limit = ctx.queryParam("limit");
+        MessageCursor after;
+        Integer pageSize;
+        try {
+            after = ctx.queryParam("after") == null ? null : MessageCursor.decode(ctx.queryParam("after"));
+            pageSize = limit == null ? null : Integer.valueOf(limit);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            ctx.result(e.getMessage());
+            return;
+        }
+        async(ctx, () -> feedService.getFeed(accountID, after, pageSize),
+                page -> writePage(ctx, page, limit == null ? "" : "limit=" + limit + "&"));
+    }
+
+    /**
+     * Responds with one page of messages selected by the 'limit', 'order', 'after' and 'before' query parameters.
+     * Response status will be 400 (Client error) if any of them is malformed.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     * @param postedBy the user whose messages are listed, or null for all messages.
+     * @param etag the ETag of the listing, read before the page.
+     */
+    private void respondWithPage(Context ctx, Integer postedBy, String etag) {
+        String limit = ctx.queryParam("limit");
+        MessageCursor.Order order;
+        MessageCursor after;
+        MessageCursor before;
+        Integer pageSize;
+        try {
+            String orderParam = ctx.queryParam("order");
+            order = orderParam == null ? MessageCursor.Order.ID : MessageCursor.Order.valueOf(orderParam.toUpperCase());
+            after = ctx.queryParam("after") == null ? null : MessageCursor.decode(ctx.queryParam("after"));
+            before = ctx.queryParam("before") == null ? null : MessageCursor.decode(ctx.queryParam("before"));
+            pageSize = limit == null ? null : Integer.valueOf(limit);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            ctx.result(e.getMessage());
+            return;
+        }
+        Consumer<MessagePage> respond = page -> {
+            ctx.header("ETag", etag);
+            writePage(ctx, page, limit == null ? "" : "limit=" + limit + "&");
+        };
+        if (messageService.isPageInMemory(postedBy, order, after, before)) {
+            // nothing to wait for, so the page is written on the request thread instead of the DB executor's
+            MessagePage page;
+            try {
+                page = messageService.getMessagesPage(postedBy, order, after, before, pageSize);
+            } catch (IllegalArgumentException e) {
+                ctx.status(400);
+                ctx.result(e.getMessage());
+                return;
+            }
+            respond.accept(page);
+            return;
+        }
+        async(ctx, () -> messageService.getMessagesPage(postedBy, order, after, before, pageSize), respond);
+    }
+
+    /**
+     * Answers a conditional GET whose If-None-Match header lists the current ETag of the resource with 304 (Not
+     * Modified) and no body, so the handler can return without reading or serializing anything.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     * @param etag the current ETag, read before the resource would be.
+     * @return true if the response is 304.
+     */
+    private static boolean notModified(Context ctx, String etag) {
+        String ifNoneMatch = ctx.header("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String candidate = tag.trim();
+            // GET compares weakly, so a W/ prefix added by a proxy still matches
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                ctx.header("ETag", etag);
+                ctx.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes a page of messages with its cursor headers.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     * @param page the page to write.
+     * @param params the query parameters repeated in the Link header, each followed by '&'.
+     */
+    private void writePage(Context ctx, MessagePage page, String params) {
+        List<String> links = new ArrayList<>();
+        if (page.getNext() != null) {
+            String cursor = page.getNext().encode();
+            ctx.header("X-Next-Cursor", cursor);
+            links.add("<" + ctx.path() + "?" + params + "after=" + cursor + ">; rel=\"next\"");
+        }
+        if (page.getPrev() != null) {
+            String cursor = page.getPrev().encode();
+            ctx.header("X-Prev-Cursor", cursor);
+            links.add("<" + ctx.path() + "?" + params + "before=" + cursor + ">; rel=\"prev\"");
+        }
+        if (!links.isEmpty()) {
+            ctx.header("Link", String.join(", ", links));
+        }
+        ctx.json(page.getMessages());
+    }
+
+    /**
+     * Runs the database work of a request on the DB executor and responds with its result once it completes, leaving
+     * the Jetty thread free in the meantime. An IllegalArgumentException from the work is a client error and answered
+     * with 400 and its message; any other failure, including an OverloadedException, goes to the exception mappers.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     * @param work the service call, run on a DB executor thread.
+     * @param respond writes the response from the result of the work.
+     */
+    private <T> void async(Context ctx, Supplier<T> work, Consumer<T> respond) {
+        async(ctx, dbExecutor, work, respond);
+    }
+
+    /**
+     * Like async(ctx, work, respond), on the given executor.
+     */
+    private <T> void async(Context ctx, DbExecutor executor, Supplier<T> work, Consumer<T> respond) {
+        ctx.future(() -> executor.submit(work).handle((result, error) -> {
+            if (error == null) {
+                respond.accept(result);
+                return null;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            if (cause instanceof IllegalArgumentException) {
+                ctx.status(400);
+                ctx.result(cause.getMessage());
+                return null;
+            }
+            throw cause instanceof CompletionException ? (CompletionException) cause : new CompletionException(cause);
+        }));
+    }
+
+    /**
+     * Writes messages straight from a database cursor to the response as a JSON list, one row at a time, so memory
+     * use stays flat no matter how many rows are listed. This runs on the request thread rather than the DB
+     * executor, since it writes to the client for as long as the cursor is open and a slow client would otherwise
+     * hold an executor thread.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     * @param postedBy the user whose messages are listed, or null for all messages.
+     * @throws SQLException will be thrown if the streaming query cannot be started.
+     * @throws IOException will be thrown if the response cannot be written.
+     */
+    private void streamMessages(Context ctx, Integer postedBy) throws SQLException, IOException {
+        ctx.contentType("application/json");
+        try (MessageRowCursor cursor = messageService.streamMessages(postedBy);
+             JsonGenerator generator = jsonMapper.createGenerator(ctx.outputStream())) {
+            generator.writeStartArray();
+            while (cursor.next()) {
+                AppJsonMapper.writeMessage(generator, cursor.getMessageId(), cursor.getPostedBy(),
+                        cursor.getMessageText(), cursor.getTimePostedEpoch());
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Handler to expose the request metrics, connection pool gauges, DB and auth executor queue metrics, password
+     * hashing durations, group commit counters (when enabled), message shard pool gauges (when sharded), message
+     * stream counters, statement timings
+     * (when the query instrumentation is enabled), feed fan-out counters and cache counters in Prometheus text format.
+     * @param ctx the context object handles information HTTP requests and generates responses within Javalin.
+     */
+    private void getMetricsHandler(Context ctx) {
+        StringBuilder out = new StringBuilder(8192);
+        requestMetrics.writeTo(out);
+
+        PoolStats pool = ConnectionUtil.getPoolStats();
+        sample(out, "db_pool_connections_active", "gauge", "Connections borrowed from the pool.", pool.getActive());
+        sample(out, "db_pool_connections_idle", "gauge", "Idle connections in the pool.", pool.getIdle());
+        sample(out, "db_pool_threads_waiting", "gauge", "Threads waiting for a connection.", pool.getWaiting());
+        sample(out, "db_pool_acquires_total", "counter", "Connections handed out.", pool.getAcquireCount());
+        sample(out, "db_pool_acquire_timeouts_total", "counter", "Acquires that timed out.",
+                pool.getAcquireTimeouts());
+        sample(out, "db_pool_leaks_detected_total", "counter", "Connections held past the leak threshold.",
+                pool.getLeaksDetected());
+        sample(out, "db_pool_acquire_seconds_mean", "gauge", "Mean time to acquire a connection.",
+                pool.getMeanAcquireMicros() / 1e6);
+        sample(out, "db_pool_acquire_seconds_max", "gauge", "Longest time to acquire a connection.",
+                pool.getMaxAcquireMicros() / 1e6);
+
+        dbExecutor.writeTo(out);
+        authExecutor.writeTo(out);
+        passwordHasher.writeTo(out);
+        ConnectionUtil.getQueryInstrumentation().writeTo(out);
+        if (groupCommitter != null) {
+            groupCommitter.writeTo(out);
+        }
+        if (shardedMessageDAO != null) {
+            shardedMessageDAO.writeTo(out);
         }
+        messageStream.writeTo(out);
+
+        sample(out, "feed_fanout_messages_total", "counter", "New messages pushed to their author's followers.",
+                feedService.getMessagesFannedOut());
+        sample(out, "feed_fanout_writes_total", "counter", "Feed buffers new messages were pushed into.",
+                feedService.getFanoutWrites());
+        sample(out, "feed_merged_on_read_messages_total", "counter",
+                "New messages left to feed reads because their author has too many followers.",
+                feedService.getMessagesNotFannedOut());
+
+        writeCacheStats(out, "message", messageService.getMessageCacheStats());
+        writeCacheStats(out, "timeline", messageService.getTimelineCacheStats());
+        writeCacheStats(out, "home_timeline", feedService.getHomeTimelineStats());
+
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+        ctx.result(out.toString());
+    }
+
+    private static void writeCacheStats(StringBuilder out, String cache, CacheStats stats) {
+        String prefix = "cache_" + cache;
+        sample(out, prefix + "_hits_total", "counter", "Lookups served from the " + cache + " cache.",
+                stats.hitCount());
+        sample(out, prefix + "_misses_total", "counter", "Lookups that loaded from the database.", stats.missCount());
+        sample(out, prefix + "_evictions_total", "counter", "Entries evicted by size or age.", stats.evictionCount());
+    }
+
+    private static void sample(StringBuilder out, String name, String type, String help, double value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(value).append('\n');
     }
-}
\ No newline at end of file
+}
@@ -8,53 +8,58 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.function.IntConsumer;
 
 public class AccountDAO {
+    /**
+     * SQLState of a unique constraint violation.
+     */
+    static final String DUPLICATE_KEY_STATE = "23505";
+
     /**
      * Inserts a new account into the 'account' table.
-     * @return newly created account.
+     * @return newly created account, or null if the username is already taken.
      */
     public Account registerAccount(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "INSERT INTO account (username, password) VALUES (?, ?);";
-
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            
+        String sql = "INSERT INTO account (username, password) VALUES (?, ?);";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             preparedStatement.setString(1, account.getUsername());
             preparedStatement.setString(2, account.getPassword());
-            
+
             preparedStatement.executeUpdate();
-            ResultSet pkResultSet = preparedStatement.getGeneratedKeys();
-            if(pkResultSet.next()) {
-                int generatedAccountID = pkResultSet.getInt(1);
-                return new Account(generatedAccountID, account.getUsername(), account.getPassword());
+            try (ResultSet pkResultSet = preparedStatement.getGeneratedKeys()) {
+                if(pkResultSet.next()) {
+                    int generatedAccountID = pkResultSet.getInt(1);
+                    return new Account(generatedAccountID, account.getUsername(), account.getPassword());
+                }
             }
         } catch(SQLException e) {
-            System.out.println(e.getMessage());
+            // a duplicate username is an expected outcome, reported by the unique constraint
+            if (!DUPLICATE_KEY_STATE.equals(e.getSQLState())) {
+                System.out.println(e.getMessage());
+            }
         }
         return null;
     }
 
     /**
-     * Retrieve an account if login is successful (username and password are correct).
-     * @return account that successfully loged in.
+     * Retrieves an account with its stored password, which login checks; passwords are hashed, so the check cannot be
+     * part of the query.
+     * @return the account, or null if there is no account with that username.
      */
-    public Account loginAccount(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "SELECT * FROM account WHERE username=? AND password=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
-            preparedStatement.setString(1, account.getUsername());
-            preparedStatement.setString(2, account.getPassword());
+    public Account getAccountByUsername(String username) {
+        String sql = "SELECT * FROM account WHERE username=?;";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setString(1, username);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()) {
-                Account logAccount = new Account(rs.getInt("account_id"),
-                                rs.getString("username"),
-                                rs.getString("password"));
-                return logAccount;
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    return new Account(rs.getInt("account_id"),
+                                    rs.getString("username"),
+                                    rs.getString("password"));
+                }
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
@@ -62,23 +67,64 @@ public class AccountDAO {
         return null;
     }
 
+    /**
+     * Replaces an account's stored password, provided it is still the expected one, so that of two logins rehashing
+     * the same password only the first one writes.
+     * @return true if the password was replaced.
+     */
+    public boolean updatePassword(int accountId, String expected, String password) {
+        String sql = "UPDATE account SET password=? WHERE account_id=? AND password=?;";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setString(1, password);
+            preparedStatement.setInt(2, accountId);
+            preparedStatement.setString(3, expected);
+
+            return preparedStatement.executeUpdate() == 1;
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
     /**
      * Finds the given username in the 'account' table.
      * @return true if the account exists, false otherwise.
      */
     public boolean findAccount(String username) {
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "SELECT * FROM account WHERE username=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
+        String sql = "SELECT * FROM account WHERE username=?;";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setString(1, username);
 
-            ResultSet rs = preparedStatement.executeQuery();
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    return true;
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
 
-            while(rs.next()) {
-                return true;
+    /**
+     * Passes every 'account_id' in the 'account' table to the consumer, reading them in batches instead of
+     * building a list, so it can be used for tables with millions of accounts.
+     * @param consumer receives each account_id.
+     * @return true if every id was read, false if the query failed.
+     */
+    public boolean forEachAccountId(IntConsumer consumer) {
+        String sql = "SELECT account_id FROM account;";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setFetchSize(10_000);
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    consumer.accept(rs.getInt(1));
+                }
             }
+            return true;
         }catch(SQLException e){
             System.out.println(e.getMessage());
         }
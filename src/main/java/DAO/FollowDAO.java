@@ -0,0 +1,115 @@
+package DAO;
+
+import Util.ConnectionUtil;
+import Model.Follow;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+public class FollowDAO {
+    /**
+     * SQLState of a foreign key violation, when either account does not exist.
+     */
+    static final String MISSING_PARENT_STATE = "23506";
+
+    /**
+     * Inserts a row into the 'follow' table. Following an account that is already followed changes nothing.
+     * @param follower the account that follows.
+     * @param followee the account to follow.
+     * @return the follow, or null if either account does not exist.
+     */
+    public Follow follow(int follower, int followee) {
+        String sql = "MERGE INTO follow (follower_id, followee_id) KEY (follower_id, followee_id) VALUES (?, ?);";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, follower);
+            preparedStatement.setInt(2, followee);
+
+            preparedStatement.executeUpdate();
+            return new Follow(follower, followee);
+        }catch(SQLException e){
+            // a missing account is an expected outcome, reported by the foreign key
+            if (!MISSING_PARENT_STATE.equals(e.getSQLState())) {
+                System.out.println(e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Deletes a row from the 'follow' table.
+     * @param follower the account that follows.
+     * @param followee the account followed.
+     * @return the deleted follow, or null if there was none.
+     */
+    public Follow unfollow(int follower, int followee) {
+        String sql = "DELETE FROM follow WHERE follower_id = ? AND followee_id = ?;";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, follower);
+            preparedStatement.setInt(2, followee);
+
+            if (preparedStatement.executeUpdate() > 0) {
+                return new Follow(follower, followee);
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the accounts an account follows.
+     * @param follower the account that follows.
+     * @return the followed account_ids in ascending order, or null if the query failed.
+     */
+    public int[] getFollowees(int follower) {
+        String sql = "SELECT followee_id FROM follow WHERE follower_id = ? ORDER BY followee_id;";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, follower);
+
+            int[] followees = new int[16];
+            int count = 0;
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    if (count == followees.length) {
+                        followees = Arrays.copyOf(followees, count * 2);
+                    }
+                    followees[count++] = rs.getInt(1);
+                }
+            }
+            return Arrays.copyOf(followees, count);
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Passes every row of the 'follow' table to the consumer as (follower_id, followee_id), reading them in batches
+     * instead of building a list, so it can be used for graphs with millions of edges.
+     * @param consumer receives each follower_id and followee_id.
+     * @return true if every row was read, false if the query failed.
+     */
+    public boolean forEachFollow(BiConsumer<Integer, Integer> consumer) {
+        String sql = "SELECT follower_id, followee_id FROM follow;";
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setFetchSize(10_000);
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    consumer.accept(rs.getInt(1), rs.getInt(2));
+                }
+            }
+            return true;
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,96 @@
+package DAO;
+
+import java.sql.SQLException;
+import java.util.PriorityQueue;
+
+/**
+ * A MessageRowCursor over the cursors of several shards, each in message_id order, that yields their rows merged into
+ * one message_id order. It only ever holds the current row of each shard, so a merged listing streams with the same
+ * constant memory as one shard's. Closing it closes every shard's cursor.
+ */
+class MergedMessageRowCursor extends MessageRowCursor {
+    private final MessageRowCursor[] cursors;
+    private final int[] heads;
+    private final PriorityQueue<Integer> queue;
+    private MessageRowCursor current;
+    private int currentIndex = -1;
+    private boolean started;
+
+    /**
+     * @param cursors the cursors to merge, positioned before their first rows; owned by this cursor from now on.
+     */
+    MergedMessageRowCursor(MessageRowCursor[] cursors) {
+        super(null, null, null);
+        this.cursors = cursors;
+        this.heads = new int[cursors.length];
+        this.queue = new PriorityQueue<>(Math.max(1, cursors.length), (a, b) -> Integer.compare(heads[a], heads[b]));
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        if (!started) {
+            for (int i = 0; i < cursors.length; i++) {
+                advance(i);
+            }
+            started = true;
+        } else if (currentIndex >= 0) {
+            advance(currentIndex);
+        }
+        Integer index = queue.poll();
+        currentIndex = index == null ? -1 : index;
+        current = index == null ? null : cursors[index];
+        return index != null;
+    }
+
+    /**
+     * Moves one shard's cursor to its next row and queues it by that row's message_id, unless it has no more rows.
+     */
+    private void advance(int index) throws SQLException {
+        if (cursors[index].next()) {
+            heads[index] = cursors[index].getMessageId();
+            queue.add(index);
+        }
+    }
+
+    @Override
+    public int getMessageId() throws SQLException {
+        return current.getMessageId();
+    }
+
+    @Override
+    public int getPostedBy() throws SQLException {
+        return current.getPostedBy();
+    }
+
+    @Override
+    public String getMessageText() throws SQLException {
+        return current.getMessageText();
+    }
+
+    @Override
+    public long getTimePostedEpoch() throws SQLException {
+        return current.getTimePostedEpoch();
+    }
+
+    /**
+     * Closes every shard's cursor, even if closing one of them fails.
+     */
+    @Override
+    public void close() throws SQLException {
+        SQLException failure = null;
+        for (MessageRowCursor cursor : cursors) {
+            try {
+                cursor.close();
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package DAO;
+
+import Model.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * An opaque position in an ordered message listing. A cursor remembers the sort key of the message it was taken from,
+ * so the next page can be fetched with a keyset query ("rows after this key") instead of an OFFSET, which keeps the
+ * cost of page N the same as page 1. Clients only ever see the encoded form.
+ */
+public class MessageCursor {
+    /**
+     * The orders a listing can be paged in. Both end on message_id so every row has a unique position.
+     */
+    public enum Order {
+        /** By message_id, which is also insertion order. */
+        ID,
+        /** By time_posted_epoch, ties broken by message_id. */
+        TIME
+    }
+
+    private final Order order;
+    private final long timePostedEpoch;
+    private final int messageId;
+
+    public MessageCursor(Order order, long timePostedEpoch, int messageId) {
+        this.order = order;
+        this.timePostedEpoch = timePostedEpoch;
+        this.messageId = messageId;
+    }
+
+    /**
+     * Creates a cursor positioned on the given message.
+     * @param order the order of the listing the message came from.
+     * @param message the message to position the cursor on.
+     * @return a cursor at that message.
+     */
+    public static MessageCursor at(Order order, Message message) {
+        return new MessageCursor(order, message.getTime_posted_epoch(), message.getMessage_id());
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public long getTimePostedEpoch() {
+        return timePostedEpoch;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * @return the opaque, URL-safe form of this cursor.
+     */
+    public String encode() {
+        String raw = order == Order.TIME ? "t:" + timePostedEpoch + ":" + messageId : "i:" + messageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a cursor previously returned by {@link #encode()}.
+     * @param encoded the opaque cursor string.
+     * @return the decoded cursor.
+     * @throws IllegalArgumentException if the string is not a valid cursor.
+     */
+    public static MessageCursor decode(String encoded) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length == 2 && parts[0].equals("i")) {
+                return new MessageCursor(Order.ID, 0, Integer.parseInt(parts[1]));
+            }
+            if (parts.length == 3 && parts[0].equals("t")) {
+                return new MessageCursor(Order.TIME, Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+            }
+        } catch (IllegalArgumentException e) {
+            // fall through to the error below; NumberFormatException is an IllegalArgumentException too
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + encoded);
+    }
+}
@@ -9,30 +9,108 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
 
 
 public class MessageDAO {
+    /**
+     * Rows fetched per round trip when streaming a listing through a MessageRowCursor.
+     */
+    static int STREAM_FETCH_SIZE = 1000;
+    /**
+     * Query behind getAllMessagesByUser, served by an index leading with posted_by.
+     */
+    public static final String MESSAGES_BY_USER_SQL = "SELECT * FROM message WHERE posted_by=?;";
+    /**
+     * Query behind getMessagesByAuthors, which looks each author up in the same index.
+     */
+    public static final String MESSAGES_BY_AUTHORS_SQL = "SELECT * FROM message WHERE posted_by = ANY(?) "
+            + "AND message_id < ? ORDER BY message_id DESC LIMIT ?;";
+
+    private final DataSource dataSource;
+
+    /**
+     * Creates a DAO over the application database of ConnectionUtil.
+     */
+    public MessageDAO() {
+        this(ConnectionUtil.getDataSource());
+    }
+
+    /**
+     * Creates a DAO over another database with a 'message' table, such as one shard of a ShardedMessageDAO.
+     * @param dataSource the pool connections are borrowed from.
+     */
+    public MessageDAO(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
     /**
      *  Inserts a new message into the 'message' table.
      *  @return message that was created.
      */
     public Message createMessage(Message message) {
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?);";
-
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?);";
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             preparedStatement.setInt(1, message.getPosted_by());
             preparedStatement.setString(2, message.getMessage_text());
             preparedStatement.setLong(3, message.getTime_posted_epoch());
 
             preparedStatement.executeUpdate();
-            ResultSet pkResultSet = preparedStatement.getGeneratedKeys();
-            if(pkResultSet.next()) {
-                int generatedMsgID = (int) pkResultSet.getLong(1);
-                return new Message(generatedMsgID, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+            try (ResultSet pkResultSet = preparedStatement.getGeneratedKeys()) {
+                if(pkResultSet.next()) {
+                    int generatedMsgID = (int) pkResultSet.getLong(1);
+                    return new Message(generatedMsgID, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Inserts several messages into the 'message' table with one JDBC batch in a single transaction: either every
+     * message is inserted or, if any insert fails, none is.
+     * @param messages the messages to insert.
+     * @return the created messages with their generated ids, in the order given, or null if the batch failed.
+     */
+    public List<Message> createMessages(List<Message> messages) {
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?);";
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            connection.setAutoCommit(false);
+            try {
+                for (Message message : messages) {
+                    preparedStatement.setInt(1, message.getPosted_by());
+                    preparedStatement.setString(2, message.getMessage_text());
+                    preparedStatement.setLong(3, message.getTime_posted_epoch());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+
+                List<Message> created = new ArrayList<>(messages.size());
+                try (ResultSet pkResultSet = preparedStatement.getGeneratedKeys()) {
+                    for (Message message : messages) {
+                        if (!pkResultSet.next()) {
+                            throw new SQLException("Missing generated key for batch insert");
+                        }
+                        created.add(new Message((int) pkResultSet.getLong(1), message.getPosted_by(),
+                                message.getMessage_text(), message.getTime_posted_epoch()));
+                    }
+                }
+                connection.commit();
+                return created;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
@@ -45,19 +123,13 @@ public class MessageDAO {
      * @return all messages.
      */
     public List<Message> getAllMessages() {
-        Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
-        try{
-            String sql = "SELECT * FROM message;";
-
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            
-            ResultSet rs = preparedStatement.executeQuery();
+        String sql = "SELECT * FROM message;";
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql);
+             ResultSet rs = preparedStatement.executeQuery()) {
             while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"), 
-                        rs.getInt("time_posted_epoch"));
+                Message message = toMessage(rs);
                 messages.add(message);
             }
         }catch(SQLException e){
@@ -66,96 +138,217 @@ public class MessageDAO {
         return messages;
     }
 
+    /**
+     * Retrieve one page of messages ordered by message_id or time_posted_epoch, optionally restricted to a single
+     * 'posted_by' user. Pages are fetched with a keyset condition on the sort key instead of an OFFSET, so every page
+     * costs the same no matter how deep into the listing it is.
+     * @param postedBy the user to list messages for, or null for all messages.
+     * @param order the listing order, used when no cursor is given (a cursor carries its own order).
+     * @param after return the messages following this cursor, or null.
+     * @param before return the messages preceding this cursor, or null. Ignored when 'after' is given.
+     * @param limit maximum number of messages on the page.
+     * @return the page along with the cursors of its neighbouring pages.
+     */
+    public MessagePage getMessagesPage(Integer postedBy, MessageCursor.Order order, MessageCursor after,
+                                       MessageCursor before, int limit) {
+        MessageCursor cursor = after != null ? after : before;
+        boolean backwards = after == null && before != null;
+        if (cursor != null) {
+            order = cursor.getOrder();
+        }
+        // One extra row tells us whether another page exists without a COUNT query.
+        List<Message> messages = fetchPage(postedBy, order, cursor, backwards, limit + 1);
+        return MessagePage.of(messages, limit, order, after != null, backwards);
+    }
+
+    /**
+     * Runs the keyset query of getMessagesPage.
+     * @param postedBy the user to list messages for, or null for all messages.
+     * @param order the listing order.
+     * @param cursor the cursor the rows follow or precede, or null for the first page.
+     * @param backwards whether the rows precede the cursor.
+     * @param rows maximum number of rows.
+     * @return the rows in fetch order, which is descending for backwards pages; empty if the query failed.
+     */
+    List<Message> fetchPage(Integer postedBy, MessageCursor.Order order, MessageCursor cursor, boolean backwards,
+                            int rows) {
+        boolean byTime = order == MessageCursor.Order.TIME;
+        String sql = pageQuery(postedBy != null, order, cursor != null, backwards);
+
+        List<Message> messages = new ArrayList<>();
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            int index = 1;
+            if (postedBy != null) {
+                preparedStatement.setInt(index++, postedBy);
+            }
+            if (cursor != null && byTime) {
+                preparedStatement.setLong(index++, cursor.getTimePostedEpoch());
+                preparedStatement.setLong(index++, cursor.getTimePostedEpoch());
+            }
+            if (cursor != null) {
+                preparedStatement.setInt(index++, cursor.getMessageId());
+            }
+            preparedStatement.setInt(index, rows);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    messages.add(toMessage(rs));
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return messages;
+    }
+
+    /**
+     * Builds the keyset query used by getMessagesPage. Parameters are bound in order: posted_by (if filtered), the
+     * cursor's time_posted_epoch twice (if ordered by time), the cursor's message_id, and the row limit.
+     * @param byUser whether the listing is restricted to one 'posted_by' user.
+     * @param order the listing order.
+     * @param hasCursor whether the page starts from a cursor.
+     * @param backwards whether the page precedes the cursor rather than follows it.
+     * @return the SQL text of the page query.
+     */
+    public static String pageQuery(boolean byUser, MessageCursor.Order order, boolean hasCursor, boolean backwards) {
+        boolean byTime = order == MessageCursor.Order.TIME;
+        List<String> conditions = new ArrayList<>();
+        if (byUser) {
+            conditions.add("posted_by=?");
+        }
+        if (hasCursor) {
+            String cmp = backwards ? "<" : ">";
+            // The leading range term lets H2 seek in the (time_posted_epoch, message_id) index.
+            conditions.add(byTime
+                    ? "time_posted_epoch " + cmp + "= ? AND (time_posted_epoch " + cmp + " ? OR message_id " + cmp + " ?)"
+                    : "message_id " + cmp + " ?");
+        }
+        String direction = backwards ? " DESC" : "";
+        return "SELECT * FROM message"
+                + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                + " ORDER BY " + (byTime ? "time_posted_epoch" + direction + ", " : "") + "message_id" + direction
+                + " LIMIT ?;";
+    }
+
+    /**
+     * Opens a cursor over all messages, or only those posted by the given user, in message_id order. The session
+     * is switched to H2's lazy query execution and given a fetch size, so rows are produced as the caller reads them
+     * instead of being materialized up front.
+     * @param postedBy the value of 'posted_by', or null for all messages.
+     * @return a cursor positioned before the first row, which the caller must close.
+     * @throws SQLException if the query could not be started.
+     */
+    public MessageRowCursor streamMessages(Integer postedBy) throws SQLException {
+        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message"
+                + (postedBy != null ? " WHERE posted_by=?" : "") + " ORDER BY message_id;";
+        Connection connection = ConnectionUtil.getConnection(dataSource);
+        PreparedStatement preparedStatement = null;
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            }
+            preparedStatement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+            if (postedBy != null) {
+                preparedStatement.setInt(1, postedBy);
+            }
+            return new MessageRowCursor(connection, preparedStatement, preparedStatement.executeQuery());
+        } catch (SQLException e) {
+            try (connection; Statement statement = connection.createStatement()) {
+                if (preparedStatement != null) {
+                    preparedStatement.close();
+                }
+                statement.execute("SET LAZY_QUERY_EXECUTION FALSE");
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
     /**
      * Retrieve a message from the 'message' table given its id.
      * @return message matching id.
      * */
     public Message getMessageByID(int id) {
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "SELECT * FROM message WHERE message_id=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
+        String sql = "SELECT * FROM message WHERE message_id=?;";
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setInt(1, id);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()) {
-                Message message = new Message(rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"), 
-                        rs.getInt("time_posted_epoch"));
-                return message;
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    Message message = toMessage(rs);
+                    return message;
+                }
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
         }
         return null;
     }
-    
+
     /**
-     * Delete a message from the 'message' table given its id.
-     * @return the number of deleted messages (1 if successful, 0 otherwise).
+     * Delete a message from the 'message' table given its id. The deleted row is read back from H2's OLD TABLE delta
+     * table, so finding and deleting the message is a single atomic statement.
+     * @return the deleted message, or null if there was no message with that id.
      */
-    public int deleteMessageByID (int id){
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "DELETE FROM message WHERE message_id=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
+    public Message deleteMessageByID (int id){
+        String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id=?);";
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setInt(1, id);
 
-            int res = preparedStatement.executeUpdate();
-
-            return res;
-
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if (rs.next()) {
+                    return toMessage(rs);
+                }
+            }
         }catch(SQLException e){
             System.out.println(e.getMessage());
         }
-        return 0;
+        return null;
     }
 
     /**
-     * Update a message from the 'message' table given its id.
-     * @return the number of updated statements.
+     * Update the text of a message in the 'message' table given its id. The updated row is read back from H2's FINAL
+     * TABLE delta table, so the update and the read of the other columns are a single atomic statement.
+     * @return the updated message, or null if there was no message with that id.
      */
-    public int updateMessageByID (Message message) {
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "UPDATE message SET message_text=? WHERE message_id=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
-            preparedStatement.setString(1, message.getMessage_text());  
+    public Message updateMessageByID (Message message) {
+        String sql = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text=? WHERE message_id=?);";
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setString(1, message.getMessage_text());
             preparedStatement.setInt(2, message.getMessage_id());
 
-            int res = preparedStatement.executeUpdate();
-            return res;
-
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if (rs.next()) {
+                    return toMessage(rs);
+                }
+            }
         }catch(SQLException e) {
             System.out.println(e.getMessage());
         }
-        return 0;
+        return null;
     }
 
     /**
-     * Retrieve all messages from 'message' table given by the posted_by user id. 
+     * Retrieve all messages from 'message' table given by the posted_by user id.
      * @return a list containing all messages by the selected user.
      */
     public List<Message> getAllMessagesByUser (int user) {
-        Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
-        try{
-            String sql = "SELECT * FROM message WHERE posted_by=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(MESSAGES_BY_USER_SQL)) {
             preparedStatement.setInt(1, user);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"), 
-                        rs.getInt("time_posted_epoch"));
-                messages.add(message);
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    Message message = toMessage(rs);
+                    messages.add(message);
+                }
             }
 
         }catch(SQLException e){
@@ -170,21 +363,205 @@ public class MessageDAO {
      * @return true if the account exists
      */
     public boolean confirmMessageAccount (int posted_by) {
-        Connection connection = ConnectionUtil.getConnection();
-        try{
-            String sql = "SELECT * FROM account WHERE account_id=?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
+        String sql = "SELECT * FROM account WHERE account_id=?";
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setInt(1, posted_by);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    return true;
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+
+        }
+        return false;
+    }
+
+    /**
+     * Looks up several posted_by values with a single query.
+     * @param accountIds the account ids to check.
+     * @return the ids that exist in the 'account' table, or null if the query failed.
+     */
+    public Set<Integer> findExistingAccounts(Collection<Integer> accountIds) {
+        String sql = "SELECT account_id FROM account WHERE account_id = ANY(?);";
+        Set<Integer> existing = new HashSet<>();
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setObject(1, accountIds.toArray(new Integer[0]));
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    existing.add(rs.getInt(1));
+                }
+            }
+            return existing;
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves several messages by id with a single query.
+     * @param ids the message_ids to read.
+     * @return the messages that exist, by message_id, or null if the query failed.
+     */
+    public Map<Integer, Message> getMessagesByIds(int[] ids) {
+        String sql = "SELECT * FROM message WHERE message_id = ANY(?);";
+        Integer[] boxed = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            boxed[i] = ids[i];
+        }
+        Map<Integer, Message> messages = new HashMap<>();
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setObject(1, boxed);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    Message message = toMessage(rs);
+                    messages.put(message.getMessage_id(), message);
+                }
+            }
+            return messages;
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the newest messages posted by any of several accounts, for merging home timelines.
+     * @param authors the 'posted_by' accounts.
+     * @param beforeId only return messages with a lower message_id.
+     * @param limit maximum number of messages.
+     * @return the messages, newest (highest message_id) first, or null if the query failed.
+     */
+    public List<Message> getMessagesByAuthors(int[] authors, int beforeId, int limit) {
+        Integer[] boxed = new Integer[authors.length];
+        for (int i = 0; i < authors.length; i++) {
+            boxed[i] = authors[i];
+        }
+        List<Message> messages = new ArrayList<>();
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(MESSAGES_BY_AUTHORS_SQL)) {
+            preparedStatement.setObject(1, boxed);
+            preparedStatement.setInt(2, beforeId);
+            preparedStatement.setInt(3, limit);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    messages.add(toMessage(rs));
+                }
+            }
+            return messages;
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Inserts messages that already have their message_id, as a ShardedMessageDAO allocates them, in a single
+     * transaction.
+     * @param messages the messages to insert.
+     * @return true if every message was inserted, false if none was.
+     */
+    boolean insertMessages(List<Message> messages) {
+        return writeMessages("INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) "
+                + "VALUES (?, ?, ?, ?);", messages);
+    }
+
+    /**
+     * Inserts messages with their message_id, or overwrites the rows that already have it, in a single transaction.
+     * Copying the same messages twice leaves one copy, so a move between shards that was interrupted can be rerun.
+     * @param messages the messages to copy.
+     * @return true if every message was written, false if none was.
+     */
+    boolean copyMessages(List<Message> messages) {
+        return writeMessages("MERGE INTO message (message_id, posted_by, message_text, time_posted_epoch) "
+                + "KEY (message_id) VALUES (?, ?, ?, ?);", messages);
+    }
+
+    private boolean writeMessages(String sql, List<Message> messages) {
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            connection.setAutoCommit(false);
+            try {
+                for (Message message : messages) {
+                    preparedStatement.setInt(1, message.getMessage_id());
+                    preparedStatement.setInt(2, message.getPosted_by());
+                    preparedStatement.setString(3, message.getMessage_text());
+                    preparedStatement.setLong(4, message.getTime_posted_epoch());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                connection.commit();
                 return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
-            
         }
         return false;
     }
+
+    /**
+     * Deletes several messages by id with a single statement.
+     * @param ids the message_ids to delete.
+     * @return true if the statement succeeded, whether or not every id existed.
+     */
+    boolean deleteMessagesByIds(Collection<Integer> ids) {
+        String sql = "DELETE FROM message WHERE message_id = ANY(?);";
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setObject(1, ids.toArray(new Integer[0]));
+            preparedStatement.executeUpdate();
+            return true;
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * @return the highest message_id in the table, or 0 if it is empty.
+     * @throws SQLException if the query failed.
+     */
+    int getMaxMessageId() throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(message_id), 0) FROM message;")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Moves the generator of message_id past the highest id in the table, so that createMessage does not hand out
+     * the ids of rows that were inserted with explicit ids.
+     * @throws SQLException if the statement failed.
+     */
+    void restartIdGenerator() throws SQLException {
+        int next = getMaxMessageId() + 1;
+        try (Connection connection = ConnectionUtil.getConnection(dataSource);
+             Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE message ALTER COLUMN message_id RESTART WITH " + next);
+        }
+    }
+
+    /**
+     * Maps the current row of a 'message' result set to a Message.
+     */
+    private static Message toMessage(ResultSet rs) throws SQLException {
+        return new Message(rs.getInt("message_id"),
+                rs.getInt("posted_by"),
+                rs.getString("message_text"),
+                rs.getLong("time_posted_epoch"));
+    }
 }
@@ -0,0 +1,259 @@
+package DAO;
+
+import Model.Message;
+import Util.Deadline;
+import Util.OverloadedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit for single message inserts. Instead of each request inserting its message in a transaction of its own,
+ * which makes the database commit, and write out its log, once per message, concurrent requests queue their messages
+ * here and one committer thread inserts whatever has queued up with {@link MessageDAO#createMessages(List)}, in one
+ * transaction. Each request gets its message back, with its generated message_id, only once that transaction has
+ * committed, so a created message is as durable as before.
+ *
+ * A batch holds at most 'maxBatch' messages (messages.groupCommit.maxBatch, 64 by default). After taking the first
+ * message of a batch the committer waits at most 'maxDelayMicros' (messages.groupCommit.maxDelayMicros, 0 by default)
+ * for more to arrive, which is the most latency grouping adds to a request; with 0 it never waits, and batches form
+ * only from the messages that queued while the previous commit ran. If a batch fails, its messages are inserted one
+ * by one, so that a message the database refuses does not fail the others it was grouped with. If inserting throws
+ * instead, every message of the batch fails with that exception and the committer goes on with the next batch.
+ *
+ * A request waits for its message no longer than its {@link Deadline}. If that passes while the message is still
+ * queued, it is taken out of the queue and the request fails with an OverloadedException, so a retry cannot duplicate
+ * it; once its batch has started, the request waits for the batch, whose statements run under the latest deadline of
+ * its messages.
+ *
+ * Grouping pays off where a commit waits for the disk. H2 as configured here does not sync on commit but writes its
+ * changes out in the background, so a commit is cheap and handing each insert to another thread costs more than it
+ * saves; GroupCommitBenchmark measures both. It is therefore only used when messages.groupCommit is set.
+ */
+public class MessageGroupCommitter {
+    private static final Pending STOP = new Pending(null, null);
+
+    private final MessageDAO messageDAO;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private volatile boolean stopped;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+
+    /**
+     * Creates a committer sized by the messages.groupCommit.* system properties and starts its thread.
+     * @param messageDAO inserts the batches.
+     */
+    public MessageGroupCommitter(MessageDAO messageDAO) {
+        this(messageDAO, Integer.getInteger("messages.groupCommit.maxBatch", 64),
+                Long.getLong("messages.groupCommit.maxDelayMicros", 0L));
+    }
+
+    /**
+     * Creates a committer and starts its thread.
+     * @param messageDAO inserts the batches.
+     * @param maxBatch maximum number of messages inserted in one transaction.
+     * @param maxDelayMicros longest time to wait for a batch to fill once it has a message.
+     */
+    public MessageGroupCommitter(MessageDAO messageDAO, int maxBatch, long maxDelayMicros) {
+        this.messageDAO = messageDAO;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.committer = new Thread(this::run, "message-group-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Inserts a message with the next group commit, waiting until that has committed. After shutdown the message is
+     * inserted by the calling thread.
+     * @param message the message to insert.
+     * @return the created message with its generated id, or null if it could not be inserted.
+     */
+    public Message createMessage(Message message) {
+        Pending pending = new Pending(message, Deadline.current());
+        if (stopped) {
+            return messageDAO.createMessage(message);
+        }
+        queue.add(pending);
+        // a message queued while the committer was stopping may have missed its last drain
+        if (stopped && queue.remove(pending)) {
+            return messageDAO.createMessage(message);
+        }
+        if (pending.deadline == null) {
+            return pending.created.join();
+        }
+        try {
+            return pending.created.get(Math.max(0, pending.deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (queue.remove(pending)) {
+                throw new OverloadedException("Request deadline passed while waiting for a group commit", 1);
+            }
+            return pending.created.join();
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return pending.created.join();
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - batch.size());
+                long fillBy = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatch && fillBy - System.nanoTime() > 0 && !batch.contains(STOP)) {
+                    Pending next = queue.poll(fillBy - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatch - batch.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopping = true;
+            }
+            stopping |= batch.remove(STOP);
+            commit(batch);
+        }
+        while (queue.drainTo(batch, maxBatch) > 0) {
+            commit(batch);
+        }
+    }
+
+    /**
+     * Inserts the batch under the latest deadline of its messages and completes its requests. Whatever the insert
+     * throws fails the requests not completed yet, rather than the committer thread.
+     * @param batch the messages to insert, emptied afterwards.
+     */
+    private void commit(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            Deadline deadline = latestDeadline(batch);
+            if (deadline == null) {
+                insert(batch);
+            } else {
+                deadline.run(() -> {
+                    insert(batch);
+                    return null;
+                });
+            }
+        } catch (Throwable t) {
+            for (Pending pending : batch) {
+                pending.created.completeExceptionally(t);
+            }
+        } finally {
+            batches.increment();
+            messages.add(batch.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * @return the deadline of the batch's message that has the most time left, or null if one of them has none.
+     */
+    private static Deadline latestDeadline(List<Pending> batch) {
+        Deadline latest = null;
+        for (Pending pending : batch) {
+            if (pending.deadline == null) {
+                return null;
+            }
+            if (latest == null || pending.deadline.remainingNanos() > latest.remainingNanos()) {
+                latest = pending.deadline;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Inserts the batch in one transaction, or one message at a time if that fails, and completes its requests.
+     */
+    private void insert(List<Pending> batch) {
+        List<Message> toCreate = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            toCreate.add(pending.message);
+        }
+        List<Message> created = batch.size() == 1 ? null : messageDAO.createMessages(toCreate);
+        if (created == null && batch.size() > 1) {
+            failedBatches.increment();
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            try {
+                pending.created.complete(created != null ? created.get(i) : messageDAO.createMessage(pending.message));
+            } catch (RuntimeException e) {
+                pending.created.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of transactions the committer has run, counting a failed batch once.
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return the number of messages the committer has handled.
+     */
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    /**
+     * Appends the group commit counters in Prometheus text format.
+     * @param out the exposition being written.
+     */
+    public void writeTo(StringBuilder out) {
+        sample(out, "message_group_commits_total", "Transactions run by the group committer.", getBatchCount());
+        sample(out, "message_group_commit_messages_total", "Messages inserted through the group committer.",
+                getMessageCount());
+        sample(out, "message_group_commit_failed_batches_total", "Batches retried one message at a time.",
+                failedBatches.sum());
+    }
+
+    private static void sample(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Stops the committer thread once it has committed every message queued so far.
+     */
+    public void shutdown() {
+        stopped = true;
+        // a marker rather than an interrupt, which would make H2 close its file if it came during a commit
+        queue.add(STOP);
+    }
+
+    private static class Pending {
+        final Message message;
+        final Deadline deadline;
+        final CompletableFuture<Message> created = new CompletableFuture<>();
+
+        Pending(Message message, Deadline deadline) {
+            this.message = message;
+            this.deadline = deadline;
+        }
+    }
+}
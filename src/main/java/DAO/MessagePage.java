@@ -0,0 +1,76 @@
+package DAO;
+
+import Model.Message;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated message listing, with the cursors needed to fetch its neighbours.
+ */
+public class MessagePage {
+    private final List<Message> messages;
+    private final MessageCursor next;
+    private final MessageCursor prev;
+
+    public MessagePage(List<Message> messages, MessageCursor next, MessageCursor prev) {
+        this.messages = messages;
+        this.next = next;
+        this.prev = prev;
+    }
+
+    /**
+     * Builds a page from the rows fetched for it, which are expected to be one more than the limit when another page
+     * exists beyond them, and in fetch order (reversed for backwards pages).
+     * @param fetched the fetched rows; trimmed and reordered in place.
+     * @param limit the page size.
+     * @param order the listing order, recorded in the returned cursors.
+     * @param hasAfter whether the page was fetched after a cursor.
+     * @param backwards whether the page was fetched before a cursor.
+     * @return the page with its next/prev cursors.
+     */
+    public static MessagePage of(List<Message> fetched, int limit, MessageCursor.Order order, boolean hasAfter,
+                                 boolean backwards) {
+        boolean hasMore = fetched.size() > limit;
+        if (hasMore) {
+            fetched.remove(fetched.size() - 1);
+        }
+        if (backwards) {
+            Collections.reverse(fetched);
+        }
+        MessageCursor next = null;
+        MessageCursor prev = null;
+        if (!fetched.isEmpty()) {
+            Message first = fetched.get(0);
+            Message last = fetched.get(fetched.size() - 1);
+            if (backwards || hasMore) {
+                next = MessageCursor.at(order, last);
+            }
+            if (backwards ? hasMore : hasAfter) {
+                prev = MessageCursor.at(order, first);
+            }
+        }
+        return new MessagePage(fetched, next, prev);
+    }
+
+    /**
+     * @return the messages on this page, in listing order.
+     */
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return the cursor to pass as 'after' for the following page, or null if this is the last page.
+     */
+    public MessageCursor getNext() {
+        return next;
+    }
+
+    /**
+     * @return the cursor to pass as 'before' for the preceding page, or null if this is the first page.
+     */
+    public MessageCursor getPrev() {
+        return prev;
+    }
+}
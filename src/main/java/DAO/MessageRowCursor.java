@@ -0,0 +1,79 @@
+package DAO;
+
+import Model.Message;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A forward-only cursor over rows of the 'message' table. Unlike the List-returning MessageDAO methods, it never holds
+ * more than the current row: callers read the columns of each row and move on, so a listing of any size can be
+ * written out with constant memory. The cursor owns its connection and must be closed, ideally with a
+ * try-with-resources block.
+ */
+public class MessageRowCursor implements AutoCloseable {
+    private final Connection connection;
+    private final PreparedStatement preparedStatement;
+    private final ResultSet rs;
+
+    MessageRowCursor(Connection connection, PreparedStatement preparedStatement, ResultSet rs) {
+        this.connection = connection;
+        this.preparedStatement = preparedStatement;
+        this.rs = rs;
+    }
+
+    /**
+     * Moves to the next row.
+     * @return false once there are no more rows.
+     */
+    public boolean next() throws SQLException {
+        return rs.next();
+    }
+
+    public int getMessageId() throws SQLException {
+        return rs.getInt(1);
+    }
+
+    public int getPostedBy() throws SQLException {
+        return rs.getInt(2);
+    }
+
+    public String getMessageText() throws SQLException {
+        return rs.getString(3);
+    }
+
+    public long getTimePostedEpoch() throws SQLException {
+        return rs.getLong(4);
+    }
+
+    /**
+     * Copies the current row into a Message, for callers that do want an object per row.
+     * @return the message at the current row.
+     */
+    public Message toMessage() throws SQLException {
+        return new Message(getMessageId(), getPostedBy(), getMessageText(), getTimePostedEpoch());
+    }
+
+    /**
+     * Closes the result set and statement, switches the session back to eager query execution and returns the
+     * connection to the pool.
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            try {
+                rs.close();
+            } finally {
+                preparedStatement.close();
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET LAZY_QUERY_EXECUTION FALSE");
+            }
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package DAO;
+
+import Util.ConnectionUtil;
+import Util.MigrationRunner;
+
+import java.sql.SQLException;
+
+/**
+ * Command line tool that moves messages between shards after db.shards was changed, see
+ * {@link ShardedMessageDAO#rebalance(int)}. Run it with the application stopped, the new count as db.shards, the old
+ * one as rebalance.fromShards, and the same db.url and db.shards.url as the application, e.g. to go from 2 shards to 4:
+ *
+ * java -Ddb.shards=4 -Drebalance.fromShards=2 -cp target/classes:... DAO.ShardRebalancer
+ *
+ * Switching sharding on over an existing table is a rebalance from 1 shard, and switching it off one to 1 shard.
+ */
+public class ShardRebalancer {
+    public static void main(String[] args) throws SQLException {
+        int shards = Integer.getInteger("db.shards", 1);
+        int fromShards = Integer.getInteger("rebalance.fromShards", 1);
+        MigrationRunner.migrate(ConnectionUtil.getDataSource());
+        ShardedMessageDAO messageDAO = new ShardedMessageDAO(shards);
+        try {
+            long start = System.nanoTime();
+            long moved = messageDAO.rebalance(fromShards);
+            System.out.printf("moved %d messages from %d to %d shards in %.1f s%n", moved, fromShards, shards,
+                    (System.nanoTime() - start) / 1e9);
+        } finally {
+            messageDAO.shutdown();
+        }
+    }
+}
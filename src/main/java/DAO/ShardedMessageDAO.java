@@ -0,0 +1,635 @@
+package DAO;
+
+import Model.Message;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.Deadline;
+
+import org.h2.tools.RunScript;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * A MessageDAO that spreads the 'message' table over several H2 databases, so that writes to different accounts do not
+ * contend for one database file and no file holds every message. Used when db.shards is above 1. Shard 0 is the main
+ * database of ConnectionUtil, which also keeps every other table and answers the account lookups; shards 1 and up are
+ * opened from the db.shards.url pattern ("jdbc:h2:./h2/shard%d;") with a pool each, sized like the main one.
+ *
+ * An account's messages all live on one shard: posted_by is hashed to one of BUCKETS buckets and bucket b lives on
+ * shard b % db.shards, so the per-account queries go to exactly that shard. Listings of all messages are run on every
+ * shard in parallel and merged by their sort key, a k-way merge of sorted runs of at most one page each. Message ids
+ * are assigned here rather than by the databases: blocks of ID_BLOCK values are reserved from the message_id_block
+ * sequence of the main database, and a message's id is a value times BUCKETS plus its bucket. Ids stay unique across
+ * shards and through restarts, and the shard of a message is known from its id alone, so the lookups by id go to one
+ * shard too; only ids from before sharding was switched on can be elsewhere, and are looked for on the other shards
+ * when the expected one does not have them.
+ *
+ * Changing db.shards moves buckets between shards, which {@link #rebalance(int)} does with the application stopped;
+ * switching sharding on over an existing table is a rebalance from 1 shard. The id space is the 31 bits of an int, so
+ * with 16 buckets it holds about 134 million messages.
+ */
+public class ShardedMessageDAO extends MessageDAO {
+    /**
+     * Number of hash buckets accounts are spread over, and so the largest usable shard count.
+     */
+    public static final int BUCKETS = 16;
+    /**
+     * Ids reserved per round trip to the message_id_block sequence.
+     */
+    static final int ID_BLOCK = 1000;
+    /**
+     * Messages read, copied and deleted per step of a rebalance.
+     */
+    static final int REBALANCE_BATCH = 1000;
+    private static final String SHARD_SCHEMA = "db/shard/message.sql";
+
+    private final String shardUrl;
+    private final MessageDAO[] shards;
+    private final ConnectionPool[] pools;
+    private final int[] allShards;
+    private final ExecutorService scatterExecutor;
+
+    private final ReentrantLock idLock = new ReentrantLock();
+    private long nextIdValue;
+    private long idBlockEnd;
+    private boolean idFloorChecked;
+
+    /**
+     * Opens the db.shards shards at db.shards.url, with db.shards.scatterThreads (4 per shard) threads for running
+     * queries on several shards at once.
+     * @param shardCount the number of shards, from 1 to BUCKETS.
+     */
+    public ShardedMessageDAO(int shardCount) {
+        this(shardCount, System.getProperty("db.shards.url", "jdbc:h2:./h2/shard%d;"),
+                Integer.getInteger("db.shards.scatterThreads", 4 * shardCount));
+    }
+
+    /**
+     * Opens the shards, creating the 'message' table of any that does not have it yet.
+     * @param shardCount the number of shards, from 1 to BUCKETS.
+     * @param shardUrl JDBC url of shard i >= 1 with %d in place of i.
+     * @param scatterThreads threads for running queries on several shards at once.
+     * @throws IllegalArgumentException if the shard count is out of range.
+     * @throws IllegalStateException if a shard could not be opened.
+     */
+    public ShardedMessageDAO(int shardCount, String shardUrl, int scatterThreads) {
+        if (shardCount < 1 || shardCount > BUCKETS) {
+            throw new IllegalArgumentException("db.shards must be between 1 and " + BUCKETS);
+        }
+        this.shardUrl = shardUrl;
+        this.shards = new MessageDAO[shardCount];
+        this.pools = new ConnectionPool[shardCount];
+        this.allShards = new int[shardCount];
+        shards[0] = new MessageDAO();
+        for (int i = 1; i < shardCount; i++) {
+            pools[i] = openShard(i);
+            shards[i] = new MessageDAO(pools[i]);
+        }
+        for (int i = 0; i < shardCount; i++) {
+            allShards[i] = i;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scatterExecutor = Executors.newFixedThreadPool(Math.max(1, scatterThreads), runnable -> {
+            Thread thread = new Thread(runnable, "message-shard-scatter-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private ConnectionPool openShard(int index) {
+        ConnectionPool pool = ConnectionUtil.openPool(String.format(shardUrl, index));
+        try (Connection connection = pool.getConnection();
+             InputStream in = ShardedMessageDAO.class.getClassLoader().getResourceAsStream(SHARD_SCHEMA);
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            RunScript.execute(connection, reader);
+        } catch (SQLException | IOException e) {
+            pool.close();
+            throw new IllegalStateException("Could not open message shard " + index + ": " + e.getMessage(), e);
+        }
+        return pool;
+    }
+
+    /**
+     * @param postedBy an account id.
+     * @return the bucket of the account's messages.
+     */
+    static int bucketOf(int postedBy) {
+        int hash = postedBy * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (BUCKETS - 1);
+    }
+
+    /**
+     * @param postedBy an account id.
+     * @return the shard holding the account's messages.
+     */
+    public int shardOfAccount(int postedBy) {
+        return bucketOf(postedBy) % shards.length;
+    }
+
+    /**
+     * @param messageId a message id assigned by this DAO.
+     * @return the shard holding the message.
+     */
+    public int shardOfMessage(int messageId) {
+        return (messageId & (BUCKETS - 1)) % shards.length;
+    }
+
+    /**
+     * @return the number of shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Runs a query on each of the given shards, the first on the calling thread and the others on the scatter threads.
+     * The queries on the scatter threads run inside the calling thread's {@link Deadline}, if it has one.
+     * @return the results in the order of the shards.
+     */
+    private <T> List<T> scatter(int[] shardIndexes, IntFunction<T> query) {
+        List<CompletableFuture<T>> futures = submit(shardIndexes, query);
+        List<T> results = new ArrayList<>(shardIndexes.length);
+        results.add(query.apply(shardIndexes[0]));
+        for (CompletableFuture<T> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * Starts the query on every shard but the first on the scatter threads, inside the calling thread's deadline.
+     * @return the futures of shards 1 and up of 'shardIndexes', in order.
+     */
+    private <T> List<CompletableFuture<T>> submit(int[] shardIndexes, IntFunction<T> query) {
+        Deadline deadline = Deadline.current();
+        List<CompletableFuture<T>> futures = new ArrayList<>(shardIndexes.length);
+        for (int i = 1; i < shardIndexes.length; i++) {
+            int shard = shardIndexes[i];
+            Supplier<T> task = () -> query.apply(shard);
+            futures.add(CompletableFuture.supplyAsync(deadline == null ? task : () -> deadline.run(task),
+                    scatterExecutor));
+        }
+        return futures;
+    }
+
+    /**
+     * Merges runs that are each sorted by the comparator.
+     * @param runs the sorted runs.
+     * @param comparator the order of the runs and of the result.
+     * @param limit maximum number of messages to take.
+     * @return the first 'limit' messages of all runs, in order.
+     */
+    static List<Message> merge(List<List<Message>> runs, Comparator<Message> comparator, int limit) {
+        int[] positions = new int[runs.size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+                (a, b) -> comparator.compare(runs.get(a).get(positions[a]), runs.get(b).get(positions[b])));
+        for (int i = 0; i < runs.size(); i++) {
+            if (!runs.get(i).isEmpty()) {
+                queue.add(i);
+            }
+        }
+        List<Message> merged = new ArrayList<>(Math.min(limit, 1024));
+        while (merged.size() < limit && !queue.isEmpty()) {
+            int run = queue.poll();
+            merged.add(runs.get(run).get(positions[run]++));
+            if (positions[run] < runs.get(run).size()) {
+                queue.add(run);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Reserves message ids for messages about to be inserted, each in the bucket of its account.
+     * @throws SQLException if a block could not be reserved, or the id space is used up.
+     */
+    private int[] allocateIds(List<Message> messages) throws SQLException {
+        idLock.lock();
+        try {
+            int[] ids = new int[messages.size()];
+            for (int i = 0; i < ids.length; i++) {
+                if (nextIdValue == idBlockEnd) {
+                    long block = reserveIdBlock();
+                    nextIdValue = block * ID_BLOCK;
+                    idBlockEnd = nextIdValue + ID_BLOCK;
+                }
+                long id = nextIdValue++ * BUCKETS + bucketOf(messages.get(i).getPosted_by());
+                if (id > Integer.MAX_VALUE) {
+                    throw new SQLException("No message ids left");
+                }
+                ids[i] = (int) id;
+            }
+            return ids;
+        } finally {
+            idLock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next value of message_id_block. The first block taken is moved past the highest id already on any
+     * shard, so that the rows inserted before sharding, with ids from the database, are never collided with.
+     */
+    private long reserveIdBlock() throws SQLException {
+        long block = nextIdBlock();
+        if (!idFloorChecked) {
+            int highest = 0;
+            for (MessageDAO shard : shards) {
+                highest = Math.max(highest, shard.getMaxMessageId());
+            }
+            long floorBlock = (highest / BUCKETS) / ID_BLOCK + 1;
+            if (block < floorBlock) {
+                try (Connection connection = ConnectionUtil.getConnection();
+                     Statement statement = connection.createStatement()) {
+                    statement.execute("ALTER SEQUENCE message_id_block RESTART WITH " + floorBlock);
+                }
+                block = nextIdBlock();
+            }
+            idFloorChecked = true;
+        }
+        return block;
+    }
+
+    private static long nextIdBlock() throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT NEXT VALUE FOR message_id_block")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Inserts a message into the shard of its account.
+     * @return message that was created.
+     */
+    @Override
+    public Message createMessage(Message message) {
+        List<Message> created = createMessages(List.of(message));
+        return created == null ? null : created.get(0);
+    }
+
+    /**
+     * Inserts several messages, each into the shard of its account, with one transaction per shard. If the insert
+     * fails or throws on any shard, the messages already committed on the others are deleted again, so that either
+     * every message is inserted or none is.
+     * @param messages the messages to insert.
+     * @return the created messages with their ids, in the order given, or null if the batch failed.
+     */
+    @Override
+    public List<Message> createMessages(List<Message> messages) {
+        int[] ids;
+        try {
+            ids = allocateIds(messages);
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            return null;
+        }
+        List<Message> created = new ArrayList<>(messages.size());
+        Map<Integer, List<Message>> byShard = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            Message message = messages.get(i);
+            Message withId = new Message(ids[i], message.getPosted_by(), message.getMessage_text(),
+                    message.getTime_posted_epoch());
+            created.add(withId);
+            byShard.computeIfAbsent(shardOfMessage(ids[i]), shard -> new ArrayList<>()).add(withId);
+        }
+        int[] targets = byShard.keySet().stream().mapToInt(Integer::intValue).toArray();
+        IntFunction<Boolean> insert = shard -> shards[shard].insertMessages(byShard.get(shard));
+        List<CompletableFuture<Boolean>> futures = submit(targets, insert);
+        boolean[] inserted = new boolean[targets.length];
+        boolean failed = false;
+        for (int i = 0; i < targets.length; i++) {
+            try {
+                inserted[i] = i == 0 ? insert.apply(targets[0]) : futures.get(i - 1).join();
+            } catch (RuntimeException e) {
+                System.out.println(e.getMessage());
+            }
+            failed |= !inserted[i];
+        }
+        if (failed) {
+            for (int i = 0; i < targets.length; i++) {
+                if (inserted[i]) {
+                    List<Integer> rollback = new ArrayList<>();
+                    for (Message message : byShard.get(targets[i])) {
+                        rollback.add(message.getMessage_id());
+                    }
+                    shards[targets[i]].deleteMessagesByIds(rollback);
+                }
+            }
+            return null;
+        }
+        return created;
+    }
+
+    /**
+     * Retrieves all messages from every shard.
+     * @return all messages, in message_id order.
+     */
+    @Override
+    public List<Message> getAllMessages() {
+        List<Message> messages = new ArrayList<>();
+        for (List<Message> shardMessages : scatter(allShards, shard -> shards[shard].getAllMessages())) {
+            messages.addAll(shardMessages);
+        }
+        messages.sort(Comparator.comparingInt(Message::getMessage_id));
+        return messages;
+    }
+
+    /**
+     * Retrieves one page of messages. A page of one account's messages comes from that account's shard; a page of
+     * all messages is fetched from every shard at once, each shard's part being at most one page plus the row that
+     * tells whether another page exists, and the parts are merged by the sort key.
+     * @see MessageDAO#getMessagesPage
+     */
+    @Override
+    public MessagePage getMessagesPage(Integer postedBy, MessageCursor.Order order, MessageCursor after,
+                                       MessageCursor before, int limit) {
+        if (postedBy != null) {
+            return shards[shardOfAccount(postedBy)].getMessagesPage(postedBy, order, after, before, limit);
+        }
+        MessageCursor cursor = after != null ? after : before;
+        boolean backwards = after == null && before != null;
+        MessageCursor.Order pageOrder = cursor != null ? cursor.getOrder() : order;
+        Comparator<Message> comparator = pageOrder == MessageCursor.Order.TIME
+                ? Comparator.comparingLong(Message::getTime_posted_epoch).thenComparingInt(Message::getMessage_id)
+                : Comparator.comparingInt(Message::getMessage_id);
+        List<List<Message>> runs = scatter(allShards,
+                shard -> shards[shard].fetchPage(null, pageOrder, cursor, backwards, limit + 1));
+        List<Message> merged = merge(runs, backwards ? comparator.reversed() : comparator, limit + 1);
+        return MessagePage.of(merged, limit, pageOrder, after != null, backwards);
+    }
+
+    /**
+     * Opens a cursor over one account's messages on its shard, or over all messages as a merge of a cursor per shard.
+     * @see MessageDAO#streamMessages
+     */
+    @Override
+    public MessageRowCursor streamMessages(Integer postedBy) throws SQLException {
+        if (postedBy != null) {
+            return shards[shardOfAccount(postedBy)].streamMessages(postedBy);
+        }
+        MessageRowCursor[] cursors = new MessageRowCursor[shards.length];
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                cursors[i] = shards[i].streamMessages(null);
+            }
+        } catch (SQLException e) {
+            for (MessageRowCursor cursor : cursors) {
+                if (cursor != null) {
+                    try {
+                        cursor.close();
+                    } catch (SQLException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+            }
+            throw e;
+        }
+        return new MergedMessageRowCursor(cursors);
+    }
+
+    /**
+     * @return the shards in the order to look for a message: the one its id belongs to, then the others.
+     */
+    private int[] probeOrder(int messageId) {
+        int expected = shardOfMessage(messageId);
+        int[] order = new int[shards.length];
+        order[0] = expected;
+        for (int i = 0, j = 1; i < shards.length; i++) {
+            if (i != expected) {
+                order[j++] = i;
+            }
+        }
+        return order;
+    }
+
+    @Override
+    public Message getMessageByID(int id) {
+        for (int shard : probeOrder(id)) {
+            Message message = shards[shard].getMessageByID(id);
+            if (message != null) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Message deleteMessageByID(int id) {
+        for (int shard : probeOrder(id)) {
+            Message message = shards[shard].deleteMessageByID(id);
+            if (message != null) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Message updateMessageByID(Message message) {
+        for (int shard : probeOrder(message.getMessage_id())) {
+            Message updated = shards[shard].updateMessageByID(message);
+            if (updated != null) {
+                return updated;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Message> getAllMessagesByUser(int user) {
+        return shards[shardOfAccount(user)].getAllMessagesByUser(user);
+    }
+
+    /**
+     * Retrieves several messages by id, with one query on each shard the ids belong to, and one more on every shard
+     * for ids that were not where they belong.
+     * @see MessageDAO#getMessagesByIds
+     */
+    @Override
+    public Map<Integer, Message> getMessagesByIds(int[] ids) {
+        Map<Integer, List<Integer>> byShard = new HashMap<>();
+        for (int id : ids) {
+            byShard.computeIfAbsent(probeOrder(id)[0], shard -> new ArrayList<>()).add(id);
+        }
+        if (byShard.isEmpty()) {
+            return new HashMap<>();
+        }
+        int[] targets = byShard.keySet().stream().mapToInt(Integer::intValue).toArray();
+        Map<Integer, Message> messages = collect(scatter(targets,
+                shard -> shards[shard].getMessagesByIds(toArray(byShard.get(shard)))));
+        if (messages == null || messages.size() == ids.length || shards.length == 1) {
+            return messages;
+        }
+        Set<Integer> missing = new HashSet<>();
+        for (int id : ids) {
+            if (!messages.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        int[] missingIds = toArray(missing);
+        Map<Integer, Message> found = collect(scatter(allShards, shard -> shards[shard].getMessagesByIds(missingIds)));
+        if (found == null) {
+            return null;
+        }
+        messages.putAll(found);
+        return messages;
+    }
+
+    private static Map<Integer, Message> collect(List<Map<Integer, Message>> results) {
+        Map<Integer, Message> messages = new HashMap<>();
+        for (Map<Integer, Message> result : results) {
+            if (result == null) {
+                return null;
+            }
+            messages.putAll(result);
+        }
+        return messages;
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Retrieves the newest messages of several accounts, from the shard of each account at once.
+     * @see MessageDAO#getMessagesByAuthors
+     */
+    @Override
+    public List<Message> getMessagesByAuthors(int[] authors, int beforeId, int limit) {
+        Map<Integer, List<Integer>> byShard = new HashMap<>();
+        for (int author : authors) {
+            byShard.computeIfAbsent(shardOfAccount(author), shard -> new ArrayList<>()).add(author);
+        }
+        if (byShard.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int[] targets = byShard.keySet().stream().mapToInt(Integer::intValue).toArray();
+        List<List<Message>> runs = scatter(targets,
+                shard -> shards[shard].getMessagesByAuthors(toArray(byShard.get(shard)), beforeId, limit));
+        if (runs.contains(null)) {
+            return null;
+        }
+        return merge(runs, Comparator.comparingInt(Message::getMessage_id).reversed(), limit);
+    }
+
+    /**
+     * Moves every message that is not on the shard of its account to that shard, after db.shards was changed. The
+     * shards are read in pages of REBALANCE_BATCH messages in message_id order; the messages of a page that belong
+     * elsewhere are copied to their shards and only then deleted from this one, and a copy overwrites a message that
+     * is already there, so a rebalance that was interrupted is finished by running it again. Writes made while it
+     * runs can be lost, so the application must be stopped. When going back to a single shard, the main database's
+     * id generator is moved past the ids this DAO assigned.
+     * @param previousShards the shard count the messages were written with; the shards up to the larger of it and
+     *                       the current count are read.
+     * @return the number of messages moved.
+     * @throws SQLException if messages could not be copied or deleted.
+     */
+    public long rebalance(int previousShards) throws SQLException {
+        int scanned = Math.max(previousShards, shards.length);
+        MessageDAO[] sources = new MessageDAO[scanned];
+        List<ConnectionPool> retiredPools = new ArrayList<>();
+        long moved = 0;
+        try {
+            for (int i = 0; i < scanned; i++) {
+                if (i < shards.length) {
+                    sources[i] = shards[i];
+                } else {
+                    ConnectionPool pool = openShard(i);
+                    retiredPools.add(pool);
+                    sources[i] = new MessageDAO(pool);
+                }
+            }
+            for (int source = 0; source < scanned; source++) {
+                MessageCursor after = null;
+                while (true) {
+                    List<Message> page = sources[source].fetchPage(null, MessageCursor.Order.ID, after, false,
+                            REBALANCE_BATCH);
+                    if (page.isEmpty()) {
+                        break;
+                    }
+                    Map<Integer, List<Message>> byTarget = new HashMap<>();
+                    List<Integer> movedIds = new ArrayList<>();
+                    for (Message message : page) {
+                        int target = shardOfAccount(message.getPosted_by());
+                        if (target != source) {
+                            byTarget.computeIfAbsent(target, shard -> new ArrayList<>()).add(message);
+                            movedIds.add(message.getMessage_id());
+                        }
+                    }
+                    for (Map.Entry<Integer, List<Message>> entry : byTarget.entrySet()) {
+                        if (!shards[entry.getKey()].copyMessages(entry.getValue())) {
+                            throw new SQLException("Could not copy messages to shard " + entry.getKey());
+                        }
+                    }
+                    if (!movedIds.isEmpty() && !sources[source].deleteMessagesByIds(movedIds)) {
+                        throw new SQLException("Could not delete moved messages from shard " + source);
+                    }
+                    moved += movedIds.size();
+                    after = MessageCursor.at(MessageCursor.Order.ID, page.get(page.size() - 1));
+                }
+            }
+            if (shards.length == 1) {
+                shards[0].restartIdGenerator();
+            }
+        } finally {
+            for (ConnectionPool pool : retiredPools) {
+                pool.close();
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Appends the pool gauges of shards 1 and up in Prometheus text format; shard 0's are the db_pool_* metrics.
+     * @param out the exposition being written.
+     */
+    public void writeTo(StringBuilder out) {
+        out.append("# HELP db_shard_pool_connections_active Connections borrowed from a message shard's pool.\n");
+        out.append("# TYPE db_shard_pool_connections_active gauge\n");
+        for (int i = 1; i < pools.length; i++) {
+            out.append("db_shard_pool_connections_active{shard=\"").append(i).append("\"} ")
+                    .append(pools[i].getStats().getActive()).append('\n');
+        }
+        out.append("# HELP db_shard_pool_acquires_total Connections handed out by a message shard's pool.\n");
+        out.append("# TYPE db_shard_pool_acquires_total counter\n");
+        for (int i = 1; i < pools.length; i++) {
+            out.append("db_shard_pool_acquires_total{shard=\"").append(i).append("\"} ")
+                    .append(pools[i].getStats().getAcquireCount()).append('\n');
+        }
+    }
+
+    /**
+     * Stops the scatter threads and closes the pools of shards 1 and up.
+     */
+    public void shutdown() {
+        scatterExecutor.shutdown();
+        for (int i = 1; i < pools.length; i++) {
+            pools[i].close();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package Service;
+
+import DAO.AccountDAO;
+import Util.WarmUp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory set of every existing 'account_id', so new messages can be checked against a real author without a
+ * database round trip. Account ids come from an auto_increment column and are never deleted, so the set is a plain
+ * bitset indexed by id: one bit per id up to the highest one, which is about 1.25 MB for 10 million accounts. A
+ * HashSet of Integer would need around 50 bytes per id (over 500 MB), and even an open-addressing primitive int set
+ * needs 8 to 16 bytes per id.
+ *
+ * The set is filled by a background warm-up that reads the account table, and by AccountService as accounts are
+ * registered. Until the warm-up has finished, an id that is not in the set may still exist, so callers must fall back
+ * to the database in that case (see {@link #isReady()}). Accounts inserted behind the application's back are not seen
+ * after the warm-up.
+ *
+ * Lookups are lock-free reads of an AtomicLongArray. Additions take a lock so that growing the array can never lose a
+ * concurrent addition; they only happen on registration, which is rare compared to posting.
+ */
+public class AccountIndex {
+    private volatile AtomicLongArray words = new AtomicLongArray(1024);
+    private final ReentrantLock growLock = new ReentrantLock();
+    private volatile boolean ready;
+
+    /**
+     * Records an existing account id.
+     * @param accountId the account_id.
+     */
+    public void add(int accountId) {
+        if (accountId < 0) {
+            return;
+        }
+        int word = accountId >>> 6;
+        long bit = 1L << accountId;
+        growLock.lock();
+        try {
+            AtomicLongArray current = words;
+            if (word >= current.length()) {
+                AtomicLongArray grown = new AtomicLongArray(Math.max(word + 1, current.length() * 2));
+                for (int i = 0; i < current.length(); i++) {
+                    grown.set(i, current.get(i));
+                }
+                words = grown;
+                current = grown;
+            }
+            current.set(word, current.get(word) | bit);
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    /**
+     * @param accountId the account_id.
+     * @return true if the account is known to exist. A false answer is only final once {@link #isReady()}.
+     */
+    public boolean contains(int accountId) {
+        if (accountId < 0) {
+            return false;
+        }
+        AtomicLongArray current = words;
+        int word = accountId >>> 6;
+        return word < current.length() && (current.get(word) & (1L << accountId)) != 0;
+    }
+
+    /**
+     * @return true once every account that existed at startup has been loaded.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Loads every existing account id on a background thread, marking the index ready when done. If the load fails,
+     * the index stays in warming-up mode, and callers keep falling back to the database, until a retry succeeds.
+     * @param accountDAO the DAO to read account ids from.
+     */
+    public void warmUp(AccountDAO accountDAO) {
+        WarmUp.start("account-index-warmup", () -> {
+            if (accountDAO.forEachAccountId(this::add)) {
+                ready = true;
+            }
+            return ready;
+        });
+    }
+
+    /**
+     * @return approximate heap used by the bitset, in bytes.
+     */
+    public long memoryBytes() {
+        return 16 + 8L * words.length();
+    }
+}
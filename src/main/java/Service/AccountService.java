@@ -6,12 +6,15 @@ import DAO.AccountDAO;
 public class AccountService {
     static int MIN_PASSWORD_LENGTH = 4;
     private AccountDAO accountDAO;
+    private AccountIndex accountIndex;
+    private PasswordHasher passwordHasher;
+    private volatile String unknownAccountHash;
 
     /**
      * No-args constructor for creating new AccountService with a new AccountDAO.
      */
     public AccountService() {
-        accountDAO = new AccountDAO();
+        this(new AccountDAO());
     }
 
     /**
@@ -19,7 +22,29 @@ public class AccountService {
      * @param accountDAO
      */
     public AccountService(AccountDAO accountDAO) {
+        this(accountDAO, new AccountIndex());
+    }
+
+    /**
+     * Constructor for AccountService when AccountDAO and the index of known account ids are provided. The index
+     * is told about every account registered through this service.
+     * @param accountDAO
+     * @param accountIndex
+     */
+    public AccountService(AccountDAO accountDAO, AccountIndex accountIndex) {
+        this(accountDAO, accountIndex, new PasswordHasher());
+    }
+
+    /**
+     * Constructor for AccountService when the password hasher is provided too.
+     * @param accountDAO
+     * @param accountIndex
+     * @param passwordHasher hashes the passwords of new accounts and checks them at login.
+     */
+    public AccountService(AccountDAO accountDAO, AccountIndex accountIndex, PasswordHasher passwordHasher) {
         this.accountDAO = accountDAO;
+        this.accountIndex = accountIndex;
+        this.passwordHasher = passwordHasher;
     }
 
     /**
@@ -27,24 +52,56 @@ public class AccountService {
      * 1) Username does not already exists
      * 2) Username is not blank
      * 3) Password is at least 4 characters long
+     * The first condition is enforced by the unique constraint on 'username' rather than a lookup beforehand, so two
+     * concurrent registrations of the same username cannot both succeed. Only a salted hash of the password is
+     * stored; hashing takes tens of milliseconds of CPU, see PasswordHasher for where to call this from.
      * @param account the account object to be added.
-     * @return the registered account object.
+     * @return the registered account object, with the password as given.
      */
     public Account addAccount(Account account) {
-        if (!accountDAO.findAccount(account.getUsername())){
-            if (!account.getUsername().isBlank() && account.getPassword().length() >= MIN_PASSWORD_LENGTH) {
-                return accountDAO.registerAccount(account); 
+        if (!account.getUsername().isBlank() && account.getPassword().length() >= MIN_PASSWORD_LENGTH) {
+            String hash = passwordHasher.hash(account.getPassword());
+            Account registeredAccount = accountDAO.registerAccount(new Account(account.getUsername(), hash));
+            if (registeredAccount != null) {
+                accountIndex.add(registeredAccount.getAccount_id());
+                return new Account(registeredAccount.getAccount_id(), account.getUsername(), account.getPassword());
             }
         }
         return null;
     }
 
     /**
-     * Process user logins
+     * Process user logins. The password is checked against the stored hash; a password stored in plain text before
+     * passwords were hashed is checked as it is and, when it matches, replaced by its hash. An unknown username
+     * costs a hash as well, so response times do not tell which usernames exist.
      * @param account the account to be checked.
-     * @return the user account that successfully loged in.
+     * @return the user account that successfully loged in, with the password as given.
      */
     public Account loginAccount(Account account) {
-        return accountDAO.loginAccount(account);
+        if (account.getUsername() == null || account.getPassword() == null) {
+            return null;
+        }
+        Account stored = accountDAO.getAccountByUsername(account.getUsername());
+        if (stored == null) {
+            passwordHasher.verify(account.getPassword(), unknownAccountHash());
+            return null;
+        }
+        if (!passwordHasher.verify(account.getPassword(), stored.getPassword())) {
+            return null;
+        }
+        if (!PasswordHasher.isHash(stored.getPassword())) {
+            accountDAO.updatePassword(stored.getAccount_id(), stored.getPassword(),
+                    passwordHasher.hash(account.getPassword()));
+        }
+        return new Account(stored.getAccount_id(), stored.getUsername(), account.getPassword());
+    }
+
+    private String unknownAccountHash() {
+        String hash = unknownAccountHash;
+        if (hash == null) {
+            hash = passwordHasher.hash("no such account");
+            unknownAccountHash = hash;
+        }
+        return hash;
     }
 }
@@ -0,0 +1,71 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Outcome of a batch of message posts: the generated message_id of every message, in request order, with null in
+ * the place of each message that was not created, and an error for each of those.
+ */
+public class BatchResult {
+    private final Integer[] ids;
+    private final String[] errors;
+
+    BatchResult(int size) {
+        this.ids = new Integer[size];
+        this.errors = new String[size];
+    }
+
+    void created(int index, int messageId) {
+        ids[index] = messageId;
+    }
+
+    void rejected(int index, String error) {
+        errors[index] = error;
+    }
+
+    /**
+     * @return the generated message ids in request order, null for messages that were not created.
+     */
+    public List<Integer> getIds() {
+        return Arrays.asList(ids);
+    }
+
+    /**
+     * @return one error per message that was not created, in request order.
+     */
+    public List<BatchError> getErrors() {
+        List<BatchError> report = new ArrayList<>();
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != null) {
+                report.add(new BatchError(i, errors[i]));
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Why the message at a given position of the batch was not created.
+     */
+    public static class BatchError {
+        private final int index;
+        private final String error;
+
+        BatchError(int index, String error) {
+            this.index = index;
+            this.error = error;
+        }
+
+        /**
+         * @return position of the message in the request, starting at 0.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package Service;
+
+import DAO.FollowDAO;
+import DAO.MessageCursor;
+import DAO.MessageDAO;
+import DAO.MessagePage;
+import Model.Follow;
+import Model.Message;
+import Util.OverloadedException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Follows between accounts and the home timeline ("feed") of each account: the messages of every account it follows,
+ * newest first.
+ *
+ * Feeds are mostly precomputed: each message MessageService creates is pushed into the cached HomeTimelineCache
+ * buffer of every follower of its author (fan-out on write), so reading a feed costs one lookup of the buffered ids.
+ * An author with more than feed.fanout.maxFollowers followers (1000 by default) would turn every message into that
+ * many writes, so such authors are not fanned out; instead a feed read merges in their newest messages (fan-out on
+ * read), taken from their MessageService timelines, which stay cached as every follower's read touches them. Pages
+ * older than a buffer reaches, and every read while the FollowGraph is still warming up, are read from the database.
+ *
+ * A follow or unfollow drops the follower's buffer, which is rebuilt on its next read. An author whose follower count
+ * falls back under the limit has its followers' buffers dropped too, as they miss the messages it posted while it was
+ * read-time merged.
+ */
+public class FeedService implements MessageChangeListener {
+    static int DEFAULT_PAGE_SIZE = 20;
+    static int MAX_PAGE_SIZE = 200;
+    private static final Comparator<Message> NEWEST_FIRST =
+            Comparator.comparingInt(Message::getMessage_id).reversed();
+
+    private final FollowDAO followDAO;
+    private final MessageDAO messageDAO;
+    private final MessageService messageService;
+    private final FollowGraph followGraph;
+    private final HomeTimelineCache homeTimelines;
+    private final int maxFanout;
+
+    private final LongAdder messagesFannedOut = new LongAdder();
+    private final LongAdder fanoutWrites = new LongAdder();
+    private final LongAdder messagesNotFannedOut = new LongAdder();
+
+    /**
+     * Constructor for a FeedService with the follower limit given by the feed.fanout.maxFollowers system property.
+     */
+    public FeedService(FollowDAO followDAO, MessageDAO messageDAO, MessageService messageService,
+                       FollowGraph followGraph, HomeTimelineCache homeTimelines) {
+        this(followDAO, messageDAO, messageService, followGraph, homeTimelines,
+                Integer.getInteger("feed.fanout.maxFollowers", 1000));
+    }
+
+    /**
+     * @param maxFanout authors with more followers than this are merged into feeds at read time.
+     */
+    public FeedService(FollowDAO followDAO, MessageDAO messageDAO, MessageService messageService,
+                       FollowGraph followGraph, HomeTimelineCache homeTimelines, int maxFanout) {
+        this.followDAO = followDAO;
+        this.messageDAO = messageDAO;
+        this.messageService = messageService;
+        this.followGraph = followGraph;
+        this.homeTimelines = homeTimelines;
+        this.maxFanout = maxFanout;
+    }
+
+    /**
+     * Uses the followDAO to make one account follow another. Following an account twice is not an error.
+     * @param follower the account that follows.
+     * @param followee the account to follow.
+     * @return the follow, or null if either account does not exist.
+     * @throws IllegalArgumentException if an account tries to follow itself.
+     */
+    public Follow follow(int follower, int followee) {
+        if (follower == followee) {
+            throw new IllegalArgumentException("an account cannot follow itself");
+        }
+        Follow follow = followDAO.follow(follower, followee);
+        if (follow != null) {
+            followGraph.add(follower, followee);
+            homeTimelines.invalidate(follower);
+        }
+        return follow;
+    }
+
+    /**
+     * Uses the followDAO to make one account stop following another.
+     * @param follower the account that follows.
+     * @param followee the account to unfollow.
+     * @return the removed follow, or null if there was none.
+     */
+    public Follow unfollow(int follower, int followee) {
+        Follow follow = followDAO.unfollow(follower, followee);
+        if (follow != null) {
+            boolean wasMergedOnRead = isMergedOnRead(followee);
+            followGraph.remove(follower, followee);
+            homeTimelines.invalidate(follower);
+            if (wasMergedOnRead && !isMergedOnRead(followee)) {
+                for (int other : followGraph.getFollowers(followee)) {
+                    homeTimelines.invalidate(other);
+                }
+            }
+        }
+        return follow;
+    }
+
+    private boolean isMergedOnRead(int author) {
+        return followGraph.getFollowerCount(author) > maxFanout;
+    }
+
+    /**
+     * Returns one page of the account's feed: messages posted by the accounts it follows, newest first.
+     * @param accountId the reading account.
+     * @param after return the messages following this cursor, or null.
+     * @param limit the page size, or null for the default. Capped at MAX_PAGE_SIZE.
+     * @return a page of messages with a next cursor if there may be more.
+     * @throws IllegalArgumentException if the limit is not positive.
+     * @throws OverloadedException if the messages could not be read.
+     */
+    public MessagePage getFeed(int accountId, MessageCursor after, Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        int beforeId = after == null ? Integer.MAX_VALUE : after.getMessageId();
+        List<Message> fetched;
+        if (!followGraph.isReady()) {
+            int[] followees = followDAO.getFollowees(accountId);
+            fetched = followees == null ? null : byAuthors(followees, beforeId, pageSize + 1);
+        } else {
+            fetched = readFeed(accountId, beforeId, pageSize + 1);
+        }
+        if (fetched == null) {
+            throw new OverloadedException("Feed could not be read", 1);
+        }
+        return MessagePage.of(fetched, pageSize, MessageCursor.Order.ID, false, false);
+    }
+
+    /**
+     * Reads the buffered part of the feed and the cached newest messages of the authors merged on read, and merges
+     * them. A buffer is loaded from the followees at the time of the load, and a follow or unfollow that lands while
+     * it loads can still leave it built from the old ones; a buffer holding messages of an account no longer followed
+     * is dropped, and the page read from the database instead.
+     * @return up to 'count' messages, newest first, or null if a query failed.
+     */
+    private List<Message> readFeed(int accountId, int beforeId, int count) {
+        List<Integer> pushed = new ArrayList<>();
+        List<Integer> pulled = new ArrayList<>();
+        Set<Integer> followed = new HashSet<>();
+        for (int followee : followGraph.getFollowees(accountId)) {
+            (isMergedOnRead(followee) ? pulled : pushed).add(followee);
+            followed.add(followee);
+        }
+
+        List<Message> merged = new ArrayList<>(2 * count);
+        if (!pushed.isEmpty()) {
+            int[] authors = toArray(pushed);
+            HomeTimelineCache.HomeTimeline timeline = homeTimelines.get(accountId,
+                    id -> newestIds(pushedFollowees(id), homeTimelines.getCapacity()));
+            int[] ids = timeline.idsBefore(beforeId, count);
+            List<Message> buffered;
+            if (ids.length < count && !timeline.isComplete()) {
+                // the page reaches past the oldest buffered message
+                buffered = byAuthors(authors, beforeId, count);
+            } else {
+                buffered = byIds(accountId, ids);
+                if (buffered != null && buffered.removeIf(message -> !followed.contains(message.getPosted_by()))) {
+                    homeTimelines.invalidate(accountId);
+                    buffered = byAuthors(authors, beforeId, count);
+                } else if (buffered != null && buffered.size() < ids.length) {
+                    // buffered ids whose delete did not reach the buffer; a short page would end the feed early
+                    buffered = byAuthors(authors, beforeId, count);
+                }
+            }
+            if (buffered == null) {
+                return null;
+            }
+            merged.addAll(buffered);
+        }
+        for (int author : pulled) {
+            merged.addAll(messageService.getNewestMessagesByUser(author, beforeId, count));
+        }
+
+        merged.sort(NEWEST_FIRST);
+        List<Message> page = new ArrayList<>(count);
+        for (Message message : merged) {
+            if (page.size() == count) {
+                break;
+            }
+            // an author that just passed the follower limit can be both buffered and merged on read
+            if (page.isEmpty() || page.get(page.size() - 1).getMessage_id() != message.getMessage_id()) {
+                page.add(message);
+            }
+        }
+        return page;
+    }
+
+    private int[] pushedFollowees(int accountId) {
+        List<Integer> pushed = new ArrayList<>();
+        for (int followee : followGraph.getFollowees(accountId)) {
+            if (!isMergedOnRead(followee)) {
+                pushed.add(followee);
+            }
+        }
+        return toArray(pushed);
+    }
+
+    private int[] newestIds(int[] authors, int count) {
+        List<Message> messages = byAuthors(authors, Integer.MAX_VALUE, count);
+        if (messages == null) {
+            throw new OverloadedException("Feed could not be read", 1);
+        }
+        int[] ids = new int[messages.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = messages.get(i).getMessage_id();
+        }
+        return ids;
+    }
+
+    private List<Message> byAuthors(int[] authors, int beforeId, int count) {
+        if (authors.length == 0) {
+            return new ArrayList<>();
+        }
+        return messageDAO.getMessagesByAuthors(authors, beforeId, count);
+    }
+
+    /**
+     * Loads buffered ids in the order given; ids of messages deleted since they were buffered are skipped, and removed
+     * from the account's buffer.
+     */
+    private List<Message> byIds(int accountId, int[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        Map<Integer, Message> found = messageDAO.getMessagesByIds(ids);
+        if (found == null) {
+            return null;
+        }
+        List<Message> messages = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Message message = found.get(id);
+            if (message != null) {
+                messages.add(message);
+            } else {
+                homeTimelines.remove(accountId, id);
+            }
+        }
+        return messages;
+    }
+
+    private static int[] toArray(List<Integer> ids) {
+        int[] array = new int[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Pushes a new message into the buffered feeds of its author's followers, unless the author has too many
+     * followers and is merged on read instead. Feeds that are not cached are left alone; they are built with the
+     * message when next read.
+     */
+    @Override
+    public void onMessageCreated(Message message) {
+        if (!followGraph.isReady()) {
+            return;
+        }
+        int author = message.getPosted_by();
+        if (isMergedOnRead(author)) {
+            messagesNotFannedOut.increment();
+            return;
+        }
+        messagesFannedOut.increment();
+        for (int follower : followGraph.getFollowers(author)) {
+            if (homeTimelines.push(follower, message.getMessage_id())) {
+                fanoutWrites.increment();
+            }
+        }
+    }
+
+    @Override
+    public void onMessageDeleted(Message message) {
+        if (!followGraph.isReady() || isMergedOnRead(message.getPosted_by())) {
+            return;
+        }
+        for (int follower : followGraph.getFollowers(message.getPosted_by())) {
+            homeTimelines.remove(follower, message.getMessage_id());
+        }
+    }
+
+    /**
+     * @return the number of new messages pushed to their author's followers.
+     */
+    public long getMessagesFannedOut() {
+        return messagesFannedOut.sum();
+    }
+
+    /**
+     * @return the number of cached feeds new messages were pushed into; divided by getMessagesFannedOut, the write
+     * amplification of fan-out.
+     */
+    public long getFanoutWrites() {
+        return fanoutWrites.sum();
+    }
+
+    /**
+     * @return the number of new messages left to be merged on read, because their author has too many followers.
+     */
+    public long getMessagesNotFannedOut() {
+        return messagesNotFannedOut.sum();
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of the feed buffers.
+     */
+    public CacheStats getHomeTimelineStats() {
+        return homeTimelines.getStats();
+    }
+}
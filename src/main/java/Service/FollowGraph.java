@@ -0,0 +1,225 @@
+package Service;
+
+import DAO.FollowDAO;
+import Util.WarmUp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory copy of the 'follow' table, kept both ways round: the followers of each account, which every new message
+ * is fanned out to, and the accounts each one follows, which a home timeline is read from. Each side is a sorted
+ * growable int array per account, four bytes per edge instead of the 16 or more of a boxed set.
+ *
+ * The graph is filled by a background warm-up that reads the follow table, and by FeedService as accounts follow and
+ * unfollow each other. Until the warm-up has finished the graph is incomplete, so callers must fall back to the
+ * database (see {@link #isReady()}). Edges removed while the warm-up runs are remembered until it ends, so a row it
+ * read before the unfollow committed does not bring the edge back.
+ *
+ * One read-write lock guards both sides, so a reader never sees an edge on one side only.
+ */
+public class FollowGraph {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, IntSet> followers = new HashMap<>();
+    private final Map<Integer, IntSet> followees = new HashMap<>();
+    private final Set<Long> removedDuringWarmUp = new HashSet<>();
+    private long edges;
+    private volatile boolean ready;
+
+    /**
+     * Records that one account follows another. Adding an existing edge changes nothing.
+     * @param follower the account that follows.
+     * @param followee the account followed.
+     */
+    public void add(int follower, int followee) {
+        lock.writeLock().lock();
+        try {
+            if (!ready) {
+                removedDuringWarmUp.remove(edge(follower, followee));
+            }
+            addLocked(follower, followee);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addLoaded(int follower, int followee) {
+        lock.writeLock().lock();
+        try {
+            if (!removedDuringWarmUp.contains(edge(follower, followee))) {
+                addLocked(follower, followee);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addLocked(int follower, int followee) {
+        if (followees.computeIfAbsent(follower, id -> new IntSet()).add(followee)) {
+            followers.computeIfAbsent(followee, id -> new IntSet()).add(follower);
+            edges++;
+        }
+    }
+
+    /**
+     * Removes an edge, if present.
+     * @param follower the account that follows.
+     * @param followee the account followed.
+     */
+    public void remove(int follower, int followee) {
+        lock.writeLock().lock();
+        try {
+            if (!ready) {
+                removedDuringWarmUp.add(edge(follower, followee));
+            }
+            IntSet following = followees.get(follower);
+            if (following != null && following.remove(followee)) {
+                removeFrom(followers, followee, follower);
+                if (following.size == 0) {
+                    followees.remove(follower);
+                }
+                edges--;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static long edge(int follower, int followee) {
+        return (long) follower << 32 | (followee & 0xffffffffL);
+    }
+
+    private static void removeFrom(Map<Integer, IntSet> side, int account, int other) {
+        IntSet set = side.get(account);
+        if (set != null && set.remove(other) && set.size == 0) {
+            side.remove(account);
+        }
+    }
+
+    /**
+     * @param followee an account_id.
+     * @return the account_ids following it, in ascending order.
+     */
+    public int[] getFollowers(int followee) {
+        return copy(followers, followee);
+    }
+
+    /**
+     * @param follower an account_id.
+     * @return the account_ids it follows, in ascending order.
+     */
+    public int[] getFollowees(int follower) {
+        return copy(followees, follower);
+    }
+
+    private int[] copy(Map<Integer, IntSet> side, int account) {
+        lock.readLock().lock();
+        try {
+            IntSet set = side.get(account);
+            return set == null ? new int[0] : Arrays.copyOf(set.ids, set.size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param followee an account_id.
+     * @return the number of accounts following it.
+     */
+    public int getFollowerCount(int followee) {
+        lock.readLock().lock();
+        try {
+            IntSet set = followers.get(followee);
+            return set == null ? 0 : set.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of follow edges.
+     */
+    public long getEdgeCount() {
+        lock.readLock().lock();
+        try {
+            return edges;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true once every follow that existed at startup has been loaded.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Loads every follow on a background thread, marking the graph ready when done. If the load fails, the graph
+     * stays not ready, and callers keep using the database, until a retry succeeds.
+     * @param followDAO the DAO to read the follow table from.
+     */
+    public void warmUp(FollowDAO followDAO) {
+        WarmUp.start("follow-graph-warmup", () -> {
+            if (!followDAO.forEachFollow(this::addLoaded)) {
+                return false;
+            }
+            markReady();
+            return true;
+        });
+    }
+
+    private void markReady() {
+        lock.writeLock().lock();
+        try {
+            ready = true;
+            removedDuringWarmUp.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A sorted set of account_ids.
+     */
+    private static final class IntSet {
+        int[] ids = new int[2];
+        int size;
+
+        /**
+         * @return false if the id was already present.
+         */
+        boolean add(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return false;
+            }
+            int insertAt = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 2);
+            }
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+            return true;
+        }
+
+        /**
+         * @return false if the id was not present.
+         */
+        boolean remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package Service;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Precomputed home timelines: for each account whose feed has been read, the message_ids of the newest messages
+ * posted by the accounts it follows. A timeline is built from the database on first read and then kept current by
+ * FeedService, which pushes each new message into the timelines of its author's followers (fan-out on write), so a
+ * feed read is a slice of an int array instead of a query over every followed account.
+ *
+ * Each timeline holds at most 'capacity' ids (feed.buffer.size, 200 by default); pushing into a full one drops the
+ * oldest id, after which the timeline is no longer complete and pages older than it are read from the database. All
+ * timelines share one memory budget (feed.cache.maxBytes); when it is exceeded, the timelines of accounts that read
+ * their feed least are evicted first and rebuilt on their next read.
+ *
+ * Like TimelineCache, each timeline is an immutable array replaced on every change, and cached as a future built on
+ * the reading thread, so a push that arrives while the timeline is loading is chained onto the load and applied to its
+ * result. Pushing an id that is already present changes nothing.
+ */
+public class HomeTimelineCache {
+    private final AsyncCache<Integer, HomeTimeline> cache;
+    private final int capacity;
+
+    /**
+     * Creates a cache sized by the feed.buffer.size and feed.cache.maxBytes system properties.
+     */
+    public HomeTimelineCache() {
+        this(Integer.getInteger("feed.buffer.size", 200), Long.getLong("feed.cache.maxBytes", 32L << 20));
+    }
+
+    /**
+     * @param capacity maximum number of message_ids kept per account.
+     * @param maxBytes approximate memory budget shared by all cached timelines.
+     */
+    public HomeTimelineCache(int capacity, long maxBytes) {
+        this.capacity = capacity;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Integer accountId, HomeTimeline timeline) -> timeline.weight())
+                .recordStats()
+                // bookkeeping after each push is a few field updates; the default pool would hand every one to
+                // another thread, or start a thread per push where the machine has a single core
+                .executor(Runnable::run)
+                .buildAsync();
+    }
+
+    /**
+     * @return the maximum number of message_ids kept per account.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the account's home timeline, building it on a miss.
+     * @param accountId the reading account.
+     * @param loader reads the newest 'capacity' message_ids of the account's feed from the database, in any order.
+     * @return the timeline.
+     */
+    public HomeTimeline get(int accountId, IntFunction<int[]> loader) {
+        CompletableFuture<HomeTimeline> loading = new CompletableFuture<>();
+        CompletableFuture<HomeTimeline> timeline = cache.get(accountId, (key, executor) -> loading);
+        if (timeline == loading) {
+            try {
+                int[] ids = loader.apply(accountId);
+                Arrays.sort(ids);
+                loading.complete(new HomeTimeline(ids, ids.length < capacity));
+            } catch (RuntimeException | Error e) {
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return timeline.join();
+    }
+
+    /**
+     * Adds a message to the account's timeline if it is cached or loading.
+     * @param accountId the follower.
+     * @param messageId the new message.
+     * @return true if a timeline was cached or loading.
+     */
+    public boolean push(int accountId, int messageId) {
+        return patch(accountId, timeline -> timeline.with(messageId, capacity));
+    }
+
+    /**
+     * Removes a message from the account's timeline if it is cached or loading.
+     * @param accountId the follower.
+     * @param messageId the deleted message.
+     */
+    public void remove(int accountId, int messageId) {
+        patch(accountId, timeline -> timeline.without(messageId));
+    }
+
+    private boolean patch(int accountId, UnaryOperator<HomeTimeline> change) {
+        boolean[] present = new boolean[1];
+        cache.asMap().compute(accountId, (key, timeline) -> {
+            present[0] = timeline != null;
+            return timeline == null ? null : timeline.thenApply(change);
+        });
+        return present[0];
+    }
+
+    /**
+     * Drops the account's timeline, so its next read rebuilds it; used when the accounts it follows change.
+     * @param accountId the follower.
+     */
+    public void invalidate(int accountId) {
+        cache.synchronous().invalidate(accountId);
+    }
+
+    /**
+     * @return hit, miss and eviction counters since the cache was created.
+     */
+    public CacheStats getStats() {
+        return cache.synchronous().stats();
+    }
+
+    /**
+     * The message_ids of one account's home timeline, in ascending order. Never modified after construction.
+     */
+    public static final class HomeTimeline {
+        final int[] ids;
+        final boolean complete;
+
+        HomeTimeline(int[] ids, boolean complete) {
+            this.ids = ids;
+            this.complete = complete;
+        }
+
+        /**
+         * @param beforeId only return ids below this one.
+         * @param count maximum number of ids.
+         * @return the largest ids below beforeId, in descending order.
+         */
+        public int[] idsBefore(int beforeId, int count) {
+            int index = Arrays.binarySearch(ids, beforeId);
+            int end = index >= 0 ? index : -index - 1;
+            int n = Math.min(count, end);
+            int[] found = new int[n];
+            for (int i = 0; i < n; i++) {
+                found[i] = ids[end - 1 - i];
+            }
+            return found;
+        }
+
+        /**
+         * @return true if the timeline holds every message of the feed, so ids older than its oldest do not exist.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        HomeTimeline with(int messageId, int capacity) {
+            int index = Arrays.binarySearch(ids, messageId);
+            if (index >= 0) {
+                return this;
+            }
+            int insertAt = -index - 1;
+            if (insertAt == 0 && (!complete || ids.length >= capacity)) {
+                // older than everything kept: it belongs to the part of the feed read from the database
+                return this;
+            }
+            if (ids.length >= capacity) {
+                // drop the oldest id to make room
+                int[] next = new int[ids.length];
+                System.arraycopy(ids, 1, next, 0, insertAt - 1);
+                next[insertAt - 1] = messageId;
+                System.arraycopy(ids, insertAt, next, insertAt, ids.length - insertAt);
+                return new HomeTimeline(next, false);
+            }
+            int[] next = new int[ids.length + 1];
+            System.arraycopy(ids, 0, next, 0, insertAt);
+            next[insertAt] = messageId;
+            System.arraycopy(ids, insertAt, next, insertAt + 1, ids.length - insertAt);
+            return new HomeTimeline(next, complete);
+        }
+
+        HomeTimeline without(int messageId) {
+            int index = Arrays.binarySearch(ids, messageId);
+            if (index < 0) {
+                return this;
+            }
+            int[] next = new int[ids.length - 1];
+            System.arraycopy(ids, 0, next, 0, index);
+            System.arraycopy(ids, index + 1, next, index, ids.length - index - 1);
+            return new HomeTimeline(next, complete);
+        }
+
+        int weight() {
+            return 32 + 4 * ids.length;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package Service;
+
+import Model.Message;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Read-through cache of messages by 'message_id', sitting between MessageService and MessageDAO. It is bounded by
+ * entry count and uses Caffeine's W-TinyLFU policy, which keeps frequently read messages over ones that were only
+ * read once, so a burst of one-off lookups cannot flush the popular ones.
+ *
+ * Ids that do not exist are cached too, as negative entries with their own short lifetime. Because MessageDAO
+ * reports database errors the same way as missing rows, that lifetime also bounds how long an error can be served
+ * as "not found".
+ *
+ * As a MessageChangeListener it invalidates an id after any write to its row, including the insert that creates
+ * it, since the id may have been cached as missing. An invalidation that races with a load of the same id does not
+ * wait for it: it removes the load's in-flight future, so the row the load reads is returned to its own caller but
+ * never cached, and a stale row read before the write cannot outlive the invalidation.
+ *
+ * Entries are futures, and a miss runs its load on the calling thread after the future is in place rather than inside
+ * the cache's map operation: Caffeine would otherwise run the JDBC call while holding a ConcurrentHashMap bin monitor,
+ * which pins the carrier of a virtual request thread for as long as the query waits for a pooled connection.
+ */
+public class MessageCache implements MessageChangeListener {
+    private final AsyncCache<Integer, Optional<Message>> cache;
+
+    /**
+     * Creates a cache sized by the message.cache.* system properties.
+     */
+    public MessageCache() {
+        this(Long.getLong("message.cache.maxSize", 10_000L),
+                Long.getLong("message.cache.ttlSeconds", 0L),
+                Long.getLong("message.cache.negativeTtlSeconds", 30L));
+    }
+
+    /**
+     * @param maxSize maximum number of cached ids, found or not.
+     * @param ttlSeconds lifetime of a cached message, or 0 to keep it until evicted or invalidated.
+     * @param negativeTtlSeconds lifetime of a cached "no such message" entry.
+     */
+    public MessageCache(long maxSize, long ttlSeconds, long negativeTtlSeconds) {
+        long ttlNanos = ttlSeconds > 0 ? ttlSeconds * 1_000_000_000L : Long.MAX_VALUE;
+        long negativeTtlNanos = negativeTtlSeconds * 1_000_000_000L;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<Integer, Optional<Message>>() {
+                    @Override
+                    public long expireAfterCreate(Integer id, Optional<Message> value, long currentTime) {
+                        return value.isPresent() ? ttlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Integer id, Optional<Message> value, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(id, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Integer id, Optional<Message> value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Returns the cached message for the id, loading it on a miss. Concurrent misses on the same id share one load.
+     * @param id the message_id.
+     * @param loader reads the message from the database, returning null if it does not exist.
+     * @return a copy of the message, or null if it does not exist.
+     */
+    public Message get(int id, IntFunction<Message> loader) {
+        CompletableFuture<Optional<Message>> loading = new CompletableFuture<>();
+        CompletableFuture<Optional<Message>> cached = cache.get(id, (key, executor) -> loading);
+        if (cached == loading) {
+            try {
+                loading.complete(Optional.ofNullable(loader.apply(id)));
+            } catch (RuntimeException | Error e) {
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        // Messages are mutable, so callers get their own copy and cannot change the cached one.
+        return cached.join().map(MessageCache::copy).orElse(null);
+    }
+
+    /**
+     * Drops the cached entry for the id after its row was created, changed or deleted.
+     * @param id the message_id.
+     */
+    public void invalidate(int id) {
+        cache.synchronous().invalidate(id);
+    }
+
+    @Override
+    public void onMessageCreated(Message message) {
+        invalidate(message.getMessage_id());
+    }
+
+    @Override
+    public void onMessageUpdated(Message message) {
+        invalidate(message.getMessage_id());
+    }
+
+    @Override
+    public void onMessageDeleted(Message message) {
+        invalidate(message.getMessage_id());
+    }
+
+    /**
+     * Drops every cached entry.
+     */
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    /**
+     * @return hit, miss, load and eviction counters since the cache was created.
+     */
+    public CacheStats getStats() {
+        return cache.synchronous().stats();
+    }
+
+    /**
+     * @return the approximate number of cached ids.
+     */
+    public long size() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    static Message copy(Message message) {
+        return new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                message.getTime_posted_epoch());
+    }
+}
@@ -0,0 +1,28 @@
+package Service;
+
+import Model.Message;
+
+/**
+ * Receives the changes MessageService makes to the 'message' table, after each one has been committed. Listeners keep
+ * derived state, such as caches and indexes, in step with the table. They are called on the writing thread, so they
+ * should be quick and must not throw.
+ */
+public interface MessageChangeListener {
+    /**
+     * @param message the message as inserted, including its generated message_id.
+     */
+    default void onMessageCreated(Message message) {
+    }
+
+    /**
+     * @param message the full message after the update.
+     */
+    default void onMessageUpdated(Message message) {
+    }
+
+    /**
+     * @param message the message as it was before it was deleted.
+     */
+    default void onMessageDeleted(Message message) {
+    }
+}
@@ -0,0 +1,65 @@
+package Service;
+
+import Model.Message;
+
+import java.util.function.Function;
+
+/**
+ * One change to the 'message' table as recorded in the MessageEventLog: what happened, to which message, and its
+ * position in the log. Immutable, apart from its serialized form, which is computed once and shared by every
+ * subscriber it is sent to.
+ */
+public class MessageEvent {
+    public enum Type {
+        CREATED, UPDATED, DELETED;
+
+        /**
+         * @return the name of the event on the stream, such as "created".
+         */
+        public String eventName() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final Message message;
+    private volatile String data;
+
+    public MessageEvent(long sequence, Type type, Message message) {
+        this.sequence = sequence;
+        this.type = type;
+        this.message = message;
+    }
+
+    /**
+     * @return the position of the event in the log, starting at 1.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the message after the change, or as it was before it was deleted. Must not be modified.
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * @param serializer turns the message into the payload of the event.
+     * @return the payload, serialized on the first call only.
+     */
+    public String getData(Function<Message, String> serializer) {
+        String serialized = data;
+        if (serialized == null) {
+            serialized = serializer.apply(message);
+            data = serialized;
+        }
+        return serialized;
+    }
+}
@@ -0,0 +1,145 @@
+package Service;
+
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The most recent changes to the 'message' table, in the order MessageService published them, for streaming to
+ * clients. Events are numbered from 1 and kept in a ring buffer of fixed size (stream.buffer.size, 4096 by default):
+ * each new event overwrites the oldest one, so memory stays the same however many events are published and however
+ * far behind a reader is.
+ *
+ * Readers keep their own cursor, the sequence of the last event they have seen, and read the events after it without
+ * locks. A reader that has fallen more than the buffer size behind gets null instead of events, and has to start over
+ * from the table. Event ids carry a random epoch chosen at startup, so an id from before a restart, whose sequence
+ * means nothing to this log, is recognised as such rather than resumed from.
+ */
+public class MessageEventLog implements MessageChangeListener {
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() >>> 16, 36);
+    private final AtomicReferenceArray<MessageEvent> events;
+    private final int mask;
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final List<Runnable> publishListeners = new CopyOnWriteArrayList<>();
+    private volatile long lastSequence;
+
+    /**
+     * Creates a log with the stream.buffer.size system property as capacity.
+     */
+    public MessageEventLog() {
+        this(Integer.getInteger("stream.buffer.size", 4096));
+    }
+
+    /**
+     * @param capacity number of events kept, rounded up to a power of two.
+     */
+    public MessageEventLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.events = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Registers a callback to be run on the publishing thread after every event. It should only signal whoever reads
+     * the log, not read it itself.
+     * @param listener the callback.
+     */
+    public void onPublish(Runnable listener) {
+        publishListeners.add(listener);
+    }
+
+    @Override
+    public void onMessageCreated(Message message) {
+        publish(MessageEvent.Type.CREATED, message);
+    }
+
+    @Override
+    public void onMessageUpdated(Message message) {
+        publish(MessageEvent.Type.UPDATED, message);
+    }
+
+    @Override
+    public void onMessageDeleted(Message message) {
+        publish(MessageEvent.Type.DELETED, message);
+    }
+
+    private void publish(MessageEvent.Type type, Message message) {
+        Message copy = MessageCache.copy(message);
+        publishLock.lock();
+        try {
+            long sequence = lastSequence + 1;
+            events.set((int) sequence & mask, new MessageEvent(sequence, type, copy));
+            lastSequence = sequence;
+        } finally {
+            publishLock.unlock();
+        }
+        for (Runnable listener : publishListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @return the sequence of the newest event, or 0 if none has been published.
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return the number of events kept.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @param after the sequence of the last event the reader has seen.
+     * @return the events after it, oldest first, or null if some of them have already been overwritten.
+     */
+    public List<MessageEvent> readAfter(long after) {
+        long last = lastSequence;
+        if (last - after > getCapacity()) {
+            return null;
+        }
+        List<MessageEvent> read = new ArrayList<>((int) Math.max(0, last - after));
+        for (long sequence = after + 1; sequence <= last; sequence++) {
+            MessageEvent event = events.get((int) sequence & mask);
+            // overwritten by a publish since lastSequence was read
+            if (event == null || event.getSequence() != sequence) {
+                return null;
+            }
+            read.add(event);
+        }
+        return read;
+    }
+
+    /**
+     * @param sequence the sequence of an event.
+     * @return the id of the event on the stream.
+     */
+    public String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    /**
+     * @param id an event id sent by a client, usually in the Last-Event-ID header of a reconnect.
+     * @return the sequence of the event, or -1 if the id is malformed or from before a restart.
+     */
+    public long parseEventId(String id) {
+        int dash = id.lastIndexOf('-');
+        if (dash < 0 || !id.substring(0, dash).equals(epoch)) {
+            return -1;
+        }
+        try {
+            long sequence = Long.parseLong(id.substring(dash + 1));
+            return sequence < 0 || sequence > lastSequence ? -1 : sequence;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package Service;
+
+import DAO.MessageCursor;
+import DAO.MessageDAO;
+import DAO.MessagePage;
+import DAO.MessageRowCursor;
+import Model.Message;
+import Util.WarmUp;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Every message, in memory, for the listings of the whole 'message' table in message_id order, which are the most
+ * read pages of the API. The table stays the system of record: the read model is loaded from it at startup and then
+ * kept current from the MessageService change events, so GET /messages is answered without a query, or a trip
+ * through the DB executor.
+ *
+ * The messages are held as one immutable array sorted by message_id, published through a volatile field. A reader
+ * takes the current array once and pages through it without locks, and always sees the table as of one change.
+ * Changes are serialized by a lock and each replaces the array with a patched copy, so a write costs a copy of the
+ * array (a few microseconds per 10 000 messages); that suits a table read far more often than it is written.
+ *
+ * Until the load has finished the read model is not ready and listings are read from the database. Changes that arrive
+ * during the load are kept and applied to its result, and like in TimelineCache, applying a change is idempotent and
+ * the ids of recently deleted messages are remembered, so a create published after the delete of the same message
+ * does not bring it back.
+ *
+ * Two updates of one message can publish in the opposite order to their commits, and the event does not tell which
+ * text is newer, so an update re-reads the row under the lock and applies what it reads instead of the event. The
+ * last update applied then reads after every commit so far; only if the re-read finds nothing is the event used.
+ */
+public class MessageReadModel implements MessageChangeListener {
+    private static final Logger log = LoggerFactory.getLogger(MessageReadModel.class);
+    private static final Comparator<Message> BY_ID = Comparator.comparingInt(Message::getMessage_id);
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Cache<Integer, Boolean> recentlyDeleted = Caffeine.newBuilder()
+            .maximumSize(TimelineCache.RECENT_DELETES)
+            .build();
+    private volatile Message[] snapshot;
+    private volatile MessageDAO messageDAO;
+    /**
+     * Changes received while loading, applied in order once the load is done; null once the read model is ready.
+     */
+    private List<UnaryOperator<Message[]>> pendingChanges = new ArrayList<>();
+
+    /**
+     * Loads every message on a background thread, marking the read model ready when done. If the load fails, the
+     * read model stays not ready, and listings keep being read from the database, until a retry succeeds.
+     * @param messageDAO the DAO to stream the messages from.
+     */
+    public void warmUp(MessageDAO messageDAO) {
+        WarmUp.start("message-read-model-warmup", () -> build(messageDAO));
+    }
+
+    /**
+     * Loads every message on the calling thread and marks the read model ready.
+     * @param messageDAO the DAO to stream the messages from.
+     * @return true if the load succeeded.
+     */
+    public boolean build(MessageDAO messageDAO) {
+        this.messageDAO = messageDAO;
+        long start = System.nanoTime();
+        List<Message> loaded = new ArrayList<>();
+        try (MessageRowCursor cursor = messageDAO.streamMessages(null)) {
+            while (cursor.next()) {
+                loaded.add(cursor.toMessage());
+            }
+        } catch (SQLException e) {
+            log.warn("Message read model load failed after {} messages: {}", loaded.size(), e.getMessage());
+            return false;
+        }
+        Message[] messages = loaded.toArray(new Message[0]);
+        Arrays.sort(messages, BY_ID);
+        writeLock.lock();
+        try {
+            for (UnaryOperator<Message[]> change : pendingChanges) {
+                messages = change.apply(messages);
+            }
+            pendingChanges = null;
+            snapshot = messages;
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("Loaded {} messages into the read model in {} ms", messages.length,
+                (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    /**
+     * @return true once the load has finished, after which every change is applied as it is published.
+     */
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * @return the number of messages held, or 0 while loading.
+     */
+    public int size() {
+        Message[] messages = snapshot;
+        return messages == null ? 0 : messages.length;
+    }
+
+    /**
+     * @return copies of every message in message_id order.
+     * @throws IllegalStateException if the read model is not ready.
+     */
+    public List<Message> getAll() {
+        Message[] messages = readySnapshot();
+        List<Message> copies = new ArrayList<>(messages.length);
+        for (Message message : messages) {
+            copies.add(MessageCache.copy(message));
+        }
+        return copies;
+    }
+
+    /**
+     * Returns one message_id ordered page of all messages. The page and its cursors are the same as
+     * MessageDAO.getMessagesPage would return.
+     * @param after return the messages following this cursor, or null.
+     * @param before return the messages preceding this cursor, or null. Ignored when 'after' is given.
+     * @param limit maximum number of messages on the page.
+     * @return the page with its next/prev cursors.
+     * @throws IllegalStateException if the read model is not ready.
+     */
+    public MessagePage page(MessageCursor after, MessageCursor before, int limit) {
+        Message[] messages = readySnapshot();
+        boolean backwards = after == null && before != null;
+        List<Message> fetched = new ArrayList<>(Math.min(limit + 1, messages.length));
+        if (backwards) {
+            for (int i = lowerBound(messages, before.getMessageId()) - 1; i >= 0 && fetched.size() <= limit; i--) {
+                fetched.add(MessageCache.copy(messages[i]));
+            }
+        } else {
+            int start = after == null ? 0 : lowerBound(messages, after.getMessageId() + 1);
+            for (int i = start; i < messages.length && fetched.size() <= limit; i++) {
+                fetched.add(MessageCache.copy(messages[i]));
+            }
+        }
+        return MessagePage.of(fetched, limit, MessageCursor.Order.ID, after != null, backwards);
+    }
+
+    private Message[] readySnapshot() {
+        Message[] messages = snapshot;
+        if (messages == null) {
+            throw new IllegalStateException("the message read model is still loading");
+        }
+        return messages;
+    }
+
+    @Override
+    public void onMessageCreated(Message message) {
+        Message copy = MessageCache.copy(message);
+        apply(messages -> upsertUnlessDeleted(messages, copy, false));
+    }
+
+    @Override
+    public void onMessageUpdated(Message message) {
+        Message copy = MessageCache.copy(message);
+        apply(messages -> upsertUnlessDeleted(messages, reread(copy), true));
+    }
+
+    @Override
+    public void onMessageDeleted(Message message) {
+        // recorded before the snapshot is patched, so a create applied after this delete always sees it
+        recentlyDeleted.put(message.getMessage_id(), Boolean.TRUE);
+        apply(messages -> remove(messages, message.getMessage_id()));
+    }
+
+    /**
+     * Publishes a patched copy of the snapshot, or keeps the change for the end of the load.
+     */
+    private void apply(UnaryOperator<Message[]> change) {
+        writeLock.lock();
+        try {
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            } else {
+                snapshot = change.apply(snapshot);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the message's committed row, or the given message if it cannot be read.
+     */
+    private Message reread(Message message) {
+        Message row = messageDAO == null ? null : messageDAO.getMessageByID(message.getMessage_id());
+        return row != null ? row : message;
+    }
+
+    /**
+     * Inserts the message, or replaces the held copy of it if 'replace' is set. Creates do not replace: a create event
+     * published after an update of the same message, or after a load that read the edited row, carries the older text.
+     */
+    private Message[] upsertUnlessDeleted(Message[] messages, Message message, boolean replace) {
+        if (recentlyDeleted.getIfPresent(message.getMessage_id()) != null) {
+            return messages;
+        }
+        int index = lowerBound(messages, message.getMessage_id());
+        if (index < messages.length && messages[index].getMessage_id() == message.getMessage_id()) {
+            if (!replace) {
+                return messages;
+            }
+            Message[] replaced = messages.clone();
+            replaced[index] = message;
+            return replaced;
+        }
+        Message[] inserted = new Message[messages.length + 1];
+        System.arraycopy(messages, 0, inserted, 0, index);
+        inserted[index] = message;
+        System.arraycopy(messages, index, inserted, index + 1, messages.length - index);
+        return inserted;
+    }
+
+    private static Message[] remove(Message[] messages, int id) {
+        int index = lowerBound(messages, id);
+        if (index == messages.length || messages[index].getMessage_id() != id) {
+            return messages;
+        }
+        Message[] removed = new Message[messages.length - 1];
+        System.arraycopy(messages, 0, removed, 0, index);
+        System.arraycopy(messages, index + 1, removed, index, messages.length - index - 1);
+        return removed;
+    }
+
+    /**
+     * @return index of the first message whose message_id is at least the given id.
+     */
+    private static int lowerBound(Message[] messages, int id) {
+        int low = 0;
+        int high = messages.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (messages[mid].getMessage_id() < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,661 @@
+package Service;
+
+import DAO.MessageDAO;
+import DAO.MessageRowCursor;
+import Model.Message;
+import Util.WarmUp;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory inverted index over 'message_text', so messages can be searched by word without a LIKE '%term%' scan of
+ * the message table. Text is split into terms at every character that is not a letter or digit and lowercased. Each
+ * term maps to a posting list: a growable int array of the message_ids containing it, kept sorted, which costs four
+ * bytes per occurrence instead of the 16 or more of a boxed collection. Terms are looked up in a hash map, and also
+ * kept in a sorted map so a prefix query ("hel*") is a range scan over the dictionary. A prefix matching a few terms
+ * merges their posting lists as it goes; one matching more is turned into a bitset of message_ids first.
+ *
+ * A search returns message_ids newest first (message_ids are assigned in insertion order), walking the shortest of the
+ * query terms' candidate lists downwards and checking each id against the others, so it stops as soon as a page is
+ * full and a cursor (the last id returned) makes the next page just as cheap.
+ *
+ * The index is filled by a background warm-up that streams the message table, and kept current as a
+ * MessageChangeListener. A deleted message is recorded in a bitset of dead ids, which every search skips; its postings
+ * are left in place since ids are never reused. An update adds the postings of the new text but, as the old text is not
+ * known, cannot remove those of the old one, so the index may return a message that no longer contains the query:
+ * callers must check the text of every message they load with {@link Query#matches(String)}.
+ *
+ * The index keeps a running estimate of its size, and gives up if that passes its budget, the system property
+ * search.index.maxBytes (a quarter of the maximum heap by default): it drops its contents and is never ready again,
+ * so a table with more distinct words than the heap can hold costs the search endpoint rather than the server.
+ *
+ * One read-write lock guards the index: searches share it while they pick their page of ids, writes take it alone for
+ * the few array updates of one message.
+ */
+public class MessageSearchIndex implements MessageChangeListener {
+    private static final Logger log = LoggerFactory.getLogger(MessageSearchIndex.class);
+    static int MAX_TERM_LENGTH = 32;
+    static int MAX_QUERY_TERMS = 8;
+    static int MAX_MERGED_TERMS = 16;
+    // per term: a HashMap node and table slot (40), a TreeMap entry (40), the String and its byte array (24 + 16) and
+    // a Postings (24) with its array header (16), plus one byte per character
+    private static final long TERM_BYTES = 160;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> terms = new HashMap<>();
+    private final TreeMap<String, Postings> sortedTerms = new TreeMap<>();
+    private final long maxBytes;
+    private long[] deleted = new long[1024];
+    private long bytes = 8L * deleted.length;
+    private long postingCount;
+    private int maxId;
+    private boolean overBudget;
+    private volatile boolean ready;
+
+    /**
+     * Creates an empty index with the memory budget given by the search.index.maxBytes system property.
+     */
+    public MessageSearchIndex() {
+        this(Long.getLong("search.index.maxBytes", Runtime.getRuntime().maxMemory() / 4));
+    }
+
+    /**
+     * @param maxBytes the estimated size past which the index drops its contents and stops indexing.
+     */
+    public MessageSearchIndex(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Indexes the terms of a message. Adding the same message again is harmless.
+     * @param messageId the message_id.
+     * @param text the message_text.
+     */
+    public void add(int messageId, String text) {
+        Collection<String> messageTerms = distinctTerms(text);
+        lock.writeLock().lock();
+        try {
+            if (overBudget) {
+                return;
+            }
+            for (String term : messageTerms) {
+                Postings postings = terms.get(term);
+                if (postings == null) {
+                    postings = new Postings();
+                    terms.put(term, postings);
+                    sortedTerms.put(term, postings);
+                    bytes += TERM_BYTES + term.length() + 4L * postings.ids.length;
+                }
+                int capacity = postings.ids.length;
+                if (postings.add(messageId)) {
+                    postingCount++;
+                    bytes += 4L * (postings.ids.length - capacity);
+                }
+            }
+            maxId = Math.max(maxId, messageId);
+            checkBudget();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks a message as deleted, so no search returns it again.
+     * @param messageId the message_id.
+     */
+    public void remove(int messageId) {
+        if (messageId < 0) {
+            return;
+        }
+        int word = messageId >>> 6;
+        lock.writeLock().lock();
+        try {
+            if (overBudget) {
+                return;
+            }
+            if (word >= deleted.length) {
+                int length = Math.max(word + 1, deleted.length * 2);
+                bytes += 8L * (length - deleted.length);
+                deleted = Arrays.copyOf(deleted, length);
+            }
+            deleted[word] |= 1L << messageId;
+            checkBudget();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void checkBudget() {
+        if (bytes > maxBytes) {
+            overBudget = true;
+            ready = false;
+            terms.clear();
+            sortedTerms.clear();
+            deleted = new long[0];
+            log.warn("Search index passed its budget of {} bytes after {} postings; search is disabled", maxBytes,
+                    postingCount);
+        }
+    }
+
+    @Override
+    public void onMessageCreated(Message message) {
+        add(message.getMessage_id(), message.getMessage_text());
+    }
+
+    @Override
+    public void onMessageUpdated(Message message) {
+        add(message.getMessage_id(), message.getMessage_text());
+    }
+
+    @Override
+    public void onMessageDeleted(Message message) {
+        remove(message.getMessage_id());
+    }
+
+    /**
+     * Finds the newest messages that may match the query.
+     * @param query a parsed query.
+     * @param beforeId only return message_ids below this one.
+     * @param count maximum number of ids to return.
+     * @return candidate message_ids in descending order; each still has to be checked with {@link Query#matches}.
+     */
+    public int[] search(Query query, int beforeId, int count) {
+        lock.readLock().lock();
+        try {
+            List<Candidates> lists = new ArrayList<>(query.terms.size());
+            for (QueryTerm term : query.terms) {
+                Candidates candidates = candidates(term);
+                if (candidates == null) {
+                    return new int[0];
+                }
+                lists.add(candidates);
+            }
+            Candidates driver = lists.get(0);
+            for (Candidates candidates : lists) {
+                if (candidates.size() < driver.size()) {
+                    driver = candidates;
+                }
+            }
+
+            int[] found = new int[count];
+            int n = 0;
+            DescendingIds ids = driver.descendingFrom(beforeId);
+            for (int id = ids.next(); id >= 0 && n < count; id = ids.next()) {
+                if (!isDeleted(id) && containedInAll(lists, driver, id)) {
+                    found[n++] = id;
+                }
+            }
+            return n == count ? found : Arrays.copyOf(found, n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean containedInAll(List<Candidates> lists, Candidates driver, int id) {
+        for (Candidates candidates : lists) {
+            if (candidates != driver && !candidates.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the ids containing the term, or null if there are none.
+     */
+    private Candidates candidates(QueryTerm term) {
+        if (!term.prefix) {
+            Postings postings = terms.get(term.text);
+            return postings == null || postings.size == 0 ? null : postings;
+        }
+        Collection<Postings> matching = sortedTerms.subMap(term.text, true, term.text + Character.MAX_VALUE, true)
+                .values();
+        if (matching.isEmpty()) {
+            return null;
+        }
+        if (matching.size() == 1) {
+            return matching.iterator().next();
+        }
+        if (matching.size() <= MAX_MERGED_TERMS) {
+            return new Merged(matching.toArray(new Postings[0]));
+        }
+        return Bitset.union(matching, maxId);
+    }
+
+    private boolean isDeleted(int id) {
+        int word = id >>> 6;
+        return word < deleted.length && (deleted[word] & (1L << id)) != 0;
+    }
+
+    /**
+     * @return true once every message that existed at startup has been indexed, unless the index then went over its
+     * budget.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Indexes every existing message on a background thread, marking the index ready when done. If the load fails it
+     * is retried, and messages indexed by the failed attempt are indexed again harmlessly; if it goes over the budget,
+     * the index stays not ready.
+     * @param messageDAO the DAO to stream the messages from.
+     */
+    public void warmUp(MessageDAO messageDAO) {
+        WarmUp.start("message-search-warmup", () -> {
+            if (build(messageDAO)) {
+                markReady();
+                return true;
+            }
+            return isOverBudget();
+        });
+    }
+
+    private void markReady() {
+        lock.writeLock().lock();
+        try {
+            ready = !overBudget;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes every existing message on the calling thread.
+     * @param messageDAO the DAO to stream the messages from.
+     * @return true if every message was indexed.
+     */
+    public boolean build(MessageDAO messageDAO) {
+        long start = System.nanoTime();
+        int count = 0;
+        try (MessageRowCursor cursor = messageDAO.streamMessages(null)) {
+            while (cursor.next()) {
+                if (isOverBudget()) {
+                    return false;
+                }
+                add(cursor.getMessageId(), cursor.getMessageText());
+                count++;
+            }
+        } catch (SQLException e) {
+            log.warn("Search index warm-up failed after {} messages: {}", count, e.getMessage());
+            return false;
+        }
+        log.info("Indexed {} messages ({} terms) in {} ms", count, getTermCount(),
+                (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    private boolean isOverBudget() {
+        lock.readLock().lock();
+        try {
+            return overBudget;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct terms.
+     */
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return estimated heap used by the dictionary, the posting arrays and the deleted-id bitset, in bytes.
+     */
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of (term, message) pairs indexed.
+     */
+    public long getPostingCount() {
+        lock.readLock().lock();
+        try {
+            return postingCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits text into lowercase terms of letters and digits, each cut to MAX_TERM_LENGTH characters.
+     * @param text the text to split.
+     * @return the terms in order of appearance, with repeats.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalize(text.substring(start, i)));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static Collection<String> distinctTerms(String text) {
+        return new HashSet<>(tokenize(text));
+    }
+
+    private static String normalize(String token) {
+        String lower = token.toLowerCase(Locale.ROOT);
+        return lower.length() > MAX_TERM_LENGTH ? lower.substring(0, MAX_TERM_LENGTH) : lower;
+    }
+
+    /**
+     * Parses a search query: whitespace separated words that must all appear in a message, where a word ending in
+     * '*' matches any term starting with it.
+     * @param q the query string.
+     * @return the parsed query.
+     * @throws IllegalArgumentException if the query has no terms or more than MAX_QUERY_TERMS.
+     */
+    public static Query parse(String q) {
+        List<QueryTerm> queryTerms = new ArrayList<>();
+        if (q != null) {
+            for (String word : q.trim().split("\\s+")) {
+                boolean prefix = word.endsWith("*");
+                List<String> tokens = tokenize(word);
+                for (int i = 0; i < tokens.size(); i++) {
+                    queryTerms.add(new QueryTerm(tokens.get(i), prefix && i == tokens.size() - 1));
+                }
+            }
+        }
+        if (queryTerms.isEmpty()) {
+            throw new IllegalArgumentException("q must contain at least one word");
+        }
+        if (queryTerms.size() > MAX_QUERY_TERMS) {
+            throw new IllegalArgumentException("q may contain at most " + MAX_QUERY_TERMS + " words");
+        }
+        return new Query(queryTerms);
+    }
+
+    /**
+     * A parsed search query.
+     */
+    public static final class Query {
+        private final List<QueryTerm> terms;
+
+        Query(List<QueryTerm> terms) {
+            this.terms = terms;
+        }
+
+        /**
+         * @param text a message_text.
+         * @return true if the text contains every term of the query.
+         */
+        public boolean matches(String text) {
+            Set<String> textTerms = new HashSet<>(tokenize(text));
+            for (QueryTerm term : terms) {
+                if (!term.matchesAny(textTerms)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class QueryTerm {
+        final String text;
+        final boolean prefix;
+
+        QueryTerm(String text, boolean prefix) {
+            this.text = text;
+            this.prefix = prefix;
+        }
+
+        boolean matchesAny(Set<String> textTerms) {
+            if (!prefix) {
+                return textTerms.contains(text);
+            }
+            for (String textTerm : textTerms) {
+                if (textTerm.startsWith(text)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A set of message_ids that can be walked downwards.
+     */
+    private interface Candidates {
+        /**
+         * @return the number of ids, used to pick the shortest list to walk.
+         */
+        int size();
+
+        boolean contains(int id);
+
+        /**
+         * @return the ids below the given one, largest first.
+         */
+        DescendingIds descendingFrom(int beforeId);
+    }
+
+    private interface DescendingIds {
+        /**
+         * @return the next id, or -1 when there are no more.
+         */
+        int next();
+    }
+
+    /**
+     * The sorted message_ids containing one term.
+     */
+    private static final class Postings implements Candidates {
+        int[] ids = new int[2];
+        int size;
+
+        /**
+         * @return false if the id was already present.
+         */
+        boolean add(int id) {
+            if (size == 0 || ids[size - 1] < id) {
+                grow();
+                ids[size++] = id;
+                return true;
+            }
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return false;
+            }
+            int insertAt = -index - 1;
+            grow();
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+            return true;
+        }
+
+        private void grow() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 2);
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        /**
+         * @return the index of the largest id below the given one, or -1 if there is none.
+         */
+        int indexBelow(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            return (index >= 0 ? index : -index - 1) - 1;
+        }
+
+        @Override
+        public DescendingIds descendingFrom(int beforeId) {
+            int[] index = {indexBelow(beforeId)};
+            return () -> index[0] >= 0 ? ids[index[0]--] : -1;
+        }
+    }
+
+    /**
+     * The union of a few posting lists, for a prefix that matches more than one term, walked by merging them.
+     */
+    private static final class Merged implements Candidates {
+        final Postings[] lists;
+        final int size;
+
+        Merged(Postings[] lists) {
+            this.lists = lists;
+            int total = 0;
+            for (Postings postings : lists) {
+                total += postings.size;
+            }
+            this.size = total;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(int id) {
+            for (Postings postings : lists) {
+                if (postings.contains(id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public DescendingIds descendingFrom(int beforeId) {
+            // heads of the lists as (id << 32 | list), largest id first
+            PriorityQueue<Long> heads = new PriorityQueue<>(lists.length, (a, b) -> Long.compare(b, a));
+            int[] positions = new int[lists.length];
+            for (int i = 0; i < lists.length; i++) {
+                positions[i] = lists[i].indexBelow(beforeId);
+                if (positions[i] >= 0) {
+                    heads.add((long) lists[i].ids[positions[i]] << 32 | i);
+                }
+            }
+            int[] last = {-1};
+            return () -> {
+                while (!heads.isEmpty()) {
+                    long head = heads.poll();
+                    int id = (int) (head >>> 32);
+                    int list = (int) head;
+                    if (--positions[list] >= 0) {
+                        heads.add((long) lists[list].ids[positions[list]] << 32 | list);
+                    }
+                    if (id != last[0]) {
+                        last[0] = id;
+                        return id;
+                    }
+                }
+                return -1;
+            };
+        }
+    }
+
+    /**
+     * The union of several posting lists, for a prefix that matches more than one term.
+     */
+    private static final class Bitset implements Candidates {
+        final long[] words;
+        final int size;
+
+        private Bitset(long[] words, int size) {
+            this.words = words;
+            this.size = size;
+        }
+
+        static Bitset union(Collection<Postings> lists, int maxId) {
+            long[] words = new long[(maxId >>> 6) + 1];
+            int size = 0;
+            for (Postings postings : lists) {
+                for (int i = 0; i < postings.size; i++) {
+                    int id = postings.ids[i];
+                    words[id >>> 6] |= 1L << id;
+                }
+                size += postings.size;
+            }
+            return new Bitset(words, size);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(int id) {
+            int word = id >>> 6;
+            return word < words.length && (words[word] & (1L << id)) != 0;
+        }
+
+        @Override
+        public DescendingIds descendingFrom(int beforeId) {
+            int[] current = {beforeId};
+            return () -> current[0] = previous(current[0]);
+        }
+
+        /**
+         * @return the largest id below the given one, or -1 if there is none.
+         */
+        int previous(int id) {
+            if (id <= 0) {
+                return -1;
+            }
+            int last = id - 1;
+            int word = Math.min(last >>> 6, words.length - 1);
+            long bits = word == last >>> 6 ? words[word] & (-1L >>> (63 - (last & 63))) : words[word];
+            while (true) {
+                if (bits != 0) {
+                    return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+                }
+                if (--word < 0) {
+                    return -1;
+                }
+                bits = words[word];
+            }
+        }
+    }
+}
@@ -1,102 +1,485 @@
 package Service;
 
+import DAO.MessageCursor;
 import DAO.MessageDAO;
+import DAO.MessageGroupCommitter;
+import DAO.MessagePage;
+import DAO.MessageRowCursor;
 import Model.Message;
+import Util.ForbiddenException;
+import Util.OverloadedException;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class MessageService {
     static int MAX_MESSAGE_LENGTH = 255;
+    static int DEFAULT_PAGE_SIZE = 100;
+    static int MAX_PAGE_SIZE = 1000;
+    static int MAX_BATCH_SIZE = Integer.getInteger("messages.batch.maxSize", 1000);
     public MessageDAO messageDAO;
-    
+    private AccountIndex accountIndex;
+    private MessageCache messageCache;
+    private TimelineCache timelineCache;
+    private MessageSearchIndex searchIndex;
+    private WriteGenerations writeGenerations = new WriteGenerations();
+    private MessageGroupCommitter groupCommitter;
+    private MessageReadModel readModel;
+    private List<MessageChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
     /**
      * No-args constructor for MessageService which creates a MessageDAO.
      */
     public MessageService() {
-        messageDAO = new MessageDAO();
+        this(new MessageDAO());
     }
 
     /**
      * Constructor for a MessageService when a MessageDAO is provided.
      */
     public MessageService(MessageDAO messageDAO) {
+        this(messageDAO, new AccountIndex());
+    }
+
+    /**
+     * Constructor for a MessageService when a MessageDAO and the index of known account ids are provided.
+     */
+    public MessageService(MessageDAO messageDAO, AccountIndex accountIndex) {
+        this(messageDAO, accountIndex, new MessageSearchIndex());
+    }
+
+    /**
+     * Constructor for a MessageService when a MessageDAO, the index of known account ids and the full-text search
+     * index are provided.
+     */
+    public MessageService(MessageDAO messageDAO, AccountIndex accountIndex, MessageSearchIndex searchIndex) {
+        this(messageDAO, accountIndex, new MessageCache(), new TimelineCache(), searchIndex);
+    }
+
+    /**
+     * Constructor for a MessageService when a MessageDAO, the index of known account ids and the caches in front
+     * of the MessageDAO are provided.
+     */
+    public MessageService(MessageDAO messageDAO, AccountIndex accountIndex, MessageCache messageCache,
+                          TimelineCache timelineCache) {
+        this(messageDAO, accountIndex, messageCache, timelineCache, new MessageSearchIndex());
+    }
+
+    /**
+     * Constructor for a MessageService when a MessageDAO, the index of known account ids, the caches in front
+     * of the MessageDAO and the full-text search index are provided.
+     */
+    public MessageService(MessageDAO messageDAO, AccountIndex accountIndex, MessageCache messageCache,
+                          TimelineCache timelineCache, MessageSearchIndex searchIndex) {
         this.messageDAO = messageDAO;
+        this.accountIndex = accountIndex;
+        this.messageCache = messageCache;
+        this.timelineCache = timelineCache;
+        this.searchIndex = searchIndex;
+        timelineCache.readRowsWith(messageDAO::getMessageByID);
+        addChangeListener(messageCache);
+        addChangeListener(timelineCache);
+        addChangeListener(searchIndex);
+    }
+
+    /**
+     * Registers a listener to be told about every message this service creates, updates or deletes.
+     * @param listener the listener.
+     */
+    public void addChangeListener(MessageChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Makes addMessage insert through a group committer, which shares one transaction between concurrent inserts,
+     * instead of inserting each message in a transaction of its own.
+     * @param groupCommitter the committer, or null to insert each message directly again.
+     */
+    public void useGroupCommit(MessageGroupCommitter groupCommitter) {
+        this.groupCommitter = groupCommitter;
+    }
+
+    /**
+     * Serves the listings of all messages in message_id order, and getAllMessages, from an in-memory read model once
+     * it has loaded, instead of the messageDAO. The read model is registered for the change events, so it should be
+     * warmed up after this call.
+     * @param readModel the read model.
+     */
+    public void useReadModel(MessageReadModel readModel) {
+        addChangeListener(readModel);
+        this.readModel = readModel;
     }
 
     /**
-     * Uses messageDAO to add a new message to the 'message' table. First confirms that
-     * the message is posted by an actual user and then makes sure that the message is of appropiate length.
+     * @return true if the page getMessagesPage would return for these arguments is read from memory, without the
+     * messageDAO.
+     */
+    public boolean isPageInMemory(Integer postedBy, MessageCursor.Order order, MessageCursor after,
+                                  MessageCursor before) {
+        MessageCursor cursor = after != null ? after : before;
+        MessageCursor.Order pageOrder = cursor != null ? cursor.getOrder() : order;
+        return postedBy == null && pageOrder == MessageCursor.Order.ID && readModel != null && readModel.isReady();
+    }
+
+    /**
+     * Uses messageDAO, or the group committer if one is in use, to add a new message to the 'message' table. First
+     * confirms that the message is posted by an actual user and then makes sure that the message is of appropiate
+     * length.
      * @param message a message object.
      * @return the message that is added.
      */
     public Message addMessage(Message message) {
-        if (messageDAO.confirmMessageAccount(message.getPosted_by())) {
+        if (accountExists(message.getPosted_by())) {
             if (message.getMessage_text().length() <= MAX_MESSAGE_LENGTH && !message.getMessage_text().isBlank()){
-                return messageDAO.createMessage(message);
+                MessageGroupCommitter committer = groupCommitter;
+                Message createdMessage = committer != null ? committer.createMessage(message)
+                        : messageDAO.createMessage(message);
+                if (createdMessage != null) {
+                    for (MessageChangeListener listener : changeListeners) {
+                        listener.onMessageCreated(createdMessage);
+                    }
+                    writeGenerations.bump(createdMessage);
+                }
+                return createdMessage;
             }
         }
         return null;
     }
     
     /**
-     * Uses messageDAO to get all messages from the 'message' table.
+     * Uses messageDAO to add several messages to the 'message' table in one transaction. Each message is validated
+     * like in addMessage, with the distinct posted_by values checked together, and messages that fail validation are
+     * reported without stopping the others. The valid messages are then inserted all together or, if the insert
+     * fails, not at all.
+     * @param messages the messages in request order.
+     * @return the generated ids in request order and an error for every message that was not created.
+     * @throws IllegalArgumentException if the batch is empty or larger than MAX_BATCH_SIZE.
+     */
+    public BatchResult addMessages(List<Message> messages) {
+        if (messages.isEmpty() || messages.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("a batch must hold between 1 and " + MAX_BATCH_SIZE + " messages");
+        }
+        BatchResult result = new BatchResult(messages.size());
+        Set<Integer> accounts = existingAccounts(messages);
+
+        List<Message> valid = new ArrayList<>(messages.size());
+        List<Integer> validIndexes = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            String text = message == null ? null : message.getMessage_text();
+            if (message == null || text == null || text.isBlank()) {
+                result.rejected(i, "message_text must not be blank");
+            } else if (text.length() > MAX_MESSAGE_LENGTH) {
+                result.rejected(i, "message_text must be at most " + MAX_MESSAGE_LENGTH + " characters");
+            } else if (accounts == null) {
+                result.rejected(i, "posted_by could not be checked");
+            } else if (!accounts.contains(message.getPosted_by())) {
+                result.rejected(i, "posted_by is not an existing account");
+            } else {
+                valid.add(message);
+                validIndexes.add(i);
+            }
+        }
+        if (valid.isEmpty()) {
+            return result;
+        }
+
+        List<Message> createdMessages = messageDAO.createMessages(valid);
+        for (int i = 0; i < validIndexes.size(); i++) {
+            if (createdMessages == null) {
+                result.rejected(validIndexes.get(i), "the batch insert failed");
+            } else {
+                result.created(validIndexes.get(i), createdMessages.get(i).getMessage_id());
+            }
+        }
+        if (createdMessages != null) {
+            for (Message createdMessage : createdMessages) {
+                for (MessageChangeListener listener : changeListeners) {
+                    listener.onMessageCreated(createdMessage);
+                }
+                writeGenerations.bump(createdMessage);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds which of the distinct posted_by values of a batch are existing accounts, asking the messageDAO for all
+     * ids the accountIndex does not know in one query, and only while the index is still warming up.
+     * @return the existing account ids, or null if they could not be checked.
+     */
+    private Set<Integer> existingAccounts(List<Message> messages) {
+        Set<Integer> existing = new HashSet<>();
+        Set<Integer> unknown = new HashSet<>();
+        for (Message message : messages) {
+            if (message != null) {
+                int accountId = message.getPosted_by();
+                if (accountIndex.contains(accountId)) {
+                    existing.add(accountId);
+                } else {
+                    unknown.add(accountId);
+                }
+            }
+        }
+        if (!unknown.isEmpty() && !accountIndex.isReady()) {
+            Set<Integer> found = messageDAO.findExistingAccounts(unknown);
+            if (found == null) {
+                return null;
+            }
+            existing.addAll(found);
+        }
+        return existing;
+    }
+
+    /**
+     * Checks that an account exists using the accountIndex, and only asks the messageDAO while the index
+     * is still warming up and does not know the id yet.
+     * @param accountId the value of 'posted_by'.
+     * @return true if the account exists.
+     */
+    private boolean accountExists(int accountId) {
+        if (accountIndex.contains(accountId)) {
+            return true;
+        }
+        return !accountIndex.isReady() && messageDAO.confirmMessageAccount(accountId);
+    }
+
+    /**
+     * Uses the read model when it is in use and loaded, and messageDAO otherwise, to get all messages from the
+     * 'message' table.
      * @return a list of messages
      */
     public List<Message> getAllMessages() {
+        MessageReadModel model = readModel;
+        if (model != null && model.isReady()) {
+            return model.getAll();
+        }
         return messageDAO.getAllMessages();
     }
 
     /**
-     * Uses messageDAO to get all messages from the 'message' table that correspond to
-     * the given user.
+     * Uses messageDAO to get one page of messages, either from the whole 'message' table or only those
+     * posted by the given user. Pages of one user's messages in message_id order are served from the
+     * timelineCache, and pages of all messages in message_id order from the read model when it is in use and loaded.
+     * @param postedBy the value of 'posted_by', or null for all messages.
+     * @param order the listing order when no cursor is given.
+     * @param after return the messages following this cursor, or null.
+     * @param before return the messages preceding this cursor, or null.
+     * @param limit the page size, or null for the default. Capped at MAX_PAGE_SIZE.
+     * @return a page of messages with its next/prev cursors.
+     * @throws IllegalArgumentException if the limit is not positive.
+     */
+    public MessagePage getMessagesPage(Integer postedBy, MessageCursor.Order order, MessageCursor after,
+                                       MessageCursor before, Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        MessageCursor cursor = after != null ? after : before;
+        MessageCursor.Order pageOrder = cursor != null ? cursor.getOrder() : order;
+        if (postedBy != null && pageOrder == MessageCursor.Order.ID) {
+            return timelineCache.page(postedBy, messageDAO::getAllMessagesByUser, after, before, pageSize);
+        }
+        if (isPageInMemory(postedBy, order, after, before)) {
+            return readModel.page(after, before, pageSize);
+        }
+        return messageDAO.getMessagesPage(postedBy, order, after, before, pageSize);
+    }
+
+    /**
+     * Uses the searchIndex to find messages whose text contains every word of the query, newest first, and the
+     * messageDAO to load them. Candidates from the index are checked against their current text, since the index
+     * may still hold words an update removed, and more are fetched until the page is full or there are none left.
+     * @param q the query: words that must all appear, where a word ending in '*' matches any word starting with it.
+     * @param after return the messages following this cursor, or null.
+     * @param limit the page size, or null for the default. Capped at MAX_PAGE_SIZE.
+     * @return a page of matching messages with a next cursor if there may be more.
+     * @throws IllegalArgumentException if the query has no words or the limit is not positive.
+     * @throws OverloadedException if the index is still loading or over its budget, or a batch of messages could not
+     * be read.
+     */
+    public MessagePage searchMessages(String q, MessageCursor after, Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        MessageSearchIndex.Query query = MessageSearchIndex.parse(q);
+        if (!searchIndex.isReady()) {
+            throw new OverloadedException("Search index is not ready", 1);
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        List<Message> found = new ArrayList<>(pageSize + 1);
+        int beforeId = after == null ? Integer.MAX_VALUE : after.getMessageId();
+        while (found.size() <= pageSize) {
+            int[] ids = searchIndex.search(query, beforeId, pageSize + 1 - found.size());
+            if (ids.length == 0) {
+                break;
+            }
+            Map<Integer, Message> messages = messageDAO.getMessagesByIds(ids);
+            if (messages == null) {
+                throw new OverloadedException("Messages could not be read", 1);
+            }
+            for (int id : ids) {
+                Message message = messages.get(id);
+                if (message != null && query.matches(message.getMessage_text())) {
+                    found.add(message);
+                }
+            }
+            beforeId = ids[ids.length - 1];
+        }
+        return MessagePage.of(found, pageSize, MessageCursor.Order.ID, false, false);
+    }
+
+    /**
+     * Uses messageDAO to open a streaming cursor over all messages, or all messages of one user, for listings
+     * too large to hold in memory.
+     * @param postedBy the value of 'posted_by', or null for all messages.
+     * @return a cursor over the messages, which the caller must close.
+     * @throws SQLException if the query could not be started.
+     */
+    public MessageRowCursor streamMessages(Integer postedBy) throws SQLException {
+        return messageDAO.streamMessages(postedBy);
+    }
+
+    /**
+     * Uses the timelineCache, falling back to the messageDAO on a miss, to get all messages from the
+     * 'message' table that correspond to the given user.
      * @param user the value of 'posted_by'.
      * @return a list of messages belonging to the user.
      */
     public List<Message> getAllMessagesByUser(int user) {
-        return messageDAO.getAllMessagesByUser(user);
+        return timelineCache.get(user, messageDAO::getAllMessagesByUser);
+    }
+
+    /**
+     * Uses the timelineCache, falling back to the messageDAO on a miss, to get the newest messages of the given
+     * user.
+     * @param user the value of 'posted_by'.
+     * @param beforeId only return messages with a lower message_id.
+     * @param count maximum number of messages.
+     * @return the messages, newest first.
+     */
+    public List<Message> getNewestMessagesByUser(int user, int beforeId, int count) {
+        return timelineCache.newest(user, messageDAO::getAllMessagesByUser, beforeId, count);
+    }
+
+    /**
+     * @param postedBy the user whose messages are listed, or null for all messages.
+     * @return the ETag of the listings of those messages, which changes whenever one of them is written. Read it
+     * before the listing, see WriteGenerations.
+     */
+    public String getMessagesEtag(Integer postedBy) {
+        return postedBy == null ? writeGenerations.tableTag() : writeGenerations.accountTag(postedBy);
     }
 
     /**
-     * Uses the messageDAO to get a message by a given 'message_id'.
+     * @param id message_id.
+     * @return the ETag of the message, which changes whenever it is written. Read it before the message.
+     */
+    public String getMessageEtag(int id) {
+        return writeGenerations.messageTag(id);
+    }
+
+    /**
+     * Uses the messageCache, falling back to the messageDAO on a miss, to get a message by a given 'message_id'.
      * @param id message_id.
      * @return a message object.
      */
     public Message getMessageByID (int id) {
-        return messageDAO.getMessageByID(id);
+        return messageCache.get(id, messageDAO::getMessageByID);
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of the message cache.
+     */
+    public CacheStats getMessageCacheStats() {
+        return messageCache.getStats();
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of the timeline cache.
+     */
+    public CacheStats getTimelineCacheStats() {
+        return timelineCache.getStats();
     }
 
     /**
-     * Uses the messageDAO to delete a message by a given 'message_id'. This 
-     * method first stores a copy of a message and returns it if it was deleted.
+     * Uses the messageDAO to delete a message by a given 'message_id'. The DAO
+     * returns the deleted row from the same statement, so there is no separate lookup.
      * @param id message_id.
      * @return the deleted message object.
      */
     public Message deleteMessageByID (int id) {
-        Message message = messageDAO.getMessageByID(id);
-        if (messageDAO.deleteMessageByID(id) > 0) {
-            return message;
+        Message message = messageDAO.deleteMessageByID(id);
+        if (message != null) {
+            for (MessageChangeListener listener : changeListeners) {
+                listener.onMessageDeleted(message);
+            }
+            writeGenerations.bump(message);
         }
-        return null;
+        return message;
+    }
+
+    /**
+     * Deletes a message like deleteMessageByID, provided it was posted by the given account.
+     * @param id message_id.
+     * @param accountId the account of the request's session token.
+     * @return the deleted message object, or null if there was none.
+     * @throws ForbiddenException if the message was posted by another account.
+     */
+    public Message deleteMessageByID (int id, int accountId) {
+        checkPostedBy(id, accountId);
+        return deleteMessageByID(id);
     }
 
     /**
      * Uses the messageDAO to update a findable message with an updated "message_text".
-     * Makes sure that the message exists, and that the new message is of 
-     * appropiate length and it is no blank.
+     * Makes sure that the new message is of appropiate length and it is no blank;
+     * the message must exist for the single UPDATE statement to return it.
      * @param message the message object containing the new information
      * @return the updated message object.
      */
     public Message updateMessageByID (Message message) {
-        Message dbMessage = messageDAO.getMessageByID(message.getMessage_id());
-
-        if (dbMessage != null) {
-            if (message.getMessage_text().length() <= MAX_MESSAGE_LENGTH && !message.getMessage_text().isBlank()){
-                dbMessage.setMessage_text(message.getMessage_text());
-                messageDAO.updateMessageByID(dbMessage);
-                return dbMessage;
+        String text = message.getMessage_text();
+        if (text != null && text.length() <= MAX_MESSAGE_LENGTH && !text.isBlank()){
+            Message updatedMessage = messageDAO.updateMessageByID(message);
+            if (updatedMessage != null) {
+                for (MessageChangeListener listener : changeListeners) {
+                    listener.onMessageUpdated(updatedMessage);
+                }
+                writeGenerations.bump(updatedMessage);
             }
+            return updatedMessage;
         }
-        
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Updates a message like updateMessageByID, provided it was posted by the given account.
+     * @param message the message object containing the new information
+     * @param accountId the account of the request's session token.
+     * @return the updated message object.
+     * @throws ForbiddenException if the message was posted by another account.
+     */
+    public Message updateMessageByID (Message message, int accountId) {
+        checkPostedBy(message.getMessage_id(), accountId);
+        return updateMessageByID(message);
+    }
+
+    /**
+     * An update only changes a message's text, so its cached author is current and checking it here, before the
+     * write, cannot race with another change of the author.
+     */
+    private void checkPostedBy(int id, int accountId) {
+        Message current = getMessageByID(id);
+        if (current != null && current.getPosted_by() != accountId) {
+            throw new ForbiddenException("message " + id + " was posted by another account");
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package Service;
+
+import Util.DbExecutor;
+import Util.LatencyHistogram;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashes, stored in the 'password' column as
+ * pbkdf2-sha256$iterations$salt$hash with a random 16 byte salt per account, about 100 characters.
+ *
+ * The number of iterations is the work factor: each one costs the same for an attacker guessing passwords as for a
+ * login. Rather than a constant that is too slow on a small server or too fast on a big one, it is calibrated when
+ * the hasher is created, so that one hash takes auth.hash.targetMillis (50 by default) on this machine, between
+ * MIN_ITERATIONS and MAX_ITERATIONS; auth.hash.iterations sets it outright. Each stored hash records its own count,
+ * so hashes made under another calibration still verify.
+ *
+ * Hashing is deliberately CPU-bound for that long, so it must not run on the request threads or the DB executor,
+ * where a burst of logins would hold every thread while the database sits idle. Registrations and logins therefore
+ * run on their own executor, see {@link #newExecutor()}, whose size caps how many cores hashing can take.
+ */
+public class PasswordHasher {
+    private static final Logger log = LoggerFactory.getLogger(PasswordHasher.class);
+    static final String PREFIX = "pbkdf2-sha256$";
+    static int MIN_ITERATIONS = 10_000;
+    static int MAX_ITERATIONS = 10_000_000;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final SecureRandom random = new SecureRandom();
+    private final int iterations;
+    private final LatencyHistogram durations = new LatencyHistogram();
+
+    /**
+     * Creates a hasher with the auth.hash.iterations system property as work factor, or one calibrated to
+     * auth.hash.targetMillis.
+     */
+    public PasswordHasher() {
+        this(Integer.getInteger("auth.hash.iterations", 0) > 0 ? Integer.getInteger("auth.hash.iterations")
+                : calibrate(Long.getLong("auth.hash.targetMillis", 50L)));
+    }
+
+    /**
+     * @param iterations the PBKDF2 work factor of new hashes.
+     */
+    public PasswordHasher(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * Creates the executor that registrations and logins run on, sized by the auth.executor.* system properties:
+     * auth.executor.threads (half the cores by default, at least one, so hashing leaves the other half to message
+     * traffic), auth.executor.queueSize (50) and auth.executor.timeoutMillis (10000). Logins beyond the queue are
+     * shed with 503 (Service Unavailable).
+     * @return a new executor.
+     */
+    public static DbExecutor newExecutor() {
+        int halfTheCores = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return new DbExecutor("auth_executor",
+                Integer.getInteger("auth.executor.threads", halfTheCores),
+                Integer.getInteger("auth.executor.queueSize", 50),
+                Long.getLong("auth.executor.timeoutMillis", 10_000L),
+                1);
+    }
+
+    /**
+     * Finds the number of iterations that makes one hash take about the target time on this machine, by timing a
+     * fixed number of iterations a few times and keeping the fastest run, which the JIT warm-up does not slow down.
+     * @param targetMillis the wanted duration of one hash.
+     * @return the iterations, between MIN_ITERATIONS and MAX_ITERATIONS.
+     */
+    public static int calibrate(long targetMillis) {
+        char[] password = "calibration".toCharArray();
+        byte[] salt = new byte[SALT_BYTES];
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            pbkdf2(password, salt, MIN_ITERATIONS);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long iterations = MIN_ITERATIONS * (targetMillis * 1_000_000L) / Math.max(best, 1);
+        int calibrated = (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, iterations / 1000 * 1000));
+        log.info("Password hashing calibrated to {} iterations for {} ms", calibrated, targetMillis);
+        return calibrated;
+    }
+
+    /**
+     * @param password a plain text password.
+     * @return its salted hash, to be stored in place of the password.
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = timedPbkdf2(password, salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    /**
+     * Checks a password against a stored value, which is either a hash from {@link #hash(String)} or, for accounts
+     * registered before passwords were hashed, the plain text password itself.
+     * @param password the password given at login.
+     * @param stored the value of the 'password' column.
+     * @return true if the password matches.
+     */
+    public boolean verify(String password, String stored) {
+        if (stored == null) {
+            return false;
+        }
+        if (!isHash(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[] expected = decoder.decode(parts[3]);
+        byte[] actual = timedPbkdf2(password, decoder.decode(parts[2]), Integer.parseInt(parts[1]));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /**
+     * @param stored the value of the 'password' column.
+     * @return true if it is a hash, false if it is a plain text password stored before passwords were hashed.
+     */
+    public static boolean isHash(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * @return the work factor of new hashes.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the number of hashes computed, for new passwords and for checking them.
+     */
+    public long getHashCount() {
+        return durations.getCount();
+    }
+
+    private byte[] timedPbkdf2(String password, byte[] salt, int iterations) {
+        long start = System.nanoTime();
+        byte[] hash = pbkdf2(password.toCharArray(), salt, iterations);
+        durations.record(System.nanoTime() - start);
+        return hash;
+    }
+
+    private static byte[] pbkdf2(char[] password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Appends the work factor and the hash duration histogram in Prometheus text format.
+     * @param out the exposition being written.
+     */
+    public void writeTo(StringBuilder out) {
+        out.append("# HELP password_hash_iterations PBKDF2 iterations of new password hashes.\n");
+        out.append("# TYPE password_hash_iterations gauge\n");
+        out.append("password_hash_iterations ").append(iterations).append('\n');
+        out.append("# HELP password_hash_seconds Time spent hashing one password.\n");
+        out.append("# TYPE password_hash_seconds histogram\n");
+        durations.writeTo(out, "password_hash_seconds", "");
+    }
+}
@@ -0,0 +1,266 @@
+package Service;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stateless session tokens: issued on login and checked on every request without a database lookup. A token is the
+ * URL-safe base64 of a 21 byte payload (the signing key's id, the account_id, the expiry in epoch seconds and a
+ * random token id) followed by its HMAC-SHA256 over that payload, 71 characters in all. Verifying one is a base64
+ * decode, one HMAC and a lookup in the revocation set.
+ *
+ * Keys come from the auth.token.keys system property, a comma separated list of id:secret pairs where the id is 0 to
+ * 255 and the secret is base64; the first key signs new tokens and the others are still accepted. Rotating a key is
+ * therefore a restart with the new key first and the old one after it, until every token it signed has expired (at
+ * most auth.token.ttlSeconds, 3600 by default), or {@link #rotateKey} and {@link #retireKey} at runtime. Without the
+ * property a random key is generated, so tokens do not survive a restart and are not accepted by other instances.
+ *
+ * Logging out revokes a token before it expires. Revoked tokens are kept in memory only until their expiry, so the
+ * set stays as small as the number of logouts within one token lifetime; like the generated key, it is not shared
+ * between instances or kept across restarts.
+ */
+public class SessionTokens {
+    private static final Logger log = LoggerFactory.getLogger(SessionTokens.class);
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int PAYLOAD_BYTES = 21;
+    private static final int MAC_BYTES = 32;
+    private static final int TOKEN_CHARS = 71;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final long ttlSeconds;
+    private volatile Keys keys;
+    private final ReentrantLock keyLock = new ReentrantLock();
+    private final ConcurrentHashMap<Long, Long> revoked = new ConcurrentHashMap<>();
+    private volatile int pruneAt = 1024;
+
+    /**
+     * Creates the token service configured by the auth.token.keys and auth.token.ttlSeconds system properties.
+     */
+    public SessionTokens() {
+        this.ttlSeconds = Long.getLong("auth.token.ttlSeconds", 3600);
+        String configured = System.getProperty("auth.token.keys");
+        if (configured == null || configured.isBlank()) {
+            byte[] secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            this.keys = new Keys(0, Map.of(0, prototype(secret)));
+            log.info("auth.token.keys is not set; session tokens are signed with a generated key");
+        } else {
+            Map<Integer, Mac> macs = new HashMap<>();
+            int current = -1;
+            for (String entry : configured.split(",")) {
+                String[] parts = entry.trim().split(":", 2);
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("auth.token.keys entries must look like id:base64secret");
+                }
+                int keyId = keyId(Integer.parseInt(parts[0]));
+                macs.put(keyId, prototype(Base64.getDecoder().decode(parts[1])));
+                if (current < 0) {
+                    current = keyId;
+                }
+            }
+            this.keys = new Keys(current, macs);
+        }
+    }
+
+    /**
+     * @param ttlSeconds how long an issued token is valid.
+     * @param keyId the id of the signing key, 0 to 255.
+     * @param secret the signing key.
+     */
+    public SessionTokens(long ttlSeconds, int keyId, byte[] secret) {
+        this.ttlSeconds = ttlSeconds;
+        this.keys = new Keys(keyId(keyId), Map.of(keyId, prototype(secret)));
+    }
+
+    /**
+     * Issues a token for the account, signed with the current key.
+     * @param accountId the logged in account.
+     * @return the token.
+     */
+    public String issue(int accountId) {
+        Keys current = keys;
+        ByteBuffer token = ByteBuffer.allocate(PAYLOAD_BYTES + MAC_BYTES);
+        token.put((byte) current.signing)
+                .putInt(accountId)
+                .putLong(System.currentTimeMillis() / 1000 + ttlSeconds)
+                .putLong(ThreadLocalRandom.current().nextLong());
+        Mac mac = current.mac(current.signing);
+        mac.update(token.array(), 0, PAYLOAD_BYTES);
+        try {
+            mac.doFinal(token.array(), PAYLOAD_BYTES);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        return ENCODER.encodeToString(token.array());
+    }
+
+    /**
+     * Checks a token's signature, expiry and revocation.
+     * @param token a token from issue.
+     * @return the account_id it was issued to, or null if it is malformed, forged, signed with an unknown key,
+     * expired or revoked.
+     */
+    public Integer verify(String token) {
+        ByteBuffer payload = valid(token);
+        return payload == null ? null : payload.getInt(1);
+    }
+
+    /**
+     * Revokes a token until it expires.
+     * @param token a token from issue.
+     * @return false if the token was not valid to begin with.
+     */
+    public boolean revoke(String token) {
+        ByteBuffer payload = valid(token);
+        if (payload == null) {
+            return false;
+        }
+        revoked.put(payload.getLong(13), payload.getLong(5));
+        if (revoked.size() >= pruneAt) {
+            long now = System.currentTimeMillis() / 1000;
+            revoked.values().removeIf(expiresAt -> expiresAt <= now);
+            pruneAt = Math.max(1024, 2 * revoked.size());
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of revoked tokens that have not been pruned yet.
+     */
+    public int getRevokedCount() {
+        return revoked.size();
+    }
+
+    /**
+     * Adds a key and signs every token issued from now on with it. Tokens signed with the previous keys stay valid
+     * until those keys are retired.
+     * @param keyId the id of the new key, 0 to 255.
+     * @param secret the new key.
+     */
+    public void rotateKey(int keyId, byte[] secret) {
+        Mac mac = prototype(secret);
+        keyLock.lock();
+        try {
+            Map<Integer, Mac> macs = new HashMap<>(keys.macs);
+            macs.put(keyId(keyId), mac);
+            keys = new Keys(keyId, macs);
+        } finally {
+            keyLock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting the tokens signed with a key.
+     * @param keyId the id of a key that no longer signs tokens.
+     * @throws IllegalArgumentException if the key is the one signing new tokens.
+     */
+    public void retireKey(int keyId) {
+        keyLock.lock();
+        try {
+            if (keyId == keys.signing) {
+                throw new IllegalArgumentException("key " + keyId + " still signs new tokens");
+            }
+            Map<Integer, Mac> macs = new HashMap<>(keys.macs);
+            macs.remove(keyId);
+            keys = new Keys(keys.signing, macs);
+        } finally {
+            keyLock.unlock();
+        }
+    }
+
+    /**
+     * @return the token's payload if it is signed, unexpired and not revoked, otherwise null.
+     */
+    private ByteBuffer valid(String token) {
+        ByteBuffer payload = check(token);
+        if (payload == null || payload.getLong(5) <= System.currentTimeMillis() / 1000
+                || revoked.containsKey(payload.getLong(13))) {
+            return null;
+        }
+        return payload;
+    }
+
+    /**
+     * @return the token's payload if its signature matches a known key, otherwise null.
+     */
+    private ByteBuffer check(String token) {
+        if (token == null || token.length() != TOKEN_CHARS) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            bytes = DECODER.decode(token);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        Keys current = keys;
+        Mac mac = current.mac(bytes[0] & 0xff);
+        if (mac == null) {
+            return null;
+        }
+        mac.update(bytes, 0, PAYLOAD_BYTES);
+        byte[] expected = mac.doFinal();
+        byte[] actual = new byte[MAC_BYTES];
+        System.arraycopy(bytes, PAYLOAD_BYTES, actual, 0, MAC_BYTES);
+        return MessageDigest.isEqual(expected, actual) ? ByteBuffer.wrap(bytes) : null;
+    }
+
+    private static int keyId(int keyId) {
+        if (keyId < 0 || keyId > 255) {
+            throw new IllegalArgumentException("key ids must be between 0 and 255");
+        }
+        return keyId;
+    }
+
+    private static Mac prototype(byte[] secret) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret, ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The accepted keys, as initialized Macs that are cloned for each use (a Mac is not thread-safe, and cloning one
+     * is cheaper than initializing it with the key again), and the id of the one signing new tokens. Never modified
+     * after construction.
+     */
+    private static final class Keys {
+        final int signing;
+        final Map<Integer, Mac> macs;
+
+        Keys(int signing, Map<Integer, Mac> macs) {
+            this.signing = signing;
+            this.macs = macs;
+        }
+
+        Mac mac(int keyId) {
+            Mac prototype = macs.get(keyId);
+            if (prototype == null) {
+                return null;
+            }
+            try {
+                return (Mac) prototype.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package Service;
+
+import DAO.MessageCursor;
+import DAO.MessagePage;
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Per-account timelines (every message one account posted, in message_id order) kept in memory so profile views do
+ * not re-query the 'message' table. A timeline is loaded on first read and afterwards patched in place from the
+ * MessageService change events: creates insert the message, updates replace it and deletes remove it, so a timeline
+ * never needs a full reload while it stays cached.
+ *
+ * All timelines share one memory budget (timeline.cache.maxBytes); when it is exceeded, the timelines of accounts
+ * that are read least are evicted first.
+ *
+ * Each timeline is an immutable sorted array that is replaced, not modified, on every change, so readers never see a
+ * half-applied write. Changes and loads of the same account are serialized by the cache: a change that arrives while
+ * the account is loading is chained onto the load and applied to its result. Applying a change is idempotent, so it
+ * does no harm when the load already read the committed row. Cached timelines are futures so that the load itself
+ * runs on the reading thread outside the cache's map operation, where it would hold a ConcurrentHashMap bin monitor
+ * across the JDBC call and pin the carrier of a virtual request thread.
+ *
+ * Events can arrive out of commit order: a message may be deleted, and its delete published, before the thread that
+ * created it publishes the create. Since message ids are never reused, the ids of recently deleted messages are kept
+ * (RECENT_DELETES of them) and a create of such an id is ignored instead of bringing the message back. A create also
+ * never replaces a message the timeline already holds, since it may have been edited since. Two updates of one message
+ * can publish in the opposite order to their commits, and the event does not tell which text is newer, so an update
+ * re-reads the committed row and patches the timeline with that, under a lock per account (striped), so the last
+ * update applied is one that read after every commit so far.
+ */
+public class TimelineCache implements MessageChangeListener {
+    /**
+     * Approximate heap cost of a cached message besides its text: the Message, its String and array headers and
+     * the slot in the timeline array.
+     */
+    static int MESSAGE_OVERHEAD_BYTES = 96;
+    static int RECENT_DELETES = 10_000;
+    private static final Comparator<Message> BY_ID = Comparator.comparingInt(Message::getMessage_id);
+
+    static int UPDATE_LOCK_STRIPES = 64;
+
+    private final AsyncCache<Integer, Timeline> cache;
+    private final ReentrantLock[] updateLocks = new ReentrantLock[UPDATE_LOCK_STRIPES];
+    private volatile IntFunction<Message> rowReader;
+    private final Cache<Integer, Boolean> recentlyDeleted = Caffeine.newBuilder()
+            .maximumSize(RECENT_DELETES)
+            .build();
+
+    /**
+     * Creates a cache bounded by the timeline.cache.maxBytes system property (64 MB by default).
+     */
+    public TimelineCache() {
+        this(Long.getLong("timeline.cache.maxBytes", 64L << 20));
+    }
+
+    /**
+     * @param maxBytes approximate memory budget shared by all cached timelines.
+     */
+    public TimelineCache(long maxBytes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Integer accountId, Timeline timeline) -> timeline.weight)
+                .recordStats()
+                .buildAsync();
+        for (int i = 0; i < updateLocks.length; i++) {
+            updateLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Sets how an update re-reads the committed row of a message. Until it is set, updates are applied as published.
+     * @param rowReader reads a message by message_id from the database, returning null if it cannot.
+     */
+    public void readRowsWith(IntFunction<Message> rowReader) {
+        this.rowReader = rowReader;
+    }
+
+    /**
+     * Returns every message of the account, loading the timeline on a miss.
+     * @param accountId the 'posted_by' account.
+     * @param loader reads all messages of the account from the database.
+     * @return copies of the account's messages in message_id order.
+     */
+    public List<Message> get(int accountId, IntFunction<List<Message>> loader) {
+        Message[] messages = timeline(accountId, loader).messages;
+        List<Message> copies = new ArrayList<>(messages.length);
+        for (Message message : messages) {
+            copies.add(MessageCache.copy(message));
+        }
+        return copies;
+    }
+
+    /**
+     * Returns one message_id ordered page of the account's timeline, loading the timeline on a miss. The page and its
+     * cursors are the same as MessageDAO.getMessagesPage would return.
+     * @param accountId the 'posted_by' account.
+     * @param loader reads all messages of the account from the database.
+     * @param after return the messages following this cursor, or null.
+     * @param before return the messages preceding this cursor, or null. Ignored when 'after' is given.
+     * @param limit maximum number of messages on the page.
+     * @return the page with its next/prev cursors.
+     */
+    public MessagePage page(int accountId, IntFunction<List<Message>> loader, MessageCursor after,
+                            MessageCursor before, int limit) {
+        Message[] messages = timeline(accountId, loader).messages;
+        boolean backwards = after == null && before != null;
+        List<Message> fetched = new ArrayList<>(limit + 1);
+        if (backwards) {
+            for (int i = lowerBound(messages, before.getMessageId()) - 1; i >= 0 && fetched.size() <= limit; i--) {
+                fetched.add(MessageCache.copy(messages[i]));
+            }
+        } else {
+            int start = after == null ? 0 : lowerBound(messages, after.getMessageId() + 1);
+            for (int i = start; i < messages.length && fetched.size() <= limit; i++) {
+                fetched.add(MessageCache.copy(messages[i]));
+            }
+        }
+        return MessagePage.of(fetched, limit, MessageCursor.Order.ID, after != null, backwards);
+    }
+
+    /**
+     * Returns the account's newest messages below a message_id, loading the timeline on a miss.
+     * @param accountId the 'posted_by' account.
+     * @param loader reads all messages of the account from the database.
+     * @param beforeId only return messages with a lower message_id.
+     * @param count maximum number of messages.
+     * @return copies of the messages, newest first.
+     */
+    public List<Message> newest(int accountId, IntFunction<List<Message>> loader, int beforeId, int count) {
+        Message[] messages = timeline(accountId, loader).messages;
+        List<Message> newest = new ArrayList<>(count);
+        for (int i = lowerBound(messages, beforeId) - 1; i >= 0 && newest.size() < count; i--) {
+            newest.add(MessageCache.copy(messages[i]));
+        }
+        return newest;
+    }
+
+    private Timeline timeline(int accountId, IntFunction<List<Message>> loader) {
+        CompletableFuture<Timeline> loading = new CompletableFuture<>();
+        CompletableFuture<Timeline> timeline = cache.get(accountId, (key, executor) -> loading);
+        if (timeline == loading) {
+            try {
+                loading.complete(Timeline.of(loader.apply(accountId)));
+            } catch (RuntimeException | Error e) {
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return timeline.join();
+    }
+
+    @Override
+    public void onMessageCreated(Message message) {
+        patch(message.getPosted_by(), timeline -> upsertUnlessDeleted(timeline, message, false));
+    }
+
+    @Override
+    public void onMessageUpdated(Message message) {
+        int accountId = message.getPosted_by();
+        if (!cache.asMap().containsKey(accountId)) {
+            // a load that starts from now on reads the committed row
+            return;
+        }
+        ReentrantLock lock = updateLocks[Math.floorMod(accountId, updateLocks.length)];
+        lock.lock();
+        try {
+            IntFunction<Message> reader = rowReader;
+            Message row = reader == null ? null : reader.apply(message.getMessage_id());
+            Message committed = row != null ? row : message;
+            patch(accountId, timeline -> upsertUnlessDeleted(timeline, committed, true));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onMessageDeleted(Message message) {
+        // recorded before the timeline is patched, so a create patched after this delete always sees it
+        recentlyDeleted.put(message.getMessage_id(), Boolean.TRUE);
+        patch(message.getPosted_by(), timeline -> timeline.remove(message.getMessage_id()));
+    }
+
+    /**
+     * Applies a change to the account's timeline if it is cached or loading. A loading timeline gets the change chained
+     * onto its future, so the change is applied to the load's result, after any change chained before it, without
+     * waiting for the load here.
+     */
+    private void patch(int accountId, UnaryOperator<Timeline> change) {
+        cache.asMap().compute(accountId, (key, timeline) -> timeline == null ? null : timeline.thenApply(change));
+    }
+
+    /**
+     * Inserts the message, or replaces the held copy of it if 'replace' is set.
+     */
+    private Timeline upsertUnlessDeleted(Timeline timeline, Message message, boolean replace) {
+        if (recentlyDeleted.getIfPresent(message.getMessage_id()) != null) {
+            return timeline;
+        }
+        return timeline.upsert(message, replace);
+    }
+
+    /**
+     * Drops every cached timeline.
+     */
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    /**
+     * @return hit, miss and eviction counters since the cache was created.
+     */
+    public CacheStats getStats() {
+        return cache.synchronous().stats();
+    }
+
+    /**
+     * @return index of the first message whose message_id is at least the given id.
+     */
+    private static int lowerBound(Message[] messages, int id) {
+        int low = 0;
+        int high = messages.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (messages[mid].getMessage_id() < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * One account's messages, sorted by message_id. Never modified after construction.
+     */
+    private static final class Timeline {
+        final Message[] messages;
+        final int weight;
+
+        Timeline(Message[] messages) {
+            this.messages = messages;
+            long bytes = 64;
+            for (Message message : messages) {
+                String text = message.getMessage_text();
+                bytes += MESSAGE_OVERHEAD_BYTES + (text == null ? 0 : 2L * text.length());
+            }
+            this.weight = (int) Math.min(bytes, Integer.MAX_VALUE);
+        }
+
+        static Timeline of(List<Message> loaded) {
+            Message[] messages = new Message[loaded.size()];
+            for (int i = 0; i < messages.length; i++) {
+                messages[i] = MessageCache.copy(loaded.get(i));
+            }
+            Arrays.sort(messages, BY_ID);
+            return new Timeline(messages);
+        }
+
+        Timeline upsert(Message message, boolean replace) {
+            int index = lowerBound(messages, message.getMessage_id());
+            Message copy = MessageCache.copy(message);
+            if (index < messages.length && messages[index].getMessage_id() == message.getMessage_id()) {
+                if (!replace) {
+                    return this;
+                }
+                Message[] replaced = messages.clone();
+                replaced[index] = copy;
+                return new Timeline(replaced);
+            }
+            Message[] inserted = new Message[messages.length + 1];
+            System.arraycopy(messages, 0, inserted, 0, index);
+            inserted[index] = copy;
+            System.arraycopy(messages, index, inserted, index + 1, messages.length - index);
+            return new Timeline(inserted);
+        }
+
+        Timeline remove(int id) {
+            int index = lowerBound(messages, id);
+            if (index == messages.length || messages[index].getMessage_id() != id) {
+                return this;
+            }
+            Message[] removed = new Message[messages.length - 1];
+            System.arraycopy(messages, 0, removed, 0, index);
+            System.arraycopy(messages, index + 1, removed, index, messages.length - index - 1);
+            return new Timeline(removed);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package Service;
+
+import Model.Message;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Write generations of the 'message' table, from which the ETags of the message listings are built: one counter for
+ * the whole table, one per account and one per message, each bumped by MessageService after a write and after every
+ * cache has applied it. A client that polls a listing sends back the ETag it got, and as long as no write has bumped
+ * the counter since, the listing is answered with 304 (Not Modified) without a query or serializing a message.
+ *
+ * A response must carry the generation read before its data, never after: a write that lands in between then shows
+ * up as a changed generation on the next poll, instead of new data being labelled with an old generation forever.
+ *
+ * The per account and per message counters are striped over etag.stripes slots (65536 by default, 512 KB each) rather
+ * than kept per id, so that memory stays fixed however many accounts there are. Ids that share a slot change each
+ * other's ETags, which costs a full response now and then but can never produce a wrong 304. ETags also carry a
+ * random epoch chosen at startup, as the counters restart from zero. Writes made to the database by anything but this
+ * process, such as another instance, are not seen.
+ */
+public class WriteGenerations {
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() >>> 16, 36);
+    private final AtomicLong table = new AtomicLong();
+    private final AtomicLongArray accounts;
+    private final AtomicLongArray messages;
+    private final int mask;
+
+    /**
+     * Creates the counters with the etag.stripes system property as slot count.
+     */
+    public WriteGenerations() {
+        this(Integer.getInteger("etag.stripes", 1 << 16));
+    }
+
+    /**
+     * @param stripes slots of the per account and per message counters, rounded up to a power of two.
+     */
+    public WriteGenerations(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.accounts = new AtomicLongArray(size);
+        this.messages = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Records a write of a message.
+     * @param message the created, updated or deleted message.
+     */
+    public void bump(Message message) {
+        messages.incrementAndGet(message.getMessage_id() & mask);
+        accounts.incrementAndGet(message.getPosted_by() & mask);
+        table.incrementAndGet();
+    }
+
+    /**
+     * @return the ETag of the listings of every message.
+     */
+    public String tableTag() {
+        return tag("t", table.get());
+    }
+
+    /**
+     * @param accountId a posted_by value.
+     * @return the ETag of the listings of the account's messages.
+     */
+    public String accountTag(int accountId) {
+        return tag("a", accounts.get(accountId & mask));
+    }
+
+    /**
+     * @param messageId a message_id.
+     * @return the ETag of the message.
+     */
+    public String messageTag(int messageId) {
+        return tag("m", messages.get(messageId & mask));
+    }
+
+    private String tag(String scope, long generation) {
+        return "\"" + epoch + "-" + scope + generation + "\"";
+    }
+}
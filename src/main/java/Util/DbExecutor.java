@@ -0,0 +1,170 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bounded executor for the blocking database work of requests, so a slow database ties up these threads instead of
+ * Jetty's and the server keeps answering requests that do not need it. Work waits in a queue of fixed size when every
+ * thread is busy; once the queue is full, new work is shed at once with an OverloadedException rather than piling up.
+ *
+ * Each task runs inside a {@link Deadline} that starts when it is submitted: a task whose deadline passes while it is
+ * queued is dropped without running, and the caller gets an OverloadedException. A task that is already running is
+ * not failed for its deadline: the query timeout cuts short any statement that overruns it, so the task ends with that
+ * error, and a task that returns normally has done its work, which for a write is already committed. Reporting that as
+ * overload would have the client retry a write that succeeded.
+ *
+ * Settings are system properties: db.executor.threads (db.pool.maxSize by default, as more threads would only wait for
+ * connections), db.executor.queueSize (200), db.executor.timeoutMillis (10000) and db.executor.retryAfterSeconds (1).
+ *
+ * Work that is CPU-bound besides its queries gets an executor of its own under another name, which its metrics and
+ * threads are named after, so it cannot take every thread from the rest; see Service.PasswordHasher.
+ */
+public class DbExecutor {
+    private static final AtomicInteger executorCount = new AtomicInteger();
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final int retryAfterSeconds;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder deadlinesExceeded = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+
+    /**
+     * Creates an executor sized by the db.executor.* system properties.
+     */
+    public DbExecutor() {
+        this(Integer.getInteger("db.executor.threads", new PoolConfig().getMaxSize()),
+                Integer.getInteger("db.executor.queueSize", 200),
+                Long.getLong("db.executor.timeoutMillis", 10_000L),
+                Integer.getInteger("db.executor.retryAfterSeconds", 1));
+    }
+
+    /**
+     * @param threads number of threads running database work.
+     * @param queueSize maximum number of tasks waiting for a thread.
+     * @param timeoutMillis deadline of each task, counted from its submission.
+     * @param retryAfterSeconds the Retry-After given to shed requests.
+     */
+    public DbExecutor(int threads, int queueSize, long timeoutMillis, int retryAfterSeconds) {
+        this("db_executor", threads, queueSize, timeoutMillis, retryAfterSeconds);
+    }
+
+    /**
+     * @param name the prefix of the executor's metrics, and of its thread names with '-' for '_'.
+     * @param threads number of threads running database work.
+     * @param queueSize maximum number of tasks waiting for a thread.
+     * @param timeoutMillis deadline of each task, counted from its submission.
+     * @param retryAfterSeconds the Retry-After given to shed requests.
+     */
+    public DbExecutor(String name, int threads, int queueSize, long timeoutMillis, int retryAfterSeconds) {
+        this.name = name;
+        String prefix = name.replace('_', '-') + "-" + executorCount.incrementAndGet() + "-";
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        this.timeoutMillis = timeoutMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Queues the work, or sheds it if the queue is full.
+     * @param work the database work, run on an executor thread inside its deadline.
+     * @return a future of the work's result, failed with an OverloadedException if the work was shed or its deadline
+     * passed before it started, or with whatever the work threw.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        Deadline deadline = Deadline.after(timeoutMillis);
+        long queuedAt = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                queueWait.record(System.nanoTime() - queuedAt);
+                if (deadline.isExpired()) {
+                    deadlinesExceeded.increment();
+                    result.completeExceptionally(new OverloadedException(
+                            "Request waited longer than " + timeoutMillis + " ms for the database", retryAfterSeconds));
+                    return;
+                }
+                try {
+                    result.complete(deadline.run(work));
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(new OverloadedException("Too many requests waiting for the database",
+                    retryAfterSeconds));
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of threads running a task.
+     */
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of tasks shed because the queue was full.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return the number of tasks dropped because their deadline passed while they were queued.
+     */
+    public long getDeadlinesExceeded() {
+        return deadlinesExceeded.sum();
+    }
+
+    /**
+     * Appends the queue gauges and counters and the queue wait histogram in Prometheus text format.
+     * @param out the exposition being written.
+     */
+    public void writeTo(StringBuilder out) {
+        sample(out, "_queue_depth", "gauge", "Tasks waiting for a thread.", getQueueDepth());
+        sample(out, "_threads_active", "gauge", "Threads running a task.", getActiveThreads());
+        sample(out, "_rejected_total", "counter", "Tasks shed because the queue was full.", getRejectedCount());
+        sample(out, "_deadline_exceeded_total", "counter", "Tasks dropped because their deadline passed while queued.", getDeadlinesExceeded());
+        out.append("# HELP ").append(name).append("_queue_wait_seconds Time tasks waited for a thread.\n");
+        out.append("# TYPE ").append(name).append("_queue_wait_seconds histogram\n");
+        queueWait.writeTo(out, name + "_queue_wait_seconds", "");
+    }
+
+    private void sample(StringBuilder out, String suffix, String type, String help, long value) {
+        out.append("# HELP ").append(name).append(suffix).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(suffix).append(' ').append(type).append('\n');
+        out.append(name).append(suffix).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Stops taking work; tasks already queued still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
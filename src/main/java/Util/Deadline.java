@@ -0,0 +1,90 @@
+package Util;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The time by which one request's database work has to finish. DbExecutor runs each task inside its request's
+ * deadline, and while it runs the ConnectionPool on that thread waits for a connection at most until the deadline and
+ * gives every statement it creates a query timeout of the time that is left, so a request that has run out of time
+ * stops holding a connection the next request could use.
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param millis time from now until the deadline.
+     * @return a deadline that many milliseconds from now.
+     */
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * @return the deadline of the work running on this thread, or null if it has none.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return the nanoseconds left until the deadline, zero or negative once it has passed.
+     */
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * Runs the work with this deadline applied to the database calls it makes on this thread.
+     * @param work the work to run.
+     * @return the result of the work.
+     */
+    public <T> T run(Supplier<T> work) {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Gives a new statement a query timeout of the time left until the current deadline, rounded up to whole seconds
+     * as JDBC requires. Does nothing when the thread has no deadline.
+     * @param statement the statement just created.
+     * @return true if a query timeout was set.
+     * @throws SQLTimeoutException if the deadline has already passed; the statement is closed.
+     */
+    static boolean applyTo(Statement statement) throws SQLException {
+        Deadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return false;
+        }
+        long remaining = deadline.remainingNanos();
+        if (remaining <= 0) {
+            statement.close();
+            throw new SQLTimeoutException("Request deadline passed before the statement ran");
+        }
+        long seconds = (remaining + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+        statement.setQueryTimeout((int) Math.min(seconds, Integer.MAX_VALUE));
+        return true;
+    }
+}
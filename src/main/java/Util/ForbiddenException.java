@@ -0,0 +1,11 @@
+package Util;
+
+/**
+ * Thrown when the account of a request's session token tries to change a message posted by another account, or to
+ * act as another account on its follows or feed. The controller answers it with 403 (Forbidden).
+ */
+public class ForbiddenException extends RuntimeException {
+    public ForbiddenException(String message) {
+        super(message, null, false, false);
+    }
+}
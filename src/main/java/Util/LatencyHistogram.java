@@ -0,0 +1,75 @@
+package Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed bucket bounds, in the shape Prometheus expects: cumulative bucket counts,
+ * a sum and a count. Recording is one bucket search over a short array plus LongAdder increments, so it costs a few
+ * tens of nanoseconds and does not contend between threads.
+ */
+public class LatencyHistogram {
+    /**
+     * Upper bounds of the buckets, from 100 microseconds to 10 seconds; slower samples only go in +Inf.
+     */
+    static final long[] BOUNDS_NANOS = {
+            100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L,
+            10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L,
+            1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L};
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one sample.
+     * @param nanos the latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * @return the number of recorded samples.
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Appends the histogram in Prometheus text format, in seconds.
+     * @param out the exposition being written.
+     * @param name the metric name, without the _bucket/_sum/_count suffixes.
+     * @param labels the label pairs of this series, e.g. method="GET",route="/messages", or an empty string.
+     */
+    public void writeTo(StringBuilder out, String name, String labels) {
+        String separator = labels.isEmpty() ? "" : ",";
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            String le = i < BOUNDS_NANOS.length ? Double.toString(BOUNDS_NANOS[i] / 1e9) : "+Inf";
+            out.append(name).append("_bucket{").append(labels).append(separator)
+                    .append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+        String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braces).append(' ')
+                .append(sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+        out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+    }
+}
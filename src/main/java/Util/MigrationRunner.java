@@ -0,0 +1,172 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import javax.sql.DataSource;
+
+import org.h2.tools.RunScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the versioned schema migrations in src/main/resources/db/migration at startup. Migrations are listed in
+ * order in db/migration/index.txt and named V{version}__{description}.sql. Each applied migration is recorded in the
+ * schema_history table with a checksum of its script, so a database is only ever moved forward, and a migration that
+ * was edited after being applied stops the application from starting instead of silently diverging.
+ */
+public class MigrationRunner {
+    private static final Logger log = LoggerFactory.getLogger(MigrationRunner.class);
+    static String MIGRATION_PATH = "db/migration/";
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+    // a lock rather than a synchronized method, so a caller waiting on it while the migrations run JDBC does not pin
+    // a virtual thread's carrier
+    private static final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Applies every listed migration that is not yet recorded in schema_history, in version order.
+     * @param dataSource the database to migrate.
+     * @return the number of migrations applied.
+     * @throws IllegalStateException if a migration fails, or an applied migration no longer matches its checksum.
+     */
+    public static int migrate(DataSource dataSource) {
+        lock.lock();
+        try {
+            return migrateLocked(dataSource);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int migrateLocked(DataSource dataSource) {
+        List<Migration> migrations = loadMigrations();
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS schema_history ("
+                        + "version INT PRIMARY KEY, "
+                        + "description VARCHAR(255), "
+                        + "checksum BIGINT, "
+                        + "applied_on TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
+                        + "execution_ms BIGINT)");
+            }
+            Map<Integer, Long> applied = new HashMap<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT version, checksum FROM schema_history")) {
+                while (rs.next()) {
+                    applied.put(rs.getInt("version"), rs.getLong("checksum"));
+                }
+            }
+
+            int count = 0;
+            for (Migration migration : migrations) {
+                Long checksum = applied.get(migration.version);
+                if (checksum != null) {
+                    if (checksum != migration.checksum) {
+                        throw new IllegalStateException("Migration " + migration.fileName
+                                + " was changed after it was applied; add a new migration instead");
+                    }
+                    continue;
+                }
+                apply(connection, migration);
+                count++;
+            }
+            return count;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Schema migration failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static void apply(Connection connection, Migration migration) throws SQLException {
+        long start = System.nanoTime();
+        connection.setAutoCommit(false);
+        try {
+            RunScript.execute(connection, new StringReader(migration.script));
+            try (PreparedStatement preparedStatement = connection.prepareStatement(
+                    "INSERT INTO schema_history (version, description, checksum, execution_ms) VALUES (?, ?, ?, ?)")) {
+                preparedStatement.setInt(1, migration.version);
+                preparedStatement.setString(2, migration.description);
+                preparedStatement.setLong(3, migration.checksum);
+                preparedStatement.setLong(4, (System.nanoTime() - start) / 1_000_000);
+                preparedStatement.executeUpdate();
+            }
+            connection.commit();
+            log.info("Applied schema migration {}", migration.fileName);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Reads the migration index and scripts from the classpath.
+     */
+    private static List<Migration> loadMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+        int lastVersion = 0;
+        for (String line : readResource("index.txt").split("\\R")) {
+            String fileName = line.trim();
+            if (fileName.isEmpty() || fileName.startsWith("#")) {
+                continue;
+            }
+            Matcher matcher = FILE_NAME.matcher(fileName);
+            if (!matcher.matches()) {
+                throw new IllegalStateException("Migration file name must look like V1__description.sql: " + fileName);
+            }
+            int version = Integer.parseInt(matcher.group(1));
+            if (version <= lastVersion) {
+                throw new IllegalStateException("Migrations must be listed in increasing version order: " + fileName);
+            }
+            lastVersion = version;
+            migrations.add(new Migration(version, matcher.group(2).replace('_', ' '), fileName,
+                    readResource(fileName)));
+        }
+        return migrations;
+    }
+
+    private static String readResource(String name) {
+        try (InputStream in = MigrationRunner.class.getClassLoader().getResourceAsStream(MIGRATION_PATH + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing migration resource " + MIGRATION_PATH + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read migration resource " + MIGRATION_PATH + name, e);
+        }
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final String fileName;
+        final String script;
+        final long checksum;
+
+        Migration(int version, String description, String fileName, String script) {
+            this.version = version;
+            this.description = description;
+            this.fileName = fileName;
+            this.script = script;
+            CRC32 crc = new CRC32();
+            // Line endings are normalized so a checkout on another platform does not look like an edit.
+            crc.update(script.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+            this.checksum = crc.getValue();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package Util;
+
+/**
+ * Thrown when a request's database work is shed instead of run, because the DbExecutor queue was full or the
+ * request's deadline passed. The controller answers it with 503 (Service Unavailable) and a Retry-After header.
+ */
+public class OverloadedException extends RuntimeException {
+    private final int retryAfterSeconds;
+
+    public OverloadedException(String message, int retryAfterSeconds) {
+        super(message, null, false, false);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return how long the client should wait before retrying, for the Retry-After header.
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
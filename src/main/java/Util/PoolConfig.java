@@ -0,0 +1,93 @@
+package Util;
+
+/**
+ * Sizing and timing settings for the {@link ConnectionPool}. The no-args constructor reads each value from a system
+ * property so the pool can be tuned per node without a rebuild, e.g. -Ddb.pool.maxSize=32.
+ */
+public class PoolConfig {
+    /**
+     * Number of physical connections the pool keeps open even when they are idle.
+     */
+    private int minIdle;
+    /**
+     * Upper bound on physical connections, borrowed and idle together.
+     */
+    private int maxSize;
+    /**
+     * How long a caller waits for a connection before getting an SQLTimeoutException.
+     */
+    private long acquireTimeoutMillis;
+    /**
+     * Idle connections above minIdle that have not been used for this long are closed.
+     */
+    private long idleTimeoutMillis;
+    /**
+     * A connection borrowed for longer than this is reported as a leak, with the stack trace of the caller that
+     * acquired it. Zero disables leak detection (and the cost of capturing the stack trace).
+     */
+    private long leakDetectionThresholdMillis;
+    /**
+     * How often the background housekeeper evicts idle connections and checks for leaks.
+     */
+    private long housekeepingPeriodMillis;
+
+    /**
+     * Creates a config from the db.pool.* system properties, falling back to defaults suited to a single node.
+     */
+    public PoolConfig() {
+        this.minIdle = Integer.getInteger("db.pool.minIdle", 2);
+        this.maxSize = Integer.getInteger("db.pool.maxSize", 10);
+        this.acquireTimeoutMillis = Long.getLong("db.pool.acquireTimeoutMillis", 5_000L);
+        this.idleTimeoutMillis = Long.getLong("db.pool.idleTimeoutMillis", 600_000L);
+        this.leakDetectionThresholdMillis = Long.getLong("db.pool.leakDetectionThresholdMillis", 30_000L);
+        this.housekeepingPeriodMillis = Long.getLong("db.pool.housekeepingPeriodMillis", 5_000L);
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getAcquireTimeoutMillis() {
+        return acquireTimeoutMillis;
+    }
+
+    public void setAcquireTimeoutMillis(long acquireTimeoutMillis) {
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getLeakDetectionThresholdMillis() {
+        return leakDetectionThresholdMillis;
+    }
+
+    public void setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis) {
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+    }
+
+    public long getHousekeepingPeriodMillis() {
+        return housekeepingPeriodMillis;
+    }
+
+    public void setHousekeepingPeriodMillis(long housekeepingPeriodMillis) {
+        this.housekeepingPeriodMillis = housekeepingPeriodMillis;
+    }
+}
@@ -0,0 +1,107 @@
+package Util;
+
+/**
+ * A point-in-time snapshot of the {@link ConnectionPool} gauges and counters, used to size the pool per node.
+ */
+public class PoolStats {
+    private final int active;
+    private final int idle;
+    private final int total;
+    private final int waiting;
+    private final long acquireCount;
+    private final long acquireTimeouts;
+    private final long leaksDetected;
+    private final long totalAcquireNanos;
+    private final long maxAcquireNanos;
+
+    public PoolStats(int active, int idle, int total, int waiting, long acquireCount, long acquireTimeouts,
+                     long leaksDetected, long totalAcquireNanos, long maxAcquireNanos) {
+        this.active = active;
+        this.idle = idle;
+        this.total = total;
+        this.waiting = waiting;
+        this.acquireCount = acquireCount;
+        this.acquireTimeouts = acquireTimeouts;
+        this.leaksDetected = leaksDetected;
+        this.totalAcquireNanos = totalAcquireNanos;
+        this.maxAcquireNanos = maxAcquireNanos;
+    }
+
+    /**
+     * @return connections currently borrowed by callers.
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * @return open connections waiting in the pool to be borrowed.
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * @return physical connections open or being opened.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return threads currently blocked waiting for a connection.
+     */
+    public int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * @return number of successful acquisitions since the pool started.
+     */
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    /**
+     * @return number of acquisitions that gave up after the acquire timeout.
+     */
+    public long getAcquireTimeouts() {
+        return acquireTimeouts;
+    }
+
+    /**
+     * @return number of connections reported as held past the leak detection threshold.
+     */
+    public long getLeaksDetected() {
+        return leaksDetected;
+    }
+
+    /**
+     * @return mean time spent acquiring a connection, in microseconds.
+     */
+    public double getMeanAcquireMicros() {
+        return acquireCount == 0 ? 0 : totalAcquireNanos / 1_000.0 / acquireCount;
+    }
+
+    /**
+     * @return longest time spent acquiring a connection, in microseconds.
+     */
+    public double getMaxAcquireMicros() {
+        return maxAcquireNanos / 1_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{" +
+                "active=" + active +
+                ", idle=" + idle +
+                ", total=" + total +
+                ", waiting=" + waiting +
+                ", acquireCount=" + acquireCount +
+                ", acquireTimeouts=" + acquireTimeouts +
+                ", leaksDetected=" + leaksDetected +
+                ", meanAcquireMicros=" + getMeanAcquireMicros() +
+                ", maxAcquireMicros=" + getMaxAcquireMicros() +
+                '}';
+    }
+}
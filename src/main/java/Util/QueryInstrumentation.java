@@ -0,0 +1,489 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional JDBC instrumentation between the DAOs and the connection pool. When enabled, every connection handed out
+ * by ConnectionUtil is wrapped in proxies that time connection acquisition, statement prepare, execution and
+ * ResultSet iteration (the time spent inside next(), not the caller's work between rows), and count rows and errors.
+ * Timings are kept per logical operation, which is the DAO method that asked for the connection, e.g.
+ * MessageDAO.getMessageByID; it is found by walking the stack once per connection.
+ *
+ * Any statement whose prepare, execute and fetch time add up to the slow-query threshold is logged with its SQL, the
+ * types of its bind parameters (never their values) and its row count. The log is rate limited; lines dropped by the
+ * limit are counted in the next line that gets through. SQL errors are logged the same way.
+ *
+ * It is off by default (db.instrumentation) and can be switched at runtime, including over JMX; new connections
+ * pick up the switch. While off, getConnection costs one volatile read on top of the pool.
+ */
+public class QueryInstrumentation implements QueryInstrumentationMBean {
+    private static final Logger log = LoggerFactory.getLogger(QueryInstrumentation.class);
+    private static final StackWalker STACK = StackWalker.getInstance();
+    private static final String DAO_PACKAGE = "DAO.";
+    static final String UNTAGGED = "other";
+
+    private volatile boolean enabled;
+    private volatile long slowQueryThresholdNanos;
+    private volatile int slowQueryLogsPerSecond;
+
+    private final Map<String, QueryStats> stats = new ConcurrentHashMap<>();
+    private final AtomicLong logWindowStart = new AtomicLong();
+    private final AtomicInteger logsInWindow = new AtomicInteger();
+    private final LongAdder suppressedLogs = new LongAdder();
+    private final LongAdder slowQueriesLogged = new LongAdder();
+
+    /**
+     * Creates the instrumentation configured by the db.instrumentation, db.slowQueryMillis and
+     * db.slowQueryLogsPerSecond system properties.
+     */
+    public QueryInstrumentation() {
+        this(Boolean.getBoolean("db.instrumentation"), Long.getLong("db.slowQueryMillis", 200L),
+                Integer.getInteger("db.slowQueryLogsPerSecond", 10));
+    }
+
+    /**
+     * @param enabled whether connections are instrumented from the start.
+     * @param slowQueryThresholdMillis statements taking at least this long are logged.
+     * @param slowQueryLogsPerSecond the most slow-query and error lines logged per second.
+     */
+    public QueryInstrumentation(boolean enabled, long slowQueryThresholdMillis, int slowQueryLogsPerSecond) {
+        this.enabled = enabled;
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis);
+        this.slowQueryLogsPerSecond = slowQueryLogsPerSecond;
+    }
+
+    /**
+     * Borrows a connection from the source, instrumented if enabled.
+     * @param source the pool.
+     * @return the connection, or a timing proxy around it.
+     * @throws SQLException if the source could not provide a connection.
+     */
+    public Connection getConnection(DataSource source) throws SQLException {
+        if (!enabled) {
+            return source.getConnection();
+        }
+        QueryStats queryStats = statsFor(callerOperation());
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = source.getConnection();
+        } catch (SQLException e) {
+            queryStats.errors.increment();
+            logError(queryStats.operation, null, e);
+            throw e;
+        }
+        queryStats.acquire.record(System.nanoTime() - start);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new ConnectionHandler(connection, queryStats));
+    }
+
+    /**
+     * @return the statistics of every operation seen so far, by operation name.
+     */
+    public Map<String, QueryStats> getStats() {
+        return stats;
+    }
+
+    /**
+     * Appends the per-operation statement metrics in Prometheus text format.
+     * @param out the exposition being written.
+     */
+    public void writeTo(StringBuilder out) {
+        out.append("# HELP db_query_duration_seconds Time per statement phase by DAO operation.\n");
+        out.append("# TYPE db_query_duration_seconds histogram\n");
+        stats.forEach((operation, queryStats) -> {
+            String labels = "operation=\"" + operation + "\"";
+            queryStats.acquire.writeTo(out, "db_query_duration_seconds", labels + ",phase=\"acquire\"");
+            queryStats.prepare.writeTo(out, "db_query_duration_seconds", labels + ",phase=\"prepare\"");
+            queryStats.execute.writeTo(out, "db_query_duration_seconds", labels + ",phase=\"execute\"");
+            queryStats.fetch.writeTo(out, "db_query_duration_seconds", labels + ",phase=\"fetch\"");
+        });
+        writeCounter(out, "db_query_rows_total", "Rows read or changed by DAO operation.", QueryStats::getRows);
+        writeCounter(out, "db_query_errors_total", "SQL errors by DAO operation.", QueryStats::getErrors);
+    }
+
+    private void writeCounter(StringBuilder out, String name, String help, ToLongFunction<QueryStats> counter) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        stats.forEach((operation, queryStats) -> out.append(name).append("{operation=\"").append(operation)
+                .append("\"} ").append(counter.applyAsLong(queryStats)).append('\n'));
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowQueryThresholdNanos);
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long millis) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public int getSlowQueryLogsPerSecond() {
+        return slowQueryLogsPerSecond;
+    }
+
+    @Override
+    public void setSlowQueryLogsPerSecond(int logsPerSecond) {
+        this.slowQueryLogsPerSecond = logsPerSecond;
+    }
+
+    @Override
+    public long getSlowQueriesLogged() {
+        return slowQueriesLogged.sum();
+    }
+
+    @Override
+    public void reset() {
+        stats.clear();
+        slowQueriesLogged.reset();
+    }
+
+    private QueryStats statsFor(String operation) {
+        QueryStats queryStats = stats.get(operation);
+        return queryStats != null ? queryStats : stats.computeIfAbsent(operation, QueryStats::new);
+    }
+
+    /**
+     * @return ClassName.method of the innermost DAO frame on the stack, or UNTAGGED.
+     */
+    private static String callerOperation() {
+        Optional<String> operation = STACK.walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith(DAO_PACKAGE))
+                .findFirst()
+                .map(frame -> frame.getClassName().substring(DAO_PACKAGE.length()) + "." + frame.getMethodName()));
+        return operation.orElse(UNTAGGED);
+    }
+
+    private void finish(Execution execution) {
+        QueryStats queryStats = execution.stats;
+        queryStats.sql = execution.sql;
+        queryStats.prepare.record(execution.prepareNanos);
+        queryStats.execute.record(execution.executeNanos);
+        queryStats.fetch.record(execution.fetchNanos);
+        queryStats.rows.add(execution.rows);
+        long total = execution.prepareNanos + execution.executeNanos + execution.fetchNanos;
+        if (total >= slowQueryThresholdNanos && acquireLogPermit()) {
+            slowQueriesLogged.increment();
+            log.warn("Slow query in {}: {} ms (prepare {} ms, execute {} ms, fetch {} ms), {} rows{}, params {}, "
+                            + "{} lines suppressed; {}",
+                    queryStats.operation, millis(total), millis(execution.prepareNanos),
+                    millis(execution.executeNanos), millis(execution.fetchNanos), execution.rows,
+                    execution.batchSize > 0 ? " in a batch of " + execution.batchSize : "", execution.params,
+                    suppressedLogs.sumThenReset(), execution.sql);
+        }
+    }
+
+    private void logError(String operation, String sql, SQLException e) {
+        if (acquireLogPermit()) {
+            // the driver's message can quote bound values, so only the error codes are logged with the SQL
+            log.warn("SQL error in {}: SQLState {}, error code {}, {} lines suppressed; {}", operation,
+                    e.getSQLState(), e.getErrorCode(), suppressedLogs.sumThenReset(), sql);
+        }
+    }
+
+    /**
+     * Fixed one-second window rate limit shared by slow-query and error lines.
+     */
+    private boolean acquireLogPermit() {
+        long second = System.nanoTime() / 1_000_000_000L;
+        long window = logWindowStart.get();
+        if (window != second && logWindowStart.compareAndSet(window, second)) {
+            logsInWindow.set(0);
+        }
+        if (logsInWindow.incrementAndGet() <= slowQueryLogsPerSecond) {
+            return true;
+        }
+        suppressedLogs.increment();
+        return false;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Statement timings of one DAO operation.
+     */
+    public static class QueryStats {
+        private final String operation;
+        private volatile String sql;
+        final LatencyHistogram acquire = new LatencyHistogram();
+        final LatencyHistogram prepare = new LatencyHistogram();
+        final LatencyHistogram execute = new LatencyHistogram();
+        final LatencyHistogram fetch = new LatencyHistogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        QueryStats(String operation) {
+            this.operation = operation;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return the SQL of the most recent statement of this operation.
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return the number of statements executed.
+         */
+        public long getExecutions() {
+            return execute.getCount();
+        }
+
+        /**
+         * @return rows read through ResultSets plus update counts.
+         */
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+    }
+
+    /**
+     * One execution of a statement, finished when its ResultSet or statement is closed, or right away when it
+     * returns no ResultSet.
+     */
+    private final class Execution {
+        final QueryStats stats;
+        final String sql;
+        final String params;
+        final int batchSize;
+        final long prepareNanos;
+        long executeNanos;
+        long fetchNanos;
+        long rows;
+        boolean finished;
+
+        Execution(QueryStats stats, String sql, String params, int batchSize, long prepareNanos) {
+            this.stats = stats;
+            this.sql = sql;
+            this.params = params;
+            this.batchSize = batchSize;
+            this.prepareNanos = prepareNanos;
+        }
+
+        void finish() {
+            if (!finished) {
+                finished = true;
+                QueryInstrumentation.this.finish(this);
+            }
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final QueryStats stats;
+
+        ConnectionHandler(Connection target, QueryStats stats) {
+            this.target = target;
+            this.stats = stats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("prepareStatement")) {
+                String sql = (String) args[0];
+                long start = System.nanoTime();
+                PreparedStatement statement;
+                try {
+                    statement = (PreparedStatement) QueryInstrumentation.invoke(target, method, args);
+                } catch (SQLException e) {
+                    stats.errors.increment();
+                    logError(stats.operation, sql, e);
+                    throw e;
+                }
+                return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                        new Class<?>[]{PreparedStatement.class},
+                        new StatementHandler(statement, stats, sql, System.nanoTime() - start));
+            }
+            if (name.equals("createStatement")) {
+                Statement statement = (Statement) QueryInstrumentation.invoke(target, method, args);
+                return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{Statement.class},
+                        new StatementHandler(statement, stats, null, 0));
+            }
+            return QueryInstrumentation.invoke(target, method, args);
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final QueryStats stats;
+        private final String sql;
+        private long prepareNanos;
+        private final List<String> paramTypes = new ArrayList<>();
+        private int batchSize;
+        private Execution pending;
+
+        StatementHandler(Statement target, QueryStats stats, String sql, long prepareNanos) {
+            this.target = target;
+            this.stats = stats;
+            this.sql = sql;
+            this.prepareNanos = prepareNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+                    && method.getParameterTypes()[0] == int.class) {
+                recordParamType((Integer) args[0], name.substring(3), args[1]);
+            } else if (name.equals("clearParameters")) {
+                paramTypes.clear();
+            } else if (name.equals("addBatch")) {
+                batchSize++;
+            } else if (name.equals("close")) {
+                finishPending();
+            }
+            return QueryInstrumentation.invoke(target, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            finishPending();
+            String executedSql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            Execution execution = new Execution(stats, executedSql, paramTypes.toString(), batchSize, prepareNanos);
+            prepareNanos = 0;
+            batchSize = 0;
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = QueryInstrumentation.invoke(target, method, args);
+            } catch (SQLException e) {
+                stats.errors.increment();
+                logError(stats.operation, executedSql, e);
+                throw e;
+            } finally {
+                execution.executeNanos = System.nanoTime() - start;
+            }
+            if (result instanceof ResultSet) {
+                pending = execution;
+                return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                        new ResultSetHandler((ResultSet) result, execution));
+            }
+            execution.rows = updateCount(result);
+            execution.finish();
+            return result;
+        }
+
+        private void recordParamType(int index, String type, Object value) {
+            while (paramTypes.size() < index) {
+                paramTypes.add("?");
+            }
+            String shape = value == null ? "null"
+                    : value instanceof String ? "String(" + ((String) value).length() + ")"
+                    : type;
+            paramTypes.set(index - 1, shape);
+        }
+
+        private void finishPending() {
+            if (pending != null) {
+                pending.finish();
+                pending = null;
+            }
+        }
+    }
+
+    private static long updateCount(Object result) {
+        if (result instanceof Integer || result instanceof Long) {
+            return Math.max(0, ((Number) result).longValue());
+        }
+        long rows = 0;
+        if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                rows += Math.max(0, count);
+            }
+        } else if (result instanceof long[]) {
+            for (long count : (long[]) result) {
+                rows += Math.max(0, count);
+            }
+        }
+        return rows;
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final Execution execution;
+
+        ResultSetHandler(ResultSet target, Execution execution) {
+            this.target = target;
+            this.execution = execution;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                long start = System.nanoTime();
+                try {
+                    Object hasRow = QueryInstrumentation.invoke(target, method, args);
+                    if ((Boolean) hasRow) {
+                        execution.rows++;
+                    }
+                    return hasRow;
+                } finally {
+                    execution.fetchNanos += System.nanoTime() - start;
+                }
+            }
+            Object result = QueryInstrumentation.invoke(target, method, args);
+            if (name.equals("close")) {
+                execution.finish();
+            }
+            return result;
+        }
+    }
+}
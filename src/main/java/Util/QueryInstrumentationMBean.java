@@ -0,0 +1,26 @@
+package Util;
+
+/**
+ * JMX view of {@link QueryInstrumentation}, registered by ConnectionUtil, so statement timing can be switched on and
+ * off and the slow-query log tuned on a running server.
+ */
+public interface QueryInstrumentationMBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getSlowQueryThresholdMillis();
+
+    void setSlowQueryThresholdMillis(long millis);
+
+    int getSlowQueryLogsPerSecond();
+
+    void setSlowQueryLogsPerSecond(int logsPerSecond);
+
+    long getSlowQueriesLogged();
+
+    /**
+     * Drops all recorded statistics.
+     */
+    void reset();
+}
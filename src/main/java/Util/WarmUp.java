@@ -0,0 +1,52 @@
+package Util;
+
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the warm-up of an in-memory structure on a background thread until it succeeds. A warm-up that fails, because
+ * the database is unreachable or a table is missing, is tried again after a pause that starts at warmup.retryMillis
+ * (1000 by default) and doubles after each failure, up to a minute; without the retry the structure would stay not
+ * ready, and its feature degraded, until the next restart.
+ */
+public final class WarmUp {
+    private static final Logger log = LoggerFactory.getLogger(WarmUp.class);
+    static long MAX_BACKOFF_MILLIS = 60_000;
+
+    private WarmUp() {
+    }
+
+    /**
+     * Starts a daemon thread that runs the attempt until it returns true.
+     * @param name the thread name, also used in the log.
+     * @param attempt one try at the warm-up; true if it is done, or failed in a way a retry would not fix.
+     * @return the started thread.
+     */
+    public static Thread start(String name, BooleanSupplier attempt) {
+        long initialBackoff = Long.getLong("warmup.retryMillis", 1000L);
+        Thread loader = new Thread(() -> {
+            long backoff = initialBackoff;
+            while (true) {
+                try {
+                    if (attempt.getAsBoolean()) {
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("{} failed: {}", name, e.getMessage());
+                }
+                log.warn("{} did not finish, retrying in {} ms", name, backoff);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                backoff = Math.min(2 * backoff, MAX_BACKOFF_MILLIS);
+            }
+        }, name);
+        loader.setDaemon(true);
+        loader.start();
+        return loader;
+    }
+}
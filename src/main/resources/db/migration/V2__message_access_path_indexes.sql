@@ -0,0 +1,8 @@
+-- Indexes for the message listings. H2 appends the primary key to every secondary index,
+-- so each index also orders ties by message_id, which the keyset page queries rely on.
+
+-- GET /accounts/{account_id}/messages: posted_by lookups, optionally ordered by time.
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch);
+
+-- GET /messages?order=time: time-ordered keyset pages.
+create index if not exists message_time_id_idx on message (time_posted_epoch, message_id);
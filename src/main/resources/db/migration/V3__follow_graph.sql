@@ -0,0 +1,10 @@
+-- Who follows whom, for the home timelines of GET /accounts/{account_id}/feed.
+-- The primary key serves "whom does this account follow"; the reverse direction is only needed for fan-out,
+-- which reads it from the in-memory FollowGraph.
+create table if not exists follow (
+    follower_id int not null,
+    followee_id int not null,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id)
+);
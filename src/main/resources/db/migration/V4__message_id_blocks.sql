@@ -0,0 +1,3 @@
+-- Blocks of message ids for DAO.ShardedMessageDAO (db.shards > 1), which assigns ids itself so that they are unique
+-- across every shard. Each value is reserved by one node and stands for ShardedMessageDAO.ID_BLOCK ids.
+create sequence if not exists message_id_block start with 1;
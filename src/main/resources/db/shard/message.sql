@@ -0,0 +1,11 @@
+-- The 'message' table of the shard databases of DAO.ShardedMessageDAO, applied whenever a shard is opened.
+-- Shard 0 is the main database, whose table comes from the migrations; the others have no 'account' table, so their
+-- posted_by is not a foreign key, and message_id is assigned by the DAO instead of generated.
+create table if not exists message (
+    message_id int primary key,
+    posted_by int,
+    message_text varchar(255),
+    time_posted_epoch bigint
+);
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch);
+create index if not exists message_time_id_idx on message (time_posted_epoch, message_id);
@@ -0,0 +1,79 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import Service.AccountIndex;
+import Util.ConnectionUtil;
+
+public class AccountIndexTest {
+    AccountIndex accountIndex;
+
+    /**
+     * Before every test, reset the database and create an empty index.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        accountIndex = new AccountIndex();
+    }
+
+    /**
+     * Added ids should be found, including ones far beyond the initial capacity, and others should not.
+     */
+    @Test
+    public void addedIdsAreFound() {
+        accountIndex.add(1);
+        accountIndex.add(10_000_000);
+        Assert.assertTrue(accountIndex.contains(1));
+        Assert.assertTrue(accountIndex.contains(10_000_000));
+        Assert.assertFalse(accountIndex.contains(2));
+        Assert.assertFalse(accountIndex.contains(-1));
+        Assert.assertFalse(accountIndex.contains(20_000_000));
+        // 10 million ids fit in about 1.25 MB
+        Assert.assertTrue(accountIndex.memoryBytes() < 3 << 20);
+    }
+
+    /**
+     * Warming up should load the accounts from the database and then mark the index ready.
+     */
+    @Test
+    public void warmUpLoadsExistingAccounts() throws InterruptedException {
+        Assert.assertFalse(accountIndex.isReady());
+        accountIndex.warmUp(new AccountDAO());
+        for (int i = 0; i < 100 && !accountIndex.isReady(); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertTrue(accountIndex.isReady());
+        Assert.assertTrue(accountIndex.contains(1));
+        Assert.assertFalse(accountIndex.contains(2));
+    }
+
+    /**
+     * A warm-up whose load fails should be retried until it succeeds.
+     */
+    @Test
+    public void failedWarmUpIsRetried() throws InterruptedException {
+        System.setProperty("warmup.retryMillis", "20");
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            accountIndex.warmUp(new AccountDAO() {
+                @Override
+                public boolean forEachAccountId(IntConsumer consumer) {
+                    return attempts.incrementAndGet() > 2 && super.forEachAccountId(consumer);
+                }
+            });
+        } finally {
+            System.clearProperty("warmup.retryMillis");
+        }
+        for (int i = 0; i < 100 && !accountIndex.isReady(); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertTrue(accountIndex.isReady());
+        Assert.assertEquals(3, attempts.get());
+        Assert.assertTrue(accountIndex.contains(1));
+    }
+}
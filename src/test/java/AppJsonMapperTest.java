@@ -0,0 +1,57 @@
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.AppJsonMapper;
+import Model.Account;
+import Model.Message;
+
+public class AppJsonMapperTest {
+    AppJsonMapper jsonMapper;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, create the mapper under test and a plain ObjectMapper to compare with.
+     */
+    @Before
+    public void setUp() {
+        jsonMapper = new AppJsonMapper();
+        objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * The handwritten message writer should produce the same JSON as Jackson's bean serializer, for lists and single
+     * messages, including characters that need escaping and missing text.
+     */
+    @Test
+    public void messageListsMatchJackson() throws Exception {
+        List<Message> messages = List.of(
+                new Message(1, 1, "test message 1", 1669947792),
+                new Message(2, 1, "quote \" and \\ and \n and \u00e9", 1669947793L * 1000),
+                new Message(3, 2, null, 0));
+
+        String json = jsonMapper.toJsonString(messages, List.class);
+        Assert.assertEquals(objectMapper.writeValueAsString(messages), json);
+        Assert.assertEquals("[]", jsonMapper.toJsonString(List.of(), List.class));
+        Assert.assertEquals(objectMapper.writeValueAsString(messages.get(1)),
+                jsonMapper.toJsonString(messages.get(1), Message.class));
+    }
+
+    /**
+     * Accounts and messages should read back what was written.
+     */
+    @Test
+    public void modelsRoundTrip() {
+        Account account = new Account(1, "testuser1", "password");
+        Message message = new Message(1, 1, "test message 1", 1669947792);
+
+        Assert.assertEquals(account, jsonMapper.fromJsonString(jsonMapper.toJsonString(account, Account.class),
+                Account.class));
+        Assert.assertEquals(message, jsonMapper.fromJsonString(jsonMapper.toJsonString(message, Message.class),
+                Message.class));
+    }
+}
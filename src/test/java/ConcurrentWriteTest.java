@@ -0,0 +1,132 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+public class ConcurrentWriteTest {
+    static final int THREADS = 16;
+    AccountService accountService;
+    MessageService messageService;
+    ExecutorService pool;
+
+    /**
+     * Before every test, reset the database and create the services and a thread pool for the writers.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        accountService = new AccountService(new AccountDAO());
+        messageService = new MessageService(new MessageDAO());
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Runs the task on every thread at once and collects the results.
+     */
+    private <T> List<T> race(Callable<T> task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    /**
+     * Parallel registrations of the same username should create exactly one account.
+     */
+    @Test
+    public void duplicateRegistrationsCreateOneAccount() throws Exception {
+        List<Account> results = race(() -> accountService.addAccount(new Account("racer", "password")));
+
+        int created = 0;
+        for (Account account : results) {
+            if (account != null) {
+                created++;
+                Assert.assertEquals("racer", account.getUsername());
+            }
+        }
+        Assert.assertEquals(1, created);
+        Assert.assertNotNull(accountService.loginAccount(new Account("racer", "password")));
+    }
+
+    /**
+     * Parallel deletes of the same message should return it exactly once, with its full row.
+     */
+    @Test
+    public void parallelDeletesReturnTheMessageOnce() throws Exception {
+        List<Message> results = race(() -> messageService.deleteMessageByID(1));
+
+        Message expected = new Message(1, 1, "test message 1", 1669947792);
+        int deleted = 0;
+        for (Message message : results) {
+            if (message != null) {
+                deleted++;
+                Assert.assertEquals(expected, message);
+            }
+        }
+        Assert.assertEquals(1, deleted);
+        Assert.assertNull(messageService.getMessageByID(1));
+    }
+
+    /**
+     * An update racing with a delete of the same message either returns the updated row or nothing.
+     */
+    @Test
+    public void updatesRacingWithDeleteNeverReturnStaleRows() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        Future<Message> delete = pool.submit(() -> {
+            start.await();
+            return messageService.deleteMessageByID(1);
+        });
+        List<Future<Message>> updates = new ArrayList<>();
+        for (int i = 0; i < THREADS - 1; i++) {
+            String text = "update " + i;
+            updates.add(pool.submit(() -> {
+                start.await();
+                return messageService.updateMessageByID(new Message(1, 0, text, 0));
+            }));
+        }
+        start.countDown();
+
+        Assert.assertNotNull(delete.get());
+        for (Future<Message> update : updates) {
+            Message message = update.get();
+            if (message != null) {
+                Assert.assertEquals(1, message.getPosted_by());
+                Assert.assertEquals(1669947792, message.getTime_posted_epoch());
+                Assert.assertTrue(message.getMessage_text().startsWith("update "));
+            }
+        }
+        Assert.assertNull(messageService.getMessageByID(1));
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path, String etag) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String etag(HttpResponse<String> response) {
+        Assert.assertEquals(200, response.statusCode());
+        return response.headers().firstValue("ETag").orElseThrow();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with the ETag of the previous response in If-None-Match
+     *
+     * Expected Response:
+     *  Status Code: 304 with an empty body while no message is written, then 200 with a new ETag
+     */
+    @Test
+    public void listingIsNotModifiedUntilAMessageIsWritten() throws IOException, InterruptedException {
+        String etag = etag(get("/messages", null));
+        HttpResponse<String> poll = get("/messages", etag);
+        Assert.assertEquals(304, poll.statusCode());
+        Assert.assertEquals("", poll.body());
+        Assert.assertEquals(etag, poll.headers().firstValue("ETag").orElseThrow());
+        Assert.assertEquals(304, get("/messages?limit=5", "\"other\", W/" + etag).statusCode());
+
+        Assert.assertEquals(200, send("POST", "/messages",
+                "{\"posted_by\": 1, \"message_text\": \"new\", \"time_posted_epoch\": 1669947792}").statusCode());
+        HttpResponse<String> changed = get("/messages", etag);
+        Assert.assertNotEquals(etag, etag(changed));
+        Assert.assertTrue(changed.body().contains("\"new\""));
+        Assert.assertEquals(200, get("/messages?all=true", etag).statusCode());
+    }
+
+    /**
+     * An account's listing should only change when one of its own messages is written.
+     */
+    @Test
+    public void accountListingChangesWithItsOwnMessagesOnly() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "/register",
+                "{\"username\": \"user2\", \"password\": \"password\"}").statusCode());
+        String etag = etag(get("/accounts/1/messages", null));
+        Assert.assertEquals(200, send("POST", "/messages",
+                "{\"posted_by\": 2, \"message_text\": \"other\", \"time_posted_epoch\": 1669947792}").statusCode());
+        Assert.assertEquals(304, get("/accounts/1/messages", etag).statusCode());
+
+        Assert.assertEquals(200, send("PATCH", "/messages/1", "{\"message_text\": \"edited\"}").statusCode());
+        HttpResponse<String> changed = get("/accounts/1/messages", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertTrue(changed.body().contains("\"edited\""));
+    }
+
+    /**
+     * A message should be answered with 304 until it is updated or deleted.
+     */
+    @Test
+    public void messageIsNotModifiedUntilDeleted() throws IOException, InterruptedException {
+        String etag = etag(get("/messages/1", null));
+        Assert.assertEquals(304, get("/messages/1", etag).statusCode());
+
+        Assert.assertEquals(200, send("DELETE", "/messages/1", null).statusCode());
+        HttpResponse<String> deleted = get("/messages/1", etag);
+        Assert.assertEquals(200, deleted.statusCode());
+        Assert.assertEquals("", deleted.body());
+    }
+}
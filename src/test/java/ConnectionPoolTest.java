@@ -0,0 +1,113 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+import Util.PoolConfig;
+import Util.PoolStats;
+
+public class ConnectionPoolTest {
+    JdbcDataSource source;
+    PoolConfig config;
+    ConnectionPool pool;
+
+    /**
+     * Before every test, point a small pool at a private in-memory database so the shared application pool is not
+     * affected.
+     */
+    @Before
+    public void setUp() {
+        source = new JdbcDataSource();
+        source.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        source.setUser("sa");
+        source.setPassword("sa");
+        config = new PoolConfig();
+        config.setMinIdle(0);
+        config.setMaxSize(2);
+        config.setAcquireTimeoutMillis(200);
+        config.setHousekeepingPeriodMillis(20);
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Closing a borrowed connection should hand the same physical connection back instead of opening a new one.
+     */
+    @Test
+    public void closedConnectionsAreReused() throws SQLException {
+        pool = new ConnectionPool(source, config);
+        for (int i = 0; i < 10; i++) {
+            try (Connection connection = pool.getConnection()) {
+                Assert.assertFalse(connection.isClosed());
+            }
+        }
+        PoolStats stats = pool.getStats();
+        Assert.assertEquals(1, stats.getTotal());
+        Assert.assertEquals(0, stats.getActive());
+        Assert.assertEquals(10, stats.getAcquireCount());
+    }
+
+    /**
+     * When every connection is borrowed, the next caller should give up after the acquire timeout.
+     */
+    @Test
+    public void acquireTimesOutWhenPoolIsExhausted() throws SQLException {
+        pool = new ConnectionPool(source, config);
+        try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+            Assert.assertEquals(2, pool.getStats().getActive());
+            Assert.assertThrows(SQLTimeoutException.class, () -> pool.getConnection());
+        }
+        Assert.assertEquals(1, pool.getStats().getAcquireTimeouts());
+        Assert.assertEquals(2, pool.getStats().getIdle());
+    }
+
+    /**
+     * A connection held past the leak detection threshold should be counted as a leak.
+     */
+    @Test
+    public void heldConnectionIsReportedAsLeak() throws SQLException, InterruptedException {
+        config.setLeakDetectionThresholdMillis(50);
+        pool = new ConnectionPool(source, config);
+        try (Connection connection = pool.getConnection()) {
+            Thread.sleep(300);
+            Assert.assertEquals(1, pool.getStats().getLeaksDetected());
+        }
+    }
+
+    /**
+     * Connections idle past the idle timeout should be closed down to minIdle.
+     */
+    @Test
+    public void idleConnectionsAreEvicted() throws SQLException, InterruptedException {
+        config.setIdleTimeoutMillis(50);
+        pool = new ConnectionPool(source, config);
+        try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+            Assert.assertEquals(2, pool.getStats().getTotal());
+        }
+        Thread.sleep(300);
+        Assert.assertEquals(0, pool.getStats().getTotal());
+    }
+
+    /**
+     * A connection reference kept after close() must not reach the physical connection any more.
+     */
+    @Test
+    public void returnedConnectionCannotBeUsed() throws SQLException {
+        pool = new ConnectionPool(source, config);
+        Connection connection = pool.getConnection();
+        connection.close();
+        Assert.assertTrue(connection.isClosed());
+        Assert.assertThrows(SQLException.class, () -> connection.createStatement());
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.BatchResult;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessageBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> postBatch(String body) throws IOException, InterruptedException {
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a mix of valid and invalid messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the ids of the created messages in request order, null for the others, and one error for each
+     *  of the others
+     */
+    @Test
+    public void createBatchReportsEachMessage() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBatch("[" +
+                "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947792}," +
+                "{\"posted_by\":1, \"message_text\": \"\", \"time_posted_epoch\": 1669947792}," +
+                "{\"posted_by\":9, \"message_text\": \"nobody\", \"time_posted_epoch\": 1669947792}," +
+                "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}]");
+        Assert.assertEquals(200, response.statusCode());
+
+        JsonNode result = objectMapper.readTree(response.body());
+        List<Integer> ids = Arrays.asList(objectMapper.treeToValue(result.get("ids"), Integer[].class));
+        Assert.assertEquals(Arrays.asList(2, null, null, 3), ids);
+        Assert.assertEquals(2, result.get("errors").size());
+        Assert.assertEquals(1, result.get("errors").get(0).get("index").asInt());
+        Assert.assertEquals(2, result.get("errors").get(1).get("index").asInt());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .build();
+        HttpResponse<String> getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947793),
+                objectMapper.readValue(getResponse.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with an empty list
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void createEmptyBatchIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, postBatch("[]").statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a null body
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void createNullBatchIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, postBatch("null").statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with more messages than allowed
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  and none of the messages is created
+     */
+    @Test
+    public void createOversizedBatchIsRejected() throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i <= 1000; i++) {
+            body.append(i == 0 ? "" : ",")
+                    .append("{\"posted_by\":1, \"message_text\": \"m\", \"time_posted_epoch\": 1669947792}");
+        }
+        Assert.assertEquals(400, postBatch(body.append("]").toString()).statusCode());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        HttpResponse<String> getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(1, objectMapper.readTree(getResponse.body()).size());
+    }
+
+    /**
+     * While the account index has not been warmed up, the posted_by values of a batch are checked in the database.
+     */
+    @Test
+    public void createBatchChecksAccountsInDatabaseDuringWarmUp() {
+        MessageService messageService = new MessageService(new MessageDAO());
+        BatchResult result = messageService.addMessages(Arrays.asList(
+                new Message(1, "from an existing account", 1669947792),
+                new Message(7, "from a missing account", 1669947792)));
+
+        Assert.assertEquals(Arrays.asList(2, null), result.getIds());
+        Assert.assertEquals(1, result.getErrors().get(0).getIndex());
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.DbExecutor;
+import Util.Deadline;
+import Util.OverloadedException;
+import io.javalin.Javalin;
+
+public class DbExecutorTest {
+    CountDownLatch release;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and arm the latch that blocking tasks wait on.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (app != null) {
+            app.stop();
+        }
+    }
+
+    private Integer block() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    /**
+     * With the only executor thread busy and the queue full, a request for a message should be shed with 503 and a
+     * Retry-After header, while requests that do not need the database are still served.
+     *
+     * Expected Response:
+     *  Status Code: 503 for GET /messages/1, 200 for GET /metrics
+     *  Headers: Retry-After: 3
+     */
+    @Test
+    public void fullQueueIsShedWithRetryAfter() throws IOException, InterruptedException {
+        DbExecutor dbExecutor = new DbExecutor(1, 1, 10_000, 3);
+        dbExecutor.submit(this::block);
+        dbExecutor.submit(this::block);
+        app = new SocialMediaController(dbExecutor).startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        HttpClient webClient = HttpClient.newHttpClient();
+
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(503, response.statusCode());
+        Assert.assertEquals("3", response.headers().firstValue("Retry-After").orElse(null));
+
+        HttpResponse<String> metrics = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, metrics.statusCode());
+        Assert.assertTrue(metrics.body(), metrics.body().contains("db_executor_rejected_total 1\n"));
+        Assert.assertTrue(metrics.body(), metrics.body().contains("db_executor_queue_depth 1\n"));
+    }
+
+    /**
+     * Work whose deadline passes while it waits in the queue should fail with an OverloadedException without running.
+     */
+    @Test
+    public void workPastItsDeadlineIsNotRun() throws InterruptedException {
+        DbExecutor dbExecutor = new DbExecutor(1, 10, 200, 1);
+        dbExecutor.submit(this::block);
+        boolean[] ran = new boolean[1];
+        CompletableFuture<Boolean> late = dbExecutor.submit(() -> ran[0] = true);
+        Thread.sleep(400);
+        release.countDown();
+
+        try {
+            late.get();
+            Assert.fail("work past its deadline should not complete");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof OverloadedException);
+        }
+        Assert.assertFalse(ran[0]);
+        Assert.assertEquals(1, dbExecutor.getDeadlinesExceeded());
+        dbExecutor.shutdown();
+    }
+
+    /**
+     * A write that commits and then returns just after its deadline should report its result rather than overload, or
+     * the client would retry a write that succeeded.
+     */
+    @Test
+    public void writeFinishingAfterItsDeadlineIsNotReportedAsOverload() throws Exception {
+        DbExecutor dbExecutor = new DbExecutor(1, 10, 200, 1);
+        MessageDAO messageDAO = new MessageDAO();
+        CompletableFuture<Message> write = dbExecutor.submit(() -> {
+            Message created = messageDAO.createMessage(new Message(1, "committed", 1669947792));
+            try {
+                Thread.sleep(400);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return created;
+        });
+
+        Message created = write.get();
+        Assert.assertEquals("committed", created.getMessage_text());
+        Assert.assertEquals(created, messageDAO.getMessageByID(created.getMessage_id()));
+        Assert.assertEquals(0, dbExecutor.getDeadlinesExceeded());
+        dbExecutor.shutdown();
+    }
+
+    /**
+     * Statements created inside a deadline should get the remaining time, rounded up to seconds, as query timeout.
+     */
+    @Test
+    public void statementsGetTheRemainingTimeAsQueryTimeout() {
+        Assert.assertEquals(Integer.valueOf(3), Deadline.after(2500).run(this::queryTimeout));
+        Assert.assertEquals(Integer.valueOf(0), queryTimeout());
+    }
+
+    /**
+     * A query still running when the deadline passes should be cancelled by the database.
+     */
+    @Test
+    public void queryRunningPastTheDeadlineIsCancelled() {
+        long start = System.nanoTime();
+        SQLException error = Deadline.after(1000).run(() -> {
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement ps = connection.prepareStatement(
+                         "SELECT SUM(X) FROM SYSTEM_RANGE(1, 10000000000)")) {
+                ps.executeQuery();
+                return null;
+            } catch (SQLException e) {
+                return e;
+            }
+        });
+        Assert.assertNotNull(error);
+        Assert.assertEquals("57014", error.getSQLState());
+        Assert.assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        Assert.assertEquals(Integer.valueOf(0), queryTimeout());
+    }
+
+    private Integer queryTimeout() {
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement("SELECT 1")) {
+            return ps.getQueryTimeout();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
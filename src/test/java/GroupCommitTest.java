@@ -0,0 +1,200 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import DAO.MessageGroupCommitter;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.Deadline;
+import Util.OverloadedException;
+
+public class GroupCommitTest {
+    static final int THREADS = 16;
+    MessageDAO messageDAO;
+    MessageGroupCommitter groupCommitter;
+    ExecutorService pool;
+
+    /**
+     * Before every test, reset the database and create a group committer that waits up to 50 ms for batches of 8,
+     * and a thread pool for the writers.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO();
+        groupCommitter = new MessageGroupCommitter(messageDAO, 8, 50_000);
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        groupCommitter.shutdown();
+        pool.shutdownNow();
+    }
+
+    /**
+     * Creates one message per thread, all at once, and returns the results in thread order.
+     */
+    private List<Message> createConcurrently(MessageService messageService, int invalidThread) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Message message = new Message(i == invalidThread ? 99 : 1, "grouped " + i, 1669947792 + i);
+            futures.add(pool.submit(() -> {
+                start.await();
+                return messageService == null ? groupCommitter.createMessage(message)
+                        : messageService.addMessage(message);
+            }));
+        }
+        start.countDown();
+        List<Message> results = new ArrayList<>();
+        for (Future<Message> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    /**
+     * Concurrent creations should share transactions, and each should still get back its own committed message.
+     */
+    @Test
+    public void concurrentMessagesShareCommits() throws Exception {
+        MessageService messageService = new MessageService(messageDAO);
+        messageService.useGroupCommit(groupCommitter);
+        List<Message> created = createConcurrently(messageService, -1);
+
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < THREADS; i++) {
+            Message message = created.get(i);
+            Assert.assertEquals("grouped " + i, message.getMessage_text());
+            Assert.assertTrue(ids.add(message.getMessage_id()));
+            Assert.assertEquals(message, messageDAO.getMessageByID(message.getMessage_id()));
+        }
+        Assert.assertEquals(THREADS, groupCommitter.getMessageCount());
+        Assert.assertTrue(groupCommitter.getBatchCount() < THREADS);
+        Assert.assertEquals(THREADS + 1, messageDAO.getAllMessages().size());
+    }
+
+    /**
+     * A message the database refuses should fail alone, not the messages it was grouped with.
+     */
+    @Test
+    public void refusedMessageDoesNotFailItsBatch() throws Exception {
+        List<Message> created = createConcurrently(null, 3);
+        for (int i = 0; i < THREADS; i++) {
+            if (i == 3) {
+                Assert.assertNull(created.get(i));
+            } else {
+                Assert.assertEquals("grouped " + i, created.get(i).getMessage_text());
+            }
+        }
+        Assert.assertEquals(THREADS, messageDAO.getAllMessages().size());
+    }
+
+    /**
+     * A batch whose insert throws should fail its own messages, and the committer should go on with the next batch.
+     */
+    @Test
+    public void throwingBatchFailsItsMessagesOnly() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        groupCommitter.shutdown();
+        groupCommitter = new MessageGroupCommitter(new MessageDAO() {
+            @Override
+            public Message createMessage(Message message) {
+                if (failing.get()) {
+                    throw new CompletionException(new SQLException("shard unavailable"));
+                }
+                return super.createMessage(message);
+            }
+
+            @Override
+            public List<Message> createMessages(List<Message> messages) {
+                if (failing.get()) {
+                    throw new CompletionException(new SQLException("shard unavailable"));
+                }
+                return super.createMessages(messages);
+            }
+        }, 8, 50_000);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Message message = new Message(1, "failing " + i, 1669947792);
+            futures.add(pool.submit(() -> {
+                start.await();
+                return groupCommitter.createMessage(message);
+            }));
+        }
+        start.countDown();
+        for (Future<Message> future : futures) {
+            ExecutionException e = Assert.assertThrows(ExecutionException.class, future::get);
+            Assert.assertTrue(e.getCause() instanceof CompletionException);
+        }
+        failing.set(false);
+        Message created = groupCommitter.createMessage(new Message(1, "after the failure", 1669947792));
+        Assert.assertEquals(created, messageDAO.getMessageByID(created.getMessage_id()));
+        Assert.assertEquals(2, messageDAO.getAllMessages().size());
+    }
+
+    /**
+     * A message still queued when its request's deadline passes should be given up with an OverloadedException and
+     * never inserted.
+     */
+    @Test
+    public void queuedMessageIsGivenUpAtItsDeadline() throws Exception {
+        CountDownLatch inserting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        groupCommitter.shutdown();
+        groupCommitter = new MessageGroupCommitter(new MessageDAO() {
+            @Override
+            public Message createMessage(Message message) {
+                inserting.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.createMessage(message);
+            }
+        }, 1, 0);
+
+        Future<Message> blocking = pool.submit(() -> groupCommitter.createMessage(new Message(1, "first", 1669947792)));
+        inserting.await();
+        Assert.assertThrows(OverloadedException.class, () -> Deadline.after(200).run(
+                () -> groupCommitter.createMessage(new Message(1, "given up", 1669947792))));
+        release.countDown();
+
+        Assert.assertEquals("first", blocking.get().getMessage_text());
+        Message later = groupCommitter.createMessage(new Message(1, "later", 1669947792));
+        Assert.assertEquals(List.of("test message 1", "first", "later"),
+                messageDAO.getAllMessages().stream().map(Message::getMessage_text).toList());
+        Assert.assertEquals(later, messageDAO.getMessageByID(later.getMessage_id()));
+    }
+
+    /**
+     * After shutdown, messages should still be created, by the calling thread.
+     */
+    @Test
+    public void messagesAreCreatedAfterShutdown() {
+        groupCommitter.shutdown();
+        Message created = groupCommitter.createMessage(new Message(1, "late", 1669947792));
+        Assert.assertEquals("late", created.getMessage_text());
+        Assert.assertEquals(created, messageDAO.getMessageByID(created.getMessage_id()));
+    }
+}
@@ -0,0 +1,313 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Follow;
+import Model.Message;
+import Service.FeedService;
+import Service.FollowGraph;
+import Service.HomeTimelineCache;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class HomeFeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and create a new webClient and ObjectMapper for interacting locally on the
+     * web. Each test starts the Javalin app itself, after setting the feed properties it needs.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("feed.fanout.maxFollowers");
+        System.clearProperty("feed.buffer.size");
+        if (app != null) {
+            app.stop();
+        }
+    }
+
+    /**
+     * Starts the app and registers accounts 2, 3 and 4 next to account 1 from the sql script.
+     */
+    private void start() throws IOException, InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        for (int i = 2; i <= 4; i++) {
+            HttpResponse<String> response = send("POST", "/register",
+                    "{\"username\": \"user" + i + "\", \"password\": \"password\"}");
+            Assert.assertEquals(200, response.statusCode());
+        }
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private int post(int postedBy, String text) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "/messages", "{\"posted_by\":" + postedBy
+                + ", \"message_text\": \"" + text + "\", \"time_posted_epoch\": 1669947792}");
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class).getMessage_id();
+    }
+
+    private void follow(int follower, int followee) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "/accounts/" + follower + "/following/" + followee, null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Follow(follower, followee), objectMapper.readValue(response.body(), Follow.class));
+    }
+
+    private HttpResponse<String> feed(int accountId, String query) throws IOException, InterruptedException {
+        return send("GET", "/accounts/" + accountId + "/feed" + query, null);
+    }
+
+    private List<Integer> ids(HttpResponse<String> response) throws IOException {
+        Assert.assertEquals(response.body(), 200, response.statusCode());
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : objectMapper.readValue(response.body(), Message[].class)) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+
+    private String metrics() throws IOException, InterruptedException {
+        return send("GET", "/metrics", null).body();
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/accounts/{account_id}/following/{followee_id} and then
+     * GET localhost:8080/accounts/{account_id}/feed
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages of the followed accounts only, newest first, including ones posted before the
+     *  follow and ones posted after the feed was first read
+     */
+    @Test
+    public void feedListsMessagesOfFollowedAccounts() throws IOException, InterruptedException {
+        start();
+        int first = post(2, "from two");
+        post(3, "from three");
+        follow(4, 2);
+        follow(4, 1);
+        Assert.assertEquals(Arrays.asList(first, 1), ids(feed(4, "")));
+
+        int later = post(2, "later from two");
+        post(4, "own message");
+        Assert.assertEquals(Arrays.asList(later, first, 1), ids(feed(4, "")));
+        Assert.assertTrue(metrics().contains("\nfeed_fanout_writes_total 1.0\n"));
+    }
+
+    /**
+     * Unfollowing should remove the account's messages from the feed, and following it again bring them back.
+     */
+    @Test
+    public void unfollowRemovesMessagesFromFeed() throws IOException, InterruptedException {
+        start();
+        int message = post(2, "from two");
+        follow(3, 2);
+        Assert.assertEquals(Arrays.asList(message), ids(feed(3, "")));
+
+        HttpResponse<String> unfollow = send("DELETE", "/accounts/3/following/2", null);
+        Assert.assertEquals(200, unfollow.statusCode());
+        Assert.assertEquals(new Follow(3, 2), objectMapper.readValue(unfollow.body(), Follow.class));
+        Assert.assertEquals(Arrays.asList(), ids(feed(3, "")));
+
+        HttpResponse<String> again = send("DELETE", "/accounts/3/following/2", null);
+        Assert.assertEquals(200, again.statusCode());
+        Assert.assertEquals("", again.body());
+        follow(3, 2);
+        follow(3, 2);
+        Assert.assertEquals(Arrays.asList(message), ids(feed(3, "")));
+    }
+
+    /**
+     * An author with more followers than feed.fanout.maxFollowers is not fanned out; its messages are merged into
+     * the feeds of its followers when they are read.
+     */
+    @Test
+    public void popularAuthorsAreMergedOnRead() throws IOException, InterruptedException {
+        System.setProperty("feed.fanout.maxFollowers", "1");
+        start();
+        follow(3, 2);
+        follow(4, 2);
+        follow(4, 1);
+        Assert.assertEquals(Arrays.asList(1), ids(feed(4, "")));
+
+        int message = post(2, "from two");
+        int quiet = post(1, "from one");
+        Assert.assertEquals(Arrays.asList(quiet, message, 1), ids(feed(4, "")));
+        Assert.assertEquals(Arrays.asList(message), ids(feed(3, "")));
+        String metrics = metrics();
+        Assert.assertTrue(metrics, metrics.contains("\nfeed_merged_on_read_messages_total 1.0\n"));
+        Assert.assertTrue(metrics, metrics.contains("\nfeed_fanout_messages_total 1.0\n"));
+    }
+
+    /**
+     * Following the next cursor should list the whole feed once, including pages older than the feed buffer holds.
+     */
+    @Test
+    public void feedIsPagedPastTheBuffer() throws IOException, InterruptedException {
+        System.setProperty("feed.buffer.size", "3");
+        start();
+        follow(3, 2);
+        Assert.assertEquals(Arrays.asList(), ids(feed(3, "")));
+        List<Integer> posted = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            posted.add(0, post(2, "message " + i));
+        }
+
+        List<Integer> listed = new ArrayList<>();
+        String query = "?limit=2";
+        while (query != null) {
+            HttpResponse<String> page = feed(3, query);
+            listed.addAll(ids(page));
+            query = page.headers().firstValue("X-Next-Cursor").map(cursor -> "?limit=2&after=" + cursor).orElse(null);
+        }
+        Assert.assertEquals(posted, listed);
+    }
+
+    /**
+     * A buffered message deleted without its delete reaching the buffer should not cut the feed short: every page
+     * should still be full and followed by a next cursor while older messages remain.
+     */
+    @Test
+    public void deletesMissedByTheBufferDoNotEndTheFeed() throws IOException, InterruptedException {
+        start();
+        follow(3, 2);
+        List<Integer> posted = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            posted.add(0, post(2, "message " + i));
+        }
+        Assert.assertEquals(posted, ids(feed(3, "")));
+        // deleted in the database only, as when onMessageDeleted skips an author merged on read at that moment
+        Assert.assertNotNull(new MessageDAO().deleteMessageByID(posted.remove(1)));
+
+        List<Integer> listed = new ArrayList<>();
+        String query = "?limit=2";
+        while (query != null) {
+            HttpResponse<String> page = feed(3, query);
+            List<Integer> pageIds = ids(page);
+            listed.addAll(pageIds);
+            query = page.headers().firstValue("X-Next-Cursor").map(cursor -> "?limit=2&after=" + cursor).orElse(null);
+            Assert.assertTrue(pageIds.size() == 2 || query == null);
+        }
+        Assert.assertEquals(posted, listed);
+    }
+
+    /**
+     * An unfollow that lands after a feed read has looked up the followees, but before the feed's buffer is loaded,
+     * should not leave the unfollowed account's messages in the buffer.
+     */
+    @Test
+    public void unfollowDuringABufferLoadIsNotCached() throws InterruptedException {
+        AccountDAO accountDAO = new AccountDAO();
+        for (int i = 2; i <= 4; i++) {
+            accountDAO.registerAccount(new Account("user" + i, "password"));
+        }
+        MessageDAO messageDAO = new MessageDAO();
+        messageDAO.createMessage(new Message(2, "from two", 1669947792));
+        int fromThree = messageDAO.createMessage(new Message(3, "from three", 1669947792)).getMessage_id();
+        FollowDAO followDAO = new FollowDAO();
+        FollowGraph followGraph = new FollowGraph();
+        followGraph.warmUp(followDAO);
+        while (!followGraph.isReady()) {
+            Thread.sleep(10);
+        }
+        HomeTimelineCache homeTimelines = new HomeTimelineCache() {
+            @Override
+            public HomeTimeline get(int accountId, IntFunction<int[]> loader) {
+                if (followGraph.getFollowees(accountId).length == 2) {
+                    followDAO.unfollow(accountId, 2);
+                    followGraph.remove(accountId, 2);
+                }
+                return super.get(accountId, loader);
+            }
+        };
+        FeedService feedService = new FeedService(followDAO, messageDAO, new MessageService(messageDAO), followGraph,
+                homeTimelines);
+        feedService.follow(4, 2);
+        feedService.follow(4, 3);
+
+        for (int i = 0; i < 2; i++) {
+            List<Integer> ids = new ArrayList<>();
+            for (Message message : feedService.getFeed(4, null, null).getMessages()) {
+                ids.add(message.getMessage_id());
+            }
+            Assert.assertEquals(List.of(fromThree), ids);
+        }
+    }
+
+    /**
+     * On a database that does not have the follow table yet, the migration that adds it should run before the follow
+     * graph warms up, so fan-out on write works from the start.
+     */
+    @Test
+    public void followGraphWarmsUpAfterTheFollowTableIsMigrated() throws Exception {
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE follow");
+            statement.execute("DELETE FROM schema_history WHERE version = 3");
+        }
+        start();
+        follow(3, 2);
+        Assert.assertEquals(Arrays.asList(), ids(feed(3, "")));
+        int posted = post(2, "fanned out");
+        Assert.assertEquals(Arrays.asList(posted), ids(feed(3, "")));
+        Assert.assertTrue(metrics().contains("\nfeed_fanout_writes_total 1.0\n"));
+    }
+
+    /**
+     * Following oneself or an account that does not exist should fail.
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void invalidFollowsAreRejected() throws IOException, InterruptedException {
+        start();
+        Assert.assertEquals(400, send("POST", "/accounts/2/following/2", null).statusCode());
+        Assert.assertEquals(400, send("POST", "/accounts/2/following/99", null).statusCode());
+        Assert.assertEquals(400, send("POST", "/accounts/99/following/2", null).statusCode());
+        Assert.assertEquals(400, feed(2, "?limit=0").statusCode());
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Model.Message;
+import Service.MessageCache;
+
+public class MessageCacheTest {
+    MessageCache messageCache;
+    AtomicInteger loads;
+    Message stored;
+
+    /**
+     * Before every test, create an empty cache over a fake loader that counts its calls.
+     */
+    @Before
+    public void setUp() {
+        messageCache = new MessageCache(100, 0, 30);
+        loads = new AtomicInteger();
+        stored = new Message(1, 1, "test message 1", 1669947792);
+    }
+
+    private Message load(int id) {
+        loads.incrementAndGet();
+        return id == stored.getMessage_id() ? stored : null;
+    }
+
+    /**
+     * Repeated reads of the same id should only reach the loader once, and return copies of the cached message.
+     */
+    @Test
+    public void repeatedReadsHitTheCache() {
+        Message first = messageCache.get(1, this::load);
+        first.setMessage_text("changed by the caller");
+        Message second = messageCache.get(1, this::load);
+
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals("test message 1", second.getMessage_text());
+        Assert.assertEquals(1, messageCache.getStats().hitCount());
+        Assert.assertEquals(1, messageCache.getStats().missCount());
+    }
+
+    /**
+     * Ids that do not exist should be cached as missing until invalidated.
+     */
+    @Test
+    public void missingIdsAreCachedUntilInvalidated() {
+        Assert.assertNull(messageCache.get(2, this::load));
+        Assert.assertNull(messageCache.get(2, this::load));
+        Assert.assertEquals(1, loads.get());
+
+        stored = new Message(2, 1, "test message 2", 1669947793);
+        messageCache.invalidate(2);
+        Assert.assertEquals(stored, messageCache.get(2, this::load));
+        Assert.assertEquals(2, loads.get());
+    }
+}
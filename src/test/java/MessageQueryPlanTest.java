@@ -0,0 +1,109 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageCursor;
+import DAO.MessageDAO;
+import Util.ConnectionUtil;
+import Util.MigrationRunner;
+
+public class MessageQueryPlanTest {
+
+    /**
+     * Before every test, reset the database, which also applies the schema migrations.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Migrations are recorded in schema_history and are not applied twice.
+     */
+    @Test
+    public void migrationsAreRecordedOnce() throws SQLException {
+        Assert.assertEquals(0, MigrationRunner.migrate(ConnectionUtil.getDataSource()));
+        try (Connection conn = ConnectionUtil.getConnection();
+             Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery("select count(*) from schema_history")) {
+            rs.next();
+            Assert.assertEquals(4, rs.getInt(1));
+        }
+    }
+
+    /**
+     * Listing a user's messages should look posted_by up in an index instead of scanning the table. H2 may pick the
+     * index it keeps for the foreign key or the (posted_by, time_posted_epoch) one; both lead with posted_by.
+     */
+    @Test
+    public void messagesByUserUseIndex() throws SQLException {
+        String plan = explain(MessageDAO.MESSAGES_BY_USER_SQL, 1);
+        Assert.assertTrue(plan, plan.contains(": POSTED_BY = ?1 */"));
+        Assert.assertFalse(plan, plan.contains("tableScan"));
+    }
+
+    /**
+     * Merging the messages of several followed accounts into a feed should look each posted_by up in an index.
+     */
+    @Test
+    public void messagesByAuthorsUseIndex() throws SQLException {
+        String plan = explain(MessageDAO.MESSAGES_BY_AUTHORS_SQL, new Integer[] {1, 2}, 100, 10);
+        Assert.assertTrue(plan, plan.contains(": POSTED_BY IN(1, 2) */"));
+        Assert.assertFalse(plan, plan.contains("tableScan"));
+    }
+
+    /**
+     * A time-ordered page of a user's messages should seek and sort with the (posted_by, time_posted_epoch) index.
+     */
+    @Test
+    public void userPageByTimeUsesIndex() throws SQLException {
+        String plan = explain(MessageDAO.pageQuery(true, MessageCursor.Order.TIME, true, false),
+                1, 1669947792L, 1669947792L, 1, 10);
+        Assert.assertTrue(plan, plan.contains("MESSAGE_POSTED_BY_TIME_IDX"));
+    }
+
+    /**
+     * A time-ordered page of all messages should seek in the (time_posted_epoch, message_id) index and read it in
+     * order, both forwards and backwards, without sorting the table.
+     */
+    @Test
+    public void pageByTimeUsesIndex() throws SQLException {
+        String forward = explain(MessageDAO.pageQuery(false, MessageCursor.Order.TIME, true, false),
+                1669947792L, 1669947792L, 1, 10);
+        Assert.assertTrue(forward, forward.contains("MESSAGE_TIME_ID_IDX"));
+        Assert.assertTrue(forward, forward.contains("index sorted"));
+
+        String backward = explain(MessageDAO.pageQuery(false, MessageCursor.Order.TIME, true, true),
+                1669947792L, 1669947792L, 1, 10);
+        Assert.assertTrue(backward, backward.contains("MESSAGE_TIME_ID_IDX"));
+    }
+
+    /**
+     * An id-ordered page of all messages should seek in the primary key.
+     */
+    @Test
+    public void pageByIdUsesPrimaryKey() throws SQLException {
+        String plan = explain(MessageDAO.pageQuery(false, MessageCursor.Order.ID, true, false), 1, 10);
+        Assert.assertTrue(plan, plan.contains("PRIMARY_KEY"));
+        Assert.assertFalse(plan, plan.contains("tableScan"));
+    }
+
+    private String explain(String sql, Object... params) throws SQLException {
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement("EXPLAIN " + sql.replace(";", ""))) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageCursor;
+import DAO.MessageDAO;
+import DAO.MessagePage;
+import Model.Message;
+import Service.MessageReadModel;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageReadModelTest {
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and create a new webClient and ObjectMapper for interacting locally on the
+     * web. Tests that need the Javalin app start it themselves.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("messages.readModel");
+        if (app != null) {
+            app.stop();
+        }
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private double poolAcquires() throws IOException, InterruptedException {
+        for (String line : send("GET", "/metrics", null).body().split("\n")) {
+            if (line.startsWith("db_pool_acquires_total ")) {
+                return Double.parseDouble(line.substring(line.indexOf(" ") + 1));
+            }
+        }
+        throw new AssertionError("no db_pool_acquires_total in /metrics");
+    }
+
+    /**
+     * With messages.readModel set, GET /messages should show every write at once and not use the database.
+     */
+    @Test
+    public void listingIsServedFromMemory() throws IOException, InterruptedException {
+        System.setProperty("messages.readModel", "true");
+        app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        Assert.assertEquals(200, send("POST", "/messages",
+                "{\"posted_by\": 1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}").statusCode());
+        Assert.assertEquals(200, send("PATCH", "/messages/1", "{\"message_text\": \"first\"}").statusCode());
+
+        double acquires = poolAcquires();
+        HttpResponse<String> response = send("GET", "/messages", null);
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>() {});
+        Assert.assertEquals(List.of(new Message(1, 1, "first", 1669947792), new Message(2, 1, "second", 1669947793)),
+                messages);
+        Assert.assertEquals(400, send("GET", "/messages?limit=0", null).statusCode());
+        Assert.assertEquals(acquires, poolAcquires(), 0);
+
+        Assert.assertEquals(200, send("DELETE", "/messages/1", null).statusCode());
+        messages = objectMapper.readValue(send("GET", "/messages", null).body(), new TypeReference<List<Message>>() {});
+        Assert.assertEquals(List.of(new Message(2, 1, "second", 1669947793)), messages);
+    }
+
+    /**
+     * Pages from the read model should match the pages of the database, cursors included.
+     */
+    @Test
+    public void pagesMatchTheDatabase() {
+        MessageDAO messageDAO = new MessageDAO();
+        MessageService messageService = new MessageService(messageDAO);
+        MessageReadModel readModel = new MessageReadModel();
+        messageService.useReadModel(readModel);
+        Assert.assertTrue(readModel.build(messageDAO));
+        for (int i = 0; i < 9; i++) {
+            messageService.addMessage(new Message(1, "message " + i, 1669947792 + i));
+        }
+
+        MessageCursor after = null;
+        for (int pages = 0; pages < 4; pages++) {
+            MessagePage fromMemory = messageService.getMessagesPage(null, MessageCursor.Order.ID, after, null, 3);
+            MessagePage fromDatabase = messageDAO.getMessagesPage(null, MessageCursor.Order.ID, after, null, 3);
+            Assert.assertEquals(fromDatabase.getMessages(), fromMemory.getMessages());
+            Assert.assertEquals(encode(fromDatabase.getNext()), encode(fromMemory.getNext()));
+            Assert.assertEquals(encode(fromDatabase.getPrev()), encode(fromMemory.getPrev()));
+            if (fromMemory.getPrev() != null) {
+                MessagePage back = messageService.getMessagesPage(null, null, null, fromMemory.getPrev(), 3);
+                Assert.assertEquals(messageDAO.getMessagesPage(null, null, null, fromMemory.getPrev(), 3).getMessages(),
+                        back.getMessages());
+            }
+            after = fromMemory.getNext();
+        }
+        Assert.assertNull(after);
+        Assert.assertEquals(messageDAO.getAllMessages(), messageService.getAllMessages());
+    }
+
+    /**
+     * Changes published while the read model loads should be applied to what it loaded, and a create published after
+     * the delete of the same message should not bring it back.
+     */
+    @Test
+    public void changesDuringTheLoadAreApplied() {
+        MessageReadModel readModel = new MessageReadModel();
+        Assert.assertFalse(readModel.isReady());
+        new MessageDAO().updateMessageByID(new Message(1, 1, "updated while loading", 1669947792));
+        readModel.onMessageUpdated(new Message(1, 1, "updated while loading", 1669947792));
+        readModel.onMessageCreated(new Message(5, 1, "created while loading", 1669947792));
+        readModel.onMessageDeleted(new Message(6, 1, "deleted", 1669947792));
+        readModel.onMessageCreated(new Message(6, 1, "deleted", 1669947792));
+
+        Assert.assertTrue(readModel.build(new MessageDAO()));
+        Assert.assertEquals(List.of(new Message(1, 1, "updated while loading", 1669947792),
+                new Message(5, 1, "created while loading", 1669947792)), readModel.getAll());
+    }
+
+    /**
+     * Two updates of one message whose events are published in the opposite order to their commits should leave the
+     * text of the later commit, not of the later event.
+     */
+    @Test
+    public void updatesPublishedOutOfCommitOrderKeepTheCommittedText() {
+        MessageDAO messageDAO = new MessageDAO();
+        MessageReadModel readModel = new MessageReadModel();
+        Assert.assertTrue(readModel.build(messageDAO));
+        Message first = messageDAO.updateMessageByID(new Message(1, 1, "first edit", 0));
+        Message second = messageDAO.updateMessageByID(new Message(1, 1, "second edit", 0));
+        readModel.onMessageUpdated(second);
+        readModel.onMessageUpdated(first);
+
+        Assert.assertEquals(List.of(second), readModel.getAll());
+    }
+
+    /**
+     * A create event published after an update of the same message should not put the original text back.
+     */
+    @Test
+    public void staleCreateDoesNotOverwriteAnUpdate() {
+        MessageDAO messageDAO = new MessageDAO();
+        MessageReadModel readModel = new MessageReadModel();
+        Assert.assertTrue(readModel.build(messageDAO));
+        Message created = messageDAO.createMessage(new Message(1, "original", 1669947793));
+        Message updated = messageDAO.updateMessageByID(new Message(created.getMessage_id(), 1, "edited", 0));
+        readModel.onMessageUpdated(updated);
+        readModel.onMessageCreated(created);
+
+        Assert.assertEquals(messageDAO.getAllMessages(), readModel.getAll());
+        Assert.assertEquals("edited", readModel.getAll().get(1).getMessage_text());
+    }
+
+    /**
+     * Two threads patching the same message through a MessageService should leave the read model equal to the
+     * database.
+     */
+    @Test
+    public void concurrentUpdatesMatchTheDatabase() throws Exception {
+        MessageDAO messageDAO = new MessageDAO();
+        MessageService messageService = new MessageService(messageDAO);
+        MessageReadModel readModel = new MessageReadModel();
+        messageService.useReadModel(readModel);
+        Assert.assertTrue(readModel.build(messageDAO));
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            String text = "edit by writer " + w;
+            writers.add(pool.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    messageService.updateMessageByID(new Message(1, 0, text + " #" + i, 0));
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        pool.shutdown();
+
+        Assert.assertEquals(messageDAO.getAllMessages(), readModel.getAll());
+    }
+
+    private static String encode(MessageCursor cursor) {
+        return cursor == null ? null : cursor.encode();
+    }
+}
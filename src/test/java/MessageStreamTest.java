@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageStreamTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    List<CompletableFuture<HttpResponse<Stream<String>>>> streams = new ArrayList<>();
+
+    /**
+     * Before every test, reset the database and create a new webClient and ObjectMapper for interacting locally on the
+     * web. Tests start the Javalin app themselves, after setting the stream properties they need.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("stream.buffer.size");
+        for (CompletableFuture<HttpResponse<Stream<String>>> stream : streams) {
+            stream.thenAccept(response -> response.body().close());
+        }
+        if (app != null) {
+            app.stop();
+        }
+    }
+
+    private void start() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String text) throws IOException, InterruptedException {
+        return send("POST", "/messages",
+                "{\"posted_by\": 1, \"message_text\": \"" + text + "\", \"time_posted_epoch\": 1669947792}");
+    }
+
+    /**
+     * Opens GET /messages/stream and returns a queue that receives each event as "name id data" once it is complete.
+     */
+    private BlockingQueue<String[]> subscribe(String query, String lastEventId) throws InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/stream" + query))
+                .header("Accept", "text/event-stream");
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        BlockingQueue<String[]> events = new LinkedBlockingQueue<>();
+        CompletableFuture<HttpResponse<Stream<String>>> stream =
+                webClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofLines());
+        streams.add(stream);
+        // a thread per stream, as reading one blocks until it is closed
+        stream.thenAccept(response -> new Thread(() -> {
+            String[] event = new String[3];
+            response.body().forEach(line -> {
+                if (line.startsWith("event: ")) {
+                    event[0] = line.substring(7);
+                } else if (line.startsWith("id: ")) {
+                    event[1] = line.substring(4);
+                } else if (line.startsWith("data: ")) {
+                    event[2] = line.substring(6);
+                } else if (line.isEmpty() && event[0] != null) {
+                    events.add(event.clone());
+                    event[0] = null;
+                }
+            });
+        }).start());
+        // the subscription starts when the server has handled the request, which the client cannot see
+        Thread.sleep(500);
+        return events;
+    }
+
+    private String[] next(BlockingQueue<String[]> events) throws InterruptedException {
+        String[] event = events.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("no event within 5 seconds", event);
+        return event;
+    }
+
+    /**
+     * Subscribers should be sent every create, update and delete with the message as data, and a subscriber with
+     * 'posted_by' only those of that account's messages.
+     */
+    @Test
+    public void changesArePushedToSubscribers() throws IOException, InterruptedException {
+        start();
+        Assert.assertEquals(200, send("POST", "/register",
+                "{\"username\": \"user2\", \"password\": \"password\"}").statusCode());
+        BlockingQueue<String[]> all = subscribe("", null);
+        BlockingQueue<String[]> ofUser2 = subscribe("?posted_by=2", null);
+
+        Assert.assertEquals(200, post("hello").statusCode());
+        Assert.assertEquals(200, send("POST", "/messages",
+                "{\"posted_by\": 2, \"message_text\": \"from 2\", \"time_posted_epoch\": 1669947792}").statusCode());
+        Assert.assertEquals(200, send("PATCH", "/messages/3", "{\"message_text\": \"edited\"}").statusCode());
+        Assert.assertEquals(200, send("DELETE", "/messages/1", null).statusCode());
+
+        String[] created = next(all);
+        Assert.assertEquals("created", created[0]);
+        Assert.assertEquals(new Message(2, 1, "hello", 1669947792), objectMapper.readValue(created[2], Message.class));
+        Assert.assertEquals("created", next(all)[0]);
+        Assert.assertEquals("updated", next(all)[0]);
+        String[] deleted = next(all);
+        Assert.assertEquals("deleted", deleted[0]);
+        Assert.assertEquals(1, objectMapper.readValue(deleted[2], Message.class).getMessage_id());
+
+        Assert.assertEquals(3, objectMapper.readValue(next(ofUser2)[2], Message.class).getMessage_id());
+        Assert.assertEquals("updated", next(ofUser2)[0]);
+        Assert.assertNull(ofUser2.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * A client that reconnects with the id of the last event it saw should be sent the events it missed, and a reset
+     * once those are no longer kept or the id is unknown.
+     */
+    @Test
+    public void reconnectsResumeFromLastEventId() throws IOException, InterruptedException {
+        System.setProperty("stream.buffer.size", "4");
+        start();
+        BlockingQueue<String[]> first = subscribe("", null);
+        Assert.assertEquals(200, post("seen").statusCode());
+        String lastEventId = next(first)[1];
+        Assert.assertEquals(200, post("missed").statusCode());
+
+        String[] missed = next(subscribe("", lastEventId));
+        Assert.assertEquals("missed", objectMapper.readValue(missed[2], Message.class).getMessage_text());
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(200, post("overflow " + i).statusCode());
+        }
+        BlockingQueue<String[]> behind = subscribe("", lastEventId);
+        Assert.assertEquals("reset", next(behind)[0]);
+        Assert.assertEquals(200, post("after reset").statusCode());
+        Assert.assertEquals("after reset",
+                objectMapper.readValue(next(behind)[2], Message.class).getMessage_text());
+
+        Assert.assertEquals("reset", next(subscribe("", "from-before-a-restart-1"))[0]);
+    }
+
+    /**
+     * Opens GET /messages/stream with the given Accept header, or none, and closes it again.
+     * @return the response status.
+     */
+    private int streamStatus(String accept) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/stream"));
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        HttpResponse<Stream<String>> response = webClient.send(request.build(), HttpResponse.BodyHandlers.ofLines());
+        response.body().close();
+        return response.statusCode();
+    }
+
+    /**
+     * An open stream should be counted as a subscriber, not as a request in flight, and its connection time should
+     * not be recorded as request latency.
+     */
+    @Test
+    public void streamsAreLeftOutOfRequestMetrics() throws IOException, InterruptedException {
+        start();
+        subscribe("", null);
+
+        String metrics = send("GET", "/metrics", null).body();
+        Assert.assertTrue(metrics, metrics.contains("\nmessage_stream_subscribers 1\n"));
+        // the metrics request itself
+        Assert.assertTrue(metrics, metrics.contains("\nhttp_server_requests_in_flight 1\n"));
+        Assert.assertFalse(metrics, metrics.contains("route=\"/messages/stream\""));
+    }
+
+    /**
+     * Any Accept header whose most specific media range matching text/event-stream does not refuse it, or none at
+     * all, should open the stream.
+     */
+    @Test
+    public void acceptHeadersAreMatchedByMediaRange() throws IOException, InterruptedException {
+        start();
+        Assert.assertEquals(200, streamStatus(null));
+        Assert.assertEquals(200, streamStatus("text/event-stream, */*"));
+        Assert.assertEquals(200, streamStatus("text/event-stream;charset=utf-8"));
+        Assert.assertEquals(200, streamStatus("application/json, text/*;q=0.5"));
+        Assert.assertEquals(406, streamStatus("application/json"));
+        Assert.assertEquals(406, streamStatus("text/event-stream;q=0"));
+        Assert.assertEquals(406, streamStatus("text/event-stream;q=0, */*"));
+        Assert.assertEquals(200, streamStatus("*/*;q=0, TEXT/Event-Stream"));
+    }
+
+    /**
+     * Requests that do not accept an event stream, or filter by a malformed account id, should be refused.
+     */
+    @Test
+    public void badStreamRequestsAreRefused() throws IOException, InterruptedException {
+        start();
+        Assert.assertEquals(406, streamStatus("application/json"));
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/stream?posted_by=x"))
+                .header("Accept", "text/event-stream")
+                .build();
+        Assert.assertEquals(400, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/metrics after a few other requests
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text with a count per route pattern and status, a latency histogram per route,
+     *  the in-flight gauge and the connection pool gauges
+     */
+    @Test
+    public void metricsCountRequestsByRouteAndStatus() throws IOException, InterruptedException {
+        get("/messages/1");
+        get("/messages/2");
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser1\",\"password\":\"wrong\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(401, webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(404, get("/no/such/path").statusCode());
+
+        HttpResponse<String> response = get("/metrics");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        String body = response.body();
+        Assert.assertTrue(body, body.contains(
+                "http_server_requests_total{method=\"GET\",route=\"/messages/{message_id}\",status=\"200\"} 2\n"));
+        Assert.assertTrue(body, body.contains(
+                "http_server_requests_total{method=\"POST\",route=\"/login\",status=\"401\"} 1\n"));
+        Assert.assertTrue(body, body.contains(
+                "http_server_request_duration_seconds_count{method=\"GET\",route=\"/messages/{message_id}\"} 2\n"));
+        Assert.assertTrue(body, body.contains(
+                "http_server_request_duration_seconds_bucket{method=\"POST\",route=\"/login\",le=\"+Inf\"} 1\n"));
+        Assert.assertTrue(body, body.contains("status=\"404\"} 1\n"));
+        Assert.assertFalse(body, body.contains("/no/such/path"));
+        Assert.assertTrue(body, body.contains("\nhttp_server_requests_in_flight 1\n"));
+        Assert.assertTrue(body, body.contains("\ndb_pool_acquires_total "));
+        Assert.assertTrue(body, body.contains("\ncache_message_misses_total 2.0\n"));
+    }
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Service.PasswordHasher;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PasswordHashingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> post(String path, String username, String password)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"" + username + "\", "
+                        + "\"password\": \"" + password + "\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String storedPassword(String username) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT password FROM account WHERE username = ?")) {
+            statement.setString(1, username);
+            try (ResultSet rs = statement.executeQuery()) {
+                Assert.assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        }
+    }
+
+    /**
+     * Registering should store a salted hash instead of the password, while the response still shows the account
+     * as it was registered, and logging in with the password should succeed.
+     */
+    @Test
+    public void registeredPasswordsAreStoredHashed() throws IOException, InterruptedException, SQLException {
+        HttpResponse<String> registered = post("/register", "user", "password");
+        Assert.assertEquals(200, registered.statusCode());
+        Assert.assertEquals(new Account(2, "user", "password"),
+                objectMapper.readValue(registered.body(), Account.class));
+
+        String stored = storedPassword("user");
+        Assert.assertTrue(stored, PasswordHasher.isHash(stored));
+        Assert.assertEquals(200, post("/login", "user", "password").statusCode());
+        Assert.assertEquals(401, post("/login", "user", "passwort").statusCode());
+    }
+
+    /**
+     * An account whose password was stored in plain text, like the one from the sql script, should log in with it
+     * and have it replaced by a hash.
+     */
+    @Test
+    public void plainTextPasswordsAreRehashedOnLogin() throws IOException, InterruptedException, SQLException {
+        Assert.assertEquals("password", storedPassword("testuser1"));
+        Assert.assertEquals(401, post("/login", "testuser1", "wrong").statusCode());
+        Assert.assertEquals("password", storedPassword("testuser1"));
+
+        Assert.assertEquals(200, post("/login", "testuser1", "password").statusCode());
+        Assert.assertTrue(PasswordHasher.isHash(storedPassword("testuser1")));
+        HttpResponse<String> again = post("/login", "testuser1", "password");
+        Assert.assertEquals(200, again.statusCode());
+        Assert.assertEquals(new Account(1, "testuser1", "password"),
+                objectMapper.readValue(again.body(), Account.class));
+    }
+
+    /**
+     * The hashing executor and hash durations should be exposed on GET /metrics.
+     */
+    @Test
+    public void hashingIsMeasured() throws IOException, InterruptedException {
+        post("/login", "testuser1", "password");
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/metrics")).build();
+        String metrics = webClient.send(request, HttpResponse.BodyHandlers.ofString()).body();
+        Assert.assertTrue(metrics, metrics.contains("\nauth_executor_queue_depth 0\n"));
+        Assert.assertTrue(metrics, metrics.contains("\nauth_executor_rejected_total 0\n"));
+        Assert.assertTrue(metrics, metrics.contains("\npassword_hash_seconds_count 1\n"));
+        Assert.assertTrue(metrics, metrics.contains("\npassword_hash_iterations "));
+    }
+
+    /**
+     * Hashes of the same password should differ by their salt and still both verify, also when made with another
+     * work factor.
+     */
+    @Test
+    public void hashesAreSaltedAndCarryTheirWorkFactor() {
+        PasswordHasher hasher = new PasswordHasher(20_000);
+        String first = hasher.hash("password");
+        String second = hasher.hash("password");
+        Assert.assertNotEquals(first, second);
+        Assert.assertTrue(first.startsWith("pbkdf2-sha256$20000$"));
+
+        PasswordHasher recalibrated = new PasswordHasher(30_000);
+        Assert.assertTrue(recalibrated.verify("password", first));
+        Assert.assertFalse(recalibrated.verify("Password", second));
+        Assert.assertTrue(PasswordHasher.calibrate(1) >= 10_000);
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.QueryInstrumentation;
+
+public class QueryInstrumentationTest {
+    QueryInstrumentation instrumentation;
+    MessageDAO messageDAO;
+
+    /**
+     * Before every test, reset the database and switch the shared instrumentation on with empty statistics.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        instrumentation = ConnectionUtil.getQueryInstrumentation();
+        instrumentation.reset();
+        instrumentation.setEnabled(true);
+        messageDAO = new MessageDAO();
+    }
+
+    /**
+     * The instrumentation is shared by every test in the JVM, so it is switched back off and restored afterwards.
+     */
+    @After
+    public void tearDown() {
+        instrumentation.setEnabled(false);
+        instrumentation.setSlowQueryThresholdMillis(200);
+        instrumentation.reset();
+    }
+
+    /**
+     * Statements should be tagged with the DAO method that ran them and count the rows they read or wrote.
+     */
+    @Test
+    public void statementsAreTaggedWithTheirDaoOperation() {
+        Assert.assertNotNull(messageDAO.getMessageByID(1));
+        Assert.assertNotNull(messageDAO.createMessages(Arrays.asList(
+                new Message(1, "first", 1669947792), new Message(1, "second", 1669947793))));
+        Assert.assertNull(new AccountDAO().registerAccount(new Account("testuser1", "password")));
+
+        Map<String, QueryInstrumentation.QueryStats> stats = instrumentation.getStats();
+        QueryInstrumentation.QueryStats byId = stats.get("MessageDAO.getMessageByID");
+        Assert.assertEquals(1, byId.getExecutions());
+        Assert.assertEquals(1, byId.getRows());
+        Assert.assertTrue(byId.getSql().startsWith("SELECT * FROM message WHERE message_id"));
+
+        QueryInstrumentation.QueryStats batch = stats.get("MessageDAO.createMessages");
+        Assert.assertEquals(2, batch.getRows());
+
+        Assert.assertEquals(1, stats.get("AccountDAO.registerAccount").getErrors());
+    }
+
+    /**
+     * With a zero threshold every statement is slow and should be logged; once disabled, nothing is recorded.
+     */
+    @Test
+    public void slowQueriesAreLoggedOnlyWhileEnabled() {
+        instrumentation.setSlowQueryThresholdMillis(0);
+        messageDAO.getAllMessagesByUser(1);
+        Assert.assertEquals(1, instrumentation.getSlowQueriesLogged());
+
+        instrumentation.setEnabled(false);
+        instrumentation.reset();
+        messageDAO.getAllMessagesByUser(1);
+        Assert.assertEquals(0, instrumentation.getSlowQueriesLogged());
+        Assert.assertTrue(instrumentation.getStats().isEmpty());
+    }
+
+    /**
+     * The statement metrics should be written in Prometheus text format.
+     */
+    @Test
+    public void statsAreExportedForPrometheus() {
+        messageDAO.getMessageByID(1);
+        StringBuilder out = new StringBuilder();
+        instrumentation.writeTo(out);
+        String text = out.toString();
+        Assert.assertTrue(text, text.contains(
+                "db_query_duration_seconds_count{operation=\"MessageDAO.getMessageByID\",phase=\"execute\"} 1\n"));
+        Assert.assertTrue(text, text.contains("db_query_rows_total{operation=\"MessageDAO.getMessageByID\"} 1\n"));
+    }
+}
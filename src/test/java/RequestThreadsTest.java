@@ -0,0 +1,75 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.RequestThreads;
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+import io.javalin.util.LoomUtil;
+
+public class RequestThreadsTest {
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and create a new webClient; each test starts the app itself, after
+     * choosing the request threads.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newHttpClient();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("server.virtualThreads");
+        if (app != null) {
+            app.stop();
+        }
+    }
+
+    private void startApp() throws InterruptedException {
+        app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Without the option, requests run on the bounded platform pool whatever the runtime supports.
+     */
+    @Test
+    public void platformThreadsByDefault() throws IOException, InterruptedException {
+        startApp();
+        Assert.assertFalse(RequestThreads.isVirtual(app.jettyServer().server()));
+        Assert.assertEquals(200, get("/messages/1").statusCode());
+    }
+
+    /**
+     * With server.virtualThreads set, requests run on virtual threads where the runtime has them and the app keeps
+     * serving on the platform pool where it does not.
+     */
+    @Test
+    public void virtualThreadsWhenEnabledAndAvailable() throws IOException, InterruptedException {
+        System.setProperty("server.virtualThreads", "true");
+        startApp();
+        Assert.assertEquals(LoomUtil.INSTANCE.getLoomAvailable(), RequestThreads.isVirtual(app.jettyServer().server()));
+        Assert.assertEquals(200, get("/messages/1").statusCode());
+        Assert.assertEquals(200, get("/accounts/1/messages").statusCode());
+    }
+}
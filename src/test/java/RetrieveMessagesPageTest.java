@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add messages 2 to 5 (message 1 comes from the sql script), restart the
+     * Javalin app, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, ?)")) {
+            for (int i = 2; i <= 5; i++) {
+                ps.setString(1, "test message " + i);
+                // Posted in reverse time order so that id order and time order differ.
+                ps.setLong(2, 1669947792L - i);
+                ps.executeUpdate();
+            }
+        }
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Walking GET localhost:8080/messages?limit=2 forward through the next cursors should visit every message once,
+     * in message_id order, and the last page should have no next cursor.
+     */
+    @Test
+    public void getMessagesPagesForwardById() throws IOException, InterruptedException {
+        List<Integer> ids = new ArrayList<>();
+        String uri = "http://localhost:8080/messages?limit=2";
+        int pages = 0;
+        while (uri != null) {
+            HttpResponse<String> response = get(uri);
+            Assert.assertEquals(200, response.statusCode());
+            for (Message message : readMessages(response)) {
+                ids.add(message.getMessage_id());
+            }
+            String next = response.headers().firstValue("X-Next-Cursor").orElse(null);
+            uri = next == null ? null : "http://localhost:8080/messages?limit=2&after=" + next;
+            pages++;
+        }
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(List.of(1, 2, 3, 4, 5), ids);
+    }
+
+    /**
+     * The prev cursor of the second page should lead back to the first page.
+     */
+    @Test
+    public void getMessagesPageBackward() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("http://localhost:8080/messages?limit=2");
+        Assert.assertFalse(first.headers().firstValue("X-Prev-Cursor").isPresent());
+        String next = first.headers().firstValue("X-Next-Cursor").get();
+
+        HttpResponse<String> second = get("http://localhost:8080/messages?limit=2&after=" + next);
+        String prev = second.headers().firstValue("X-Prev-Cursor").get();
+        Assert.assertTrue(second.headers().firstValue("Link").get().contains("rel=\"prev\""));
+
+        HttpResponse<String> back = get("http://localhost:8080/messages?limit=2&before=" + prev);
+        Assert.assertEquals(readMessages(first), readMessages(back));
+        Assert.assertFalse(back.headers().firstValue("X-Prev-Cursor").isPresent());
+    }
+
+    /**
+     * Ordering by time should return the most recently inserted (earliest posted) messages first.
+     */
+    @Test
+    public void getUserMessagesPageByTime() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/accounts/1/messages?limit=3&order=time");
+        List<Message> messages = readMessages(response);
+        Assert.assertEquals(3, messages.size());
+        Assert.assertEquals(5, messages.get(0).getMessage_id());
+        Assert.assertEquals(4, messages.get(1).getMessage_id());
+        Assert.assertEquals(3, messages.get(2).getMessage_id());
+
+        String next = response.headers().firstValue("X-Next-Cursor").get();
+        List<Message> rest = readMessages(get("http://localhost:8080/accounts/1/messages?limit=3&after=" + next));
+        Assert.assertEquals(2, rest.size());
+        Assert.assertEquals(2, rest.get(0).getMessage_id());
+        Assert.assertEquals(1, rest.get(1).getMessage_id());
+    }
+
+    /**
+     * The unpaginated listing stays available with all=true.
+     */
+    @Test
+    public void getAllMessagesOptIn() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?all=true&limit=1");
+        Assert.assertEquals(5, readMessages(response).size());
+        Assert.assertFalse(response.headers().firstValue("X-Next-Cursor").isPresent());
+    }
+
+    /**
+     * A cursor that was not produced by the API should be rejected.
+     */
+    @Test
+    public void getMessagesInvalidCursor() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("http://localhost:8080/messages?after=not-a-cursor").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/messages?limit=0").statusCode());
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> readMessages(HttpResponse<String> response) throws IOException {
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageSearchIndex;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.header("Content-Type", "application/json").build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void post(String text) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"" + text
+                        + "\", \"time_posted_epoch\": 1669947792}")));
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    private HttpResponse<String> search(String query) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/search?" + query)));
+    }
+
+    private List<Integer> ids(HttpResponse<String> response) throws IOException {
+        Assert.assertEquals(response.body(), 200, response.statusCode());
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : objectMapper.readValue(response.body(), Message[].class)) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+
+    private static String q(String query) {
+        return "q=" + URLEncoder.encode(query, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search with words of the seeded and new messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages containing every word, ignoring case and punctuation, newest first
+     */
+    @Test
+    public void searchMatchesEveryWordNewestFirst() throws IOException, InterruptedException {
+        post("Hello, World!");
+        post("hello there");
+        post("world peace");
+
+        Assert.assertEquals(Arrays.asList(3, 2), ids(search(q("HELLO"))));
+        Assert.assertEquals(Arrays.asList(2), ids(search(q("hello world"))));
+        Assert.assertEquals(Arrays.asList(1), ids(search(q("test message"))));
+        Assert.assertEquals(Arrays.asList(), ids(search(q("goodbye"))));
+    }
+
+    /**
+     * A word ending in '*' should match every word starting with it.
+     */
+    @Test
+    public void prefixQueryMatchesLongerWords() throws IOException, InterruptedException {
+        post("testing search");
+        post("tester notes");
+        post("tea time");
+
+        Assert.assertEquals(Arrays.asList(3, 2, 1), ids(search(q("test*"))));
+        Assert.assertEquals(Arrays.asList(4, 3, 2, 1), ids(search(q("te*"))));
+        Assert.assertEquals(Arrays.asList(2), ids(search(q("te* search"))));
+    }
+
+    /**
+     * Updated and deleted messages should be found by their new text only, or not at all.
+     */
+    @Test
+    public void searchFollowsUpdatesAndDeletes() throws IOException, InterruptedException {
+        post("apple pie");
+        post("apple tart");
+
+        HttpResponse<String> patch = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"cherry pie\"}")));
+        Assert.assertEquals(200, patch.statusCode());
+        HttpResponse<String> delete = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .DELETE());
+        Assert.assertEquals(200, delete.statusCode());
+
+        Assert.assertEquals(Arrays.asList(), ids(search(q("apple"))));
+        Assert.assertEquals(Arrays.asList(2), ids(search(q("cherry"))));
+        Assert.assertEquals(Arrays.asList(2), ids(search(q("pie"))));
+    }
+
+    /**
+     * Following the next cursor should list every match once, in pages of the requested size.
+     */
+    @Test
+    public void searchIsPaged() throws IOException, InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            post("page item " + i);
+        }
+
+        HttpResponse<String> first = search(q("item") + "&limit=2");
+        Assert.assertEquals(Arrays.asList(6, 5), ids(first));
+        String next = first.headers().firstValue("X-Next-Cursor").orElse(null);
+        Assert.assertNotNull(next);
+        Assert.assertTrue(first.headers().firstValue("Link").orElse("").contains("q=item&limit=2&after=" + next));
+
+        HttpResponse<String> second = search(q("item") + "&limit=2&after=" + next);
+        Assert.assertEquals(Arrays.asList(4, 3), ids(second));
+        HttpResponse<String> third = search(q("item") + "&limit=2&after="
+                + second.headers().firstValue("X-Next-Cursor").orElse(null));
+        Assert.assertEquals(Arrays.asList(2), ids(third));
+        Assert.assertFalse(third.headers().firstValue("X-Next-Cursor").isPresent());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search without any words
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchWithoutWordsIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, search(q("  ")).statusCode());
+        Assert.assertEquals(400, search(q("!?")).statusCode());
+        Assert.assertEquals(400, search("").statusCode());
+        Assert.assertEquals(400, search(q("hello") + "&limit=0").statusCode());
+    }
+
+    /**
+     * An index that grows past its budget should drop its contents and stay not ready, so search is unavailable
+     * instead of the heap running out.
+     */
+    @Test
+    public void indexOverBudgetIsDisabled() {
+        MessageSearchIndex index = new MessageSearchIndex(20_000);
+        Assert.assertTrue(index.build(new MessageDAO()));
+        for (int i = 0; i < 200; i++) {
+            index.add(i + 2, "distinct words " + i);
+        }
+        Assert.assertEquals(0, index.getTermCount());
+        Assert.assertFalse(index.build(new MessageDAO()));
+        Assert.assertFalse(index.isReady());
+    }
+}
@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.Message;
+import Service.SessionTokens;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SessionTokenTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and create a new webClient and ObjectMapper for interacting locally on the
+     * web. Tests that need the Javalin app start it themselves, after setting the auth properties they need.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("auth.required");
+        if (app != null) {
+            app.stop();
+        }
+    }
+
+    /**
+     * Starts the app and registers a second account, testuser2, next to testuser1 from the sql script.
+     */
+    private void start() throws IOException, InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        Assert.assertEquals(200, send("POST", "/register", null,
+                "{\"username\": \"testuser2\", \"password\": \"password\"}").statusCode());
+    }
+
+    private HttpResponse<String> send(String method, String path, String token, String body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json");
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String login(String username) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "/login", null,
+                "{\"username\": \"" + username + "\", \"password\": \"password\"}");
+        Assert.assertEquals(200, response.statusCode());
+        return response.headers().firstValue("X-Session-Token").orElseThrow();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/login and then POST localhost:8080/messages with the token
+     * from the X-Session-Token header
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the account as before the token was added, and a message posted by the token's account even
+     *  though posted_by names another one
+     */
+    @Test
+    public void loginTokenPostsAsItsAccount() throws IOException, InterruptedException {
+        start();
+        HttpResponse<String> response = send("POST", "/login", null,
+                "{\"username\": \"testuser1\", \"password\": \"password\"}");
+        Assert.assertEquals(new Account(1, "testuser1", "password"),
+                objectMapper.readValue(response.body(), Account.class));
+        String token = response.headers().firstValue("X-Session-Token").orElseThrow();
+
+        HttpResponse<String> posted = send("POST", "/messages", token,
+                "{\"posted_by\": 2, \"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}");
+        Assert.assertEquals(200, posted.statusCode());
+        Assert.assertEquals(1, objectMapper.readValue(posted.body(), Message.class).getPosted_by());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a session token and a null item
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: an error for the null item, and the other message created as the token's account
+     */
+    @Test
+    public void batchWithTokenReportsNullItems() throws IOException, InterruptedException {
+        start();
+        String token = login("testuser1");
+        HttpResponse<String> response = send("POST", "/messages/batch", token,
+                "[null, {\"posted_by\": 2, \"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}]");
+        Assert.assertEquals(200, response.statusCode());
+        JsonNode result = objectMapper.readTree(response.body());
+        Assert.assertTrue(result.get("ids").get(0).isNull());
+        Assert.assertEquals(0, result.get("errors").get(0).get("index").asInt());
+        int id = result.get("ids").get(1).asInt();
+        Assert.assertEquals(1, objectMapper.readValue(send("GET", "/messages/" + id, null, null).body(), Message.class)
+                .getPosted_by());
+    }
+
+    /**
+     * Updating or deleting a message of another account with a session token should fail.
+     *
+     * Expected Response:
+     *  Status Code: 403
+     */
+    @Test
+    public void messagesOfOtherAccountsCannotBeChanged() throws IOException, InterruptedException {
+        start();
+        String token = login("testuser2");
+        Assert.assertEquals(403, send("DELETE", "/messages/1", token, null).statusCode());
+        Assert.assertEquals(403, send("PATCH", "/messages/1", token, "{\"message_text\": \"mine now\"}").statusCode());
+        Assert.assertEquals("test message 1",
+                objectMapper.readValue(send("GET", "/messages/1", null, null).body(), Message.class)
+                        .getMessage_text());
+
+        String owner = login("testuser1");
+        Assert.assertEquals(200, send("PATCH", "/messages/1", owner, "{\"message_text\": \"edited\"}").statusCode());
+        Assert.assertEquals(200, send("DELETE", "/messages/1", owner, null).statusCode());
+        Assert.assertEquals("", send("GET", "/messages/1", null, null).body());
+    }
+
+    /**
+     * A malformed or forged token, a token after logout, and a logout without a token should be refused.
+     *
+     * Expected Response:
+     *  Status Code: 401
+     */
+    @Test
+    public void invalidAndRevokedTokensAreRejected() throws IOException, InterruptedException {
+        start();
+        Assert.assertEquals(401, send("GET", "/messages", "not-a-token", null).statusCode());
+        String token = login("testuser1");
+        String forged = token.substring(0, 40) + (token.charAt(40) == 'A' ? 'B' : 'A') + token.substring(41);
+        Assert.assertEquals(401, send("GET", "/messages", forged, null).statusCode());
+
+        Assert.assertEquals(200, send("GET", "/messages", token, null).statusCode());
+        Assert.assertEquals(200, send("POST", "/logout", token, null).statusCode());
+        Assert.assertEquals(401, send("GET", "/messages", token, null).statusCode());
+        Assert.assertEquals(401, send("POST", "/logout", null, null).statusCode());
+    }
+
+    /**
+     * With auth.required set, creating, updating and deleting messages need a session token; reads do not.
+     */
+    @Test
+    public void tokensAreRequiredWhenConfigured() throws IOException, InterruptedException {
+        System.setProperty("auth.required", "true");
+        start();
+        String message = "{\"posted_by\": 1, \"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}";
+        Assert.assertEquals(401, send("POST", "/messages", null, message).statusCode());
+        Assert.assertEquals(401, send("POST", "/messages/batch", null, "[" + message + "]").statusCode());
+        Assert.assertEquals(401, send("PATCH", "/messages/1", null, "{\"message_text\": \"edited\"}").statusCode());
+        Assert.assertEquals(401, send("DELETE", "/messages/1", null, null).statusCode());
+        Assert.assertEquals(200, send("GET", "/messages/1", null, null).statusCode());
+        Assert.assertEquals(200, send("POST", "/messages", login("testuser1"), message).statusCode());
+    }
+
+    /**
+     * Following, unfollowing and reading the feed for another account with a session token should fail, while the
+     * token's own account may.
+     *
+     * Expected Response:
+     *  Status Code: 403
+     */
+    @Test
+    public void followsAndFeedsOfOtherAccountsAreForbidden() throws IOException, InterruptedException {
+        start();
+        String token = login("testuser2");
+        Assert.assertEquals(403, send("POST", "/accounts/1/following/2", token, null).statusCode());
+        Assert.assertEquals(403, send("DELETE", "/accounts/1/following/2", token, null).statusCode());
+        Assert.assertEquals(403, send("GET", "/accounts/1/feed", token, null).statusCode());
+
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/1", token, null).statusCode());
+        Assert.assertEquals(200, send("GET", "/accounts/2/feed", token, null).statusCode());
+        Assert.assertEquals(200, send("DELETE", "/accounts/2/following/1", token, null).statusCode());
+    }
+
+    /**
+     * With auth.required set, following, unfollowing and reading a feed need a session token.
+     */
+    @Test
+    public void tokensAreRequiredForFollowsAndFeedsWhenConfigured() throws IOException, InterruptedException {
+        System.setProperty("auth.required", "true");
+        start();
+        Assert.assertEquals(401, send("POST", "/accounts/2/following/1", null, null).statusCode());
+        Assert.assertEquals(401, send("DELETE", "/accounts/2/following/1", null, null).statusCode());
+        Assert.assertEquals(401, send("GET", "/accounts/2/feed", null, null).statusCode());
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/1", login("testuser2"), null).statusCode());
+    }
+
+    /**
+     * Tokens signed with a rotated-out key should be accepted until the key is retired, and expired tokens never.
+     */
+    @Test
+    public void rotatedKeysAreAcceptedUntilRetired() {
+        SessionTokens sessionTokens = new SessionTokens(3600, 1, "first signing key".getBytes());
+        String before = sessionTokens.issue(7);
+        sessionTokens.rotateKey(2, "second signing key".getBytes());
+        String after = sessionTokens.issue(8);
+        Assert.assertEquals(Integer.valueOf(7), sessionTokens.verify(before));
+        Assert.assertEquals(Integer.valueOf(8), sessionTokens.verify(after));
+
+        sessionTokens.retireKey(1);
+        Assert.assertNull(sessionTokens.verify(before));
+        Assert.assertEquals(Integer.valueOf(8), sessionTokens.verify(after));
+        Assert.assertThrows(IllegalArgumentException.class, () -> sessionTokens.retireKey(2));
+
+        SessionTokens expiring = new SessionTokens(0, 1, "first signing key".getBytes());
+        Assert.assertNull(expiring.verify(expiring.issue(7)));
+    }
+}
@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageCursor;
+import DAO.MessageDAO;
+import DAO.MessagePage;
+import DAO.ShardedMessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.Deadline;
+import io.javalin.Javalin;
+
+public class ShardedMessageDAOTest {
+    static final int ACCOUNTS = 8;
+    String shardUrl;
+    List<ShardedMessageDAO> daos = new ArrayList<>();
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add accounts 2 to 8 and pick in-memory shard databases of its own.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        AccountDAO accountDAO = new AccountDAO();
+        for (int i = 2; i <= ACCOUNTS; i++) {
+            accountDAO.registerAccount(new Account("user" + i, "password"));
+        }
+        shardUrl = "jdbc:h2:mem:shards-" + System.nanoTime() + "-%d;DB_CLOSE_DELAY=-1";
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("db.shards");
+        System.clearProperty("db.shards.url");
+        if (app != null) {
+            app.stop();
+        }
+        for (ShardedMessageDAO dao : daos) {
+            dao.shutdown();
+        }
+    }
+
+    private ShardedMessageDAO open(int shards) {
+        ShardedMessageDAO dao = new ShardedMessageDAO(shards, shardUrl, 4);
+        daos.add(dao);
+        return dao;
+    }
+
+    private List<Message> createMessages(MessageDAO dao, int count) {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // times out of id order, so that the time listing is a different merge
+            batch.add(new Message(i % ACCOUNTS + 1, "sharded " + i, 1669947792 + (i * 7) % count));
+        }
+        List<Message> created = new ArrayList<>(dao.createMessages(batch.subList(0, count / 2)));
+        for (Message message : batch.subList(count / 2, count)) {
+            created.add(dao.createMessage(message));
+        }
+        return created;
+    }
+
+    /**
+     * Asserts that every message on every shard is on the shard of its account.
+     * @return the number of messages on each shard.
+     */
+    private int[] assertRouted(ShardedMessageDAO dao, int shardsToCheck) throws SQLException {
+        int[] counts = new int[shardsToCheck];
+        for (int shard = 0; shard < shardsToCheck; shard++) {
+            try (Connection connection = shard == 0 ? ConnectionUtil.getConnection()
+                    : DriverManager.getConnection(String.format(shardUrl, shard), "sa", "sa");
+                 Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT posted_by FROM message")) {
+                while (rs.next()) {
+                    Assert.assertEquals(shard, dao.shardOfAccount(rs.getInt(1)));
+                    counts[shard]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Messages should be stored on the shard of their account with ids unique across shards, and the listings of all
+     * messages should merge the shards in order, page by page in both directions.
+     */
+    @Test
+    public void messagesAreRoutedByAccountAndListingsMerged() throws SQLException {
+        ShardedMessageDAO dao = open(3);
+        // the seeded message 1 was inserted before sharding
+        dao.rebalance(1);
+        List<Message> expected = new ArrayList<>(createMessages(dao, 40));
+        expected.add(new Message(1, 1, "test message 1", 1669947792));
+        expected.sort(Comparator.comparingInt(Message::getMessage_id));
+        Assert.assertEquals(41, new HashSet<>(expected).size());
+
+        int[] counts = assertRouted(dao, 3);
+        Assert.assertEquals(41, counts[0] + counts[1] + counts[2]);
+        Assert.assertTrue(counts[0] < 41 && counts[1] < 41 && counts[2] < 41);
+        Assert.assertEquals(expected, dao.getAllMessages());
+
+        List<Message> byTime = new ArrayList<>(expected);
+        byTime.sort(Comparator.comparingLong(Message::getTime_posted_epoch).thenComparingInt(Message::getMessage_id));
+        for (MessageCursor.Order order : MessageCursor.Order.values()) {
+            List<Message> listed = new ArrayList<>();
+            MessagePage page = dao.getMessagesPage(null, order, null, null, 6);
+            listed.addAll(page.getMessages());
+            while (page.getNext() != null) {
+                page = dao.getMessagesPage(null, null, page.getNext(), null, 6);
+                listed.addAll(page.getMessages());
+            }
+            Assert.assertEquals(order == MessageCursor.Order.TIME ? byTime : expected, listed);
+
+            List<Message> backwards = new ArrayList<>(page.getMessages());
+            while (page.getPrev() != null) {
+                page = dao.getMessagesPage(null, null, null, page.getPrev(), 6);
+                backwards.addAll(0, page.getMessages());
+            }
+            Assert.assertEquals(listed, backwards);
+        }
+
+        Message ofAccount3 = expected.stream().filter(m -> m.getPosted_by() == 3).findFirst().get();
+        // in the order of the (posted_by, time_posted_epoch) index, as without shards
+        Assert.assertEquals(byTime.stream().filter(m -> m.getPosted_by() == 3).toList(), dao.getAllMessagesByUser(3));
+        Assert.assertEquals(ofAccount3, dao.getMessageByID(ofAccount3.getMessage_id()));
+        Assert.assertEquals(expected.get(0), dao.getMessageByID(1));
+        Map<Integer, Message> byIds = dao.getMessagesByIds(new int[]{1, ofAccount3.getMessage_id(), 999_999});
+        Assert.assertEquals(2, byIds.size());
+        Assert.assertEquals(new Message(ofAccount3.getMessage_id(), 3, "edited", ofAccount3.getTime_posted_epoch()),
+                dao.updateMessageByID(new Message(ofAccount3.getMessage_id(), 3, "edited", 0)));
+        Assert.assertEquals(expected.get(0), dao.deleteMessageByID(1));
+        Assert.assertNull(dao.getMessageByID(1));
+    }
+
+    /**
+     * After the shard count changes, a rebalance should move every message to its new shard without changing any,
+     * and going back to one shard should leave a table that the unsharded DAO can add to.
+     */
+    @Test
+    public void rebalanceMovesMessagesToTheirNewShards() throws SQLException {
+        open(2).rebalance(1);
+        createMessages(daos.get(0), 40);
+        List<Message> before = daos.get(0).getAllMessages();
+
+        ShardedMessageDAO four = open(4);
+        long moved = four.rebalance(2);
+        Assert.assertTrue(moved > 0);
+        assertRouted(four, 4);
+        Assert.assertEquals(before, four.getAllMessages());
+        Assert.assertEquals(0, four.rebalance(4));
+
+        ShardedMessageDAO one = open(1);
+        one.rebalance(4);
+        int[] counts = assertRouted(one, 1);
+        Assert.assertEquals(before.size(), counts[0]);
+        MessageDAO unsharded = new MessageDAO();
+        Assert.assertEquals(before, unsharded.getAllMessages());
+        Message created = unsharded.createMessage(new Message(1, "unsharded again", 1669947792));
+        Assert.assertTrue(created.getMessage_id() > before.get(before.size() - 1).getMessage_id());
+    }
+
+    /**
+     * A listing run inside a deadline that has passed should read no shard, including those queried on the scatter
+     * threads.
+     */
+    @Test
+    public void scatterQueriesRunInsideTheCallersDeadline() throws SQLException {
+        ShardedMessageDAO dao = open(2);
+        dao.rebalance(1);
+        createMessages(dao, 20);
+        Assert.assertEquals(21, dao.getAllMessages().size());
+
+        Assert.assertEquals(List.of(), Deadline.after(0).run(dao::getAllMessages));
+    }
+
+    /**
+     * A batch that cannot be inserted on one shard should be deleted again from the shards it was inserted on.
+     */
+    @Test
+    public void failedBatchIsRemovedFromEveryShard() throws SQLException {
+        ShardedMessageDAO dao = open(2);
+        dao.rebalance(1);
+        try (Connection connection = DriverManager.getConnection(String.format(shardUrl, 1), "sa", "sa");
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE message");
+        }
+        List<Message> batch = new ArrayList<>();
+        for (int i = 1; i <= ACCOUNTS; i++) {
+            batch.add(new Message(i, "all or nothing " + i, 1669947792));
+        }
+
+        Assert.assertNull(dao.createMessages(batch));
+        Assert.assertEquals(1, assertRouted(dao, 1)[0]);
+    }
+
+    /**
+     * With db.shards set, the app should serve every message route from the shards.
+     */
+    @Test
+    public void appServesMessagesFromShards() throws IOException, InterruptedException, SQLException {
+        open(2).rebalance(1);
+        System.setProperty("db.shards", "2");
+        System.setProperty("db.shards.url", shardUrl);
+        app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        HttpClient webClient = HttpClient.newHttpClient();
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        List<Message> posted = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            HttpResponse<String> response = send(webClient, "POST", "/messages", "{\"posted_by\": " + (i % 3 + 1)
+                    + ", \"message_text\": \"post " + i + "\", \"time_posted_epoch\": 1669947792}");
+            Assert.assertEquals(200, response.statusCode());
+            posted.add(objectMapper.readValue(response.body(), Message.class));
+        }
+        List<Message> all = objectMapper.readValue(send(webClient, "GET", "/messages?all=true", null).body(),
+                new TypeReference<List<Message>>() {});
+        Assert.assertEquals(7, all.size());
+        Assert.assertEquals(posted, all.subList(1, 7));
+        List<Message> page = objectMapper.readValue(send(webClient, "GET", "/messages?limit=3", null).body(),
+                new TypeReference<List<Message>>() {});
+        Assert.assertEquals(all.subList(0, 3), page);
+        List<Message> ofAccount2 = objectMapper.readValue(send(webClient, "GET", "/accounts/2/messages", null).body(),
+                new TypeReference<List<Message>>() {});
+        Assert.assertEquals(List.of(posted.get(1), posted.get(4)), ofAccount2);
+
+        int id = posted.get(4).getMessage_id();
+        Assert.assertEquals(200, send(webClient, "PATCH", "/messages/" + id, "{\"message_text\": \"edited\"}")
+                .statusCode());
+        Assert.assertEquals("edited", objectMapper.readValue(send(webClient, "GET", "/messages/" + id, null).body(),
+                Message.class).getMessage_text());
+        Assert.assertEquals(200, send(webClient, "DELETE", "/messages/" + id, null).statusCode());
+        Assert.assertEquals("", send(webClient, "GET", "/messages/" + id, null).body());
+    }
+
+    private static HttpResponse<String> send(HttpClient webClient, String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
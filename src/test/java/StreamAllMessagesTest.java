@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Streams a million-row message table through GET /messages?all=true. The pom runs this class in its own JVM with a
+ * small -Xmx, well below what it takes to hold the table as a List and its JSON form at once, so the test only
+ * passes if the listing is written row by row.
+ */
+public class StreamAllMessagesTest {
+    static int ROWS = 1_000_000;
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add a million messages on top of the one from the sql script, restart
+     * the Javalin app, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try (Connection conn = ConnectionUtil.getConnection(); Statement statement = conn.createStatement()) {
+            statement.executeUpdate("insert into message (posted_by, message_text, time_posted_epoch) "
+                    + "select 1, 'streamed message ' || x, 1669947792 + x from system_range(1, " + ROWS + ")");
+        }
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?all=true with a million messages in the table
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON list of every message, in message_id order
+     */
+    @Test
+    public void streamAllMessagesWithSmallHeap() throws IOException, InterruptedException {
+        Assert.assertTrue("run this test with a small -Xmx", Runtime.getRuntime().maxMemory() <= 128L << 20);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?all=true"))
+                .build();
+        HttpResponse<InputStream> response = webClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        Assert.assertEquals(200, response.statusCode());
+
+        int count = 0;
+        int lastId = 0;
+        try (JsonParser parser = new JsonFactory().createParser(response.body())) {
+            Assert.assertEquals(JsonToken.START_ARRAY, parser.nextToken());
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if (field.equals("message_id")) {
+                        Assert.assertTrue(parser.getIntValue() > lastId);
+                        lastId = parser.getIntValue();
+                    }
+                }
+                count++;
+            }
+        }
+        Assert.assertEquals(ROWS + 1, count);
+    }
+}
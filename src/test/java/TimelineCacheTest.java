@@ -0,0 +1,190 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import DAO.MessagePage;
+import Model.Message;
+import Service.AccountIndex;
+import Service.MessageCache;
+import Service.MessageService;
+import Service.TimelineCache;
+import Util.ConnectionUtil;
+
+public class TimelineCacheTest {
+    TimelineCache timelineCache;
+    ConcurrentSkipListMap<Integer, Message> table;
+    AtomicInteger loads;
+
+    /**
+     * Before every test, create an empty cache over a fake 'message' table for account 1 that counts its loads.
+     */
+    @Before
+    public void setUp() {
+        timelineCache = new TimelineCache(1 << 20);
+        table = new ConcurrentSkipListMap<>();
+        timelineCache.readRowsWith(table::get);
+        loads = new AtomicInteger();
+        table.put(1, new Message(1, 1, "test message 1", 1669947792));
+    }
+
+    private List<Message> load(int accountId) {
+        loads.incrementAndGet();
+        return new ArrayList<>(table.values());
+    }
+
+    /**
+     * Creates, updates and deletes should be applied to a cached timeline without reloading it.
+     */
+    @Test
+    public void changesArePatchedInPlace() {
+        Assert.assertEquals(1, timelineCache.get(1, this::load).size());
+
+        Message created = new Message(2, 1, "test message 2", 1669947793);
+        table.put(2, created);
+        timelineCache.onMessageCreated(created);
+        Assert.assertEquals(List.of(table.get(1), created), timelineCache.get(1, this::load));
+        Assert.assertEquals(1, loads.get());
+
+        Message updated = new Message(1, 1, "updated message", 1669947792);
+        table.put(1, updated);
+        timelineCache.onMessageUpdated(updated);
+        Assert.assertEquals(List.of(updated, created), timelineCache.get(1, this::load));
+
+        table.remove(1);
+        timelineCache.onMessageDeleted(updated);
+        Assert.assertEquals(List.of(created), timelineCache.get(1, this::load));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    /**
+     * Two updates of one message whose events are published in the opposite order to their commits should leave the
+     * text of the later commit, not of the later event.
+     */
+    @Test
+    public void updatesPublishedOutOfCommitOrderKeepTheCommittedText() {
+        timelineCache.get(1, this::load);
+        Message first = new Message(1, 1, "first edit", 1669947792);
+        Message second = new Message(1, 1, "second edit", 1669947792);
+        table.put(1, first);
+        table.put(1, second);
+        timelineCache.onMessageUpdated(second);
+        timelineCache.onMessageUpdated(first);
+
+        Assert.assertEquals(List.of(second), timelineCache.get(1, this::load));
+    }
+
+    /**
+     * A create event published after an update of the same message should not put the original text back.
+     */
+    @Test
+    public void staleCreateDoesNotOverwriteAnUpdate() {
+        timelineCache.get(1, this::load);
+        Message created = new Message(2, 1, "original", 1669947793);
+        Message updated = new Message(2, 1, "edited", 1669947793);
+        table.put(2, updated);
+        timelineCache.onMessageUpdated(updated);
+        timelineCache.onMessageCreated(created);
+
+        Assert.assertEquals(new ArrayList<>(table.values()), timelineCache.get(1, this::load));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    /**
+     * Two threads patching the same message through a MessageService should leave the cached timeline equal to the
+     * account's rows in the database.
+     */
+    @Test
+    public void racingUpdatesMatchTheDatabase() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        MessageDAO messageDAO = new MessageDAO();
+        MessageService messageService = new MessageService(messageDAO, new AccountIndex(), new MessageCache(),
+                timelineCache);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            String text = "edit by writer " + w;
+            writers.add(pool.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    messageService.updateMessageByID(new Message(1, 0, text + " #" + i, 0));
+                    messageService.getAllMessagesByUser(1);
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        pool.shutdown();
+
+        Assert.assertEquals(messageDAO.getAllMessagesByUser(1), messageService.getAllMessagesByUser(1));
+    }
+
+    /**
+     * Pages served from the timeline should follow message_id order and carry cursors.
+     */
+    @Test
+    public void pagesFollowMessageIdOrder() {
+        for (int i = 2; i <= 5; i++) {
+            table.put(i, new Message(i, 1, "test message " + i, 1669947792 + i));
+        }
+        MessagePage first = timelineCache.page(1, this::load, null, null, 2);
+        Assert.assertEquals(2, first.getMessages().get(1).getMessage_id());
+        MessagePage second = timelineCache.page(1, this::load, first.getNext(), null, 2);
+        Assert.assertEquals(3, second.getMessages().get(0).getMessage_id());
+        MessagePage back = timelineCache.page(1, this::load, null, second.getPrev(), 2);
+        Assert.assertEquals(first.getMessages(), back.getMessages());
+        Assert.assertNull(back.getPrev());
+    }
+
+    /**
+     * Concurrent writers on one account, racing with reloads of its timeline, should leave the cached timeline equal
+     * to the table.
+     */
+    @Test
+    public void concurrentWritesStayConsistent() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(5);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger nextId = new AtomicInteger(2);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            writers.add(pool.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    int id = nextId.getAndIncrement();
+                    Message message = new Message(id, 1, "message " + id, 1669947792 + id);
+                    // commit first, then publish the change, like MessageService does
+                    table.put(id, message);
+                    timelineCache.onMessageCreated(message);
+                    if (id % 3 == 0) {
+                        Message removed = table.remove(id - 1);
+                        if (removed != null) {
+                            timelineCache.onMessageDeleted(removed);
+                        }
+                    }
+                }
+            }));
+        }
+        Future<?> reloader = pool.submit(() -> {
+            while (writing.get()) {
+                timelineCache.invalidateAll();
+                timelineCache.get(1, this::load);
+            }
+        });
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        writing.set(false);
+        reloader.get();
+        pool.shutdown();
+
+        Assert.assertEquals(new ArrayList<>(table.values()), timelineCache.get(1, this::load));
+    }
+}